@@ -54,6 +54,14 @@ public interface Configuration {
 
 	void setProxyPort(int proxyPort);
 
+	Integer getConnectTimeout();
+
+	void setConnectTimeout(Integer connectTimeout);
+
+	Integer getReadTimeout();
+
+	void setReadTimeout(Integer readTimeout);
+
 	boolean isProxyEnabled();
 
 	void setProxyEnabled(boolean enabled);
@@ -72,6 +72,10 @@ public interface TrustDomain {
 
 	void setNameVirtual(String nameVirtual);
 
+	boolean isParallel();
+
+	void setParallel(boolean parallel);
+
 	List<String> getSourceTrustPoints();
 
 	void setSourceTrustPoints(List<String> sourceTrustPoints);
@@ -151,6 +155,8 @@ public interface TrustDomain {
 
 	String saveSelectVirtual();
 
+	String saveVirtual();
+
 	String back();
 
 	String removeConstraintPolicy();
@@ -78,6 +78,8 @@ public class ConfigurationBean implements Configuration {
 
 	private String proxyHost;
 	private int proxyPort;
+	private Integer connectTimeout;
+	private Integer readTimeout;
 	private boolean proxyEnabled;
 
 	private String clockDriftProtocol;
@@ -126,6 +128,8 @@ public class ConfigurationBean implements Configuration {
 				.getNetworkConfig();
 		this.proxyHost = networkConfig.getProxyHost();
 		this.proxyPort = networkConfig.getProxyPort();
+		this.connectTimeout = networkConfig.getConnectTimeout();
+		this.readTimeout = networkConfig.getReadTimeout();
 		this.proxyEnabled = networkConfig.isEnabled();
 
 		ClockDriftConfigEntity clockDriftConfig = this.configurationService
@@ -156,12 +160,20 @@ public class ConfigurationBean implements Configuration {
 	@Admin
 	public String saveNetworkConfig() {
 
-		this.log.debug(
-				"save network config: proxyHost=#0  proxyPort=#1  enabled=#2",
-				this.proxyHost, this.proxyPort, this.proxyEnabled);
+		this.log.debug("save network config: proxyHost=#0  proxyPort=#1  "
+				+ "connectTimeout=#2  readTimeout=#3  enabled=#4",
+				this.proxyHost, this.proxyPort, this.connectTimeout,
+				this.readTimeout, this.proxyEnabled);
 
-		this.configurationService.saveNetworkConfig(proxyHost, proxyPort,
-				proxyEnabled);
+		try {
+			this.configurationService.saveNetworkConfig(proxyHost, proxyPort,
+					connectTimeout, readTimeout, proxyEnabled);
+		} catch (InvalidTimeoutException e) {
+			this.facesMessages.addToControlFromResourceBundle(
+					"connectTimeout", StatusMessage.Severity.ERROR,
+					"errorTimeoutInvalid");
+			return null;
+		}
 		this.selectedTab = ConfigurationTab.tab_network.name();
 		return "success";
 	}
@@ -355,6 +367,38 @@ public class ConfigurationBean implements Configuration {
 		this.proxyPort = proxyPort;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public Integer getConnectTimeout() {
+
+		return this.connectTimeout;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setConnectTimeout(Integer connectTimeout) {
+
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Integer getReadTimeout() {
+
+		return this.readTimeout;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setReadTimeout(Integer readTimeout) {
+
+		this.readTimeout = readTimeout;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -162,6 +162,7 @@ public class TrustDomainBean implements TrustDomain {
 	private String name;
 	private boolean useCaching;
 	private String nameVirtual;
+	private boolean parallel;
 	private String certificatePolicy;
 	private String keyUsage;
 	private boolean allowed;
@@ -259,6 +260,7 @@ public class TrustDomainBean implements TrustDomain {
 
 		this.log.debug("modify virtual trust domain: #0",
 				this.selectedVirtualTrustDomain.getName());
+		this.parallel = this.selectedVirtualTrustDomain.isParallel();
 		return "modify";
 	}
 
@@ -645,6 +647,26 @@ public class TrustDomainBean implements TrustDomain {
 		return "success";
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Admin
+	public String saveVirtual() {
+
+		this.log.debug("save virtual trust domain: #0",
+				this.selectedVirtualTrustDomain.getName());
+		this.selectedVirtualTrustDomain.setParallel(this.parallel);
+		try {
+			this.selectedVirtualTrustDomain = this.trustDomainService
+					.save(this.selectedVirtualTrustDomain);
+		} catch (VirtualTrustDomainNotFoundException e) {
+			this.facesMessages.addFromResourceBundle(
+					StatusMessage.Severity.ERROR, "errorTrustDomainNotFound");
+			return null;
+		}
+		return "success";
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -1116,6 +1138,22 @@ public class TrustDomainBean implements TrustDomain {
 		this.useCaching = useCaching;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isParallel() {
+
+		return this.parallel;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setParallel(boolean parallel) {
+
+		this.parallel = parallel;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
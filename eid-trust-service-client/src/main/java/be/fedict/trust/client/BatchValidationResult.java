@@ -0,0 +1,53 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.client;
+
+import java.util.List;
+
+/**
+ * Validation result of a single certificate chain of a batch validation.
+ *
+ * @author Frank Cornelis
+ * @see XKMS2Client#validateBatch(String, List)
+ */
+public class BatchValidationResult {
+
+	private final boolean valid;
+
+	private final List<String> invalidReasonURIs;
+
+	public BatchValidationResult(boolean valid, List<String> invalidReasonURIs) {
+		this.valid = valid;
+		this.invalidReasonURIs = invalidReasonURIs;
+	}
+
+	public boolean isValid() {
+		return this.valid;
+	}
+
+	/**
+	 * Returns the XKMS v2.0 reason URIs for a failed validation.
+	 *
+	 * @see <a href="http://www.w3.org/TR/xkms2/#XKMS_2_0_Section_5_1">XKMS
+	 *      2.0</a>
+	 */
+	public List<String> getInvalidReasons() {
+		return this.invalidReasonURIs;
+	}
+}
@@ -45,6 +45,7 @@ import java.util.Map;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
+import javax.xml.bind.JAXBElement;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
@@ -68,9 +69,12 @@ import be.fedict.trust.client.jaxb.xades132.CertifiedRolesListType;
 import be.fedict.trust.client.jaxb.xades132.EncapsulatedPKIDataType;
 import be.fedict.trust.client.jaxb.xades132.OCSPValuesType;
 import be.fedict.trust.client.jaxb.xades132.RevocationValuesType;
+import be.fedict.trust.client.jaxb.xkms.CompoundRequestType;
+import be.fedict.trust.client.jaxb.xkms.CompoundResultType;
 import be.fedict.trust.client.jaxb.xkms.KeyBindingType;
 import be.fedict.trust.client.jaxb.xkms.MessageExtensionAbstractType;
 import be.fedict.trust.client.jaxb.xkms.QueryKeyBindingType;
+import be.fedict.trust.client.jaxb.xkms.ResultType;
 import be.fedict.trust.client.jaxb.xkms.StatusType;
 import be.fedict.trust.client.jaxb.xkms.TimeInstantType;
 import be.fedict.trust.client.jaxb.xkms.UseKeyWithType;
@@ -521,34 +525,11 @@ public class XKMS2Client {
 			}
 		}
 		be.fedict.trust.client.jaxb.xkms.ObjectFactory objectFactory = new be.fedict.trust.client.jaxb.xkms.ObjectFactory();
-		be.fedict.trust.client.jaxb.xmldsig.ObjectFactory xmldsigObjectFactory = new be.fedict.trust.client.jaxb.xmldsig.ObjectFactory();
 
-		ValidateRequestType validateRequest = objectFactory
-				.createValidateRequestType();
-		QueryKeyBindingType queryKeyBinding = objectFactory
-				.createQueryKeyBindingType();
-		KeyInfoType keyInfo = xmldsigObjectFactory.createKeyInfoType();
-		queryKeyBinding.setKeyInfo(keyInfo);
-		X509DataType x509Data = xmldsigObjectFactory.createX509DataType();
-		for (X509Certificate certificate : certificateChain) {
-			byte[] encodedCertificate = certificate.getEncoded();
-			x509Data.getX509IssuerSerialOrX509SKIOrX509SubjectName()
-					.add(xmldsigObjectFactory
-							.createX509DataTypeX509Certificate(encodedCertificate));
-		}
-		keyInfo.getContent().add(xmldsigObjectFactory.createX509Data(x509Data));
-		validateRequest.setQueryKeyBinding(queryKeyBinding);
-
-		/*
-		 * Set optional trust domain
-		 */
-		if (null != trustDomain) {
-			UseKeyWithType useKeyWith = objectFactory.createUseKeyWithType();
-			useKeyWith
-					.setApplication(XKMSConstants.TRUST_DOMAIN_APPLICATION_URI);
-			useKeyWith.setIdentifier(trustDomain);
-			queryKeyBinding.getUseKeyWith().add(useKeyWith);
-		}
+		ValidateRequestType validateRequest = createValidateRequest(
+				trustDomain, certificateChain);
+		QueryKeyBindingType queryKeyBinding = validateRequest
+				.getQueryKeyBinding();
 
 		/*
 		 * Add timestamp token for TSA validation
@@ -624,6 +605,122 @@ public class XKMS2Client {
 		}
 	}
 
+	/**
+	 * Validate the specified certificate chains against the default trust
+	 * domain configured at the trust service we are connecting to.
+	 * 
+	 * @see #validateBatch(String, List)
+	 */
+	public List<BatchValidationResult> validateBatch(
+			List<List<X509Certificate>> certificateChains)
+			throws CertificateEncodingException, TrustDomainNotFoundException {
+		return validateBatch(null, certificateChains);
+	}
+
+	/**
+	 * Validate the specified certificate chains against the specified trust
+	 * domain using a single XKMS2 compound request. The certificate chains are
+	 * validated in parallel by the trust service.
+	 * 
+	 * @return one result per certificate chain, in the same order.
+	 */
+	public List<BatchValidationResult> validateBatch(String trustDomain,
+			List<List<X509Certificate>> certificateChains)
+			throws CertificateEncodingException, TrustDomainNotFoundException {
+		LOG.debug("Validate batch of " + certificateChains.size()
+				+ " certificate chains");
+		be.fedict.trust.client.jaxb.xkms.ObjectFactory objectFactory = new be.fedict.trust.client.jaxb.xkms.ObjectFactory();
+
+		CompoundRequestType compoundRequest = objectFactory
+				.createCompoundRequestType();
+		compoundRequest.setId("batch");
+		int idx = 0;
+		for (List<X509Certificate> certificateChain : certificateChains) {
+			ValidateRequestType validateRequest = createValidateRequest(
+					trustDomain, certificateChain);
+			validateRequest.setId("request-" + idx++);
+			compoundRequest
+					.getLocateRequestOrValidateRequestOrRegisterRequest().add(
+							objectFactory
+									.createValidateRequest(validateRequest));
+		}
+
+		CompoundResultType compoundResult = this.port.compound(compoundRequest);
+
+		if (null == compoundResult) {
+			throw new RuntimeException("missing CompoundResult element");
+		}
+
+		checkResponse(compoundResult);
+
+		List<BatchValidationResult> results = new LinkedList<BatchValidationResult>();
+		for (Object result : compoundResult
+				.getLocateResultOrValidateResultOrRegisterResult()) {
+			if (result instanceof JAXBElement) {
+				result = ((JAXBElement<?>) result).getValue();
+			}
+			ValidateResultType validateResult = (ValidateResultType) result;
+			checkResponse(validateResult);
+
+			List<String> invalidReasonURIs = new LinkedList<String>();
+			boolean valid = false;
+			for (KeyBindingType keyBinding : validateResult.getKeyBinding()) {
+				StatusType status = keyBinding.getStatus();
+				if (XKMSConstants.KEY_BINDING_STATUS_VALID_URI.equals(status
+						.getStatusValue())) {
+					valid = true;
+				} else {
+					invalidReasonURIs.addAll(status.getInvalidReason());
+				}
+			}
+			results.add(new BatchValidationResult(valid, invalidReasonURIs));
+		}
+		if (results.size() != certificateChains.size()) {
+			throw new RuntimeException("expected " + certificateChains.size()
+					+ " ValidateResult elements, got " + results.size());
+		}
+		return results;
+	}
+
+	/**
+	 * Creates a new {@link ValidateRequestType} for the specified certificate
+	 * chain and optional trust domain.
+	 */
+	private ValidateRequestType createValidateRequest(String trustDomain,
+			List<X509Certificate> certificateChain)
+			throws CertificateEncodingException {
+		be.fedict.trust.client.jaxb.xkms.ObjectFactory objectFactory = new be.fedict.trust.client.jaxb.xkms.ObjectFactory();
+		be.fedict.trust.client.jaxb.xmldsig.ObjectFactory xmldsigObjectFactory = new be.fedict.trust.client.jaxb.xmldsig.ObjectFactory();
+
+		ValidateRequestType validateRequest = objectFactory
+				.createValidateRequestType();
+		QueryKeyBindingType queryKeyBinding = objectFactory
+				.createQueryKeyBindingType();
+		KeyInfoType keyInfo = xmldsigObjectFactory.createKeyInfoType();
+		queryKeyBinding.setKeyInfo(keyInfo);
+		X509DataType x509Data = xmldsigObjectFactory.createX509DataType();
+		for (X509Certificate certificate : certificateChain) {
+			byte[] encodedCertificate = certificate.getEncoded();
+			x509Data.getX509IssuerSerialOrX509SKIOrX509SubjectName()
+					.add(xmldsigObjectFactory
+							.createX509DataTypeX509Certificate(encodedCertificate));
+		}
+		keyInfo.getContent().add(xmldsigObjectFactory.createX509Data(x509Data));
+		validateRequest.setQueryKeyBinding(queryKeyBinding);
+
+		/*
+		 * Set optional trust domain
+		 */
+		if (null != trustDomain) {
+			UseKeyWithType useKeyWith = objectFactory.createUseKeyWithType();
+			useKeyWith
+					.setApplication(XKMSConstants.TRUST_DOMAIN_APPLICATION_URI);
+			useKeyWith.setIdentifier(trustDomain);
+			queryKeyBinding.getUseKeyWith().add(useKeyWith);
+		}
+		return validateRequest;
+	}
+
 	/**
 	 * Add revocation data either from list of {@link OCSPResp} objects and
 	 * {@link X509CRL} objects or from specified {@link RevocationValuesType}.
@@ -712,7 +809,7 @@ public class XKMS2Client {
 	/**
 	 * Checks the ResultMajor and ResultMinor code.
 	 */
-	private void checkResponse(ValidateResultType validateResult)
+	private void checkResponse(ResultType validateResult)
 			throws TrustDomainNotFoundException {
 		if (!validateResult.getResultMajor().equals(
 				ResultMajorCode.SUCCESS.getErrorCode())) {
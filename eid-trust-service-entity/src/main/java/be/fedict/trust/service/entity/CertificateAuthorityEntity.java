@@ -18,12 +18,9 @@
 
 package be.fedict.trust.service.entity;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.io.Serializable;
+import java.math.BigInteger;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Date;
 
@@ -70,6 +67,8 @@ public class CertificateAuthorityEntity implements Serializable {
 
 	private String name;
 
+	private int issuerId;
+
 	private String crlUrl;
 
 	private Status status;
@@ -80,8 +79,24 @@ public class CertificateAuthorityEntity implements Serializable {
 
 	private Date nextUpdate;
 
+	private BigInteger crlNumber;
+
+	private int generation;
+
+	private String crlETag;
+
+	private String crlLastModified;
+
+	private String deltaCrlUrl;
+
+	private BigInteger baseCrlNumber;
+
+	private int baseGeneration;
+
 	private TrustPointEntity trustPoint;
 
+	private transient DecodedCertificate decodedCertificate;
+
 	/**
 	 * Default constructor.
 	 */
@@ -104,6 +119,8 @@ public class CertificateAuthorityEntity implements Serializable {
 		this.encodedCertificate = certificate.getEncoded();
 		this.thisUpdate = null;
 		this.nextUpdate = null;
+		this.crlNumber = null;
+		this.generation = 0;
 		this.trustPoint = null;
 	}
 
@@ -116,6 +133,19 @@ public class CertificateAuthorityEntity implements Serializable {
 		this.name = name;
 	}
 
+	/**
+	 * Compact surrogate key of this CA, used by the CRL cache entries instead
+	 * of the full subject name. Allocated via {@link IssuerIdEntity}.
+	 */
+	@Column(unique = true, nullable = false)
+	public int getIssuerId() {
+		return this.issuerId;
+	}
+
+	public void setIssuerId(int issuerId) {
+		this.issuerId = issuerId;
+	}
+
 	public String getCrlUrl() {
 		return this.crlUrl;
 	}
@@ -142,6 +172,7 @@ public class CertificateAuthorityEntity implements Serializable {
 
 	public void setEncodedCertificate(byte[] encodedCertificate) {
 		this.encodedCertificate = encodedCertificate;
+		this.decodedCertificate = null;
 	}
 
 	@Temporal(TemporalType.TIMESTAMP)
@@ -162,6 +193,95 @@ public class CertificateAuthorityEntity implements Serializable {
 		this.nextUpdate = nextUpdate;
 	}
 
+	/**
+	 * Returns the CRL number of the cached revocation data, or
+	 * <code>null</code> if not yet cached.
+	 */
+	@Column(precision = 38)
+	public BigInteger getCrlNumber() {
+		return this.crlNumber;
+	}
+
+	public void setCrlNumber(BigInteger crlNumber) {
+		this.crlNumber = crlNumber;
+	}
+
+	/**
+	 * Returns the published generation of the cached revocation data. A new
+	 * CRL is staged under the next generation while the current one keeps
+	 * serving, and activated by switching this value.
+	 */
+	public int getGeneration() {
+		return this.generation;
+	}
+
+	public void setGeneration(int generation) {
+		this.generation = generation;
+	}
+
+	/**
+	 * Returns the HTTP entity tag of the cached CRL download, or
+	 * <code>null</code> if the CRL distribution point did not return one.
+	 */
+	public String getCrlETag() {
+		return this.crlETag;
+	}
+
+	public void setCrlETag(String crlETag) {
+		this.crlETag = crlETag;
+	}
+
+	/**
+	 * Returns the HTTP last modified date of the cached CRL download, as
+	 * returned by the CRL distribution point, or <code>null</code> if none.
+	 */
+	public String getCrlLastModified() {
+		return this.crlLastModified;
+	}
+
+	public void setCrlLastModified(String crlLastModified) {
+		this.crlLastModified = crlLastModified;
+	}
+
+	/**
+	 * Returns the URL of the delta CRLs, as listed on the cached complete CRL,
+	 * or <code>null</code> if the CA does not publish delta CRLs.
+	 */
+	public String getDeltaCrlUrl() {
+		return this.deltaCrlUrl;
+	}
+
+	public void setDeltaCrlUrl(String deltaCrlUrl) {
+		this.deltaCrlUrl = deltaCrlUrl;
+	}
+
+	/**
+	 * Returns the CRL number of the complete CRL the cached revocation data is
+	 * based on, or <code>null</code> if delta CRLs cannot be applied. Differs
+	 * from the CRL number once a delta CRL has been applied.
+	 */
+	@Column(precision = 38)
+	public BigInteger getBaseCrlNumber() {
+		return this.baseCrlNumber;
+	}
+
+	public void setBaseCrlNumber(BigInteger baseCrlNumber) {
+		this.baseCrlNumber = baseCrlNumber;
+	}
+
+	/**
+	 * Returns the generation of the cached revocation data that holds the
+	 * complete CRL with the base CRL number. Delta CRLs are applied on top of
+	 * this generation, so its entries are kept until the next complete CRL.
+	 */
+	public int getBaseGeneration() {
+		return this.baseGeneration;
+	}
+
+	public void setBaseGeneration(int baseGeneration) {
+		this.baseGeneration = baseGeneration;
+	}
+
 	@ManyToOne(optional = true)
 	public TrustPointEntity getTrustPoint() {
 		return this.trustPoint;
@@ -171,28 +291,27 @@ public class CertificateAuthorityEntity implements Serializable {
 		this.trustPoint = trustPoint;
 	}
 
+	/**
+	 * Returns the decoded certificate, shared via the {@link CertificateCache}.
+	 */
 	@Transient
-	public X509Certificate getCertificate() {
-		try {
-			CertificateFactory certificateFactory = CertificateFactory
-					.getInstance("X.509");
-			InputStream certificateStream = new ByteArrayInputStream(
-					this.encodedCertificate);
-			X509Certificate certificate = (X509Certificate) certificateFactory
-					.generateCertificate(certificateStream);
-			return certificate;
-		} catch (CertificateException e) {
-			throw new RuntimeException("cert factory error: " + e.getMessage());
+	public DecodedCertificate getDecodedCertificate() {
+		DecodedCertificate result = this.decodedCertificate;
+		if (null == result) {
+			result = CertificateCache
+					.getDecodedCertificate(getEncodedCertificate());
+			this.decodedCertificate = result;
 		}
+		return result;
+	}
+
+	@Transient
+	public X509Certificate getCertificate() {
+		return getDecodedCertificate().getCertificate();
 	}
 
 	@Transient
 	public boolean isExpired() {
-		X509Certificate certificate = getCertificate();
-		Date now = new Date();
-		if (now.after(certificate.getNotAfter())) {
-			return true;
-		}
-		return false;
+		return getDecodedCertificate().isExpired(new Date());
 	}
 }
@@ -0,0 +1,116 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.entity;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process wide, bounded LRU cache of decoded certificates, keyed by the
+ * SHA-1 fingerprint of their DER encoding. The maximum number of entries can
+ * be configured via the {@value #MAX_SIZE_PROPERTY} system property.
+ * 
+ * @author Frank Cornelis
+ */
+public final class CertificateCache {
+
+	public static final String MAX_SIZE_PROPERTY = "be.fedict.trust.certificateCacheSize";
+
+	private static final int MAX_SIZE = Integer.getInteger(MAX_SIZE_PROPERTY,
+			1000);
+
+	private static final Map<String, DecodedCertificate> CACHE = new LinkedHashMap<String, DecodedCertificate>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, DecodedCertificate> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private CertificateCache() {
+		super();
+	}
+
+	/**
+	 * Returns the decoded certificate for the specified DER encoding.
+	 */
+	public static DecodedCertificate getDecodedCertificate(
+			byte[] encodedCertificate) {
+		String fingerprint = hash(encodedCertificate);
+		DecodedCertificate decodedCertificate;
+		synchronized (CACHE) {
+			decodedCertificate = CACHE.get(fingerprint);
+		}
+		if (null != decodedCertificate) {
+			return decodedCertificate;
+		}
+		X509Certificate certificate;
+		try {
+			CertificateFactory certificateFactory = CertificateFactory
+					.getInstance("X.509");
+			certificate = (X509Certificate) certificateFactory
+					.generateCertificate(new ByteArrayInputStream(
+							encodedCertificate));
+		} catch (CertificateException e) {
+			throw new RuntimeException("cert factory error: " + e.getMessage());
+		}
+		decodedCertificate = new DecodedCertificate(certificate,
+				hash(certificate.getPublicKey().getEncoded()));
+		synchronized (CACHE) {
+			CACHE.put(fingerprint, decodedCertificate);
+		}
+		return decodedCertificate;
+	}
+
+	/**
+	 * Removes all cached certificates.
+	 */
+	public static void clear() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+
+	private static String hash(byte[] data) {
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-1 not available: "
+					+ e.getMessage());
+		}
+		byte[] digest = messageDigest.digest(data);
+		StringBuffer hex = new StringBuffer(digest.length * 2);
+		for (byte b : digest) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.entity;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+/**
+ * Decoded X509 certificate together with some precomputed derived values.
+ * Instances are shared via the {@link CertificateCache} and are immutable.
+ * 
+ * @author Frank Cornelis
+ */
+public class DecodedCertificate {
+
+	private final X509Certificate certificate;
+
+	private final String subjectName;
+
+	private final String publicKeyHash;
+
+	private final long notAfter;
+
+	DecodedCertificate(X509Certificate certificate, String publicKeyHash) {
+		this.certificate = certificate;
+		this.subjectName = certificate.getSubjectX500Principal().toString();
+		this.publicKeyHash = publicKeyHash;
+		this.notAfter = certificate.getNotAfter().getTime();
+	}
+
+	public X509Certificate getCertificate() {
+		return this.certificate;
+	}
+
+	/**
+	 * Returns the subject name, as used for {@link CertificateAuthorityEntity}
+	 * names.
+	 */
+	public String getSubjectName() {
+		return this.subjectName;
+	}
+
+	/**
+	 * Returns the hex encoded SHA-1 hash of the encoded public key.
+	 */
+	public String getPublicKeyHash() {
+		return this.publicKeyHash;
+	}
+
+	public Date getNotAfter() {
+		return new Date(this.notAfter);
+	}
+
+	public boolean isExpired(Date date) {
+		return date.getTime() > this.notAfter;
+	}
+}
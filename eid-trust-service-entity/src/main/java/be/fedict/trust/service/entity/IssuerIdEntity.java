@@ -0,0 +1,81 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+package be.fedict.trust.service.entity;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+
+/**
+ * Allocation of the {@link CertificateAuthorityEntity#getIssuerId()} surrogate
+ * keys. The ids are drawn from a table generator, so concurrent registrations
+ * of new CAs, also on different nodes, never draw the same id.
+ */
+@Entity
+@Table(name = "ts_issuer_ids")
+public class IssuerIdEntity implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String GENERATOR_NAME = "ts_issuer_id";
+
+	private int id;
+
+	private String caName;
+
+	/**
+	 * Default constructor.
+	 */
+	public IssuerIdEntity() {
+		super();
+	}
+
+	/**
+	 * Main constructor.
+	 */
+	public IssuerIdEntity(String caName) {
+		this.caName = caName;
+	}
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = GENERATOR_NAME)
+	@TableGenerator(name = GENERATOR_NAME, table = "ts_id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "issuerId", allocationSize = 1)
+	public int getId() {
+		return this.id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Returns the name of the CA the id was allocated for.
+	 */
+	public String getCaName() {
+		return this.caName;
+	}
+
+	public void setCaName(String caName) {
+		this.caName = caName;
+	}
+}
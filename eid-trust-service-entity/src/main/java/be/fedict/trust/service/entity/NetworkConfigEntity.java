@@ -35,6 +35,9 @@ public class NetworkConfigEntity implements Serializable {
 	private String proxyHost;
 	private int proxyPort;
 
+	private Integer connectTimeout;
+	private Integer readTimeout;
+
 	private boolean enabled = false;
 
 	/**
@@ -78,6 +81,30 @@ public class NetworkConfigEntity implements Serializable {
 		this.proxyPort = proxyPort;
 	}
 
+	/**
+	 * Returns the timeout in milliseconds for establishing outbound HTTP
+	 * connections, or <code>null</code> for the default.
+	 */
+	public Integer getConnectTimeout() {
+		return this.connectTimeout;
+	}
+
+	public void setConnectTimeout(Integer connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Returns the timeout in milliseconds for reading from outbound HTTP
+	 * connections, or <code>null</code> for the default.
+	 */
+	public Integer getReadTimeout() {
+		return this.readTimeout;
+	}
+
+	public void setReadTimeout(Integer readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
 	public boolean isEnabled() {
 		return this.enabled;
 	}
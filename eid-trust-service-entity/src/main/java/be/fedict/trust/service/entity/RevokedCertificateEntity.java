@@ -22,7 +22,6 @@ import java.io.Serializable;
 import java.math.BigInteger;
 import java.util.Date;
 
-import javax.persistence.Column;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
 import javax.persistence.NamedQueries;
@@ -40,15 +39,16 @@ import org.apache.commons.lang.builder.ToStringStyle;
 @Table(name = "ts_revoked_certs")
 @NamedQueries({
 		@NamedQuery(name = RevokedCertificateEntity.QUERY_WHERE_ISSUER_SERIAL, query = "FROM RevokedCertificateEntity "
-				+ "WHERE pk.issuer = :issuer AND pk.serialNumber = :serialNumber"),
-		@NamedQuery(name = RevokedCertificateEntity.QUERY_CRL_NUMBER_WHERE_ISSUER, query = "SELECT MAX(crlNumber) FROM RevokedCertificateEntity "
-				+ "WHERE pk.issuer = :issuer"),
+				+ "WHERE pk.issuerId = :issuerId AND pk.serialNumber = :serialNumber "
+				+ "AND pk.generation <= :generation "
+				+ "AND (removedGeneration IS NULL OR removedGeneration > :generation)"),
 		@NamedQuery(name = RevokedCertificateEntity.DELETE_WHERE_ISSUER, query = "DELETE FROM RevokedCertificateEntity "
-				+ "WHERE pk.issuer = :issuer"),
+				+ "WHERE pk.issuerId = :issuerId"),
 		@NamedQuery(name = RevokedCertificateEntity.QUERY_WHERE_ISSUER, query = "FROM RevokedCertificateEntity "
-				+ "WHERE pk.issuer = :issuer"),
-		@NamedQuery(name = RevokedCertificateEntity.DELETE_WHERE_ISSUER_OLDER_CRL_NUMBER, query = "DELETE FROM RevokedCertificateEntity "
-				+ "WHERE crlNumber < :crlNumber AND issuer = :issuer"),
+				+ "WHERE pk.issuerId = :issuerId AND pk.generation > 0 AND pk.generation <= :generation "
+				+ "AND (removedGeneration IS NULL OR removedGeneration > :generation)"),
+		@NamedQuery(name = RevokedCertificateEntity.QUERY_FOREIGN_WHERE_ISSUER, query = "FROM RevokedCertificateEntity "
+				+ "WHERE pk.issuerId = :issuerId AND pk.generation = 0 AND removedGeneration IS NULL"),
 		@NamedQuery(name = RevokedCertificateEntity.QUERY_COUNT_ALL, query = "SELECT COUNT(*) FROM RevokedCertificateEntity") })
 public class RevokedCertificateEntity implements Serializable {
 
@@ -56,24 +56,23 @@ public class RevokedCertificateEntity implements Serializable {
 
 	public static final String QUERY_WHERE_ISSUER_SERIAL = "ts_rc.q.i.s";
 	public static final String QUERY_WHERE_ISSUER = "ts_rc.q.i";
-	public static final String QUERY_CRL_NUMBER_WHERE_ISSUER = "ts_rc.q.c";
+	public static final String QUERY_FOREIGN_WHERE_ISSUER = "ts_rc.q.f.i";
 	public static final String DELETE_WHERE_ISSUER = "ts_rc.d.i";
-	public static final String DELETE_WHERE_ISSUER_OLDER_CRL_NUMBER = "ts_rc.d.i.old.c";
 	public static final String QUERY_COUNT_ALL = "ts_rc.q.count.all";
 
 	private RevokedCertificatePK pk;
 	private Date revocationDate;
-	private BigInteger crlNumber;
+	private Integer removedGeneration;
 
 	public RevokedCertificateEntity() {
 		super();
 	}
 
-	public RevokedCertificateEntity(String issuer, BigInteger serialNumber,
-			Date revocationDate, BigInteger crlNumber) {
-		this.pk = new RevokedCertificatePK(issuer, serialNumber.toString());
+	public RevokedCertificateEntity(int issuerId, BigInteger serialNumber,
+			Date revocationDate, int generation) {
+		this.pk = new RevokedCertificatePK(issuerId, serialNumber, generation);
 		this.revocationDate = revocationDate;
-		this.crlNumber = crlNumber;
+		this.removedGeneration = null;
 	}
 
 	@EmbeddedId
@@ -94,13 +93,18 @@ public class RevokedCertificateEntity implements Serializable {
 		this.revocationDate = revocationDate;
 	}
 
-	@Column(precision = 38)
-	public BigInteger getCrlNumber() {
-		return this.crlNumber;
+	/**
+	 * The CRL cache generation of the issuing CA in which this entry was
+	 * removed or replaced, or <code>null</code> if still part of the CRL. An
+	 * entry is visible to the generations from {@link RevokedCertificatePK}
+	 * up to, not including, this one.
+	 */
+	public Integer getRemovedGeneration() {
+		return this.removedGeneration;
 	}
 
-	public void setCrlNumber(BigInteger crlNumber) {
-		this.crlNumber = crlNumber;
+	public void setRemovedGeneration(Integer removedGeneration) {
+		this.removedGeneration = removedGeneration;
 	}
 
 	@Override
@@ -126,7 +130,7 @@ public class RevokedCertificateEntity implements Serializable {
 	@Override
 	public String toString() {
 		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
-				.append("pk", this.pk).append("crlNumber", this.crlNumber)
-				.append("revocationDate", this.revocationDate).toString();
+				.append("pk", this.pk)
+				.append("removedGeneration", this.removedGeneration).append("revocationDate", this.revocationDate).toString();
 	}
 }
@@ -19,11 +19,12 @@
 package be.fedict.trust.service.entity;
 
 import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Arrays;
 
+import javax.persistence.Column;
 import javax.persistence.Embeddable;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.commons.lang.builder.ToStringBuilder;
 
 @Embeddable
@@ -31,38 +32,62 @@ public class RevokedCertificatePK implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
-	private String issuer;
-	private String serialNumber;
+	private int issuerId;
+	private byte[] serialNumber;
+	private int generation;
 
 	public RevokedCertificatePK() {
 		super();
 	}
 
-	public RevokedCertificatePK(String issuer, String serialNumber) {
-		this.issuer = issuer;
-		this.serialNumber = serialNumber;
+	public RevokedCertificatePK(int issuerId, BigInteger serialNumber,
+			int generation) {
+		this.issuerId = issuerId;
+		this.serialNumber = serialNumber.toByteArray();
+		this.generation = generation;
 	}
 
-	public String getIssuer() {
-		return this.issuer;
+	/**
+	 * The surrogate id of the issuing CA.
+	 * 
+	 * @see CertificateAuthorityEntity#getIssuerId()
+	 */
+	public int getIssuerId() {
+		return this.issuerId;
 	}
 
-	public void setIssuer(String issuer) {
-		this.issuer = issuer;
+	public void setIssuerId(int issuerId) {
+		this.issuerId = issuerId;
 	}
 
 	/**
-	 * HSQLDB/Hibernate has problems with mapping a BigInteger correctly. So we
-	 * use a String instead of BigInteger here.
+	 * The two's-complement encoding of the serial number, as returned by
+	 * {@link BigInteger#toByteArray()}. RFC 5280 limits serial numbers to 20
+	 * octets, we leave some room for non-conforming CAs.
 	 */
-	public String getSerialNumber() {
+	@Column(length = 32)
+	public byte[] getSerialNumber() {
 		return this.serialNumber;
 	}
 
-	public void setSerialNumber(String serialNumber) {
+	public void setSerialNumber(byte[] serialNumber) {
 		this.serialNumber = serialNumber;
 	}
 
+	/**
+	 * The CRL cache generation of the issuing CA in which this entry was
+	 * added.
+	 * 
+	 * @see CertificateAuthorityEntity#getGeneration()
+	 */
+	public int getGeneration() {
+		return this.generation;
+	}
+
+	public void setGeneration(int generation) {
+		this.generation = generation;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (null == obj) {
@@ -75,20 +100,22 @@ public class RevokedCertificatePK implements Serializable {
 			return false;
 		}
 		RevokedCertificatePK rhs = (RevokedCertificatePK) obj;
-		return new EqualsBuilder().append(this.serialNumber, rhs.serialNumber)
-				.append(this.issuer, rhs.issuer).isEquals();
+		return this.issuerId == rhs.issuerId
+				&& this.generation == rhs.generation
+				&& Arrays.equals(this.serialNumber, rhs.serialNumber);
 	}
 
 	@Override
 	public int hashCode() {
-		return new HashCodeBuilder().append(this.serialNumber)
-				.append(this.issuer).toHashCode();
+		return 31 * (31 * this.issuerId + this.generation)
+				+ Arrays.hashCode(this.serialNumber);
 	}
 
 	@Override
 	public String toString() {
 		return new ToStringBuilder(this)
-				.append("serialNumber", this.serialNumber)
-				.append("issuer", this.issuer).toString();
+				.append("serialNumber", new BigInteger(this.serialNumber))
+				.append("issuerId", this.issuerId)
+				.append("generation", this.generation).toString();
 	}
 }
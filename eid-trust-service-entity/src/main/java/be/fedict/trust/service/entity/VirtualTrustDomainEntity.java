@@ -45,6 +45,8 @@ public class VirtualTrustDomainEntity implements Serializable {
 
 	private String name;
 
+	private boolean parallel;
+
 	// trust domains
 	private Set<TrustDomainEntity> trustDomains;
 
@@ -76,6 +78,18 @@ public class VirtualTrustDomainEntity implements Serializable {
 		this.name = name;
 	}
 
+	/**
+	 * If <code>true</code> the member trust domains are evaluated concurrently
+	 * instead of one after the other.
+	 */
+	public boolean isParallel() {
+		return this.parallel;
+	}
+
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
 	@ManyToMany(fetch = FetchType.EAGER)
 	public Set<TrustDomainEntity> getTrustDomains() {
 		return this.trustDomains;
@@ -0,0 +1,38 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2012 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.hibernate.dialect;
+
+import java.sql.Types;
+
+import org.hibernate.dialect.MySQLDialect;
+
+/**
+ * Custom MySQL Dialect mapping short binary columns to varbinary instead of
+ * tinyblob, as blob columns cannot be part of a primary key.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class MySQLBinaryDialect extends MySQLDialect {
+
+	public MySQLBinaryDialect() {
+		super();
+		registerColumnType(Types.VARBINARY, 255, "varbinary($l)");
+	}
+}
@@ -20,6 +20,7 @@ package test.unit.be.fedict.trust.service;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.math.BigInteger;
 import java.util.Date;
@@ -38,7 +39,9 @@ import org.junit.Test;
 
 import be.fedict.trust.service.entity.AuditEntity;
 import be.fedict.trust.service.entity.CertificateAuthorityEntity;
+import be.fedict.trust.service.entity.IssuerIdEntity;
 import be.fedict.trust.service.entity.RevokedCertificateEntity;
+import be.fedict.trust.service.entity.RevokedCertificatePK;
 import be.fedict.trust.service.entity.TrustDomainEntity;
 import be.fedict.trust.service.entity.TrustPointEntity;
 import be.fedict.trust.service.entity.constraints.CertificateConstraintEntity;
@@ -82,6 +85,7 @@ public class PersistenceTest {
 		configuration.addAnnotatedClass(QCStatementsConstraintEntity.class);
 		configuration.addAnnotatedClass(TrustPointEntity.class);
 		configuration.addAnnotatedClass(AuditEntity.class);
+		configuration.addAnnotatedClass(IssuerIdEntity.class);
 		EntityManagerFactory entityManagerFactory = configuration
 				.buildEntityManagerFactory();
 
@@ -117,12 +121,11 @@ public class PersistenceTest {
 	@Test
 	public void testFindRevokedCertificate() throws Exception {
 		// setup
-		String issuerName = "CN=Test CA";
+		int issuerId = 42;
 		BigInteger serialNumber = new BigInteger(
 				"21267647932558966653497436382356969621");
-		BigInteger crlNumber = new BigInteger("123465789");
 		RevokedCertificateEntity revokedCertificateEntity = new RevokedCertificateEntity(
-				issuerName, serialNumber, new Date(), crlNumber);
+				issuerId, serialNumber, new Date(), 1);
 		this.entityManager.persist(revokedCertificateEntity);
 
 		refresh();
@@ -130,32 +133,61 @@ public class PersistenceTest {
 		// operate
 		Query query = this.entityManager
 				.createNamedQuery(RevokedCertificateEntity.QUERY_WHERE_ISSUER_SERIAL);
-		query.setParameter("issuer", issuerName);
-		query.setParameter("serialNumber", serialNumber.toString());
+		query.setParameter("issuerId", issuerId);
+		query.setParameter("serialNumber", serialNumber.toByteArray());
+		query.setParameter("generation", 1);
 		RevokedCertificateEntity resultRevokedCertificate = (RevokedCertificateEntity) query
 				.getSingleResult();
 
 		// verify
 		assertNotNull(resultRevokedCertificate);
-		assertEquals(resultRevokedCertificate.getPk().getIssuer(), issuerName);
-		assertEquals(resultRevokedCertificate.getPk().getSerialNumber(),
-				serialNumber.toString());
-		assertEquals(resultRevokedCertificate.getCrlNumber(), crlNumber);
+		assertEquals(issuerId, resultRevokedCertificate.getPk().getIssuerId());
+		assertEquals(serialNumber, new BigInteger(resultRevokedCertificate
+				.getPk().getSerialNumber()));
+		assertNotNull(this.entityManager.find(RevokedCertificateEntity.class,
+				new RevokedCertificatePK(issuerId, serialNumber, 1)));
+
+		// not yet visible to the previous generation
+		query.setParameter("generation", 0);
+		assertTrue(query.getResultList().isEmpty());
+
+		// no longer visible once removed
+		resultRevokedCertificate.setRemovedGeneration(2);
+		refresh();
+		query.setParameter("generation", 2);
+		assertTrue(query.getResultList().isEmpty());
+		query.setParameter("generation", 1);
+		assertEquals(1, query.getResultList().size());
 
 		refresh();
 
 		Query deleteQuery = this.entityManager
-				.createNamedQuery(RevokedCertificateEntity.DELETE_WHERE_ISSUER_OLDER_CRL_NUMBER);
-		deleteQuery.setParameter("issuer", issuerName);
-		deleteQuery.setParameter("crlNumber", crlNumber);
+				.createNamedQuery(RevokedCertificateEntity.DELETE_WHERE_ISSUER);
+		deleteQuery.setParameter("issuerId", issuerId + 1);
 		int zeroDeleteResult = deleteQuery.executeUpdate();
 		assertEquals(0, zeroDeleteResult);
 
 		refresh();
 
-		deleteQuery.setParameter("crlNumber",
-				crlNumber.add(new BigInteger("1")));
+		deleteQuery.setParameter("issuerId", issuerId);
 		int deleteResult = deleteQuery.executeUpdate();
 		assertEquals(1, deleteResult);
 	}
+
+	@Test
+	public void testIssuerIdAllocation() throws Exception {
+		// operate
+		IssuerIdEntity issuerId1 = new IssuerIdEntity("CN=Test CA 1");
+		this.entityManager.persist(issuerId1);
+		IssuerIdEntity issuerId2 = new IssuerIdEntity("CN=Test CA 2");
+		this.entityManager.persist(issuerId2);
+
+		refresh();
+
+		// verify
+		assertTrue(issuerId1.getId() > 0);
+		assertTrue(issuerId2.getId() > issuerId1.getId());
+		assertEquals("CN=Test CA 2", this.entityManager.find(
+				IssuerIdEntity.class, issuerId2.getId()).getCaName());
+	}
 }
@@ -0,0 +1,58 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service;
+
+/**
+ * Types of the cached entities for which invalidation events are published to
+ * all nodes of a cluster.
+ * 
+ * @author Frank Cornelis
+ * @see NotificationService#notifyInvalidation(CacheEntityType, String, long)
+ */
+public enum CacheEntityType {
+
+	/**
+	 * Configuration of a trust domain, keyed by trust domain name. A
+	 * <code>null</code> key covers all (virtual) trust domains.
+	 */
+	TRUST_DOMAIN,
+
+	/**
+	 * Revocation index of a CA, keyed by CA name and versioned by the
+	 * published CRL cache generation.
+	 */
+	REVOCATION_INDEX,
+
+	/**
+	 * Revoked certificates of a CA listed on the indirect CRL of another CA,
+	 * keyed by the name of the CA that issued the revoked certificates. Not
+	 * versioned.
+	 */
+	FOREIGN_REVOCATIONS,
+
+	/**
+	 * Certificate authority that is no longer cached, keyed by CA name.
+	 */
+	CERTIFICATE_AUTHORITY,
+
+	/**
+	 * Network configuration used for the outbound fetches. Has no key.
+	 */
+	NETWORK_CONFIG
+}
@@ -48,8 +48,17 @@ public interface ConfigurationService {
 
 	/**
 	 * Save the {@link NetworkConfigEntity}.
+	 * 
+	 * @param connectTimeout
+	 *            connect timeout in milliseconds, or <code>null</code> for the
+	 *            default.
+	 * @param readTimeout
+	 *            read timeout in milliseconds, or <code>null</code> for the
+	 *            default.
 	 */
-	void saveNetworkConfig(String proxyHost, int proxyPort, boolean enabled);
+	void saveNetworkConfig(String proxyHost, int proxyPort,
+			Integer connectTimeout, Integer readTimeout, boolean enabled)
+			throws InvalidTimeoutException;
 
 	/**
 	 * Returns the {@link ClockDriftConfigEntity}.
@@ -37,7 +37,35 @@ public interface NotificationService {
 	void notifyHarvester(String issuerName, String crlFile, boolean update)
 			throws JMSException;
 
+	/**
+	 * Notifies the harvester of a downloaded CRL. The HTTP validators of the
+	 * download are recorded once the CRL has been harvested, for conditional
+	 * requests on the next refresh.
+	 */
+	void notifyHarvester(String issuerName, String crlFile, boolean update,
+			String eTag, String lastModified) throws JMSException;
+
 	void notifyColdStart(String crlUrl, String certUrl) throws JMSException;
 
 	void notifyRemoveCA(String issuerName) throws JMSException;
+
+	/**
+	 * Notifies the harvester to delete the CRL cache entries of the specified
+	 * CA that were removed in the specified generation or before. Within a
+	 * transaction the cleanup only starts after commit.
+	 */
+	void notifyCleanup(String issuerName, int generation) throws JMSException;
+
+	/**
+	 * Publishes an invalidation event to all nodes, the current node not
+	 * included. Within a transaction the event is only delivered after
+	 * commit.
+	 * 
+	 * @param key
+	 *            the name of the affected entity.
+	 * @param version
+	 *            the version of the entity after the change.
+	 */
+	void notifyInvalidation(CacheEntityType entityType, String key,
+			long version) throws JMSException;
 }
@@ -71,7 +71,9 @@ public interface SchedulingService {
 	/**
 	 * Cancel running {@link Timer}'s for the specified timer info. This is or
 	 * the {@link TrustPointEntity}'s name, or
-	 * {@link TrustServiceConstants#CLOCK_DRIFT_TIMER}
+	 * {@link TrustServiceConstants#CLOCK_DRIFT_TIMER}, or
+	 * {@link TrustServiceConstants#CRL_REFRESH_TIMER_PREFIX} followed by the
+	 * {@link CertificateAuthorityEntity}'s name
 	 * 
 	 * @param timerInfo
 	 */
@@ -93,4 +95,13 @@ public interface SchedulingService {
 	 * @throws JMSException
 	 */
 	void refreshCA(CertificateAuthorityEntity ca) throws JMSException;
+
+	/**
+	 * Schedules the next refresh of the revocation cache of the specified
+	 * {@link CertificateAuthorityEntity} ahead of the next update of its
+	 * cached CRL, replacing any refresh scheduled before.
+	 * 
+	 * @param ca
+	 */
+	void scheduleRefresh(CertificateAuthorityEntity ca);
 }
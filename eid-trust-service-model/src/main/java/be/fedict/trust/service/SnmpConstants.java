@@ -39,5 +39,39 @@ public abstract class SnmpConstants {
 	public static final String CACHE_HIT_PERCENTAGE = SNMP_OID_ROOT + "4.0";
 	public static final String CRL_DOWNLOAD_FAILURES = SNMP_OID_ROOT + "5.0";
 	public static final String OCSP_FAILURES = SNMP_OID_ROOT + "6.0";
+	public static final String BLOOM_FILTER_MEMORY = SNMP_OID_ROOT + "7.0";
+	public static final String BLOOM_FILTER_FPP = SNMP_OID_ROOT + "8.0";
+	public static final String BLOOM_FILTER_NEGATIVES = SNMP_OID_ROOT + "9.0";
+	public static final String BLOOM_FILTER_FALSE_POSITIVES = SNMP_OID_ROOT
+			+ "10.0";
+	public static final String RESULT_CACHE_HITS = SNMP_OID_ROOT + "11.0";
+	public static final String RESULT_CACHE_MISSES = SNMP_OID_ROOT + "12.0";
+	public static final String RESULT_CACHE_EVICTIONS = SNMP_OID_ROOT + "13.0";
+	public static final String INGESTED_ENTRIES = SNMP_OID_ROOT + "14.0";
+	public static final String INGESTION_RATE = SNMP_OID_ROOT + "15.0";
+	public static final String WRITE_RATE = SNMP_OID_ROOT + "16.0";
+	public static final String HTTP_LATENCY = SNMP_OID_ROOT + "17.0";
+	public static final String HTTP_POOL_USAGE = SNMP_OID_ROOT + "18.0";
+
+	/**
+	 * Returns the per CA variant of the specified counter OID. The ".0"
+	 * instance holds the aggregate value, the CA instances are identified by
+	 * the issuer id of the CA.
+	 */
+	public static String getCertificateAuthorityOid(String oid, int issuerId) {
+		return getInstanceOid(oid, issuerId);
+	}
+
+	/**
+	 * Returns the per host variant of the specified counter OID, identified
+	 * by a positive host number.
+	 */
+	public static String getHostOid(String oid, int hostId) {
+		return getInstanceOid(oid, hostId);
+	}
+
+	private static String getInstanceOid(String oid, int id) {
+		return oid.substring(0, oid.lastIndexOf('.') + 1) + id;
+	}
 
 }
@@ -98,6 +98,15 @@ public interface TrustDomainService {
 	 */
 	void save(TrustDomainEntity trustDomain);
 
+	/**
+	 * Save the changes to the specified {@link VirtualTrustDomainEntity}
+	 * 
+	 * @param virtualTrustDomain
+	 * @throws VirtualTrustDomainNotFoundException
+	 */
+	VirtualTrustDomainEntity save(VirtualTrustDomainEntity virtualTrustDomain)
+			throws VirtualTrustDomainNotFoundException;
+
 	/**
 	 * Save the changes to the specified {@link TrustPointEntity}
 	 * 
@@ -65,6 +65,28 @@ public interface TrustService {
 			List<X509Certificate> certificateChain, boolean returnRevocationData)
 			throws TrustDomainNotFoundException;
 
+	/**
+	 * Checks whether the given certificate chains are valid. The trust domain
+	 * is resolved only once for the whole batch and the certificate chains are
+	 * validated concurrently, a bounded number at a time. A certificate chain
+	 * that cannot be validated gets an error {@link ValidationResult}, without
+	 * affecting the other certificate chains.
+	 * 
+	 * @param trustDomain
+	 *            optional, can be null. If so default trust domain is taken.
+	 * @param certificateChains
+	 *            cert. chains to validate
+	 * @param returnRevocationData
+	 *            if true, used revocation data will be filled in in the
+	 *            {@link ValidationResult}'s and no caching will be used.
+	 * @return validation results, in the order of the certificate chains
+	 * @throws TrustDomainNotFoundException
+	 *             specified trust domain not found
+	 */
+	List<ValidationResult> validateBatch(String trustDomain,
+			List<List<X509Certificate>> certificateChains,
+			boolean returnRevocationData) throws TrustDomainNotFoundException;
+
 	/**
 	 * Checks whether the given certificate chain was valid at the specified
 	 * {@link Date}, using the specified revocation data.
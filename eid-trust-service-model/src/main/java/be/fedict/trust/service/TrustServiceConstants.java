@@ -28,6 +28,7 @@ public abstract class TrustServiceConstants {
 	public static final String TRUST_JNDI_CONTEXT = "be/fedict/eid/trust/";
 
 	public static final String CLOCK_DRIFT_TIMER = "clock-drift-timer";
+	public static final String CRL_REFRESH_TIMER_PREFIX = "crl-refresh-timer:";
 
 	public static final String WS_SECURITY_CONFIG = "ws-security-config";
 	public static final String NETWORK_CONFIG = "network-config";
@@ -39,4 +40,44 @@ public abstract class TrustServiceConstants {
 	public static final String DEFAULT_CRON_EXPRESSION = "0 0 0 * * *";
 
 	public static final String INFO_MESSAGE_KEY = "info";
+
+	public static final String VERIFIED_CA_LINK_CACHE_SIZE_PROPERTY = "be.fedict.trust.verifiedCALinkCacheSize";
+	public static final int VERIFIED_CA_LINK_CACHE_SIZE = 1000;
+	public static final String VERIFIED_LEAF_LINK_CACHE_SIZE_PROPERTY = "be.fedict.trust.verifiedLeafLinkCacheSize";
+	public static final int VERIFIED_LEAF_LINK_CACHE_SIZE = 100000;
+
+	public static final String VALIDATION_RESULT_CACHE_SIZE_PROPERTY = "be.fedict.trust.validationResultCacheSize";
+	public static final int VALIDATION_RESULT_CACHE_SIZE = 0;
+	public static final String VALIDATION_RESULT_CACHE_MAX_TTL_PROPERTY = "be.fedict.trust.validationResultCacheMaxTTL";
+	public static final int VALIDATION_RESULT_CACHE_MAX_TTL = 5 * 60;
+
+	public static final String UNKNOWN_TRUST_DOMAIN_CACHE_SIZE_PROPERTY = "be.fedict.trust.unknownTrustDomainCacheSize";
+	public static final int UNKNOWN_TRUST_DOMAIN_CACHE_SIZE = 1000;
+
+	public static final String BATCH_CONCURRENCY_PROPERTY = "be.fedict.trust.batchConcurrency";
+	public static final int BATCH_CONCURRENCY = 8;
+
+	public static final String CRL_BATCH_SIZE_PROPERTY = "be.fedict.trust.crlBatchSize";
+	public static final int CRL_BATCH_SIZE = 1000;
+
+	public static final String CRL_STORE_DIR_PROPERTY = "be.fedict.trust.crlStoreDir";
+	public static final String CRL_STORE_RETENTION_PROPERTY = "be.fedict.trust.crlStoreRetention";
+	public static final int CRL_STORE_RETENTION = 2;
+
+	public static final String CRL_REFRESH_LEAD_TIME_PROPERTY = "be.fedict.trust.crlRefreshLeadTime";
+	public static final int CRL_REFRESH_LEAD_TIME = 15 * 60;
+	public static final String CRL_REFRESH_JITTER_PROPERTY = "be.fedict.trust.crlRefreshJitter";
+	public static final int CRL_REFRESH_JITTER = 5 * 60;
+	public static final String CRL_REFRESH_MIN_INTERVAL_PROPERTY = "be.fedict.trust.crlRefreshMinInterval";
+	public static final int CRL_REFRESH_MIN_INTERVAL = 5 * 60;
+	public static final String CRL_REFRESH_CONCURRENCY_PROPERTY = "be.fedict.trust.crlRefreshConcurrency";
+	public static final int CRL_REFRESH_CONCURRENCY = 4;
+	public static final int CRL_REFRESH_SLOT = 60;
+
+	public static final String HTTP_MAX_CONNECTIONS_PER_HOST_PROPERTY = "be.fedict.trust.httpMaxConnectionsPerHost";
+	public static final int HTTP_MAX_CONNECTIONS_PER_HOST = 4;
+	public static final String HTTP_MAX_CONNECTIONS_PROPERTY = "be.fedict.trust.httpMaxConnections";
+	public static final int HTTP_MAX_CONNECTIONS = 20;
+	public static final int NETWORK_CONNECT_TIMEOUT = 10 * 1000;
+	public static final int NETWORK_READ_TIMEOUT = 20 * 1000;
 }
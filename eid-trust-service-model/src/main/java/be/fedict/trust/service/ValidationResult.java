@@ -34,12 +34,39 @@ public class ValidationResult {
 
 	private final TrustLinkerResult result;
 	private final RevocationData revocationData;
+	private final String errorMessage;
 
 	public ValidationResult(TrustLinkerResult result,
 			RevocationData revocationData) {
 
 		this.result = result;
 		this.revocationData = revocationData;
+		this.errorMessage = null;
+	}
+
+	/**
+	 * Creates the result of a certificate chain that could not be validated
+	 * at all, e.g. within a batch validation.
+	 */
+	public ValidationResult(String errorMessage) {
+
+		this.result = new TrustLinkerResult(false);
+		this.revocationData = null;
+		this.errorMessage = errorMessage;
+	}
+
+	/**
+	 * Returns whether the certificate chain could not be validated at all. If
+	 * so, the result has no reason.
+	 */
+	public boolean isError() {
+
+		return null != this.errorMessage;
+	}
+
+	public String getErrorMessage() {
+
+		return this.errorMessage;
 	}
 
 	public boolean isValid() {
@@ -0,0 +1,162 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.service.dao.CertificateAuthorityDAO;
+import be.fedict.trust.service.entity.CertificateAuthorityEntity;
+import be.fedict.trust.service.entity.Status;
+
+/**
+ * Applies the invalidation events published by the other nodes of a cluster
+ * to the in-memory caches of this node. Only the affected entries are
+ * refreshed.
+ * <p>
+ * Revocation index events carry the published CRL cache generation. Events
+ * older than the last one applied for the same CA are ignored, so reordered
+ * or duplicate events do not cause needless rebuilds. All other events are
+ * applied unconditionally, as invalidating twice does no harm.
+ * 
+ * @author Frank Cornelis
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class CacheInvalidationBean {
+
+	private static final Log LOG = LogFactory
+			.getLog(CacheInvalidationBean.class);
+
+	/**
+	 * Identifies this node as the origin of published invalidation events.
+	 */
+	public static final String NODE_ID = UUID.randomUUID().toString();
+
+	private final ConcurrentMap<String, Long> revocationIndexVersions = new ConcurrentHashMap<String, Long>();
+
+	@EJB
+	private TrustValidationPlanCacheBean trustValidationPlanCacheBean;
+
+	@EJB
+	private TrustDomainResolverBean trustDomainResolverBean;
+
+	@EJB
+	private RevocationIndexBean revocationIndexBean;
+
+	@EJB
+	private CertificateAuthorityLookupBean certificateAuthorityLookupBean;
+
+	@EJB
+	private CertificateAuthorityDAO certificateAuthorityDAO;
+
+	@EJB
+	private CrlStoreBean crlStoreBean;
+
+	@EJB
+	private CrlRepositoryServiceBean crlRepositoryServiceBean;
+
+	@EJB
+	private HttpTransportBean httpTransportBean;
+
+	public void invalidate(InvalidationMessage invalidationMessage) {
+		String key = invalidationMessage.getKey();
+		switch (invalidationMessage.getEntityType()) {
+		case TRUST_DOMAIN:
+			invalidateTrustDomain(key);
+			break;
+		case REVOCATION_INDEX:
+			invalidateRevocationIndex(key, invalidationMessage.getVersion());
+			break;
+		case FOREIGN_REVOCATIONS:
+			this.revocationIndexBean.refreshForeignRevocations(key);
+			break;
+		case CERTIFICATE_AUTHORITY:
+			invalidateCertificateAuthority(key);
+			break;
+		case NETWORK_CONFIG:
+			invalidateNetworkConfig();
+			break;
+		}
+	}
+
+	private void invalidateTrustDomain(String trustDomainName) {
+		this.trustDomainResolverBean.invalidate();
+		if (null == trustDomainName) {
+			this.trustValidationPlanCacheBean.invalidateAll();
+		} else {
+			this.trustValidationPlanCacheBean.invalidate(trustDomainName);
+		}
+	}
+
+	/**
+	 * Rebuilds the revocation index of the specified CA from the database,
+	 * where the other node just published a new CRL cache generation.
+	 */
+	private void invalidateRevocationIndex(String caName, long version) {
+		Long appliedVersion = this.revocationIndexVersions.get(caName);
+		if (null != appliedVersion && appliedVersion >= version) {
+			LOG.debug("ignoring outdated revocation index event for " + caName
+					+ ": " + version);
+			return;
+		}
+
+		CertificateAuthorityEntity certificateAuthority = this.certificateAuthorityDAO
+				.findCertificateAuthority(caName);
+		if (null == certificateAuthority
+				|| Status.ACTIVE != certificateAuthority.getStatus()
+				|| null == certificateAuthority.getThisUpdate()
+				|| null == certificateAuthority.getNextUpdate()) {
+			this.revocationIndexBean.removeRevocationIndex(caName);
+			this.crlStoreBean.removeSnapshot(caName);
+		} else {
+			RevocationIndex revocationIndex = this.revocationIndexBean
+					.loadRevocationIndex(certificateAuthority,
+							certificateAuthority.getCrlNumber());
+			this.revocationIndexBean.setRevocationIndex(revocationIndex);
+			this.crlStoreBean.writeSnapshot(revocationIndex);
+		}
+		this.revocationIndexVersions.put(caName, version);
+	}
+
+	private void invalidateCertificateAuthority(String caName) {
+		/*
+		 * A CA with the same name can be cached again later on, starting over
+		 * with its generations.
+		 */
+		this.revocationIndexVersions.remove(caName);
+		this.revocationIndexBean.removeRevocationIndex(caName);
+		this.crlStoreBean.removeSnapshot(caName);
+		this.certificateAuthorityLookupBean.invalidate();
+	}
+
+	private void invalidateNetworkConfig() {
+		this.crlRepositoryServiceBean.resetCachedCrlRepository();
+		this.httpTransportBean.reset();
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.PublicKeyTrustLinker;
+import be.fedict.trust.RevocationData;
+import be.fedict.trust.TrustLinker;
+import be.fedict.trust.TrustLinkerResult;
+
+/**
+ * Trust linker that skips the signature verification of the
+ * {@link PublicKeyTrustLinker} for links that have been verified before.
+ * <p>
+ * Only the validity periods depend on the validation date. Hence the cached
+ * outcome is only used when both certificates are valid at the validation
+ * date, otherwise the {@link PublicKeyTrustLinker} reports the failure.
+ *
+ * @author Frank Cornelis
+ */
+public class CachingPublicKeyTrustLinker implements TrustLinker {
+
+	private static final Log LOG = LogFactory
+			.getLog(CachingPublicKeyTrustLinker.class);
+
+	private final PublicKeyTrustLinker publicKeyTrustLinker;
+
+	private final VerifiedLinkCacheBean verifiedLinkCacheBean;
+
+	public CachingPublicKeyTrustLinker(
+			PublicKeyTrustLinker publicKeyTrustLinker,
+			VerifiedLinkCacheBean verifiedLinkCacheBean) {
+		this.publicKeyTrustLinker = publicKeyTrustLinker;
+		this.verifiedLinkCacheBean = verifiedLinkCacheBean;
+	}
+
+	public TrustLinkerResult hasTrustLink(X509Certificate childCertificate,
+			X509Certificate certificate, Date validationDate,
+			RevocationData revocationData) {
+
+		if (isValid(childCertificate, validationDate)
+				&& isValid(certificate, validationDate)) {
+			Boolean verifiedLink = this.verifiedLinkCacheBean
+					.getVerifiedLink(childCertificate, certificate);
+			if (null != verifiedLink) {
+				LOG.debug("verified link: "
+						+ childCertificate.getSubjectX500Principal());
+				if (verifiedLink) {
+					return new TrustLinkerResult(true);
+				}
+				return null;
+			}
+		}
+
+		TrustLinkerResult result = this.publicKeyTrustLinker.hasTrustLink(
+				childCertificate, certificate, validationDate, revocationData);
+		if (null == result) {
+			this.verifiedLinkCacheBean.setVerifiedLink(childCertificate,
+					certificate, false);
+		} else if (result.isValid()) {
+			this.verifiedLinkCacheBean.setVerifiedLink(childCertificate,
+					certificate, true);
+		}
+		return result;
+	}
+
+	private boolean isValid(X509Certificate certificate, Date validationDate) {
+		return !validationDate.before(certificate.getNotBefore())
+				&& !validationDate.after(certificate.getNotAfter());
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import javax.ejb.SessionContext;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.RevocationData;
+import be.fedict.trust.TrustLinker;
+import be.fedict.trust.TrustLinkerResult;
+
+/**
+ * Trust linker that stops the revocation checks of an asynchronous validation
+ * once the caller cancelled it, for example because another member trust
+ * domain of a virtual trust domain already returned a valid result.
+ * <p>
+ * A cancelled link yields no result, which makes the validation fail without
+ * further online OCSP or CRL fetches. The caller discards the result anyway.
+ *
+ * @author Frank Cornelis
+ */
+public class CancellableTrustLinker implements TrustLinker {
+
+	private static final Log LOG = LogFactory
+			.getLog(CancellableTrustLinker.class);
+
+	private final TrustLinker trustLinker;
+
+	private final SessionContext sessionContext;
+
+	/**
+	 * @param sessionContext
+	 *            the session context of the asynchronous invocation that
+	 *            performs the validation.
+	 */
+	public CancellableTrustLinker(TrustLinker trustLinker,
+			SessionContext sessionContext) {
+		this.trustLinker = trustLinker;
+		this.sessionContext = sessionContext;
+	}
+
+	public TrustLinkerResult hasTrustLink(X509Certificate childCertificate,
+			X509Certificate certificate, Date validationDate,
+			RevocationData revocationData) {
+
+		if (this.sessionContext.wasCancelCalled()) {
+			LOG.debug("validation cancelled: "
+					+ childCertificate.getSubjectX500Principal());
+			return null;
+		}
+		return this.trustLinker.hasTrustLink(childCertificate, certificate,
+				validationDate, revocationData);
+	}
+}
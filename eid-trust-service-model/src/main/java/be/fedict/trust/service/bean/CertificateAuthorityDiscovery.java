@@ -0,0 +1,98 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * Pending side effect of the validation on the revocation data cache of a
+ * single CA: the registration of a not yet known CA, the completion of its CRL
+ * URL, and/or triggering the harvester. Requests for the same CA are merged
+ * while queued.
+ *
+ * @author Frank Cornelis
+ * @see CertificateAuthorityDiscoveryQueueBean
+ */
+public class CertificateAuthorityDiscovery {
+
+	private final String caName;
+
+	private final X509Certificate certificate;
+
+	private final String crlUrl;
+
+	private final boolean harvest;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param caName
+	 *            the name of the CA.
+	 * @param certificate
+	 *            the CA certificate, required to register a new CA. Can be
+	 *            <code>null</code>.
+	 * @param crlUrl
+	 *            the CRL URL as found in the certificates issued by the CA.
+	 *            Can be <code>null</code>.
+	 * @param harvest
+	 *            whether the harvester should be triggered for an inactive CA.
+	 */
+	public CertificateAuthorityDiscovery(String caName,
+			X509Certificate certificate, String crlUrl, boolean harvest) {
+		this.caName = caName;
+		this.certificate = certificate;
+		this.crlUrl = crlUrl;
+		this.harvest = harvest;
+	}
+
+	public String getCaName() {
+		return this.caName;
+	}
+
+	public X509Certificate getCertificate() {
+		return this.certificate;
+	}
+
+	public String getCrlUrl() {
+		return this.crlUrl;
+	}
+
+	public boolean isHarvest() {
+		return this.harvest;
+	}
+
+	/**
+	 * Returns the combination of this and the specified request for the same
+	 * CA, or this instance if the specified request adds nothing.
+	 */
+	public CertificateAuthorityDiscovery merge(
+			CertificateAuthorityDiscovery discovery) {
+		X509Certificate mergedCertificate = null != this.certificate ? this.certificate
+				: discovery.certificate;
+		String mergedCrlUrl = null != this.crlUrl ? this.crlUrl
+				: discovery.crlUrl;
+		boolean mergedHarvest = this.harvest || discovery.harvest;
+		if (mergedCertificate == this.certificate
+				&& mergedCrlUrl == this.crlUrl && mergedHarvest == this.harvest) {
+			return this;
+		}
+		return new CertificateAuthorityDiscovery(this.caName,
+				mergedCertificate, mergedCrlUrl, mergedHarvest);
+	}
+}
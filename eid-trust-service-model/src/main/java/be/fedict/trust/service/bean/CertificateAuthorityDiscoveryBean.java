@@ -0,0 +1,137 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.security.cert.X509Certificate;
+
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.jms.JMSException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.service.NotificationService;
+import be.fedict.trust.service.SchedulingService;
+import be.fedict.trust.service.dao.AuditDAO;
+import be.fedict.trust.service.dao.CertificateAuthorityDAO;
+import be.fedict.trust.service.entity.CertificateAuthorityEntity;
+import be.fedict.trust.service.entity.Status;
+import be.fedict.trust.service.exception.InvalidCronExpressionException;
+
+/**
+ * Processes the {@link CertificateAuthorityDiscovery} requests queued by the
+ * {@link CertificateAuthorityDiscoveryQueueBean}.
+ *
+ * @author Frank Cornelis
+ */
+@Stateless
+public class CertificateAuthorityDiscoveryBean {
+
+	private static final Log LOG = LogFactory
+			.getLog(CertificateAuthorityDiscoveryBean.class);
+
+	@EJB
+	private CertificateAuthorityDAO certificateAuthorityDAO;
+
+	@EJB
+	private NotificationService notificationService;
+
+	@EJB
+	private SchedulingService schedulingService;
+
+	@EJB
+	private AuditDAO auditDAO;
+
+	@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+	public void process(CertificateAuthorityDiscovery discovery) {
+		String caName = discovery.getCaName();
+		LOG.debug("process CA discovery: " + caName);
+
+		CertificateAuthorityEntity certificateAuthority = this.certificateAuthorityDAO
+				.findCertificateAuthority(caName);
+		if (null == certificateAuthority) {
+			X509Certificate certificate = discovery.getCertificate();
+			if (null == certificate) {
+				LOG.debug("unknown CA: " + caName);
+				return;
+			}
+			/*
+			 * Lookup Root CA's trust point via parent certificates' CA entity.
+			 */
+			String parentIssuerName = certificate.getIssuerX500Principal()
+					.toString();
+			CertificateAuthorityEntity parentCertificateAuthority = this.certificateAuthorityDAO
+					.findCertificateAuthority(parentIssuerName);
+			if (null == parentCertificateAuthority) {
+				this.auditDAO.logAudit("CA not found for " + parentIssuerName);
+				LOG.error("CA not found for " + parentIssuerName + " ?!");
+				return;
+			}
+
+			// create new CA
+			certificateAuthority = this.certificateAuthorityDAO
+					.addCertificateAuthority(certificate, discovery.getCrlUrl());
+			if (null == certificateAuthority) {
+				return;
+			}
+			certificateAuthority.setTrustPoint(parentCertificateAuthority
+					.getTrustPoint());
+		} else if (null == certificateAuthority.getCrlUrl()
+				&& null != discovery.getCrlUrl()) {
+			certificateAuthority.setCrlUrl(discovery.getCrlUrl());
+		}
+
+		if (discovery.isHarvest()) {
+			harvest(certificateAuthority);
+		}
+	}
+
+	private void harvest(CertificateAuthorityEntity certificateAuthority) {
+		if (!certificateAuthority.getStatus().equals(Status.INACTIVE)
+				&& !certificateAuthority.getStatus().equals(Status.NONE)) {
+			return;
+		}
+		if (null == certificateAuthority.getCrlUrl()) {
+			certificateAuthority.setStatus(Status.NONE);
+			return;
+		}
+		certificateAuthority.setStatus(Status.PROCESSING);
+		try {
+			this.notificationService.notifyDownloader(
+					certificateAuthority.getName(), false);
+			if (null != certificateAuthority.getTrustPoint()
+					&& null == certificateAuthority.getTrustPoint()
+							.getFireDate()) {
+				this.schedulingService.startTimer(certificateAuthority
+						.getTrustPoint());
+			}
+		} catch (JMSException e) {
+			this.auditDAO.logAudit("Failed to notify harvester: "
+					+ e.getMessage());
+			LOG.error(e.getMessage(), e);
+		} catch (InvalidCronExpressionException e) {
+			this.auditDAO.logAudit("Failed to start timer for trust point: "
+					+ certificateAuthority.getTrustPoint().getName());
+			LOG.error(e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.SessionContext;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Asynchronous, coalescing queue of {@link CertificateAuthorityDiscovery}
+ * requests. Keeps all database writes, JMS notifications and timer changes
+ * caused by validations out of the request path.
+ * <p>
+ * At most one request per CA is pending. Requests for a CA that is already
+ * queued are merged into the pending one, so a burst of validations against a
+ * new CA results in a single registration and a single harvester
+ * notification. The queue is drained by a single asynchronous invocation at a
+ * time, each request in a transaction of its own.
+ *
+ * @author Frank Cornelis
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class CertificateAuthorityDiscoveryQueueBean {
+
+	private static final Log LOG = LogFactory
+			.getLog(CertificateAuthorityDiscoveryQueueBean.class);
+
+	private final ConcurrentMap<String, CertificateAuthorityDiscovery> pending = new ConcurrentHashMap<String, CertificateAuthorityDiscovery>();
+
+	private final AtomicBoolean draining = new AtomicBoolean();
+
+	@Resource
+	private SessionContext sessionContext;
+
+	@EJB
+	private CertificateAuthorityDiscoveryBean certificateAuthorityDiscoveryBean;
+
+	/**
+	 * Queues the registration of the CA with the specified certificate.
+	 */
+	public void discover(X509Certificate certificate, String crlUrl) {
+		submit(new CertificateAuthorityDiscovery(certificate
+				.getSubjectX500Principal().toString(), certificate, crlUrl,
+				false));
+	}
+
+	/**
+	 * Queues setting the CRL URL of the specified CA, if not yet set.
+	 */
+	public void updateCrlUrl(String caName, String crlUrl) {
+		submit(new CertificateAuthorityDiscovery(caName, null, crlUrl, false));
+	}
+
+	/**
+	 * Queues triggering the harvester for the specified CA, if not yet active.
+	 */
+	public void harvest(String caName) {
+		submit(new CertificateAuthorityDiscovery(caName, null, null, true));
+	}
+
+	private void submit(CertificateAuthorityDiscovery discovery) {
+		final String caName = discovery.getCaName();
+		while (true) {
+			CertificateAuthorityDiscovery queuedDiscovery = this.pending
+					.putIfAbsent(caName, discovery);
+			if (null == queuedDiscovery) {
+				break;
+			}
+			CertificateAuthorityDiscovery mergedDiscovery = queuedDiscovery
+					.merge(discovery);
+			if (mergedDiscovery == queuedDiscovery
+					|| this.pending.replace(caName, queuedDiscovery,
+							mergedDiscovery)) {
+				LOG.debug("coalesced CA discovery: " + caName);
+				return;
+			}
+		}
+		LOG.debug("queue CA discovery: " + caName);
+		if (this.draining.compareAndSet(false, true)) {
+			try {
+				this.sessionContext.getBusinessObject(
+						CertificateAuthorityDiscoveryQueueBean.class).drain();
+			} catch (RuntimeException e) {
+				this.draining.set(false);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Processes the pending requests until the queue is empty. Only invoked
+	 * via {@link #submit(CertificateAuthorityDiscovery)}.
+	 */
+	@Asynchronous
+	public void drain() {
+		do {
+			for (String caName : this.pending.keySet()) {
+				process(caName);
+			}
+			this.draining.set(false);
+			// requests queued while the flag was still set
+		} while (!this.pending.isEmpty()
+				&& this.draining.compareAndSet(false, true));
+	}
+
+	private void process(String caName) {
+		CertificateAuthorityDiscovery discovery = this.pending.remove(caName);
+		if (null == discovery) {
+			return;
+		}
+		try {
+			this.certificateAuthorityDiscoveryBean.process(discovery);
+		} catch (Exception e) {
+			LOG.error("CA discovery error for " + caName + ": "
+					+ e.getMessage(), e);
+		}
+	}
+}
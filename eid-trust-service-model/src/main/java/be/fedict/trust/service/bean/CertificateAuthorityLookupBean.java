@@ -21,7 +21,6 @@ package be.fedict.trust.service.bean;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.X509Certificate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +38,7 @@ import org.bouncycastle.jce.X509Principal;
 
 import be.fedict.trust.service.dao.CertificateAuthorityDAO;
 import be.fedict.trust.service.entity.CertificateAuthorityEntity;
+import be.fedict.trust.service.entity.DecodedCertificate;
 
 @Singleton
 @ConcurrencyManagement(ConcurrencyManagementType.BEAN)
@@ -50,24 +50,26 @@ public class CertificateAuthorityLookupBean {
 	@EJB
 	private CertificateAuthorityDAO certificateAuthorityDAO;
 
-	private Map<String, String> lookupMap;
+	private volatile Map<String, String> lookupMap;
 
 	public CertificateAuthorityEntity lookup(byte[] caNameHash, byte[] caKeyHash) {
 		String caNameHashKey = Hex.encodeHexString(caNameHash);
+		Map<String, String> currentLookupMap = this.lookupMap;
 		String caName = null;
-		if (null != this.lookupMap) {
-			caName = this.lookupMap.get(caNameHashKey);
+		if (null != currentLookupMap) {
+			caName = currentLookupMap.get(caNameHashKey);
 		}
 		if (null == caName) {
 			try {
-				refreshLookupMap();
+				currentLookupMap = refreshLookupMap();
 			} catch (Exception e) {
 				LOG.error("error refreshing the lookup map: " + e.getMessage(),
 						e);
-				this.lookupMap = new HashMap<String, String>();
+				currentLookupMap = new HashMap<String, String>();
+				this.lookupMap = currentLookupMap;
 			}
+			caName = currentLookupMap.get(caNameHashKey);
 		}
-		caName = this.lookupMap.get(caNameHashKey);
 		if (null == caName) {
 			LOG.warn("unknown CA");
 			return null;
@@ -77,24 +79,34 @@ public class CertificateAuthorityLookupBean {
 		return caEntity;
 	}
 
-	private void refreshLookupMap() throws CertificateEncodingException,
+	/**
+	 * Drops the lookup map, so it gets rebuilt on the next lookup.
+	 */
+	public void invalidate() {
+		LOG.debug("invalidate lookup map");
+		this.lookupMap = null;
+	}
+
+	private Map<String, String> refreshLookupMap() throws CertificateEncodingException,
 			NoSuchAlgorithmException {
 		LOG.debug("refreshing lookup map");
 		List<CertificateAuthorityEntity> activeCertificateAuthorities = this.certificateAuthorityDAO
 				.listActiveCertificateAuthorities();
 		Map<String, String> freshLookupMap = new HashMap<String, String>();
 		for (CertificateAuthorityEntity certificateAuthority : activeCertificateAuthorities) {
-			X509Certificate caCert = certificateAuthority.getCertificate();
+			DecodedCertificate decodedCaCert = certificateAuthority
+					.getDecodedCertificate();
 			X509Principal issuerName = PrincipalUtil
-					.getSubjectX509Principal(caCert);
+					.getSubjectX509Principal(decodedCaCert.getCertificate());
 			byte[] issuerNameHash = getHash(issuerName.getEncoded());
 			String caNameHashKey = Hex.encodeHexString(issuerNameHash);
-			String caName = caCert.getSubjectX500Principal().toString();
+			String caName = decodedCaCert.getSubjectName();
 			freshLookupMap.put(caNameHashKey, caName);
 			LOG.debug("lookup entry: " + caNameHashKey + " = " + caName);
 
 		}
 		this.lookupMap = freshLookupMap; // concurrency is no problem here
+		return freshLookupMap;
 	}
 
 	private byte[] getHash(byte[] data) throws NoSuchAlgorithmException {
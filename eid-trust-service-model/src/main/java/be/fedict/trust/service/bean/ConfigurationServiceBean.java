@@ -24,12 +24,15 @@ import java.util.Locale;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.jms.JMSException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import be.fedict.trust.service.CacheEntityType;
 import be.fedict.trust.service.ConfigurationService;
 import be.fedict.trust.service.KeyStoreUtils;
+import be.fedict.trust.service.NotificationService;
 import be.fedict.trust.service.SchedulingService;
 import be.fedict.trust.service.dao.ConfigurationDAO;
 import be.fedict.trust.service.dao.LocalizationDAO;
@@ -71,6 +74,12 @@ public class ConfigurationServiceBean implements ConfigurationService {
 	@EJB
 	private ServiceIdentityManagerBean serviceIdentityManagerBean;
 
+	@EJB
+	private HttpTransportBean httpTransportBean;
+
+	@EJB
+	private NotificationService notificationService;
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -83,14 +92,34 @@ public class ConfigurationServiceBean implements ConfigurationService {
 	 * {@inheritDoc}
 	 */
 	public void saveNetworkConfig(String proxyHost, int proxyPort,
-			boolean enabled) {
+			Integer connectTimeout, Integer readTimeout, boolean enabled)
+			throws InvalidTimeoutException {
 
 		LOG.debug("save network config");
+
+		// input validation
+		if ((null != connectTimeout && connectTimeout <= 0)
+				|| (null != readTimeout && readTimeout <= 0)) {
+			throw new InvalidTimeoutException();
+		}
+
 		this.configurationDAO.setNetworkConfig(proxyHost, proxyPort);
+		this.configurationDAO.setNetworkConfigTimeouts(connectTimeout,
+				readTimeout);
 		this.configurationDAO.setNetworkConfigEnabled(enabled);
 
-		// reset the CRL cache on new network configuration.
+		// reset the CRL cache and the connection pool on new network
+		// configuration, on all nodes.
 		crlRepositoryServiceBean.resetCachedCrlRepository();
+		httpTransportBean.reset();
+		try {
+			this.notificationService.notifyInvalidation(
+					CacheEntityType.NETWORK_CONFIG, null,
+					System.currentTimeMillis());
+		} catch (JMSException e) {
+			LOG.error("could not publish network config invalidation: "
+					+ e.getMessage(), e);
+		}
 	}
 
 	/**
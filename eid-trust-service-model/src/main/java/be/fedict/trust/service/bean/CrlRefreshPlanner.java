@@ -0,0 +1,156 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Plans the refresh of the cached CRL of a single CA.
+ * <p>
+ * A CRL is refreshed the lead time before its next update, minus a random
+ * jitter so CRLs issued at the same time are not all fetched at the same
+ * instant. Refreshes are never planned sooner than the minimum interval from
+ * now, which paces the retries while a CA has not yet published its next CRL.
+ * The planned refreshes are spread over fixed slots, with at most the
+ * configured number of refreshes per slot, without pushing a refresh past the
+ * next update of its CRL.
+ * <p>
+ * All durations are in milliseconds. Not thread-safe.
+ *
+ * @author Frank Cornelis
+ */
+public class CrlRefreshPlanner {
+
+	private final long leadTime;
+
+	private final long jitter;
+
+	private final long minInterval;
+
+	private final long slot;
+
+	private final int concurrency;
+
+	private final Random random;
+
+	public CrlRefreshPlanner(long leadTime, long jitter, long minInterval,
+			long slot, int concurrency, Random random) {
+		this.leadTime = leadTime;
+		this.jitter = jitter;
+		this.minInterval = minInterval;
+		this.slot = slot;
+		this.concurrency = Math.max(1, concurrency);
+		this.random = random;
+	}
+
+	/**
+	 * Returns the refresh date for a CRL with the specified validity, or
+	 * <code>null</code> if the CRL has no next update.
+	 */
+	public Date plan(Date thisUpdate, Date nextUpdate, Date now) {
+		if (null == nextUpdate) {
+			return null;
+		}
+		long lead = this.leadTime;
+		long jitterRange = this.jitter;
+		if (null != thisUpdate) {
+			// short lived CRLs, e.g. delta CRLs, are not refreshed too early
+			long validity = Math.max(0, nextUpdate.getTime()
+					- thisUpdate.getTime());
+			lead = Math.min(lead, validity / 2);
+			jitterRange = Math.min(jitterRange, validity / 4);
+		}
+		long refresh = nextUpdate.getTime() - lead - nextJitter(jitterRange);
+		if (refresh < now.getTime() + this.minInterval) {
+			return planRetry(now);
+		}
+		return new Date(refresh);
+	}
+
+	/**
+	 * Returns the date to retry a refresh that did not yield a newer CRL.
+	 */
+	public Date planRetry(Date now) {
+		return new Date(now.getTime() + this.minInterval
+				+ nextJitter(this.jitter));
+	}
+
+	/**
+	 * Returns a refresh date within the jitter from now.
+	 */
+	public Date planNow(Date now) {
+		return new Date(now.getTime() + nextJitter(this.jitter));
+	}
+
+	/**
+	 * Moves the specified refresh date to a slot that has room next to the
+	 * already scheduled refreshes. Later slots are tried first. A refresh
+	 * planned before the next update of the CRL is never moved past it, but to
+	 * an earlier slot from now on instead. If all those slots are full, the
+	 * planned slot is overfilled.
+	 *
+	 * @param nextUpdate
+	 *            the next update of the CRL. Can be <code>null</code>.
+	 */
+	public Date allocate(Date refresh, Date nextUpdate, Date now,
+			Collection<Date> scheduled) {
+		long time = refresh.getTime();
+		if (null == nextUpdate || time >= nextUpdate.getTime()) {
+			// retries of overdue CRLs have no deadline
+			while (isFull(time, scheduled)) {
+				time += this.slot;
+			}
+			return new Date(time);
+		}
+
+		for (; time < nextUpdate.getTime(); time += this.slot) {
+			if (!isFull(time, scheduled)) {
+				return new Date(time);
+			}
+		}
+		// all slots up to the next update are full, try the earlier ones
+		for (time = refresh.getTime() - this.slot; time >= now.getTime();
+				time -= this.slot) {
+			if (!isFull(time, scheduled)) {
+				return new Date(time);
+			}
+		}
+		return refresh;
+	}
+
+	private boolean isFull(long time, Collection<Date> scheduled) {
+		long slotIndex = time / this.slot;
+		int count = 0;
+		for (Date scheduledRefresh : scheduled) {
+			if (scheduledRefresh.getTime() / this.slot == slotIndex) {
+				count++;
+			}
+		}
+		return count >= this.concurrency;
+	}
+
+	private long nextJitter(long range) {
+		if (range <= 0) {
+			return 0;
+		}
+		return (long) (this.random.nextDouble() * range);
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+package be.fedict.trust.service.bean;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+
+import be.fedict.trust.service.TrustServiceConstants;
+
+/**
+ * Shared {@link CrlRefreshPlanner} of the CRL refresh timers.
+ * <p>
+ * Keeps track of the refresh reserved per CA, so the slots are allocated
+ * under a single lock and concurrent schedulers never overfill a slot.
+ *
+ * @author Frank Cornelis
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class CrlRefreshPlannerBean {
+
+	private final Map<String, Date> refreshes = new HashMap<String, Date>();
+
+	private CrlRefreshPlanner crlRefreshPlanner;
+
+	@PostConstruct
+	public void postConstruct() {
+		long leadTime = Integer.getInteger(
+				TrustServiceConstants.CRL_REFRESH_LEAD_TIME_PROPERTY,
+				TrustServiceConstants.CRL_REFRESH_LEAD_TIME);
+		long jitter = Integer.getInteger(
+				TrustServiceConstants.CRL_REFRESH_JITTER_PROPERTY,
+				TrustServiceConstants.CRL_REFRESH_JITTER);
+		long minInterval = Integer.getInteger(
+				TrustServiceConstants.CRL_REFRESH_MIN_INTERVAL_PROPERTY,
+				TrustServiceConstants.CRL_REFRESH_MIN_INTERVAL);
+		int concurrency = Integer.getInteger(
+				TrustServiceConstants.CRL_REFRESH_CONCURRENCY_PROPERTY,
+				TrustServiceConstants.CRL_REFRESH_CONCURRENCY);
+		this.crlRefreshPlanner = new CrlRefreshPlanner(leadTime * 1000,
+				jitter * 1000, minInterval * 1000,
+				TrustServiceConstants.CRL_REFRESH_SLOT * 1000L, concurrency,
+				new Random());
+	}
+
+	/**
+	 * @see CrlRefreshPlanner#plan(Date, Date, Date)
+	 */
+	public synchronized Date plan(Date thisUpdate, Date nextUpdate, Date now) {
+		return this.crlRefreshPlanner.plan(thisUpdate, nextUpdate, now);
+	}
+
+	/**
+	 * @see CrlRefreshPlanner#planRetry(Date)
+	 */
+	public synchronized Date planRetry(Date now) {
+		return this.crlRefreshPlanner.planRetry(now);
+	}
+
+	/**
+	 * @see CrlRefreshPlanner#planNow(Date)
+	 */
+	public synchronized Date planNow(Date now) {
+		return this.crlRefreshPlanner.planNow(now);
+	}
+
+	/**
+	 * Reserves a slot with room for the refresh of the specified CA, replacing
+	 * its previous reservation.
+	 *
+	 * @param nextUpdate
+	 *            the next update of the cached CRL of the CA. Can be
+	 *            <code>null</code>.
+	 * @return the reserved refresh date.
+	 * @see CrlRefreshPlanner#allocate(Date, Date, Date, java.util.Collection)
+	 */
+	public synchronized Date allocate(String caName, Date refresh,
+			Date nextUpdate) {
+		this.refreshes.remove(caName);
+		Date now = new Date();
+		Iterator<Date> iterator = this.refreshes.values().iterator();
+		while (iterator.hasNext()) {
+			// fired refreshes no longer take a slot
+			if (iterator.next().before(now)) {
+				iterator.remove();
+			}
+		}
+		Date allocated = this.crlRefreshPlanner.allocate(refresh, nextUpdate,
+				now, this.refreshes.values());
+		this.refreshes.put(caName, allocated);
+		return allocated;
+	}
+
+	/**
+	 * Releases the reservation of the specified CA.
+	 */
+	public synchronized void release(String caName) {
+		this.refreshes.remove(caName);
+	}
+}
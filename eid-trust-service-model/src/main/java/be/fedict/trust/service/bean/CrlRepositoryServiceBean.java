@@ -24,6 +24,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import be.fedict.trust.crl.CachedCrlRepository;
+import be.fedict.trust.ocsp.OcspRepository;
 
 /**
  * Singleton Crl Repository cache bean used if no persistent CRL cache is
@@ -38,6 +39,8 @@ public class CrlRepositoryServiceBean {
 
 	private CachedCrlRepository cachedCrlRepository;
 
+	private OcspRepository ocspRepository;
+
 	/**
 	 * Returns the {@link CachedCrlRepository} or <code>null</code> if not yet
 	 * set.
@@ -63,12 +66,35 @@ public class CrlRepositoryServiceBean {
 	}
 
 	/**
-	 * Resets the {@link CachedCrlRepository}.
+	 * Returns the shared {@link OcspRepository} or <code>null</code> if not
+	 * yet set.
+	 */
+	public OcspRepository getOcspRepository() {
+
+		return this.ocspRepository;
+	}
+
+	/**
+	 * Sets the shared {@link OcspRepository}, so not every validation has to
+	 * set up its own.
+	 * 
+	 * @param ocspRepository
+	 *            the OCSP repository
+	 */
+	public void setOcspRepository(OcspRepository ocspRepository) {
+
+		LOG.debug("set OCSP repository");
+		this.ocspRepository = ocspRepository;
+	}
+
+	/**
+	 * Resets the {@link CachedCrlRepository} and the {@link OcspRepository}.
 	 */
 	public void resetCachedCrlRepository() {
 
 		LOG.debug("reset cached CRL repository");
 		this.cachedCrlRepository = null;
+		this.ocspRepository = null;
 	}
 
 }
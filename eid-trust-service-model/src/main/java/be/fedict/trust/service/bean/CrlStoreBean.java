@@ -0,0 +1,313 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.service.TrustServiceConstants;
+
+/**
+ * Local on-disk store of harvested CRLs, surviving restarts and removal of
+ * CAs. Every CA has a directory of its own, named after the hash of the CA
+ * name, holding its CRLs as <code>&lt;CRL number&gt;-&lt;SHA-1&gt;.crl</code>
+ * files. Storing the same CRL twice keeps a single copy. Next to the CRLs, a
+ * snapshot of the {@link RevocationIndex} of the CA is kept.
+ * <p>
+ * Per CA only the CRLs with the highest CRL numbers are retained, by default
+ * 2. The store location and retention can be changed via the
+ * <code>be.fedict.trust.crlStoreDir</code> and
+ * <code>be.fedict.trust.crlStoreRetention</code> system properties.
+ * 
+ * @author Frank Cornelis
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class CrlStoreBean {
+
+	private static final Log LOG = LogFactory.getLog(CrlStoreBean.class);
+
+	private static final String SUFFIX = ".crl";
+
+	private static final String SNAPSHOT_FILE_NAME = "revocation-index.snapshot";
+
+	private static final int RETENTION = Integer.getInteger(
+			TrustServiceConstants.CRL_STORE_RETENTION_PROPERTY,
+			TrustServiceConstants.CRL_STORE_RETENTION);
+
+	private File directory;
+
+	@PostConstruct
+	public void postConstruct() {
+		String directoryName = System
+				.getProperty(TrustServiceConstants.CRL_STORE_DIR_PROPERTY);
+		if (null == directoryName) {
+			String dataDirectoryName = System.getProperty(
+					"jboss.server.data.dir", System
+							.getProperty("java.io.tmpdir"));
+			this.directory = new File(dataDirectoryName, "trust-service-crls");
+		} else {
+			this.directory = new File(directoryName);
+		}
+		this.directory = this.directory.getAbsoluteFile();
+		LOG.debug("CRL store: " + this.directory);
+	}
+
+	/**
+	 * Moves the specified harvested CRL file of the specified CA into the
+	 * store. Files already in the store are left as is.
+	 * 
+	 * @return the stored file, or <code>null</code> if the CRL could not be
+	 *         stored, in which case the file is deleted.
+	 */
+	public File store(String caName, BigInteger crlNumber, File crlFile) {
+		if (isStored(crlFile)) {
+			return crlFile;
+		}
+		File caDirectory = getDirectory(caName);
+		try {
+			String fileName = (null == crlNumber ? BigInteger.ZERO
+					: crlNumber)
+					+ "-" + digest(crlFile) + SUFFIX;
+			File storedFile = new File(caDirectory, fileName);
+			if (storedFile.exists()) {
+				LOG.debug("CRL already stored: " + storedFile);
+				crlFile.delete();
+			} else {
+				FileUtils.forceMkdir(caDirectory);
+				FileUtils.moveFile(crlFile, storedFile);
+				LOG.debug("stored CRL: " + storedFile);
+			}
+			applyRetention(caDirectory);
+			return storedFile;
+		} catch (IOException e) {
+			LOG.warn("could not store CRL for " + caName + ": "
+					+ e.getMessage(), e);
+			crlFile.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the stored CRL of the specified CA with the highest CRL number
+	 * that is valid at the specified date, or <code>null</code> if none.
+	 * Expired and unreadable CRLs are removed from the store on the way.
+	 */
+	public File findCrl(String caName, Date date) {
+		for (File crlFile : listCrlFiles(getDirectory(caName))) {
+			MappedCrl crl;
+			try {
+				crl = MappedCrl.open(crlFile);
+			} catch (Exception e) {
+				LOG.warn("removing unreadable stored CRL: " + crlFile);
+				crlFile.delete();
+				continue;
+			}
+			if (null == crl.getNextUpdate() || date.after(crl.getNextUpdate())) {
+				LOG.debug("removing expired stored CRL: " + crlFile);
+				crlFile.delete();
+				continue;
+			}
+			if (date.before(crl.getThisUpdate())) {
+				continue;
+			}
+			return crlFile;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether the specified file is part of the store, in which case
+	 * it must not be deleted after harvesting.
+	 */
+	public boolean isStored(File crlFile) {
+		File caDirectory = crlFile.getAbsoluteFile().getParentFile();
+		return null != caDirectory
+				&& this.directory.equals(caDirectory.getParentFile());
+	}
+
+	/**
+	 * Removes the specified file from the store, e.g. after it turned out to
+	 * be invalid.
+	 */
+	public void evict(File crlFile) {
+		if (isStored(crlFile)) {
+			LOG.debug("evicting stored CRL: " + crlFile);
+			crlFile.delete();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the specified {@link RevocationIndex}, replacing
+	 * the previous snapshot of the same CA.
+	 */
+	public void writeSnapshot(RevocationIndex revocationIndex) {
+		File caDirectory = getDirectory(revocationIndex.getCaName());
+		File snapshotFile = new File(caDirectory, SNAPSHOT_FILE_NAME);
+		File tmpFile = new File(caDirectory, SNAPSHOT_FILE_NAME + ".tmp");
+		try {
+			FileUtils.forceMkdir(caDirectory);
+			revocationIndex.writeSnapshot(tmpFile);
+			if (!tmpFile.renameTo(snapshotFile)) {
+				snapshotFile.delete();
+				if (!tmpFile.renameTo(snapshotFile)) {
+					throw new IOException("could not rename " + tmpFile);
+				}
+			}
+			LOG.debug("wrote revocation index snapshot: " + snapshotFile);
+		} catch (IOException e) {
+			LOG.warn("could not write revocation index snapshot for "
+					+ revocationIndex.getCaName() + ": " + e.getMessage(), e);
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Returns the {@link RevocationIndex} snapshot of the specified CA for the
+	 * specified CRL number, or <code>null</code> if none. Unreadable snapshots
+	 * and snapshots of another CRL are removed.
+	 */
+	public RevocationIndex readSnapshot(String caName, BigInteger crlNumber) {
+		File snapshotFile = new File(getDirectory(caName), SNAPSHOT_FILE_NAME);
+		if (!snapshotFile.exists()) {
+			return null;
+		}
+		try {
+			RevocationIndex revocationIndex = RevocationIndex
+					.readSnapshot(snapshotFile);
+			if (!caName.equals(revocationIndex.getCaName())) {
+				throw new IOException("snapshot of other CA: "
+						+ revocationIndex.getCaName());
+			}
+			if (null == revocationIndex.getCrlNumber()
+					|| !revocationIndex.getCrlNumber().equals(crlNumber)) {
+				throw new IOException("snapshot of other CRL: "
+						+ revocationIndex.getCrlNumber());
+			}
+			return revocationIndex;
+		} catch (IOException e) {
+			LOG.warn("removing revocation index snapshot for " + caName + ": "
+					+ e.getMessage());
+			snapshotFile.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Removes the {@link RevocationIndex} snapshot of the specified CA.
+	 */
+	public void removeSnapshot(String caName) {
+		new File(getDirectory(caName), SNAPSHOT_FILE_NAME).delete();
+	}
+
+	private File getDirectory(String caName) {
+		try {
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+			return new File(this.directory, Hex.encodeHexString(messageDigest
+					.digest(caName.getBytes("UTF-8"))));
+		} catch (Exception e) {
+			throw new RuntimeException("CA directory error: " + e.getMessage(),
+					e);
+		}
+	}
+
+	private void applyRetention(File caDirectory) {
+		File[] crlFiles = listCrlFiles(caDirectory);
+		for (int idx = RETENTION; idx < crlFiles.length; idx++) {
+			LOG.debug("retention removes stored CRL: " + crlFiles[idx]);
+			crlFiles[idx].delete();
+		}
+	}
+
+	/**
+	 * Lists the stored CRL files of a CA, highest CRL number first.
+	 */
+	private static File[] listCrlFiles(File caDirectory) {
+		File[] crlFiles = caDirectory.listFiles(new FileFilter() {
+
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(SUFFIX);
+			}
+		});
+		if (null == crlFiles) {
+			return new File[0];
+		}
+		Arrays.sort(crlFiles, new Comparator<File>() {
+
+			public int compare(File file1, File file2) {
+				int result = getCrlNumber(file2).compareTo(
+						getCrlNumber(file1));
+				if (0 != result) {
+					return result;
+				}
+				return Long.valueOf(file2.lastModified()).compareTo(
+						file1.lastModified());
+			}
+		});
+		return crlFiles;
+	}
+
+	private static BigInteger getCrlNumber(File crlFile) {
+		String fileName = crlFile.getName();
+		try {
+			return new BigInteger(fileName.substring(0, fileName.indexOf('-')));
+		} catch (RuntimeException e) {
+			return BigInteger.ZERO;
+		}
+	}
+
+	private static String digest(File file) throws IOException {
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-1 not available", e);
+		}
+		InputStream inputStream = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int size;
+			while (-1 != (size = inputStream.read(buffer))) {
+				messageDigest.update(buffer, 0, size);
+			}
+		} finally {
+			inputStream.close();
+		}
+		return Hex.encodeHexString(messageDigest.digest());
+	}
+}
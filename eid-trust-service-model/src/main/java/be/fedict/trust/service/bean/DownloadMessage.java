@@ -24,6 +24,10 @@ import javax.jms.Session;
 
 /**
  * Download JMS message marshaller/unmarshaller.
+ * <p>
+ * The downloader queue is a HornetQ last-value queue keyed on the CA name, so
+ * only the latest pending download request per CA is kept. First-time
+ * activations are sent with a higher priority than routine refreshes.
  * 
  * @author Frank Cornelis
  * 
@@ -36,6 +40,15 @@ public class DownloadMessage implements JMSMessage {
 
 	private static final String UPDATE_PROPERTY = "update";
 
+	/**
+	 * HornetQ last-value queue property.
+	 */
+	private static final String LAST_VALUE_PROPERTY = "_HQ_LVQ_NAME";
+
+	public static final int ACTIVATION_PRIORITY = 7;
+
+	public static final int UPDATE_PRIORITY = Message.DEFAULT_PRIORITY;
+
 	private String caName;
 
 	private boolean update;
@@ -62,6 +75,18 @@ public class DownloadMessage implements JMSMessage {
 		Message message = session.createMessage();
 		message.setStringProperty(CA_NAME_PROPERTY, this.caName);
 		message.setBooleanProperty(UPDATE_PROPERTY, this.update);
+		message.setStringProperty(LAST_VALUE_PROPERTY, this.caName);
+		message.setStringProperty(GROUP_ID_PROPERTY, this.caName);
 		return message;
 	}
+
+	/**
+	 * Returns the JMS priority of this message.
+	 */
+	public int getPriority() {
+		if (this.update) {
+			return UPDATE_PRIORITY;
+		}
+		return ACTIVATION_PRIORITY;
+	}
 }
@@ -25,7 +25,6 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
@@ -40,21 +39,20 @@ import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
 
-import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.methods.GetMethod;
-import org.apache.commons.httpclient.params.HttpClientParams;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.bouncycastle.openssl.PEMReader;
 
-import be.fedict.trust.NetworkConfig;
 import be.fedict.trust.service.NotificationService;
 import be.fedict.trust.service.SchedulingService;
 import be.fedict.trust.service.SnmpConstants;
 import be.fedict.trust.service.dao.AuditDAO;
 import be.fedict.trust.service.dao.CertificateAuthorityDAO;
-import be.fedict.trust.service.dao.ConfigurationDAO;
 import be.fedict.trust.service.entity.CertificateAuthorityEntity;
 import be.fedict.trust.service.entity.Status;
 import be.fedict.trust.service.entity.TrustPointEntity;
@@ -70,7 +68,6 @@ import be.fedict.trust.service.snmp.SNMPInterceptor;
  */
 @MessageDriven(activationConfig = {
 		@ActivationConfigProperty(propertyName = "destinationType", propertyValue = "javax.jms.Queue"),
-		@ActivationConfigProperty(propertyName = "maxSession", propertyValue = "1"),
 		@ActivationConfigProperty(propertyName = "destination", propertyValue = DownloaderMDB.DOWNLOADER_QUEUE_LOCATION) })
 @Interceptors(SNMPInterceptor.class)
 public class DownloaderMDB implements MessageListener {
@@ -80,11 +77,10 @@ public class DownloaderMDB implements MessageListener {
 	public static final String DOWNLOADER_QUEUE_NAME = "TrustServiceDownloader";
 	public static final String DOWNLOADER_QUEUE_LOCATION = "queue/trust/downloader";
 
-	@EJB
-	private CertificateAuthorityDAO certificateAuthorityDAO;
+	private static final int MAX_RESUMES = 3;
 
 	@EJB
-	private ConfigurationDAO configurationDAO;
+	private CertificateAuthorityDAO certificateAuthorityDAO;
 
 	@SNMP(oid = SnmpConstants.CRL_DOWNLOAD_FAILURES)
 	private Long failures = 0L;
@@ -98,6 +94,12 @@ public class DownloaderMDB implements MessageListener {
 	@EJB
 	private SchedulingService schedulingService;
 
+	@EJB
+	private CrlStoreBean crlStoreBean;
+
+	@EJB
+	private HttpTransportBean httpTransportBean;
+
 	public void onMessage(Message message) {
 		LOG.debug("onMessage");
 		DownloadMessage downloadMessage = null;
@@ -130,7 +132,6 @@ public class DownloaderMDB implements MessageListener {
 		LOG.debug("cold start CRL URL: " + crlUrl);
 		LOG.debug("cold start CA URL: " + certUrl);
 
-		File crlFile = download(crlUrl);
 		File certFile = download(certUrl);
 
 		// parsing
@@ -139,7 +140,6 @@ public class DownloaderMDB implements MessageListener {
 			certificateFactory = CertificateFactory.getInstance("X.509");
 		} catch (CertificateException e) {
 			LOG.debug("certificate factory error: " + e.getMessage(), e);
-			crlFile.delete();
 			certFile.delete();
 			return;
 		}
@@ -155,16 +155,26 @@ public class DownloaderMDB implements MessageListener {
 				certificate = (X509Certificate) pemReader.readObject();
 				pemReader.close();
 			} catch (Exception e2) {
-				retry("error PEM-parsing certificate", e, certFile, crlFile);
+				retry("error PEM-parsing certificate", e, certFile);
 			}
 		}
 		certFile.delete();
 
+		// reuse a still valid CRL from the local CRL store
+		File crlFile = this.crlStoreBean.findCrl(certificate
+				.getSubjectX500Principal().toString(), new Date());
+		if (null == crlFile) {
+			crlFile = download(crlUrl);
+		} else {
+			LOG.debug("using stored CRL: " + crlFile);
+		}
+
 		X509CRL crl = null;
 		try {
 			crl = (X509CRL) certificateFactory.generateCRL(new FileInputStream(
 					crlFile));
 		} catch (Exception e) {
+			this.crlStoreBean.evict(crlFile);
 			retry("error parsing CRL", e, crlFile);
 		}
 
@@ -175,7 +185,7 @@ public class DownloaderMDB implements MessageListener {
 			LOG.error("no correspondence between CRL and CA");
 			LOG.error("CRL issuer: " + crl.getIssuerX500Principal());
 			LOG.debug("CA subject: " + certificate.getSubjectX500Principal());
-			crlFile.delete();
+			deleteCrlFile(crlFile);
 			return;
 		}
 		LOG.debug("CRL matches CA: " + certificate.getSubjectX500Principal());
@@ -186,7 +196,7 @@ public class DownloaderMDB implements MessageListener {
 		if (now.after(notAfter)) {
 			LOG.warn("CA already expired: "
 					+ certificate.getSubjectX500Principal());
-			crlFile.delete();
+			deleteCrlFile(crlFile);
 			return;
 		}
 
@@ -196,7 +206,7 @@ public class DownloaderMDB implements MessageListener {
 		if (null != certificateAuthority) {
 			LOG.debug("CA already in cache: "
 					+ certificate.getSubjectX500Principal());
-			crlFile.delete();
+			deleteCrlFile(crlFile);
 			return;
 		}
 
@@ -209,7 +219,7 @@ public class DownloaderMDB implements MessageListener {
 				.findCertificateAuthority(parentIssuerName);
 		if (null == parentCertificateAuthority) {
 			LOG.error("CA not found for " + parentIssuerName + " ?!");
-			crlFile.delete();
+			deleteCrlFile(crlFile);
 			return;
 		}
 		LOG.debug("parent CA: " + parentCertificateAuthority.getName());
@@ -237,7 +247,7 @@ public class DownloaderMDB implements MessageListener {
 						.getTrustPoint());
 			} catch (InvalidCronExpressionException e) {
 				LOG.error("invalid cron expression");
-				crlFile.delete();
+				deleteCrlFile(crlFile);
 				return;
 			}
 		}
@@ -248,7 +258,7 @@ public class DownloaderMDB implements MessageListener {
 			this.notificationService.notifyHarvester(certificate
 					.getSubjectX500Principal().toString(), crlFilePath, false);
 		} catch (JMSException e) {
-			crlFile.delete();
+			deleteCrlFile(crlFile);
 			throw new RuntimeException(e);
 		}
 	}
@@ -297,69 +307,249 @@ public class DownloaderMDB implements MessageListener {
 			return;
 		}
 
-		File crlFile = download(crlUrl);
+		File crlFile = null;
+		String eTag = null;
+		String lastModified = null;
+		if (Status.ACTIVE != certificateAuthority.getStatus()) {
+			/*
+			 * Nothing cached yet, so a still valid CRL from the local CRL store
+			 * will do. Active caches are refreshed from the network.
+			 */
+			crlFile = this.crlStoreBean.findCrl(caName, new Date());
+		}
+		if (null == crlFile) {
+			Download download;
+			if (Status.ACTIVE == certificateAuthority.getStatus()) {
+				download = downloadUpdate(certificateAuthority);
+			} else {
+				download = download(crlUrl, null, null);
+			}
+			if (null == download) {
+				LOG.debug("CRL not modified for CA: " + caName);
+				this.schedulingService.scheduleRefresh(certificateAuthority);
+				return;
+			}
+			crlFile = download.getFile();
+			eTag = download.getETag();
+			lastModified = download.getLastModified();
+		} else {
+			LOG.debug("using stored CRL: " + crlFile);
+		}
 		String crlFilePath = crlFile.getAbsolutePath();
 
 		try {
 			this.notificationService.notifyHarvester(caName, crlFilePath,
-					update);
+					update, eTag, lastModified);
 		} catch (JMSException e) {
-			crlFile.delete();
+			deleteCrlFile(crlFile);
 			throw new RuntimeException(e);
 		}
 	}
 
 	private File download(String url) {
-		NetworkConfig networkConfig = this.configurationDAO.getNetworkConfig();
-		HttpClient httpClient = new HttpClient();
-		if (null != networkConfig) {
-			httpClient.getHostConfiguration().setProxy(
-					networkConfig.getProxyHost(), networkConfig.getProxyPort());
-		}
-		HttpClientParams httpClientParams = httpClient.getParams();
-		httpClientParams.setParameter("http.socket.timeout", new Integer(
-				1000 * 20));
+		return download(url, null, null).getFile();
+	}
+
+	/**
+	 * Downloads the CRL to refresh the cache of the specified active CA, or
+	 * returns <code>null</code> if not modified. As long as the complete CRL
+	 * did not change, the delta CRL is downloaded instead, if available.
+	 */
+	private Download downloadUpdate(
+			CertificateAuthorityEntity certificateAuthority) {
+		String crlUrl = certificateAuthority.getCrlUrl();
+		String eTag = certificateAuthority.getCrlETag();
+		String lastModified = certificateAuthority.getCrlLastModified();
+		String deltaCrlUrl = certificateAuthority.getDeltaCrlUrl();
+		if (null == deltaCrlUrl
+				|| null == certificateAuthority.getBaseCrlNumber()) {
+			return download(crlUrl, eTag, lastModified);
+		}
+		if (null != eTag || null != lastModified) {
+			Download download = download(crlUrl, eTag, lastModified);
+			if (null != download) {
+				// new complete CRL
+				return download;
+			}
+		}
+		/*
+		 * Without validators a new complete CRL is only noticed by the
+		 * harvester, via the base CRL number of the delta CRL.
+		 */
+		LOG.debug("downloading delta CRL: " + deltaCrlUrl);
+		return download(deltaCrlUrl, null, null);
+	}
+
+	/**
+	 * Downloads the specified URL. Sends a conditional request if HTTP
+	 * validators of a previous download are given, and returns
+	 * <code>null</code> if not modified since. A download interrupted by a
+	 * timeout is resumed via a range request, as long as the server returned a
+	 * validator to make sure the remainder belongs to the same file.
+	 */
+	private Download download(String url, String eTag, String lastModified) {
 		LOG.debug("downloading: " + url);
 		GetMethod getMethod = new GetMethod(url);
-		getMethod.addRequestHeader("User-Agent", "eID Trust Service Client");
+		if (null != eTag) {
+			getMethod.setRequestHeader("If-None-Match", eTag);
+		}
+		if (null != lastModified) {
+			getMethod.setRequestHeader("If-Modified-Since", lastModified);
+		}
 		int statusCode;
 		try {
-			statusCode = httpClient.executeMethod(getMethod);
+			statusCode = this.httpTransportBean.execute(getMethod);
 		} catch (Exception e) {
+			LOG.debug("download error: " + e.getMessage());
+			this.httpTransportBean.release(getMethod);
 			downloadFailed(url);
 			throw new RuntimeException();
 		}
-		if (HttpURLConnection.HTTP_OK != statusCode) {
+		if (HttpStatus.SC_NOT_MODIFIED == statusCode
+				&& (null != eTag || null != lastModified)) {
+			LOG.debug("not modified: " + url);
+			this.httpTransportBean.release(getMethod);
+			return null;
+		}
+		if (HttpStatus.SC_OK != statusCode) {
 			LOG.debug("HTTP status code: " + statusCode);
+			this.httpTransportBean.release(getMethod);
 			downloadFailed(url);
 			throw new RuntimeException();
 		}
+		Download download = new Download(getMethod);
 
-		String downloadFilePath;
 		File downloadFile = null;
 		try {
 			downloadFile = File.createTempFile("trust-service-", ".der");
-			InputStream downloadInputStream = getMethod
-					.getResponseBodyAsStream();
-			OutputStream downloadOutputStream = new FileOutputStream(
-					downloadFile);
-			IOUtils.copy(downloadInputStream, downloadOutputStream);
-			IOUtils.closeQuietly(downloadInputStream);
-			IOUtils.closeQuietly(downloadOutputStream);
-			downloadFilePath = downloadFile.getAbsolutePath();
-			LOG.debug("temp file: " + downloadFilePath);
+			boolean append = false;
+			int resumes = 0;
+			while (true) {
+				try {
+					receive(getMethod, downloadFile, append);
+					break;
+				} catch (IOException e) {
+					getMethod.abort();
+					this.httpTransportBean.release(getMethod);
+					getMethod = null;
+					String ifRange = download.getIfRange();
+					long received = downloadFile.length();
+					if (null == ifRange || 0 == received
+							|| resumes == MAX_RESUMES) {
+						throw e;
+					}
+					resumes++;
+					LOG.debug("resuming download of " + url + " at byte "
+							+ received + ": " + e.getMessage());
+					getMethod = new GetMethod(url);
+					getMethod.setRequestHeader("Range", "bytes=" + received
+							+ "-");
+					getMethod.setRequestHeader("If-Range", ifRange);
+					statusCode = this.httpTransportBean.execute(getMethod);
+					if (HttpStatus.SC_PARTIAL_CONTENT == statusCode) {
+						append = true;
+					} else if (HttpStatus.SC_OK == statusCode) {
+						// changed in the meantime, start over
+						append = false;
+						download = new Download(getMethod);
+					} else {
+						throw new IOException("HTTP status code on resume: "
+								+ statusCode);
+					}
+				}
+			}
+			LOG.debug("temp file: " + downloadFile.getAbsolutePath());
 		} catch (IOException e) {
 			downloadFailed(url);
 			if (null != downloadFile) {
 				downloadFile.delete();
 			}
 			throw new RuntimeException(e);
+		} finally {
+			if (null != getMethod) {
+				this.httpTransportBean.release(getMethod);
+			}
+		}
+		download.setFile(downloadFile);
+		return download;
+	}
+
+	private static void receive(GetMethod getMethod, File downloadFile,
+			boolean append) throws IOException {
+		InputStream downloadInputStream = getMethod.getResponseBodyAsStream();
+		OutputStream downloadOutputStream = new FileOutputStream(downloadFile,
+				append);
+		try {
+			IOUtils.copy(downloadInputStream, downloadOutputStream);
+		} finally {
+			IOUtils.closeQuietly(downloadInputStream);
+			IOUtils.closeQuietly(downloadOutputStream);
+		}
+	}
+
+	/**
+	 * Deletes a downloaded CRL file. Files from the local CRL store are kept.
+	 */
+	private void deleteCrlFile(File crlFile) {
+		if (!this.crlStoreBean.isStored(crlFile)) {
+			crlFile.delete();
 		}
-		return downloadFile;
 	}
 
 	private void downloadFailed(String url) {
 		this.auditDAO.logAudit("Failed to download from: " + url);
 		this.failures++;
 	}
+
+	/**
+	 * Downloaded file together with the HTTP validators returned for it.
+	 */
+	private static class Download {
+
+		private final String eTag;
+
+		private final String lastModified;
+
+		private File file;
+
+		Download(HttpMethod method) {
+			this.eTag = getHeader(method, "ETag");
+			this.lastModified = getHeader(method, "Last-Modified");
+		}
+
+		private static String getHeader(HttpMethod method, String name) {
+			Header header = method.getResponseHeader(name);
+			if (null == header) {
+				return null;
+			}
+			return header.getValue();
+		}
+
+		public File getFile() {
+			return this.file;
+		}
+
+		public void setFile(File file) {
+			this.file = file;
+		}
+
+		public String getETag() {
+			return this.eTag;
+		}
+
+		public String getLastModified() {
+			return this.lastModified;
+		}
+
+		/**
+		 * Returns the validator for a range request, or <code>null</code> if
+		 * none. Weak entity tags are not allowed here.
+		 */
+		public String getIfRange() {
+			if (null != this.eTag && !this.eTag.startsWith("W/")) {
+				return this.eTag;
+			}
+			return this.lastModified;
+		}
+	}
 }
@@ -38,12 +38,20 @@ public class HarvestMessage implements JMSMessage {
 
 	private static final String CRL_FILE_PROPERTY = "crlFile";
 
+	private static final String ETAG_PROPERTY = "eTag";
+
+	private static final String LAST_MODIFIED_PROPERTY = "lastModified";
+
 	private String caName;
 
 	private boolean update;
 
 	private String crlFile;
 
+	private String eTag;
+
+	private String lastModified;
+
 	public String getCaName() {
 		return this.caName;
 	}
@@ -56,16 +64,41 @@ public class HarvestMessage implements JMSMessage {
 		return this.crlFile;
 	}
 
+	/**
+	 * Returns the HTTP entity tag of the downloaded CRL, or <code>null</code>
+	 * if not downloaded or not returned.
+	 */
+	public String getETag() {
+		return this.eTag;
+	}
+
+	/**
+	 * Returns the HTTP last modified date of the downloaded CRL, or
+	 * <code>null</code> if not downloaded or not returned.
+	 */
+	public String getLastModified() {
+		return this.lastModified;
+	}
+
 	public HarvestMessage(String caName, String crlFile, boolean update) {
+		this(caName, crlFile, update, null, null);
+	}
+
+	public HarvestMessage(String caName, String crlFile, boolean update,
+			String eTag, String lastModified) {
 		this.caName = caName;
 		this.crlFile = crlFile;
 		this.update = update;
+		this.eTag = eTag;
+		this.lastModified = lastModified;
 	}
 
 	public HarvestMessage(Message message) throws JMSException {
 		this.caName = message.getStringProperty(CA_NAME_PROPERTY);
 		this.crlFile = message.getStringProperty(CRL_FILE_PROPERTY);
 		this.update = message.getBooleanProperty(UPDATE_PROPERTY);
+		this.eTag = message.getStringProperty(ETAG_PROPERTY);
+		this.lastModified = message.getStringProperty(LAST_MODIFIED_PROPERTY);
 	}
 
 	public Message getJMSMessage(Session session) throws JMSException {
@@ -73,6 +106,14 @@ public class HarvestMessage implements JMSMessage {
 		message.setStringProperty(CA_NAME_PROPERTY, this.caName);
 		message.setStringProperty(CRL_FILE_PROPERTY, this.crlFile);
 		message.setBooleanProperty(UPDATE_PROPERTY, this.update);
+		if (null != this.eTag) {
+			message.setStringProperty(ETAG_PROPERTY, this.eTag);
+		}
+		if (null != this.lastModified) {
+			message.setStringProperty(LAST_MODIFIED_PROPERTY,
+					this.lastModified);
+		}
+		message.setStringProperty(GROUP_ID_PROPERTY, this.caName);
 		return message;
 	}
 }
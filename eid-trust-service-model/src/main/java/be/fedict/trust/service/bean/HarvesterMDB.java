@@ -18,19 +18,13 @@
 
 package be.fedict.trust.service.bean;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.math.BigInteger;
 import java.security.cert.CRLException;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -49,21 +43,17 @@ import javax.security.auth.x500.X500Principal;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.DERInteger;
-import org.bouncycastle.asn1.DEROctetString;
-import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
-import org.bouncycastle.asn1.x509.TBSCertList;
-import org.bouncycastle.asn1.x509.X509Extensions;
-import org.bouncycastle.jce.provider.X509CRLEntryObject;
-import org.bouncycastle.x509.extension.X509ExtensionUtil;
-
-import be.fedict.trust.crl.CrlTrustLinker;
+
+import be.fedict.trust.service.CacheEntityType;
+import be.fedict.trust.service.NotificationService;
+import be.fedict.trust.service.SchedulingService;
 import be.fedict.trust.service.SnmpConstants;
+import be.fedict.trust.service.TrustServiceConstants;
 import be.fedict.trust.service.dao.AuditDAO;
 import be.fedict.trust.service.dao.CertificateAuthorityDAO;
+import be.fedict.trust.service.dao.RevokedCertificateDAO;
 import be.fedict.trust.service.entity.CertificateAuthorityEntity;
+import be.fedict.trust.service.entity.DecodedCertificate;
 import be.fedict.trust.service.entity.RevokedCertificateEntity;
 import be.fedict.trust.service.entity.Status;
 import be.fedict.trust.service.snmp.SNMP;
@@ -71,13 +61,17 @@ import be.fedict.trust.service.snmp.SNMPInterceptor;
 
 /**
  * Harvester Message Driven Bean.
+ * <p>
+ * Different CAs are harvested concurrently, the number of sessions being
+ * configured in the <code>ejb-jar.xml</code> deployment descriptor. Harvest
+ * messages are grouped per CA, so a single CA is never harvested twice at the
+ * same time.
  * 
  * @author Frank Cornelis
  * 
  */
 @MessageDriven(activationConfig = {
 		@ActivationConfigProperty(propertyName = "destinationType", propertyValue = "javax.jms.Queue"),
-		@ActivationConfigProperty(propertyName = "maxSession", propertyValue = "1"),
 		@ActivationConfigProperty(propertyName = "destination", propertyValue = HarvesterMDB.HARVESTER_QUEUE_LOCATION) })
 @Interceptors(SNMPInterceptor.class)
 public class HarvesterMDB implements MessageListener {
@@ -87,14 +81,34 @@ public class HarvesterMDB implements MessageListener {
 	public static final String HARVESTER_QUEUE_NAME = "TrustServiceHarvester";
 	public static final String HARVESTER_QUEUE_LOCATION = "queue/trust/harvester";
 
-	private static final int BATCH_SIZE = 500;
+	private static final int BATCH_SIZE = Integer.getInteger(
+			TrustServiceConstants.CRL_BATCH_SIZE_PROPERTY,
+			TrustServiceConstants.CRL_BATCH_SIZE);
 
 	@EJB
 	private CertificateAuthorityDAO certificateAuthorityDAO;
 
+	@EJB
+	private RevokedCertificateDAO revokedCertificateDAO;
+
 	@EJB
 	private AuditDAO auditDAO;
 
+	@EJB
+	private RevocationIndexBean revocationIndexBean;
+
+	@EJB
+	private RevocationCleanupBean revocationCleanupBean;
+
+	@EJB
+	private CrlStoreBean crlStoreBean;
+
+	@EJB
+	private NotificationService notificationService;
+
+	@EJB
+	private SchedulingService schedulingService;
+
 	@SNMP(oid = SnmpConstants.CRL_DOWNLOAD_FAILURES)
 	private Long failures = 0L;
 
@@ -108,6 +122,7 @@ public class HarvesterMDB implements MessageListener {
 		LOG.debug("onMessage");
 		HarvestMessage harvestMessage = null;
 		RemoveCAMessage removeCAMessage = null;
+		CleanupMessage cleanupMessage = null;
 		try {
 			String messageType = message
 					.getStringProperty(JMSMessage.MESSAGE_TYPE_PROPERTY);
@@ -116,6 +131,8 @@ public class HarvesterMDB implements MessageListener {
 			} else if (messageType
 					.equals(RemoveCAMessage.class.getSimpleName())) {
 				removeCAMessage = new RemoveCAMessage(message);
+			} else if (messageType.equals(CleanupMessage.class.getSimpleName())) {
+				cleanupMessage = new CleanupMessage(message);
 			}
 		} catch (JMSException e) {
 			LOG.error("JMS error: " + e.getMessage(), e);
@@ -123,6 +140,23 @@ public class HarvesterMDB implements MessageListener {
 		}
 		processHarvestMessage(harvestMessage);
 		processRemoveCAMessage(removeCAMessage);
+		processCleanupMessage(cleanupMessage);
+	}
+
+	private void processCleanupMessage(CleanupMessage cleanupMessage) {
+		if (null == cleanupMessage) {
+			return;
+		}
+		String issuerName = cleanupMessage.getCaName();
+		CertificateAuthorityEntity certificateAuthority = this.certificateAuthorityDAO
+				.findCertificateAuthority(issuerName);
+		if (null == certificateAuthority) {
+			LOG.debug("CA already removed: " + issuerName);
+			return;
+		}
+		this.revocationCleanupBean.cleanup(
+				certificateAuthority.getIssuerId(),
+				cleanupMessage.getGeneration());
 	}
 
 	private void processRemoveCAMessage(RemoveCAMessage removeCAMessage) {
@@ -140,8 +174,11 @@ public class HarvesterMDB implements MessageListener {
 		int removeCount = this.certificateAuthorityDAO
 				.removeRevokedCertificates(issuerName);
 		LOG.debug("number of removed CRL cache entries: " + removeCount);
+		this.revocationIndexBean.removeRevocationIndex(issuerName);
 		this.certificateAuthorityDAO
 				.removeCertificateAuthority(certificateAuthority);
+		notifyInvalidation(CacheEntityType.CERTIFICATE_AUTHORITY, issuerName,
+				certificateAuthority.getGeneration());
 	}
 
 	private void processHarvestMessage(HarvestMessage harvestMessage) {
@@ -173,44 +210,41 @@ public class HarvesterMDB implements MessageListener {
 
 		Date validationDate = new Date();
 
-		X509Certificate issuerCertificate = certificateAuthority
+		DecodedCertificate decodedIssuerCertificate = certificateAuthority
+				.getDecodedCertificate();
+		X509Certificate issuerCertificate = decodedIssuerCertificate
 				.getCertificate();
 
-		Date notAfter = issuerCertificate.getNotAfter();
-		if (validationDate.after(notAfter)) {
+		if (decodedIssuerCertificate.isExpired(validationDate)) {
 			LOG.info("will not update CRL cache for expired CA: "
-					+ issuerCertificate.getSubjectX500Principal());
+					+ decodedIssuerCertificate.getSubjectName());
 			deleteCrlFile(crlFile);
 			return;
 		}
 
-		FileInputStream crlInputStream;
+		MappedCrl crl;
 		try {
-			crlInputStream = new FileInputStream(crlFile);
+			crl = MappedCrl.open(crlFile);
 		} catch (FileNotFoundException e) {
 			LOG.error("CRL file does not exist: " + crlFilePath);
 			return;
-		}
-		X509CRL crl;
-		try {
-			CertificateFactory certificateFactory = CertificateFactory
-					.getInstance("X.509", "BC");
-			crl = (X509CRL) certificateFactory.generateCRL(crlInputStream);
 		} catch (Exception e) {
-			LOG.error("BC error: " + e.getMessage(), e);
+			LOG.error("CRL parsing error: " + e.getMessage(), e);
+			this.crlStoreBean.evict(crlFile);
 			deleteCrlFile(crlFile);
 			return;
 		}
 
 		LOG.debug("checking integrity CRL...");
-		boolean crlValid = CrlTrustLinker.checkCrlIntegrity(crl,
-				issuerCertificate, validationDate);
+		boolean crlValid = crl.checkIntegrity(issuerCertificate,
+				validationDate);
 		if (!crlValid) {
 			this.auditDAO.logAudit("Invalid CRL for CA=" + caName);
+			this.crlStoreBean.evict(crlFile);
 			deleteCrlFile(crlFile);
 			return;
 		}
-		BigInteger crlNumber = getCrlNumber(crl);
+		BigInteger crlNumber = crl.getCrlNumber();
 		LOG.debug("CRL number: " + crlNumber);
 
 		BigInteger currentCrlNumber = this.certificateAuthorityDAO
@@ -218,176 +252,507 @@ public class HarvesterMDB implements MessageListener {
 		if (null != currentCrlNumber) {
 			LOG.debug("CRL number in database: " + currentCrlNumber);
 		}
+
+		boolean deltaCrl = null != crl.getBaseCrlNumber();
+		if (deltaCrl) {
+			LOG.debug("delta CRL on base CRL number: "
+					+ crl.getBaseCrlNumber());
+			BigInteger baseCrlNumber = certificateAuthority.getBaseCrlNumber();
+			if (Status.ACTIVE != certificateAuthority.getStatus()
+					|| null == baseCrlNumber) {
+				this.auditDAO.logAudit("Delta CRL without cached complete CRL"
+						+ " for CA=" + caName);
+				deleteCrlFile(crlFile);
+				return;
+			}
+			if (null == crlNumber
+					|| crl.getBaseCrlNumber().compareTo(baseCrlNumber) > 0) {
+				/*
+				 * The CA issued a new complete CRL since, the delta no longer
+				 * applies to the cached one.
+				 */
+				LOG.debug("base CRL rolled over for CA: " + caName);
+				certificateAuthority.setBaseCrlNumber(null);
+				deleteCrlFile(crlFile);
+				try {
+					this.notificationService.notifyDownloader(caName, true);
+				} catch (JMSException e) {
+					throw new RuntimeException(e);
+				}
+				return;
+			}
+		}
 		if (null != currentCrlNumber
 				&& currentCrlNumber.compareTo(crlNumber) >= 0
 				&& certificateAuthority.getStatus() == Status.ACTIVE) {
 			// current CRL cache is higher or equal, no update needed
 			LOG.debug("current CA cache is new enough.");
-			deleteCrlFile(crlFile);
+			if (deltaCrl) {
+				deleteCrlFile(crlFile);
+			} else {
+				this.crlStoreBean.store(caName, crlNumber, crlFile);
+			}
+			if (null != harvestMessage.getETag()
+					|| null != harvestMessage.getLastModified()) {
+				// same CRL as cached, so next time a conditional request will do
+				certificateAuthority.setCrlETag(harvestMessage.getETag());
+				certificateAuthority.setCrlLastModified(harvestMessage
+						.getLastModified());
+			}
+			if (null == this.revocationIndexBean.getCrlRevocationIndex(caName)) {
+				/*
+				 * Probably a restart, rebuild the index from the database.
+				 */
+				loadRevocationIndex(certificateAuthority, currentCrlNumber);
+			}
+			this.schedulingService.scheduleRefresh(certificateAuthority);
 			return;
 		}
 
-		List<RevokedCertificateEntity> revokedCertificateEntities = this.certificateAuthorityDAO
-				.getRevokedCertificates(caName);
-		LOG.debug("number of revoked certificates in database: "
-				+ revokedCertificateEntities.size());
-		Map<String, RevokedCertificateEntity> revokedCertificatesMap = new HashMap<String, RevokedCertificateEntity>();
-		for (RevokedCertificateEntity revokedCertificateEntity : revokedCertificateEntities) {
-			String serialNumber = revokedCertificateEntity.getPk()
-					.getSerialNumber();
-			revokedCertificatesMap.put(serialNumber, revokedCertificateEntity);
+		/*
+		 * Diff against the index of the previous CRL, only falling back to the
+		 * database if the in-memory index is missing or out of sync.
+		 */
+		RevocationIndex previousIndex = this.revocationIndexBean
+				.getCrlRevocationIndex(caName);
+		if (null == previousIndex
+				|| !isSameCrlNumber(currentCrlNumber, previousIndex
+						.getCrlNumber())) {
+			previousIndex = this.revocationIndexBean.loadRevocationIndex(
+					certificateAuthority, currentCrlNumber);
 		}
+		LOG.debug("number of revoked certificates in cache: "
+				+ previousIndex.size());
+		RevocationDelta revocationDelta = new RevocationDelta(previousIndex);
 
 		LOG.debug("processing CRL... " + caName);
-		boolean isIndirect;
-		Enumeration revokedCertificatesEnum;
-		try {
-			isIndirect = isIndirectCRL(crl);
-			revokedCertificatesEnum = getRevokedCertificatesEnum(crl);
-		} catch (Exception e) {
-			this.auditDAO.logAudit("Failed to parse CRL for CA=" + caName);
-			this.failures++;
-			throw new RuntimeException(e);
+		X500Principal crlIssuer = crl.getIssuer();
+		int issuerId = certificateAuthority.getIssuerId();
+		Map<X500Principal, Integer> foreignIssuerIds = new HashMap<X500Principal, Integer>();
+		Set<String> foreignCaNames = new HashSet<String>();
+		RevocationIndex.Builder revocationIndexBuilder = null;
+		RevocationIndex.Builder unrevokedIndexBuilder = null;
+		if (deltaCrl) {
+			/*
+			 * The entries of a delta CRL are collected first, to form the
+			 * complete CRL on top of its base CRL.
+			 */
+			Date nextUpdate = crl.getNextUpdate();
+			revocationIndexBuilder = new RevocationIndex.Builder(caName,
+					crlNumber, crl.getThisUpdate(), null == nextUpdate ? new Date(
+							0) : nextUpdate);
+			unrevokedIndexBuilder = new RevocationIndex.Builder(caName,
+					crlNumber, crl.getThisUpdate(), crl.getThisUpdate());
+		} else if (null != crl.getNextUpdate()) {
+			revocationIndexBuilder = new RevocationIndex.Builder(caName,
+					crlNumber, crl.getThisUpdate(), crl.getNextUpdate());
 		}
 
+		/*
+		 * The new CRL is staged as the next generation, while validations keep
+		 * using the published one.
+		 */
+		int publishedGeneration = certificateAuthority.getGeneration();
+		int generation = publishedGeneration + 1;
+		this.revokedCertificateDAO.discardRevokedCertificates(issuerId,
+				publishedGeneration);
+
+		long ingestStart = System.currentTimeMillis();
 		int entries = 0;
-		if (revokedCertificatesEnum.hasMoreElements()) {
-			/*
-			 * Split up persisting the crl entries to avoid memory issues.
-			 */
-			Set<X509CRLEntry> revokedCertsBatch = new HashSet<X509CRLEntry>();
-			X500Principal previousCertificateIssuer = crl
-					.getIssuerX500Principal();
-			int added = 0;
-			while (revokedCertificatesEnum.hasMoreElements()) {
-
-				TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry) revokedCertificatesEnum
-						.nextElement();
-				X509CRLEntryObject revokedCertificate = new X509CRLEntryObject(
-						entry, isIndirect, previousCertificateIssuer);
-				previousCertificateIssuer = revokedCertificate
+		BatchWriter batchWriter = new BatchWriter();
+		MappedCrl.EntryReader entryReader = crl.getEntryReader();
+		/*
+		 * Split up persisting the crl entries to avoid memory issues.
+		 */
+		List<RevokedCertificateEntity> addedBatch = new ArrayList<RevokedCertificateEntity>(
+				BATCH_SIZE);
+		List<BigInteger> retiredBatch = new ArrayList<BigInteger>(BATCH_SIZE);
+		List<RevokedCertificateEntity> foreignBatch = new ArrayList<RevokedCertificateEntity>(
+				BATCH_SIZE);
+		try {
+			while (entryReader.next()) {
+				X500Principal certificateIssuer = entryReader
 						.getCertificateIssuer();
-
-				revokedCertsBatch.add(revokedCertificate);
-				added++;
-				if (added == BATCH_SIZE) {
+				entries++;
+				boolean foreign = null != certificateIssuer
+						&& !crlIssuer.equals(certificateIssuer);
+				if (entryReader.isRemoveFromCrl()) {
+					/*
+					 * No longer revoked according to the delta CRL.
+					 */
+					if (!foreign && deltaCrl) {
+						unrevokedIndexBuilder.add(entryReader
+								.getEncodedSerialNumber(), entryReader
+								.getEncodedSerialNumberLength(), entryReader
+								.getRevocationTime());
+					}
+				} else if (foreign) {
 					/*
-					 * Persist batch
+					 * Entries of other issuers are not part of the CA index,
+					 * nor of its generations.
 					 */
-					this.certificateAuthorityDAO.updateRevokedCertificates(
-							revokedCertsBatch, crlNumber,
-							crl.getIssuerX500Principal(),
-							revokedCertificatesMap);
-					entries += revokedCertsBatch.size();
-					revokedCertsBatch.clear();
-					added = 0;
+					Integer foreignIssuerId = getIssuerId(certificateIssuer,
+							foreignIssuerIds);
+					if (null != foreignIssuerId) {
+						foreignCaNames.add(certificateIssuer.toString());
+						foreignBatch.add(new RevokedCertificateEntity(
+								foreignIssuerId, entryReader.getSerialNumber(),
+								entryReader.getRevocationDate(), 0));
+					}
+				} else if (deltaCrl) {
+					revocationIndexBuilder.add(entryReader
+							.getEncodedSerialNumber(), entryReader
+							.getEncodedSerialNumberLength(), entryReader
+							.getRevocationTime());
+				} else {
+					/*
+					 * Unchanged entries, the bulk of a CRL, are compared and
+					 * indexed on the encoded serial number, without
+					 * allocations.
+					 */
+					byte[] key = entryReader.getEncodedSerialNumber();
+					int keyLength = entryReader.getEncodedSerialNumberLength();
+					long revocationTime = entryReader.getRevocationTime();
+					RevocationDelta.Change change = revocationDelta.compare(
+							key, keyLength, revocationTime);
+					if (RevocationDelta.Change.DUPLICATE == change) {
+						LOG.warn("duplicate CRL entry ignored for CA "
+								+ caName + ": "
+								+ entryReader.getSerialNumber());
+						continue;
+					}
+					if (null != revocationIndexBuilder) {
+						revocationIndexBuilder.add(key, keyLength,
+								revocationTime);
+					}
+					if (RevocationDelta.Change.NONE != change) {
+						stageChange(change, entryReader.getSerialNumber(),
+								entryReader.getRevocationDate(), issuerId,
+								generation, addedBatch, retiredBatch);
+					}
+				}
+
+				/*
+				 * Persist batches
+				 */
+				if (addedBatch.size() == BATCH_SIZE) {
+					batchWriter.insert(addedBatch);
+				}
+				if (retiredBatch.size() == BATCH_SIZE) {
+					batchWriter.retire(issuerId, generation, retiredBatch);
+				}
+				if (foreignBatch.size() == BATCH_SIZE) {
+					batchWriter.upsert(foreignBatch);
 				}
 			}
-			/*
-			 * Persist final batch
-			 */
-			this.certificateAuthorityDAO.updateRevokedCertificates(
-					revokedCertsBatch, crlNumber, crl.getIssuerX500Principal(),
-					revokedCertificatesMap);
-			entries += revokedCertsBatch.size();
+		} catch (CRLException e) {
+			this.auditDAO.logAudit("Failed to parse CRL for CA=" + caName);
+			this.failures++;
+			this.crlStoreBean.evict(crlFile);
+			throw new RuntimeException(e);
+		}
 
+		RevocationIndex revocationIndex = null;
+		if (deltaCrl) {
 			/*
-			 * Cleanup redundant CRL entries
+			 * As per RFC 5280, the delta CRL on top of its base CRL forms the
+			 * complete CRL, which is compared against the published one. The
+			 * entries of earlier delta CRLs are not carried over.
 			 */
-			if (null != crlNumber) {
-				this.certificateAuthorityDAO.removeOldRevokedCertificates(
-						crlNumber, crl.getIssuerX500Principal().toString());
+			RevocationIndex completeIndex = RevocationDelta.applyDelta(
+					getBaseRevocationIndex(certificateAuthority),
+					revocationIndexBuilder.build(), unrevokedIndexBuilder
+							.build());
+			for (int position = 0; position < completeIndex.size(); position++) {
+				RevocationDelta.Change change = revocationDelta.compare(
+						completeIndex, position);
+				if (RevocationDelta.Change.NONE == change) {
+					continue;
+				}
+				stageChange(change, completeIndex.getSerialNumber(position),
+						new Date(completeIndex.getRevocationTime(position)),
+						issuerId, generation, addedBatch, retiredBatch);
+				if (addedBatch.size() == BATCH_SIZE) {
+					batchWriter.insert(addedBatch);
+				}
+				if (retiredBatch.size() == BATCH_SIZE) {
+					batchWriter.retire(issuerId, generation, retiredBatch);
+				}
+			}
+			if (null != crl.getNextUpdate()) {
+				revocationIndex = completeIndex;
+			}
+		} else if (null != revocationIndexBuilder) {
+			revocationIndex = revocationIndexBuilder.build();
+		}
+
+		/*
+		 * Persist final batches
+		 */
+		if (!addedBatch.isEmpty()) {
+			batchWriter.insert(addedBatch);
+		}
+		if (!foreignBatch.isEmpty()) {
+			batchWriter.upsert(foreignBatch);
+		}
+
+		/*
+		 * CRL entries no longer on the complete CRL are retired, not deleted.
+		 */
+		List<BigInteger> removedSerialNumbers = revocationDelta
+				.getRemovedSerialNumbers();
+		for (BigInteger serialNumber : removedSerialNumbers) {
+			retiredBatch.add(serialNumber);
+			if (retiredBatch.size() == BATCH_SIZE) {
+				batchWriter.retire(issuerId, generation, retiredBatch);
 			}
 		}
+		if (!retiredBatch.isEmpty()) {
+			batchWriter.retire(issuerId, generation, retiredBatch);
+		}
+		LOG.debug("CRL delta for CA " + caName + ": added="
+				+ revocationDelta.getAddedCount() + ", changed="
+				+ revocationDelta.getChangedCount() + ", removed="
+				+ removedSerialNumbers.size());
 
-		deleteCrlFile(crlFile);
+		if (deltaCrl) {
+			// only complete CRLs are kept in the local CRL store
+			deleteCrlFile(crlFile);
+		} else {
+			this.crlStoreBean.store(caName, crlNumber, crlFile);
+		}
+		updateIngestionCounters(entries, System.currentTimeMillis()
+				- ingestStart, batchWriter);
 
 		LOG.debug("CRL this update: " + crl.getThisUpdate());
 		LOG.debug("CRL next update: " + crl.getNextUpdate());
 		certificateAuthority.setStatus(Status.ACTIVE);
 		certificateAuthority.setThisUpdate(crl.getThisUpdate());
 		certificateAuthority.setNextUpdate(crl.getNextUpdate());
-		LOG.debug("cache activated for CA: " + crl.getIssuerX500Principal()
-				+ " (entries=" + entries + ")");
+		certificateAuthority.setCrlNumber(crlNumber);
+		certificateAuthority.setGeneration(generation);
+		if (!deltaCrl) {
+			certificateAuthority.setCrlETag(harvestMessage.getETag());
+			certificateAuthority.setCrlLastModified(harvestMessage
+					.getLastModified());
+			certificateAuthority.setBaseCrlNumber(crlNumber);
+			certificateAuthority.setBaseGeneration(generation);
+			certificateAuthority.setDeltaCrlUrl(crl.getFreshestCrlUrl());
+		}
+		if (null != revocationIndex) {
+			this.revocationIndexBean.setRevocationIndex(revocationIndex);
+			if (!deltaCrl) {
+				this.revocationIndexBean.setBaseRevocationIndex(revocationIndex);
+			}
+			this.crlStoreBean.writeSnapshot(revocationIndex);
+		} else {
+			this.revocationIndexBean.removeRevocationIndex(caName);
+			this.crlStoreBean.removeSnapshot(caName);
+		}
+		notifyInvalidation(CacheEntityType.REVOCATION_INDEX, caName,
+				generation);
+		for (String foreignCaName : foreignCaNames) {
+			/*
+			 * Indirect CRL entries are validated via the index of the CA that
+			 * issued the revoked certificates.
+			 */
+			this.revocationIndexBean.refreshForeignRevocations(foreignCaName);
+			notifyInvalidation(CacheEntityType.FOREIGN_REVOCATIONS,
+					foreignCaName, 0);
+		}
+		this.schedulingService.scheduleRefresh(certificateAuthority);
+		LOG.debug("cache activated for CA: " + crlIssuer
+				+ " (entries=" + entries + ", generation=" + generation + ")");
+
+		/*
+		 * Entries retired up to the previously published generation are no
+		 * longer visible to anyone. Those retired by this harvest are still
+		 * visible to validations that read the previous generation, and are
+		 * cleaned up after the next harvest. The entries of the base CRL are
+		 * kept for the next delta CRLs. The cleanup message is only delivered
+		 * once this harvest is committed.
+		 */
+		try {
+			this.notificationService.notifyCleanup(
+					certificateAuthority.getName(), Math.min(
+							publishedGeneration,
+							certificateAuthority.getBaseGeneration()));
+		} catch (JMSException e) {
+			LOG.error("could not notify cleanup for CA "
+					+ certificateAuthority.getName() + ": " + e.getMessage(), e);
+		}
 	}
 
-	private void deleteCrlFile(File crlFile) {
-		boolean deletedCrlFile = crlFile.delete();
-		if (!deletedCrlFile) {
-			LOG.warn("could not delete temp CRL file: "
-					+ crlFile.getAbsolutePath());
+	/**
+	 * Returns the {@link RevocationIndex} of the complete CRL the delta CRLs
+	 * of the specified CA apply to, falling back to the database if not
+	 * available in memory.
+	 */
+	private RevocationIndex getBaseRevocationIndex(
+			CertificateAuthorityEntity certificateAuthority) {
+		BigInteger baseCrlNumber = certificateAuthority.getBaseCrlNumber();
+		RevocationIndex baseIndex = this.revocationIndexBean
+				.getBaseRevocationIndex(certificateAuthority.getName());
+		if (null != baseIndex
+				&& isSameCrlNumber(baseCrlNumber, baseIndex.getCrlNumber())) {
+			return baseIndex;
 		}
+		LOG.debug("loading base CRL from database for CA: "
+				+ certificateAuthority.getName());
+		baseIndex = this.revocationIndexBean.loadRevocationIndex(
+				certificateAuthority, baseCrlNumber, certificateAuthority
+						.getBaseGeneration());
+		this.revocationIndexBean.setBaseRevocationIndex(baseIndex);
+		return baseIndex;
 	}
 
-	private BigInteger getCrlNumber(X509CRL crl) {
-		byte[] crlNumberExtensionValue = crl.getExtensionValue("2.5.29.20");
-		if (null == crlNumberExtensionValue) {
-			return null;
+	/**
+	 * Stages an added or changed entry of the new CRL. A changed entry retires
+	 * the previous one.
+	 */
+	private static void stageChange(RevocationDelta.Change change,
+			BigInteger serialNumber, Date revocationDate, int issuerId,
+			int generation, List<RevokedCertificateEntity> addedBatch,
+			List<BigInteger> retiredBatch) {
+		if (RevocationDelta.Change.CHANGED == change) {
+			retiredBatch.add(serialNumber);
 		}
-		try {
-			DEROctetString octetString = (DEROctetString) (new ASN1InputStream(
-					new ByteArrayInputStream(crlNumberExtensionValue))
-					.readObject());
-			byte[] octets = octetString.getOctets();
-			DERInteger integer = (DERInteger) new ASN1InputStream(octets)
-					.readObject();
-			return integer.getPositiveValue();
-		} catch (IOException e) {
-			throw new RuntimeException("IO error: " + e.getMessage(), e);
+		addedBatch.add(new RevokedCertificateEntity(issuerId, serialNumber,
+				revocationDate, generation));
+	}
+
+	/**
+	 * Builds the {@link RevocationIndex} of the specified active CA from the
+	 * cached revoked certificates in the database.
+	 */
+	private void loadRevocationIndex(
+			CertificateAuthorityEntity certificateAuthority,
+			BigInteger crlNumber) {
+		if (null == certificateAuthority.getThisUpdate()
+				|| null == certificateAuthority.getNextUpdate()) {
+			return;
 		}
+		RevocationIndex revocationIndex = this.revocationIndexBean
+				.loadRevocationIndex(certificateAuthority, crlNumber);
+		this.revocationIndexBean.setRevocationIndex(revocationIndex);
+		this.crlStoreBean.writeSnapshot(revocationIndex);
 	}
 
 	/**
-	 * Added for as {@link X509CRL#getRevokedCertificates()} is memory intensive
-	 * because it is returning a complete set, for huge CRL's this can get kinda
-	 * out of hand. So we return an enumeration of the DER
-	 * {@link TBSCertList.CRLEntry} objects.
-	 * 
-	 * @param crl
-	 *            the CRL
-	 * @return {@link Enumeration} of {@link TBSCertList.CRLEntry}'s.
-	 * @throws IOException
-	 *             something went wrong parsing.
-	 * @throws CRLException
-	 *             something went wrong parsing.
+	 * Resolves the CA id of a certificate issuer of an indirect CRL. Entries of
+	 * issuers that are not known as CA cannot be looked up and are skipped.
 	 */
-	@SuppressWarnings("unchecked")
-	private Enumeration<TBSCertList.CRLEntry> getRevokedCertificatesEnum(
-			X509CRL crl) throws IOException, CRLException {
-		byte[] certList = crl.getTBSCertList();
-		ByteArrayInputStream bais = new ByteArrayInputStream(certList);
-		ASN1InputStream aIn = new ASN1InputStream(bais, Integer.MAX_VALUE, true);
-		ASN1Sequence seq = (ASN1Sequence) aIn.readObject();
-		TBSCertList cl = TBSCertList.getInstance(seq);
-		return cl.getRevokedCertificateEnumeration();
+	private Integer getIssuerId(X500Principal certificateIssuer,
+			Map<X500Principal, Integer> issuerIds) {
+		if (issuerIds.containsKey(certificateIssuer)) {
+			return issuerIds.get(certificateIssuer);
+		}
+		CertificateAuthorityEntity certificateAuthority = this.certificateAuthorityDAO
+				.findCertificateAuthority(certificateIssuer.toString());
+		Integer issuerId = null;
+		if (null == certificateAuthority) {
+			LOG.debug("skipping CRL entries of unknown issuer: "
+					+ certificateIssuer);
+		} else {
+			issuerId = certificateAuthority.getIssuerId();
+		}
+		issuerIds.put(certificateIssuer, issuerId);
+		return issuerId;
+	}
+
+	private static boolean isSameCrlNumber(BigInteger crlNumber1,
+			BigInteger crlNumber2) {
+		if (null == crlNumber1) {
+			return null == crlNumber2;
+		}
+		return crlNumber1.equals(crlNumber2);
 	}
 
 	/**
-	 * Returns if the specified CRL is indirect.
-	 * 
-	 * @param crl
-	 *            the CRL
-	 * @return true or false
-	 * @throws CRLException
-	 *             something went wrong reading the
-	 *             {@link org.bouncycastle.asn1.x509.IssuingDistributionPoint}.
+	 * Reports the number of ingested revoked certificate entries and the
+	 * ingestion rate, in entries per second, of the last harvested CRL,
+	 * together with the database write rate in rows per second.
 	 */
-	private boolean isIndirectCRL(X509CRL crl) throws CRLException {
-		byte[] idp = crl
-				.getExtensionValue(X509Extensions.IssuingDistributionPoint
-						.getId());
-		boolean isIndirect = false;
+	private void updateIngestionCounters(int entries, long duration,
+			BatchWriter batchWriter) {
+		SNMPInterceptor.increment(SnmpConstants.INGESTED_ENTRIES,
+				SnmpConstants.SNMP_SERVICE, (long) entries);
+		long rate = entries * 1000L / Math.max(duration, 1L);
+		SNMPInterceptor.setValue(SnmpConstants.INGESTION_RATE,
+				SnmpConstants.SNMP_SERVICE, rate);
+		if (batchWriter.rows > 0) {
+			long writeRate = batchWriter.rows * 1000L
+					/ Math.max(batchWriter.duration, 1L);
+			SNMPInterceptor.setValue(SnmpConstants.WRITE_RATE,
+					SnmpConstants.SNMP_SERVICE, writeRate);
+		}
+		LOG.debug("ingested " + entries + " entries in " + duration
+				+ " ms, wrote " + batchWriter.rows + " rows in "
+				+ batchWriter.duration + " ms");
+	}
+
+	/**
+	 * Hands the CRL cache batches to the {@link RevokedCertificateDAO},
+	 * keeping track of the number of written rows and the time spent.
+	 */
+	private class BatchWriter {
+
+		private long rows;
+
+		private long duration;
+
+		void insert(List<RevokedCertificateEntity> batch) {
+			long start = System.currentTimeMillis();
+			this.rows += revokedCertificateDAO
+					.insertRevokedCertificates(batch);
+			this.duration += System.currentTimeMillis() - start;
+			batch.clear();
+		}
+
+		void upsert(List<RevokedCertificateEntity> batch) {
+			long start = System.currentTimeMillis();
+			this.rows += revokedCertificateDAO
+					.upsertRevokedCertificates(batch);
+			this.duration += System.currentTimeMillis() - start;
+			batch.clear();
+		}
+
+		void retire(int issuerId, int generation,
+				List<BigInteger> serialNumbers) {
+			long start = System.currentTimeMillis();
+			this.rows += revokedCertificateDAO.retireRevokedCertificates(
+					issuerId, generation, serialNumbers);
+			this.duration += System.currentTimeMillis() - start;
+			serialNumbers.clear();
+		}
+	}
+
+	/**
+	 * Lets the other nodes refresh their caches once the harvest has been
+	 * committed.
+	 */
+	private void notifyInvalidation(CacheEntityType entityType, String caName,
+			long version) {
 		try {
-			if (idp != null) {
-				isIndirect = IssuingDistributionPoint.getInstance(
-						X509ExtensionUtil.fromExtensionValue(idp))
-						.isIndirectCRL();
-			}
-		} catch (Exception e) {
-			throw new CRLException(
-					"Exception reading IssuingDistributionPoint", e);
+			this.notificationService.notifyInvalidation(entityType, caName,
+					version);
+		} catch (JMSException e) {
+			LOG.error("could not publish invalidation for CA " + caName + ": "
+					+ e.getMessage(), e);
 		}
+	}
 
-		return isIndirect;
+	/**
+	 * Deletes a downloaded CRL file. Files from the local CRL store are kept.
+	 */
+	private void deleteCrlFile(File crlFile) {
+		if (this.crlStoreBean.isStored(crlFile)) {
+			return;
+		}
+		boolean deletedCrlFile = crlFile.delete();
+		if (!deletedCrlFile) {
+			LOG.warn("could not delete temp CRL file: "
+					+ crlFile.getAbsolutePath());
+		}
 	}
 }
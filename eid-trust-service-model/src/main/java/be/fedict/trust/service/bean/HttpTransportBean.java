@@ -0,0 +1,223 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpClientParams;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.service.SnmpConstants;
+import be.fedict.trust.service.TrustServiceConstants;
+import be.fedict.trust.service.dao.ConfigurationDAO;
+import be.fedict.trust.service.entity.NetworkConfigEntity;
+import be.fedict.trust.service.snmp.SNMPInterceptor;
+
+/**
+ * Shared HTTP transport for the outbound CRL, OCSP, certificate and time stamp
+ * fetches. All requests go over a single pool of keep-alive connections,
+ * limited per host and in total. Proxy and timeouts are taken from the
+ * {@link NetworkConfigEntity}.
+ * <p>
+ * Every {@link #execute(HttpMethod)} must be followed by a
+ * {@link #release(HttpMethod)}, also on failure, to hand the connection back
+ * to the pool.
+ * 
+ * @author Frank Cornelis
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class HttpTransportBean {
+
+	private static final Log LOG = LogFactory.getLog(HttpTransportBean.class);
+
+	private static final String USER_AGENT = "eID Trust Service Client";
+
+	private final int maxConnections = Integer.getInteger(
+			TrustServiceConstants.HTTP_MAX_CONNECTIONS_PROPERTY,
+			TrustServiceConstants.HTTP_MAX_CONNECTIONS);
+
+	private final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+
+	private final AtomicInteger activeRequests = new AtomicInteger();
+
+	private final ConcurrentMap<String, String> hostOids = new ConcurrentHashMap<String, String>();
+
+	private final AtomicInteger hostCount = new AtomicInteger();
+
+	private volatile HttpClient httpClient;
+
+	@EJB
+	private ConfigurationDAO configurationDAO;
+
+	@PostConstruct
+	public void init() {
+		HttpConnectionManagerParams params = this.connectionManager
+				.getParams();
+		params.setDefaultMaxConnectionsPerHost(Integer.getInteger(
+				TrustServiceConstants.HTTP_MAX_CONNECTIONS_PER_HOST_PROPERTY,
+				TrustServiceConstants.HTTP_MAX_CONNECTIONS_PER_HOST));
+		params.setMaxTotalConnections(this.maxConnections);
+		// servers silently drop idle keep-alive connections
+		params.setStaleCheckingEnabled(true);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		LOG.debug("shutdown HTTP connection pool");
+		this.connectionManager.shutdown();
+	}
+
+	/**
+	 * Returns the shared {@link HttpClient}, configured according to the
+	 * current network configuration.
+	 */
+	public HttpClient getHttpClient() {
+		HttpClient client = this.httpClient;
+		if (null == client) {
+			client = createHttpClient();
+			this.httpClient = client;
+		}
+		return client;
+	}
+
+	/**
+	 * Executes the specified HTTP method over a pooled connection and returns
+	 * the HTTP status code. Latency and pool usage are published via SNMP.
+	 */
+	public int execute(HttpMethod method) throws IOException {
+		int active = this.activeRequests.incrementAndGet();
+		setPoolUsage(active);
+
+		HttpClient client = getHttpClient();
+		method.setRequestHeader("User-Agent", USER_AGENT);
+		String host = method.getURI().getHost();
+		long start = System.currentTimeMillis();
+		try {
+			return client.executeMethod(method);
+		} finally {
+			long latency = System.currentTimeMillis() - start;
+			LOG.debug("HTTP latency for " + host + ": " + latency + " ms");
+			SNMPInterceptor.setValue(SnmpConstants.HTTP_LATENCY,
+					SnmpConstants.SNMP_SERVICE, latency);
+			if (null != host) {
+				SNMPInterceptor.setValue(getHostOid(host),
+						SnmpConstants.SNMP_SERVICE, latency);
+			}
+		}
+	}
+
+	/**
+	 * Releases the connection of the specified HTTP method back to the pool.
+	 */
+	public void release(HttpMethod method) {
+		method.releaseConnection();
+		setPoolUsage(this.activeRequests.decrementAndGet());
+	}
+
+	/**
+	 * Drops the shared {@link HttpClient} on a new network configuration. Idle
+	 * connections are closed, connections in use are closed after release.
+	 */
+	public void reset() {
+		LOG.debug("reset HTTP transport");
+		this.httpClient = null;
+		this.connectionManager.closeIdleConnections(0);
+	}
+
+	private HttpClient createHttpClient() {
+		NetworkConfigEntity networkConfig = this.configurationDAO
+				.findNetworkConfigEntity();
+		int connectTimeout = TrustServiceConstants.NETWORK_CONNECT_TIMEOUT;
+		int readTimeout = TrustServiceConstants.NETWORK_READ_TIMEOUT;
+		if (null != networkConfig) {
+			if (null != networkConfig.getConnectTimeout()) {
+				connectTimeout = networkConfig.getConnectTimeout();
+			}
+			if (null != networkConfig.getReadTimeout()) {
+				readTimeout = networkConfig.getReadTimeout();
+			}
+		}
+		LOG.debug("create HTTP client: connectTimeout=" + connectTimeout
+				+ " readTimeout=" + readTimeout);
+		this.connectionManager.getParams().setConnectionTimeout(connectTimeout);
+		this.connectionManager.getParams().setSoTimeout(readTimeout);
+
+		HttpClient client = new HttpClient(this.connectionManager);
+		HttpClientParams params = client.getParams();
+		params.setSoTimeout(readTimeout);
+		// wait for a free pooled connection no longer than for a new one
+		params.setConnectionManagerTimeout(connectTimeout);
+		if (null != networkConfig && networkConfig.isEnabled()
+				&& null != networkConfig.getProxyHost()) {
+			client.getHostConfiguration().setProxy(
+					networkConfig.getProxyHost(), networkConfig.getProxyPort());
+		}
+		return client;
+	}
+
+	private void setPoolUsage(int active) {
+		SNMPInterceptor.setValue(SnmpConstants.HTTP_POOL_USAGE,
+				SnmpConstants.SNMP_SERVICE, Math.min(100L, active * 100L
+						/ this.maxConnections));
+	}
+
+	/**
+	 * Returns the OIDs of the per host HTTP latency counters, by host name.
+	 * Hosts are numbered in the order of their first request.
+	 */
+	public Map<String, String> getHostOids() {
+		return Collections.unmodifiableMap(this.hostOids);
+	}
+
+	private String getHostOid(String host) {
+		String oid = this.hostOids.get(host);
+		if (null != oid) {
+			return oid;
+		}
+		synchronized (this.hostOids) {
+			oid = this.hostOids.get(host);
+			if (null == oid) {
+				oid = SnmpConstants.getHostOid(SnmpConstants.HTTP_LATENCY,
+						this.hostCount.incrementAndGet());
+				this.hostOids.put(host, oid);
+				LOG.info("HTTP latency of " + host + " published as OID: "
+						+ oid);
+			}
+		}
+		return oid;
+	}
+}
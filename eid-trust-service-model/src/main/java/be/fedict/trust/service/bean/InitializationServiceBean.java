@@ -19,10 +19,12 @@
 
 package be.fedict.trust.service.bean;
 
+import java.io.File;
 import java.io.InputStream;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -31,12 +33,14 @@ import java.util.Map;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.jms.JMSException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import be.fedict.trust.client.TrustServiceDomains;
 import be.fedict.trust.service.InitializationService;
+import be.fedict.trust.service.NotificationService;
 import be.fedict.trust.service.SchedulingService;
 import be.fedict.trust.service.SnmpConstants;
 import be.fedict.trust.service.TrustServiceConstants;
@@ -47,6 +51,7 @@ import be.fedict.trust.service.dao.TrustDomainDAO;
 import be.fedict.trust.service.entity.CertificateAuthorityEntity;
 import be.fedict.trust.service.entity.ClockDriftConfigEntity;
 import be.fedict.trust.service.entity.KeyStoreType;
+import be.fedict.trust.service.entity.Status;
 import be.fedict.trust.service.entity.TimeProtocol;
 import be.fedict.trust.service.entity.TrustDomainEntity;
 import be.fedict.trust.service.entity.TrustPointEntity;
@@ -81,6 +86,15 @@ public class InitializationServiceBean implements InitializationService {
 	@EJB
 	private SchedulingService schedulingService;
 
+	@EJB
+	private NotificationService notificationService;
+
+	@EJB
+	private CrlStoreBean crlStoreBean;
+
+	@EJB
+	private RevocationIndexBean revocationIndexBean;
+
 	public void initialize() {
 
 		LOG.debug("initialize");
@@ -105,6 +119,7 @@ public class InitializationServiceBean implements InitializationService {
 		}
 
 		initTimers();
+		initCrlStore();
 	}
 
 	private void initSnmpCounters() {
@@ -127,6 +142,30 @@ public class InitializationServiceBean implements InitializationService {
 				SnmpConstants.SNMP_SERVICE, 0L);
 		SNMPInterceptor.setValue(SnmpConstants.OCSP_FAILURES,
 				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.BLOOM_FILTER_MEMORY,
+				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.BLOOM_FILTER_FPP,
+				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.BLOOM_FILTER_NEGATIVES,
+				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.BLOOM_FILTER_FALSE_POSITIVES,
+				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.RESULT_CACHE_HITS,
+				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.RESULT_CACHE_MISSES,
+				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.RESULT_CACHE_EVICTIONS,
+				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.INGESTED_ENTRIES,
+				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.INGESTION_RATE,
+				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.WRITE_RATE,
+				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.HTTP_LATENCY,
+				SnmpConstants.SNMP_SERVICE, 0L);
+		SNMPInterceptor.setValue(SnmpConstants.HTTP_POOL_USAGE,
+				SnmpConstants.SNMP_SERVICE, 0L);
 	}
 
 	private void initTexts() {
@@ -436,8 +475,8 @@ public class InitializationServiceBean implements InitializationService {
 	}
 
 	/**
-	 * Initialize timers for all trust points found and the clock drift config
-	 * if enabled.
+	 * Initialize timers for all trust points found, the CRL refreshes of all
+	 * active CAs and the clock drift config if enabled.
 	 */
 	private void initTimers() {
 
@@ -452,6 +491,11 @@ public class InitializationServiceBean implements InitializationService {
 			}
 		}
 
+		for (CertificateAuthorityEntity certificateAuthority : this.certificateAuthorityDAO
+				.listActiveCertificateAuthorities()) {
+			this.schedulingService.scheduleRefresh(certificateAuthority);
+		}
+
 		ClockDriftConfigEntity clockDriftConfig = this.configurationDAO
 				.findClockDriftConfig();
 		if (null != clockDriftConfig && clockDriftConfig.isEnabled()) {
@@ -464,4 +508,43 @@ public class InitializationServiceBean implements InitializationService {
 		}
 	}
 
+	/**
+	 * Rebuilds the revocation caches from the local CRL store, so a restarted
+	 * node can serve validations before any CRL has been downloaded again.
+	 * Revocation index snapshots matching the cached CRL of an active CA are
+	 * activated right away.
+	 */
+	private void initCrlStore() {
+
+		Date now = new Date();
+		for (CertificateAuthorityEntity certificateAuthority : this.certificateAuthorityDAO
+				.listCertificateAuthorities()) {
+			if (Status.NONE == certificateAuthority.getStatus()) {
+				continue;
+			}
+			String caName = certificateAuthority.getName();
+			if (Status.ACTIVE == certificateAuthority.getStatus()) {
+				RevocationIndex revocationIndex = this.crlStoreBean
+						.readSnapshot(caName, certificateAuthority
+								.getCrlNumber());
+				if (null != revocationIndex) {
+					LOG.debug("activating revocation index snapshot of CA "
+							+ caName);
+					this.revocationIndexBean.setRevocationIndex(revocationIndex);
+				}
+			}
+			File crlFile = this.crlStoreBean.findCrl(caName, now);
+			if (null == crlFile) {
+				continue;
+			}
+			LOG.debug("warm start of CA " + caName + " from " + crlFile);
+			try {
+				this.notificationService.notifyHarvester(caName, crlFile
+						.getAbsolutePath(), true);
+			} catch (JMSException e) {
+				LOG.error("could not warm start CA " + caName + ": "
+						+ e.getMessage(), e);
+			}
+		}
+	}
 }
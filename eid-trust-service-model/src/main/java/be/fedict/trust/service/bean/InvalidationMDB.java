@@ -0,0 +1,70 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import javax.ejb.ActivationConfigProperty;
+import javax.ejb.EJB;
+import javax.ejb.MessageDriven;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Invalidation Message Driven Bean. Every node subscribes to the invalidation
+ * topic and refreshes its caches for the events published by the other
+ * nodes.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+@MessageDriven(activationConfig = {
+		@ActivationConfigProperty(propertyName = "destinationType", propertyValue = "javax.jms.Topic"),
+		@ActivationConfigProperty(propertyName = "destination", propertyValue = InvalidationMDB.INVALIDATION_TOPIC_LOCATION) })
+public class InvalidationMDB implements MessageListener {
+
+	private static final Log LOG = LogFactory.getLog(InvalidationMDB.class);
+
+	public static final String INVALIDATION_TOPIC_NAME = "TrustServiceInvalidation";
+	public static final String INVALIDATION_TOPIC_LOCATION = "topic/trust/invalidation";
+
+	@EJB
+	private CacheInvalidationBean cacheInvalidationBean;
+
+	public void onMessage(Message message) {
+		InvalidationMessage invalidationMessage;
+		try {
+			invalidationMessage = new InvalidationMessage(message);
+		} catch (JMSException e) {
+			LOG.error("JMS error: " + e.getMessage(), e);
+			return;
+		}
+		if (CacheInvalidationBean.NODE_ID.equals(invalidationMessage
+				.getOrigin())) {
+			// caches of the publishing node are already up to date
+			return;
+		}
+		LOG.debug("invalidation of " + invalidationMessage.getEntityType()
+				+ ": " + invalidationMessage.getKey() + " (version "
+				+ invalidationMessage.getVersion() + ")");
+		this.cacheInvalidationBean.invalidate(invalidationMessage);
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import be.fedict.trust.service.CacheEntityType;
+
+/**
+ * Cache invalidation JMS message marshaller/unmarshaller.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class InvalidationMessage implements JMSMessage {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String ENTITY_TYPE_PROPERTY = "entityType";
+
+	private static final String KEY_PROPERTY = "key";
+
+	private static final String VERSION_PROPERTY = "version";
+
+	private static final String ORIGIN_PROPERTY = "origin";
+
+	private CacheEntityType entityType;
+
+	private String key;
+
+	private long version;
+
+	private String origin;
+
+	public InvalidationMessage(CacheEntityType entityType, String key,
+			long version, String origin) {
+		this.entityType = entityType;
+		this.key = key;
+		this.version = version;
+		this.origin = origin;
+	}
+
+	public InvalidationMessage(Message message) throws JMSException {
+		this.entityType = CacheEntityType.valueOf(message
+				.getStringProperty(ENTITY_TYPE_PROPERTY));
+		this.key = message.getStringProperty(KEY_PROPERTY);
+		this.version = message.getLongProperty(VERSION_PROPERTY);
+		this.origin = message.getStringProperty(ORIGIN_PROPERTY);
+	}
+
+	public Message getJMSMessage(Session session) throws JMSException {
+		Message message = session.createMessage();
+		message.setStringProperty(ENTITY_TYPE_PROPERTY, this.entityType
+				.name());
+		message.setStringProperty(KEY_PROPERTY, this.key);
+		message.setLongProperty(VERSION_PROPERTY, this.version);
+		message.setStringProperty(ORIGIN_PROPERTY, this.origin);
+		return message;
+	}
+
+	public CacheEntityType getEntityType() {
+		return this.entityType;
+	}
+
+	public String getKey() {
+		return this.key;
+	}
+
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Returns the identifier of the node that published this message.
+	 */
+	public String getOrigin() {
+		return this.origin;
+	}
+}
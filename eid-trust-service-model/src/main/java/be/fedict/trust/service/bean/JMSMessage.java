@@ -27,6 +27,12 @@ import javax.jms.Session;
 public interface JMSMessage extends Serializable {
 
 	public static final String MESSAGE_TYPE_PROPERTY = "MessageType";
+
+	/**
+	 * Messages of the same group, i.e. for the same CA, are consumed one at a
+	 * time and in order, while different CAs are processed concurrently.
+	 */
+	public static final String GROUP_ID_PROPERTY = "JMSXGroupID";
 	
 	Message getJMSMessage(Session session) throws JMSException;
 }
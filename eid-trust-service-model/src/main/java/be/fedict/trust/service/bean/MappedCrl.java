@@ -0,0 +1,893 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Streaming reader of a DER encoded CRL file. The file is memory-mapped and
+ * only the CRL header and extensions are decoded up front. The revoked
+ * certificates are read one by one via an {@link EntryReader}, without
+ * materializing a {@link X509CRL} or an ASN.1 tree, and the signature is
+ * verified over the mapped TBS bytes.
+ * <p>
+ * As required by RFC 5280, CRLs with unsupported critical CRL or CRL entry
+ * extensions are rejected.
+ *
+ * @author Frank Cornelis
+ */
+public class MappedCrl {
+
+	private static final Log LOG = LogFactory.getLog(MappedCrl.class);
+
+	private static final int SEQUENCE = 0x30;
+	private static final int INTEGER = 0x02;
+	private static final int BIT_STRING = 0x03;
+	private static final int OCTET_STRING = 0x04;
+	private static final int OBJECT_IDENTIFIER = 0x06;
+	private static final int BOOLEAN = 0x01;
+	private static final int ENUMERATED = 0x0a;
+	private static final int UTC_TIME = 0x17;
+	private static final int GENERALIZED_TIME = 0x18;
+	private static final int CRL_EXTENSIONS = 0xa0;
+	private static final int DIRECTORY_NAME = 0xa4;
+	private static final int INDIRECT_CRL = 0x84;
+	private static final int DISTRIBUTION_POINT = 0xa0;
+	private static final int FULL_NAME = 0xa0;
+	private static final int UNIFORM_RESOURCE_IDENTIFIER = 0x86;
+
+	private static final String CRL_NUMBER_OID = "2.5.29.20";
+	private static final String ISSUING_DISTRIBUTION_POINT_OID = "2.5.29.28";
+	private static final String DELTA_CRL_INDICATOR_OID = "2.5.29.27";
+	private static final String FRESHEST_CRL_OID = "2.5.29.46";
+	private static final String AUTHORITY_KEY_IDENTIFIER_OID = "2.5.29.35";
+	private static final String ISSUER_ALTERNATIVE_NAME_OID = "2.5.29.18";
+
+	private static final Set<String> CRL_EXTENSION_OIDS = new HashSet<String>(
+			Arrays.asList(CRL_NUMBER_OID, ISSUING_DISTRIBUTION_POINT_OID,
+					DELTA_CRL_INDICATOR_OID, FRESHEST_CRL_OID,
+					AUTHORITY_KEY_IDENTIFIER_OID, ISSUER_ALTERNATIVE_NAME_OID));
+
+	/*
+	 * Encoded OIDs of the CRL entry extensions, compared in place.
+	 */
+	private static final byte[] REASON_CODE_OID = { 0x55, 0x1d, 0x15 };
+	private static final byte[] HOLD_INSTRUCTION_CODE_OID = { 0x55, 0x1d, 0x17 };
+	private static final byte[] INVALIDITY_DATE_OID = { 0x55, 0x1d, 0x18 };
+	private static final byte[] CERTIFICATE_ISSUER_OID = { 0x55, 0x1d, 0x1d };
+
+	private static final int REMOVE_FROM_CRL = 8;
+
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+	private static final int CRL_SIGN_KEY_USAGE = 6;
+
+	private static final Map<String, String> SIGNATURE_ALGORITHMS = new HashMap<String, String>();
+
+	static {
+		SIGNATURE_ALGORITHMS.put("1.2.840.113549.1.1.4", "MD5withRSA");
+		SIGNATURE_ALGORITHMS.put("1.2.840.113549.1.1.5", "SHA1withRSA");
+		SIGNATURE_ALGORITHMS.put("1.2.840.113549.1.1.11", "SHA256withRSA");
+		SIGNATURE_ALGORITHMS.put("1.2.840.113549.1.1.12", "SHA384withRSA");
+		SIGNATURE_ALGORITHMS.put("1.2.840.113549.1.1.13", "SHA512withRSA");
+		SIGNATURE_ALGORITHMS.put("1.2.840.10040.4.3", "SHA1withDSA");
+		SIGNATURE_ALGORITHMS.put("1.2.840.10045.4.1", "SHA1withECDSA");
+		SIGNATURE_ALGORITHMS.put("1.2.840.10045.4.3.2", "SHA256withECDSA");
+		SIGNATURE_ALGORITHMS.put("1.2.840.10045.4.3.3", "SHA384withECDSA");
+		SIGNATURE_ALGORITHMS.put("1.2.840.10045.4.3.4", "SHA512withECDSA");
+	}
+
+	private final ByteBuffer buffer;
+
+	private final int tbsOffset;
+
+	private final int tbsEnd;
+
+	private final X500Principal issuer;
+
+	private final Date thisUpdate;
+
+	private final Date nextUpdate;
+
+	private final int entriesOffset;
+
+	private final int entriesEnd;
+
+	private BigInteger crlNumber;
+
+	private boolean indirect;
+
+	private BigInteger baseCrlNumber;
+
+	private String freshestCrlUrl;
+
+	private final String signatureAlgorithmOid;
+
+	private final byte[] signature;
+
+	/**
+	 * Maps the specified CRL file. A PEM encoded CRL is decoded in memory
+	 * instead, leaving the file untouched.
+	 *
+	 * @throws CRLException
+	 *             the file does not contain a well-formed CRL.
+	 */
+	public static MappedCrl open(File crlFile) throws IOException,
+			CRLException {
+		if (!isDer(crlFile)) {
+			LOG.debug("decoding non-DER CRL: " + crlFile.getAbsolutePath());
+			return new MappedCrl(ByteBuffer.wrap(decode(crlFile)));
+		}
+		RandomAccessFile randomAccessFile = new RandomAccessFile(crlFile, "r");
+		try {
+			FileChannel fileChannel = randomAccessFile.getChannel();
+			MappedByteBuffer mappedByteBuffer = fileChannel.map(
+					FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+			return new MappedCrl(mappedByteBuffer);
+		} finally {
+			// the mapping stays valid after closing the file
+			randomAccessFile.close();
+		}
+	}
+
+	private static boolean isDer(File crlFile) throws IOException {
+		InputStream inputStream = new FileInputStream(crlFile);
+		try {
+			return SEQUENCE == inputStream.read();
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Returns the DER encoding of the PEM encoded CRL in the specified file.
+	 */
+	private static byte[] decode(File crlFile) throws IOException,
+			CRLException {
+		InputStream inputStream = new FileInputStream(crlFile);
+		try {
+			X509CRL crl = (X509CRL) CertificateFactory.getInstance("X.509")
+					.generateCRL(inputStream);
+			return crl.getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new CRLException("CRL decoding error: " + e.getMessage(), e);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Parses the CRL header and extensions of the specified DER encoded CRL.
+	 *
+	 * @throws CRLException
+	 *             the buffer does not contain a well-formed CRL.
+	 */
+	public MappedCrl(ByteBuffer buffer) throws CRLException {
+		this.buffer = buffer;
+		try {
+			// CertificateList
+			Reader reader = new Reader(buffer, 0, buffer.limit());
+			Reader certificateList = reader.enter(SEQUENCE);
+
+			// TBSCertList
+			this.tbsOffset = certificateList.position;
+			Reader tbsCertList = certificateList.enter(SEQUENCE);
+			this.tbsEnd = certificateList.position;
+			if (INTEGER == tbsCertList.peekTag()) {
+				tbsCertList.skip(); // version
+			}
+			tbsCertList.skip(); // signature
+			this.issuer = new X500Principal(tbsCertList.readEncoded(SEQUENCE));
+			this.thisUpdate = new Date(tbsCertList.readTime());
+			if (tbsCertList.hasMore()
+					&& isTime(tbsCertList.peekTag())) {
+				this.nextUpdate = new Date(tbsCertList.readTime());
+			} else {
+				this.nextUpdate = null;
+			}
+			if (tbsCertList.hasMore() && SEQUENCE == tbsCertList.peekTag()) {
+				Reader entries = tbsCertList.enter(SEQUENCE);
+				this.entriesOffset = entries.position;
+				this.entriesEnd = entries.end;
+			} else {
+				this.entriesOffset = 0;
+				this.entriesEnd = 0;
+			}
+			if (tbsCertList.hasMore()
+					&& CRL_EXTENSIONS == tbsCertList.peekTag()) {
+				readExtensions(tbsCertList.enter(CRL_EXTENSIONS).enter(
+						SEQUENCE));
+			}
+
+			// signatureAlgorithm
+			Reader signatureAlgorithm = certificateList.enter(SEQUENCE);
+			this.signatureAlgorithmOid = signatureAlgorithm.readOid();
+
+			// signatureValue
+			byte[] bitString = certificateList.read(BIT_STRING);
+			this.signature = new byte[bitString.length - 1];
+			System.arraycopy(bitString, 1, this.signature, 0,
+					this.signature.length);
+		} catch (RuntimeException e) {
+			throw new CRLException("malformed CRL: " + e.getMessage(), e);
+		}
+	}
+
+	private void readExtensions(Reader extensions) throws CRLException {
+		while (extensions.hasMore()) {
+			Reader extension = extensions.enter(SEQUENCE);
+			String oid = extension.readOid();
+			boolean critical = extension.readCritical();
+			if (critical && !CRL_EXTENSION_OIDS.contains(oid)) {
+				throw new CRLException("unsupported critical CRL extension: "
+						+ oid);
+			}
+			Reader extensionValue = extension.enterOctetString();
+			if (CRL_NUMBER_OID.equals(oid)) {
+				this.crlNumber = new BigInteger(1,
+						extensionValue.read(INTEGER));
+			} else if (DELTA_CRL_INDICATOR_OID.equals(oid)) {
+				this.baseCrlNumber = new BigInteger(1, extensionValue
+						.read(INTEGER));
+			} else if (FRESHEST_CRL_OID.equals(oid)) {
+				this.freshestCrlUrl = readHttpUrl(extensionValue
+						.enter(SEQUENCE));
+			} else if (ISSUING_DISTRIBUTION_POINT_OID.equals(oid)) {
+				Reader issuingDistributionPoint = extensionValue
+						.enter(SEQUENCE);
+				while (issuingDistributionPoint.hasMore()) {
+					if (INDIRECT_CRL == issuingDistributionPoint.peekTag()) {
+						byte[] indirectCrl = issuingDistributionPoint
+								.read(INDIRECT_CRL);
+						this.indirect = 1 == indirectCrl.length
+								&& 0 != indirectCrl[0];
+					} else {
+						issuingDistributionPoint.skip();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the first HTTP URL of the specified CRL distribution points, or
+	 * <code>null</code> if none.
+	 */
+	private static String readHttpUrl(Reader distributionPoints) {
+		while (distributionPoints.hasMore()) {
+			Reader distributionPoint = distributionPoints.enter(SEQUENCE);
+			if (!distributionPoint.hasMore()
+					|| DISTRIBUTION_POINT != distributionPoint.peekTag()) {
+				continue;
+			}
+			Reader distributionPointName = distributionPoint
+					.enter(DISTRIBUTION_POINT);
+			if (FULL_NAME != distributionPointName.peekTag()) {
+				continue;
+			}
+			Reader generalNames = distributionPointName.enter(FULL_NAME);
+			while (generalNames.hasMore()) {
+				if (UNIFORM_RESOURCE_IDENTIFIER != generalNames.peekTag()) {
+					generalNames.skip();
+					continue;
+				}
+				String url = new String(generalNames
+						.read(UNIFORM_RESOURCE_IDENTIFIER), US_ASCII);
+				if (url.toLowerCase().startsWith("http")) {
+					return url;
+				}
+			}
+		}
+		return null;
+	}
+
+	public X500Principal getIssuer() {
+		return this.issuer;
+	}
+
+	public Date getThisUpdate() {
+		return this.thisUpdate;
+	}
+
+	/**
+	 * Returns the next update or <code>null</code> if absent.
+	 */
+	public Date getNextUpdate() {
+		return this.nextUpdate;
+	}
+
+	/**
+	 * Returns the CRL number or <code>null</code> if absent.
+	 */
+	public BigInteger getCrlNumber() {
+		return this.crlNumber;
+	}
+
+	public boolean isIndirect() {
+		return this.indirect;
+	}
+
+	/**
+	 * Returns the CRL number of the complete CRL this delta CRL applies to, or
+	 * <code>null</code> if this is a complete CRL.
+	 */
+	public BigInteger getBaseCrlNumber() {
+		return this.baseCrlNumber;
+	}
+
+	/**
+	 * Returns the HTTP URL of the delta CRLs of this complete CRL, as listed
+	 * in the freshest CRL extension, or <code>null</code> if none.
+	 */
+	public String getFreshestCrlUrl() {
+		return this.freshestCrlUrl;
+	}
+
+	/**
+	 * Checks whether the CRL was issued by the specified CA, has a valid
+	 * signature and is valid at the specified validation date. Equivalent to
+	 * the CRL integrity check of the CRL trust linker.
+	 */
+	public boolean checkIntegrity(X509Certificate issuerCertificate,
+			Date validationDate) {
+		if (!this.issuer.equals(issuerCertificate.getSubjectX500Principal())) {
+			LOG.debug("CRL issuer mismatch");
+			return false;
+		}
+		boolean[] keyUsage = issuerCertificate.getKeyUsage();
+		if (null != keyUsage && !keyUsage[CRL_SIGN_KEY_USAGE]) {
+			LOG.debug("CA not allowed to sign CRLs");
+			return false;
+		}
+		if (this.thisUpdate.after(validationDate)) {
+			LOG.debug("CRL too young");
+			return false;
+		}
+		if (null != this.nextUpdate && validationDate.after(this.nextUpdate)) {
+			LOG.debug("CRL too old");
+			return false;
+		}
+		try {
+			String algorithm = SIGNATURE_ALGORITHMS
+					.get(this.signatureAlgorithmOid);
+			if (null == algorithm) {
+				algorithm = this.signatureAlgorithmOid;
+			}
+			Signature verifier = Signature.getInstance(algorithm);
+			verifier.initVerify(issuerCertificate.getPublicKey());
+			ByteBuffer tbs = this.buffer.duplicate();
+			tbs.limit(this.tbsEnd);
+			tbs.position(this.tbsOffset);
+			verifier.update(tbs);
+			if (!verifier.verify(this.signature)) {
+				LOG.debug("CRL signature invalid");
+				return false;
+			}
+		} catch (GeneralSecurityException e) {
+			LOG.debug("CRL signature verification error: " + e.getMessage(),
+					e);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a new reader over the revoked certificates of this CRL.
+	 */
+	public EntryReader getEntryReader() {
+		return new EntryReader();
+	}
+
+	/**
+	 * Forward-only cursor over the revoked certificates of the CRL. Moving to
+	 * the next entry does not allocate any objects: the serial number is
+	 * copied into a reused buffer and only converted into a
+	 * {@link BigInteger} on request.
+	 */
+	public class EntryReader {
+
+		private final Reader entries;
+
+		private final Reader entry;
+
+		private final Reader extensions;
+
+		private final Reader extension;
+
+		private final Reader extensionValue;
+
+		private byte[] serialNumber = new byte[32];
+
+		private int serialNumberLength;
+
+		private long revocationTime;
+
+		private X500Principal certificateIssuer;
+
+		private boolean removeFromCrl;
+
+		EntryReader() {
+			ByteBuffer buffer = MappedCrl.this.buffer;
+			this.entries = new Reader(buffer, MappedCrl.this.entriesOffset,
+					MappedCrl.this.entriesEnd);
+			this.entry = new Reader(buffer, 0, 0);
+			this.extensions = new Reader(buffer, 0, 0);
+			this.extension = new Reader(buffer, 0, 0);
+			this.extensionValue = new Reader(buffer, 0, 0);
+			if (MappedCrl.this.indirect) {
+				this.certificateIssuer = MappedCrl.this.issuer;
+			}
+		}
+
+		/**
+		 * Moves to the next revoked certificate.
+		 *
+		 * @return <code>false</code> if no more entries are available.
+		 * @throws CRLException
+		 *             malformed entry, or unsupported critical entry
+		 *             extension.
+		 */
+		public boolean next() throws CRLException {
+			if (!this.entries.hasMore()) {
+				return false;
+			}
+			this.removeFromCrl = false;
+			try {
+				Reader entry = this.entries.enter(SEQUENCE, this.entry);
+				readSerialNumber(entry);
+				this.revocationTime = entry.readTime();
+				if (entry.hasMore()) {
+					readExtensions(entry.enter(SEQUENCE, this.extensions));
+				}
+			} catch (RuntimeException e) {
+				throw new CRLException("malformed CRL entry: "
+						+ e.getMessage(), e);
+			}
+			return true;
+		}
+
+		/**
+		 * Copies the serial number into the reused buffer, in the minimal
+		 * two's-complement encoding of {@link BigInteger#toByteArray()}.
+		 */
+		private void readSerialNumber(Reader entry) {
+			int length = entry.readHeader(INTEGER);
+			if (0 == length) {
+				throw new IllegalStateException("empty serial number");
+			}
+			int offset = entry.position;
+			int end = offset + length;
+			while (offset + 1 < end
+					&& isRedundantSignByte(entry.buffer.get(offset), entry.buffer
+							.get(offset + 1))) {
+				offset++;
+			}
+			this.serialNumberLength = end - offset;
+			if (this.serialNumberLength > this.serialNumber.length) {
+				this.serialNumber = new byte[this.serialNumberLength];
+			}
+			for (int idx = 0; idx < this.serialNumberLength; idx++) {
+				this.serialNumber[idx] = entry.buffer.get(offset + idx);
+			}
+			entry.position = end;
+		}
+
+		private void readExtensions(Reader extensions) throws CRLException {
+			while (extensions.hasMore()) {
+				Reader extension = extensions.enter(SEQUENCE, this.extension);
+				int oidLength = extension.readHeader(OBJECT_IDENTIFIER);
+				int oidOffset = extension.position;
+				extension.position += oidLength;
+				boolean critical = extension.readCritical();
+				Reader extensionValue = extension.enter(OCTET_STRING,
+						this.extensionValue);
+				if (extension.contentEquals(oidOffset, oidLength,
+						REASON_CODE_OID)) {
+					int length = extensionValue.readHeader(ENUMERATED);
+					this.removeFromCrl = 1 == length
+							&& REMOVE_FROM_CRL == extensionValue.buffer
+									.get(extensionValue.position);
+				} else if (extension.contentEquals(oidOffset, oidLength,
+						CERTIFICATE_ISSUER_OID)) {
+					if (MappedCrl.this.indirect) {
+						readCertificateIssuer(extensionValue.enter(SEQUENCE));
+					}
+				} else if (critical
+						&& !extension.contentEquals(oidOffset, oidLength,
+								INVALIDITY_DATE_OID)
+						&& !extension.contentEquals(oidOffset, oidLength,
+								HOLD_INSTRUCTION_CODE_OID)) {
+					throw new CRLException(
+							"unsupported critical CRL entry extension: "
+									+ extension.formatOid(oidOffset, oidLength));
+				}
+			}
+		}
+
+		private void readCertificateIssuer(Reader generalNames) {
+			while (generalNames.hasMore()) {
+				if (DIRECTORY_NAME == generalNames.peekTag()) {
+					this.certificateIssuer = new X500Principal(generalNames
+							.enter(DIRECTORY_NAME).readEncoded(SEQUENCE));
+					return;
+				}
+				generalNames.skip();
+			}
+		}
+
+		/**
+		 * Returns a new {@link BigInteger} of the serial number of the current
+		 * entry.
+		 */
+		public BigInteger getSerialNumber() {
+			return new BigInteger(Arrays.copyOf(this.serialNumber,
+					this.serialNumberLength));
+		}
+
+		/**
+		 * Returns the buffer holding the two's-complement encoding of the
+		 * serial number of the current entry, as returned by
+		 * {@link BigInteger#toByteArray()}. Only the first
+		 * {@link #getEncodedSerialNumberLength()} bytes are used. The buffer
+		 * is overwritten by {@link #next()}.
+		 */
+		public byte[] getEncodedSerialNumber() {
+			return this.serialNumber;
+		}
+
+		public int getEncodedSerialNumberLength() {
+			return this.serialNumberLength;
+		}
+
+		public Date getRevocationDate() {
+			return new Date(this.revocationTime);
+		}
+
+		/**
+		 * Returns the revocation date of the current entry, in milliseconds
+		 * since the epoch.
+		 */
+		public long getRevocationTime() {
+			return this.revocationTime;
+		}
+
+		/**
+		 * Returns the issuer of the revoked certificate for an indirect CRL,
+		 * <code>null</code> otherwise.
+		 */
+		public X500Principal getCertificateIssuer() {
+			return this.certificateIssuer;
+		}
+
+		/**
+		 * Returns <code>true</code> if a delta CRL lists this entry with the
+		 * <code>removeFromCRL</code> reason, i.e. the certificate is no longer
+		 * revoked.
+		 */
+		public boolean isRemoveFromCrl() {
+			return this.removeFromCrl;
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the specified leading byte of a
+	 * two's-complement integer only repeats the sign of the next byte.
+	 */
+	private static boolean isRedundantSignByte(byte b, byte next) {
+		return (0 == b && next >= 0) || (-1 == b && next < 0);
+	}
+
+	private static boolean isTime(int tag) {
+		return UTC_TIME == tag || GENERALIZED_TIME == tag;
+	}
+
+	/**
+	 * Minimal DER reader over a region of the mapped CRL.
+	 */
+	private static class Reader {
+
+		private final ByteBuffer buffer;
+
+		private int position;
+
+		private int end;
+
+		Reader(ByteBuffer buffer, int position, int end) {
+			this.buffer = buffer;
+			this.position = position;
+			this.end = end;
+		}
+
+		boolean hasMore() {
+			return this.position < this.end;
+		}
+
+		int peekTag() {
+			checkAvailable(1);
+			return this.buffer.get(this.position) & 0xff;
+		}
+
+		/**
+		 * Reads the header of the next element, positioned at its content.
+		 *
+		 * @return the content length.
+		 */
+		private int readHeader(int expectedTag) {
+			int tag = peekTag();
+			if (expectedTag != tag) {
+				throw new IllegalStateException("expected tag 0x"
+						+ Integer.toHexString(expectedTag) + " but got 0x"
+						+ Integer.toHexString(tag) + " at " + this.position);
+			}
+			this.position++;
+			checkAvailable(1);
+			int length = this.buffer.get(this.position++) & 0xff;
+			if (length > 0x80) {
+				int lengthBytes = length & 0x7f;
+				if (lengthBytes > 4) {
+					throw new IllegalStateException("length too large");
+				}
+				checkAvailable(lengthBytes);
+				length = 0;
+				for (int idx = 0; idx < lengthBytes; idx++) {
+					length = (length << 8)
+							| (this.buffer.get(this.position++) & 0xff);
+				}
+				if (length < 0) {
+					throw new IllegalStateException("length too large");
+				}
+			} else if (0x80 == length) {
+				throw new IllegalStateException("indefinite length");
+			}
+			checkAvailable(length);
+			return length;
+		}
+
+		/**
+		 * Returns a reader over the content of the next element, and moves
+		 * past it.
+		 */
+		Reader enter(int expectedTag) {
+			return enter(expectedTag, new Reader(this.buffer, 0, 0));
+		}
+
+		/**
+		 * Repositions the specified reader over the content of the next
+		 * element, and moves past it.
+		 */
+		Reader enter(int expectedTag, Reader reader) {
+			int length = readHeader(expectedTag);
+			reader.position = this.position;
+			reader.end = this.position + length;
+			this.position += length;
+			return reader;
+		}
+
+		Reader enterOctetString() {
+			return enter(OCTET_STRING);
+		}
+
+		void skip() {
+			int length = readHeader(peekTag());
+			this.position += length;
+		}
+
+		byte[] read(int expectedTag) {
+			int length = readHeader(expectedTag);
+			byte[] content = new byte[length];
+			for (int idx = 0; idx < length; idx++) {
+				content[idx] = this.buffer.get(this.position++);
+			}
+			return content;
+		}
+
+		/**
+		 * Returns the complete encoding, header included, of the next element.
+		 */
+		byte[] readEncoded(int expectedTag) {
+			int start = this.position;
+			int length = readHeader(expectedTag);
+			int encodedLength = this.position - start + length;
+			byte[] encoded = new byte[encodedLength];
+			for (int idx = 0; idx < encodedLength; idx++) {
+				encoded[idx] = this.buffer.get(start + idx);
+			}
+			this.position += length;
+			return encoded;
+		}
+
+		/**
+		 * Reads the optional critical flag of an extension.
+		 */
+		boolean readCritical() {
+			if (!hasMore() || BOOLEAN != peekTag()) {
+				return false;
+			}
+			int length = readHeader(BOOLEAN);
+			boolean critical = 1 == length
+					&& 0 != this.buffer.get(this.position);
+			this.position += length;
+			return critical;
+		}
+
+		/**
+		 * Compares the content at the specified offset with the specified
+		 * bytes, without copying.
+		 */
+		boolean contentEquals(int offset, int length, byte[] expected) {
+			if (length != expected.length) {
+				return false;
+			}
+			for (int idx = 0; idx < length; idx++) {
+				if (expected[idx] != this.buffer.get(offset + idx)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		String readOid() {
+			byte[] content = read(OBJECT_IDENTIFIER);
+			return formatOid(content);
+		}
+
+		/**
+		 * Returns the dotted form of the OID content at the specified offset.
+		 */
+		String formatOid(int offset, int length) {
+			byte[] content = new byte[length];
+			for (int idx = 0; idx < length; idx++) {
+				content[idx] = this.buffer.get(offset + idx);
+			}
+			return formatOid(content);
+		}
+
+		private String formatOid(byte[] content) {
+			StringBuilder oid = new StringBuilder();
+			long value = 0;
+			boolean first = true;
+			for (byte b : content) {
+				value = (value << 7) | (b & 0x7f);
+				if (0 == (b & 0x80)) {
+					if (first) {
+						int arc = (int) Math.min(value / 40, 2);
+						oid.append(arc).append('.').append(value - 40 * arc);
+						first = false;
+					} else {
+						oid.append('.').append(value);
+					}
+					value = 0;
+				}
+			}
+			return oid.toString();
+		}
+
+		/**
+		 * Reads a UTCTime or GeneralizedTime, returning milliseconds since
+		 * the epoch.
+		 */
+		long readTime() {
+			int tag = peekTag();
+			int length = readHeader(tag);
+			int offset = this.position;
+			this.position += length;
+			int year;
+			if (UTC_TIME == tag) {
+				year = digits(offset, 2);
+				year += year < 50 ? 2000 : 1900;
+				offset += 2;
+			} else if (GENERALIZED_TIME == tag) {
+				year = digits(offset, 4);
+				offset += 4;
+			} else {
+				throw new IllegalStateException("expected time but got 0x"
+						+ Integer.toHexString(tag));
+			}
+			int month = digits(offset, 2);
+			int day = digits(offset + 2, 2);
+			int hour = digits(offset + 4, 2);
+			int minute = digits(offset + 6, 2);
+			int second = 0;
+			int millis = 0;
+			offset += 8;
+			int timeEnd = this.position;
+			if (offset < timeEnd && isDigit(offset)) {
+				second = digits(offset, 2);
+				offset += 2;
+			}
+			if (offset < timeEnd && '.' == this.buffer.get(offset)) {
+				offset++;
+				int scale = 100;
+				while (offset < timeEnd && isDigit(offset)) {
+					millis += scale * (this.buffer.get(offset++) - '0');
+					scale /= 10;
+				}
+			}
+			if (offset >= timeEnd || 'Z' != this.buffer.get(offset)) {
+				throw new IllegalStateException("time not in UTC");
+			}
+			return (daysSinceEpoch(year, month, day) * 86400L + hour * 3600L
+					+ minute * 60L + second)
+					* 1000L + millis;
+		}
+
+		private boolean isDigit(int offset) {
+			byte b = this.buffer.get(offset);
+			return b >= '0' && b <= '9';
+		}
+
+		private int digits(int offset, int count) {
+			int value = 0;
+			for (int idx = 0; idx < count; idx++) {
+				if (!isDigit(offset + idx)) {
+					throw new IllegalStateException("invalid time");
+				}
+				value = value * 10 + (this.buffer.get(offset + idx) - '0');
+			}
+			return value;
+		}
+
+		private void checkAvailable(int count) {
+			if (this.position + count > this.end) {
+				throw new IllegalStateException("unexpected end of data");
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of days between 1970-01-01 and the specified date of
+	 * the proleptic Gregorian calendar.
+	 */
+	static long daysSinceEpoch(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day
+				- 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+				+ dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+}
@@ -2,6 +2,7 @@ package be.fedict.trust.service.bean;
 
 import javax.annotation.Resource;
 import javax.ejb.Stateless;
+import javax.jms.DeliveryMode;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Queue;
@@ -10,11 +11,17 @@ import javax.jms.QueueConnectionFactory;
 import javax.jms.QueueSender;
 import javax.jms.QueueSession;
 import javax.jms.Session;
+import javax.jms.Topic;
+import javax.jms.TopicConnection;
+import javax.jms.TopicConnectionFactory;
+import javax.jms.TopicPublisher;
+import javax.jms.TopicSession;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jboss.ejb3.annotation.Depends;
 
+import be.fedict.trust.service.CacheEntityType;
 import be.fedict.trust.service.NotificationService;
 
 @Stateless
@@ -22,7 +29,9 @@ import be.fedict.trust.service.NotificationService;
 		"org.hornetq:module=JMS,name=\"" + HarvesterMDB.HARVESTER_QUEUE_NAME
 				+ "\",type=Queue",
 		"org.hornetq:module=JMS,name=\"" + DownloaderMDB.DOWNLOADER_QUEUE_NAME
-				+ "\",type=Queue" })
+				+ "\",type=Queue",
+		"org.hornetq:module=JMS,name=\""
+				+ InvalidationMDB.INVALIDATION_TOPIC_NAME + "\",type=Topic" })
 public class NotificationServiceBean implements NotificationService {
 
 	private static final Log LOG = LogFactory
@@ -37,8 +46,19 @@ public class NotificationServiceBean implements NotificationService {
 	@Resource(mappedName = HarvesterMDB.HARVESTER_QUEUE_LOCATION)
 	private Queue harvesterQueue;
 
+	@Resource(mappedName = "java:JmsXA")
+	private TopicConnectionFactory topicConnectionFactory;
+
+	@Resource(mappedName = InvalidationMDB.INVALIDATION_TOPIC_LOCATION)
+	private Topic invalidationTopic;
+
 	private void sendMessage(JMSMessage message, Queue queue)
 			throws JMSException {
+		sendMessage(message, queue, Message.DEFAULT_PRIORITY);
+	}
+
+	private void sendMessage(JMSMessage message, Queue queue, int priority)
+			throws JMSException {
 		QueueConnection queueConnection = this.queueConnectionFactory
 				.createQueueConnection();
 		try {
@@ -51,7 +71,8 @@ public class NotificationServiceBean implements NotificationService {
 						messageType);
 				QueueSender queueSender = queueSession.createSender(queue);
 				try {
-					queueSender.send(jmsMessage);
+					queueSender.send(jmsMessage, Message.DEFAULT_DELIVERY_MODE,
+							priority, Message.DEFAULT_TIME_TO_LIVE);
 				} finally {
 					queueSender.close();
 				}
@@ -63,18 +84,56 @@ public class NotificationServiceBean implements NotificationService {
 		}
 	}
 
+	private void publishMessage(JMSMessage message, Topic topic)
+			throws JMSException {
+		TopicConnection topicConnection = this.topicConnectionFactory
+				.createTopicConnection();
+		try {
+			TopicSession topicSession = topicConnection.createTopicSession(
+					true, Session.AUTO_ACKNOWLEDGE);
+			try {
+				String messageType = message.getClass().getSimpleName();
+				Message jmsMessage = message.getJMSMessage(topicSession);
+				jmsMessage.setStringProperty(JMSMessage.MESSAGE_TYPE_PROPERTY,
+						messageType);
+				TopicPublisher topicPublisher = topicSession
+						.createPublisher(topic);
+				try {
+					topicPublisher.publish(jmsMessage,
+							DeliveryMode.NON_PERSISTENT,
+							Message.DEFAULT_PRIORITY,
+							Message.DEFAULT_TIME_TO_LIVE);
+				} finally {
+					topicPublisher.close();
+				}
+			} finally {
+				topicSession.close();
+			}
+		} finally {
+			topicConnection.close();
+		}
+	}
+
 	public void notifyDownloader(String issuerName, boolean update)
 			throws JMSException {
 		LOG.debug("notifying downloader for CA: " + issuerName);
-		JMSMessage downloadMessage = new DownloadMessage(issuerName, update);
-		sendMessage(downloadMessage, this.downloaderQueue);
+		DownloadMessage downloadMessage = new DownloadMessage(issuerName,
+				update);
+		sendMessage(downloadMessage, this.downloaderQueue,
+				downloadMessage.getPriority());
 	}
 
 	public void notifyHarvester(String issuerName, String crlFile,
 			boolean update) throws JMSException {
+		notifyHarvester(issuerName, crlFile, update, null, null);
+	}
+
+	public void notifyHarvester(String issuerName, String crlFile,
+			boolean update, String eTag, String lastModified)
+			throws JMSException {
 		LOG.debug("notifying harvester for CA: " + issuerName);
 		JMSMessage harvestMessage = new HarvestMessage(issuerName, crlFile,
-				update);
+				update, eTag, lastModified);
 		sendMessage(harvestMessage, this.harvesterQueue);
 	}
 
@@ -92,4 +151,22 @@ public class NotificationServiceBean implements NotificationService {
 		RemoveCAMessage removeCAMessage = new RemoveCAMessage(issuerName);
 		sendMessage(removeCAMessage, this.harvesterQueue);
 	}
+
+	public void notifyCleanup(String issuerName, int generation)
+			throws JMSException {
+		LOG.debug("notifying harvester for cleanup of CRL cache for CA: "
+				+ issuerName);
+		CleanupMessage cleanupMessage = new CleanupMessage(issuerName,
+				generation);
+		sendMessage(cleanupMessage, this.harvesterQueue);
+	}
+
+	public void notifyInvalidation(CacheEntityType entityType, String key,
+			long version) throws JMSException {
+		LOG.debug("publishing invalidation of " + entityType + ": " + key
+				+ " (version " + version + ")");
+		InvalidationMessage invalidationMessage = new InvalidationMessage(
+				entityType, key, version, CacheInvalidationBean.NODE_ID);
+		publishMessage(invalidationMessage, this.invalidationTopic);
+	}
 }
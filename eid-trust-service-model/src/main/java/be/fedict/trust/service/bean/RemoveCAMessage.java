@@ -47,6 +47,7 @@ public class RemoveCAMessage implements JMSMessage {
 	public Message getJMSMessage(Session session) throws JMSException {
 		Message message = session.createMessage();
 		message.setStringProperty(CA_NAME_PROPERTY, this.caName);
+		message.setStringProperty(GROUP_ID_PROPERTY, this.caName);
 		return message;
 	}
 
@@ -0,0 +1,55 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resolution of a trust domain name, as used by the validation requests, to
+ * the names of the trust domains to validate against.
+ *
+ * @author Frank Cornelis
+ */
+public class ResolvedTrustDomain {
+
+	private final List<String> trustDomainNames;
+
+	private final boolean parallel;
+
+	public ResolvedTrustDomain(List<String> trustDomainNames, boolean parallel) {
+		this.trustDomainNames = Collections.unmodifiableList(trustDomainNames);
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Returns the names of the trust domains. A single name for a regular
+	 * trust domain, the member names for a virtual trust domain.
+	 */
+	public List<String> getTrustDomainNames() {
+		return this.trustDomainNames;
+	}
+
+	/**
+	 * Returns whether the trust domains are to be evaluated concurrently.
+	 */
+	public boolean isParallel() {
+		return this.parallel;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+/**
+ * Bloom filter over the serial numbers of a CRL. A negative answer means that
+ * the serial number is definitely not revoked, a positive answer has to be
+ * confirmed via an exact lookup.
+ *
+ * @author Frank Cornelis
+ */
+public class RevocationBloomFilter {
+
+	/**
+	 * 10 bits per entry with 7 hash functions gives a false positive
+	 * probability of about 1%.
+	 */
+	private static final int BITS_PER_ENTRY = 10;
+
+	private static final int HASH_FUNCTIONS = 7;
+
+	private final long[] bits;
+
+	private final int bitCount;
+
+	public RevocationBloomFilter(int expectedEntries) {
+		long requestedBits = Math.max(64L, (long) expectedEntries
+				* BITS_PER_ENTRY);
+		int words = (int) Math.min(Integer.MAX_VALUE / 64,
+				(requestedBits + 63) / 64);
+		this.bits = new long[words];
+		this.bitCount = words * 64;
+	}
+
+	/**
+	 * Adds the serial number, encoded as per
+	 * {@link java.math.BigInteger#toByteArray()}.
+	 */
+	public void add(byte[] data, int from, int to) {
+		long hash = hash(data, from, to);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		for (int idx = 0; idx < HASH_FUNCTIONS; idx++) {
+			int bit = ((hash1 + idx * hash2) & Integer.MAX_VALUE)
+					% this.bitCount;
+			this.bits[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Returns <code>false</code> if the serial number is definitely not part
+	 * of this filter.
+	 */
+	public boolean mightContain(byte[] data) {
+		long hash = hash(data, 0, data.length);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		for (int idx = 0; idx < HASH_FUNCTIONS; idx++) {
+			int bit = ((hash1 + idx * hash2) & Integer.MAX_VALUE)
+					% this.bitCount;
+			if (0 == (this.bits[bit >>> 6] & (1L << bit))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the memory footprint in bytes.
+	 */
+	public long getMemorySize() {
+		return 8L * this.bits.length;
+	}
+
+	/**
+	 * Returns the expected false positive probability, based on the fraction
+	 * of bits set.
+	 */
+	public double getFalsePositiveProbability() {
+		long setBits = 0;
+		for (long word : this.bits) {
+			setBits += Long.bitCount(word);
+		}
+		return Math.pow((double) setBits / this.bitCount, HASH_FUNCTIONS);
+	}
+
+	/**
+	 * FNV-1a followed by the MurmurHash3 finalizer.
+	 */
+	private static long hash(byte[] data, int from, int to) {
+		long hash = 0xcbf29ce484222325L;
+		for (int idx = from; idx < to; idx++) {
+			hash ^= data[idx] & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.service.TrustServiceConstants;
+import be.fedict.trust.service.dao.RevokedCertificateDAO;
+
+/**
+ * Cleanup of CRL cache generations that are no longer visible to validations.
+ * Old entries are deleted in chunks, each chunk in a transaction of its own,
+ * so cleanup never holds locks on a large part of the CRL cache.
+ * <p>
+ * Invoked by the {@link HarvesterMDB} on a {@link CleanupMessage}, which is
+ * only delivered once the harvest that retired the entries is committed.
+ * 
+ * @author Frank Cornelis
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class RevocationCleanupBean {
+
+	private static final Log LOG = LogFactory
+			.getLog(RevocationCleanupBean.class);
+
+	private static final int CHUNK_SIZE = Integer.getInteger(
+			TrustServiceConstants.CRL_BATCH_SIZE_PROPERTY,
+			TrustServiceConstants.CRL_BATCH_SIZE);
+
+	@EJB
+	private RevokedCertificateDAO revokedCertificateDAO;
+
+	/**
+	 * Deletes the CRL cache entries of the specified CA that were removed in
+	 * the specified generation or before.
+	 */
+	public void cleanup(int issuerId, int generation) {
+		try {
+			int total = 0;
+			int purged;
+			do {
+				purged = this.revokedCertificateDAO.purgeRevokedCertificates(
+						issuerId, generation, CHUNK_SIZE);
+				total += purged;
+			} while (purged == CHUNK_SIZE);
+			LOG.debug("revocation cleanup for issuer " + issuerId + ": "
+					+ total + " entries deleted");
+		} catch (Exception e) {
+			LOG.error("revocation cleanup error for issuer " + issuerId
+					+ ": " + e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.trust.service.bean;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Difference between the cached revocation data of a CA and a newly harvested
+ * CRL. The entries of the new CRL are compared one by one against the sorted
+ * {@link RevocationIndex} of the previous CRL, so only added, changed and
+ * removed serial numbers have to be written to the database.
+ * <p>
+ * A delta CRL is not compared as such. As per RFC 5280, the complete CRL it
+ * stands for is formed via {@link #applyDelta(RevocationIndex,
+ * RevocationIndex, RevocationIndex)} on top of its base CRL, and compared as
+ * any other complete CRL.
+ * <p>
+ * A serial number listed more than once on the new CRL is only taken into
+ * account the first time, later entries are reported as
+ * {@link Change#DUPLICATE} and have to be ignored by the caller.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author Frank Cornelis
+ */
+public class RevocationDelta {
+
+	public enum Change {
+		NONE, ADDED, CHANGED, DUPLICATE
+	}
+
+	private final RevocationIndex previous;
+
+	private final BitSet seen;
+
+	private final Set<BigInteger> added;
+
+	private int addedCount;
+
+	private int changedCount;
+
+	private int duplicateCount;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param previous
+	 *            the revocation index of the previous CRL, or
+	 *            <code>null</code> if nothing was cached yet.
+	 */
+	public RevocationDelta(RevocationIndex previous) {
+		this.previous = previous;
+		this.seen = new BitSet(null == previous ? 0 : previous.size());
+		this.added = new HashSet<BigInteger>();
+	}
+
+	/**
+	 * Compares the specified entry of the new CRL against the previous CRL.
+	 */
+	public Change compare(BigInteger serialNumber, Date revocationDate) {
+		byte[] key = serialNumber.toByteArray();
+		return compare(key, key.length, revocationDate.getTime());
+	}
+
+	/**
+	 * Compares the specified entry of the new CRL against the previous CRL,
+	 * with the serial number encoded as per {@link BigInteger#toByteArray()}
+	 * in the first <code>length</code> bytes of the key. Only entries not
+	 * part of the previous CRL are materialized.
+	 */
+	public Change compare(byte[] key, int length, long revocationTime) {
+		int index = -1;
+		if (null != this.previous) {
+			index = this.previous.indexOf(key, length);
+		}
+		if (index < 0) {
+			return compareAdded(new BigInteger(Arrays.copyOf(key, length)));
+		}
+		return compare(index, revocationTime);
+	}
+
+	/**
+	 * Compares the entry at the specified position of the index of the new
+	 * CRL against the previous CRL.
+	 */
+	public Change compare(RevocationIndex index, int position) {
+		int previousIndex = -1;
+		if (null != this.previous) {
+			previousIndex = this.previous.indexOf(index, position);
+		}
+		if (previousIndex < 0) {
+			return compareAdded(index.getSerialNumber(position));
+		}
+		return compare(previousIndex, index.getRevocationTime(position));
+	}
+
+	private Change compareAdded(BigInteger serialNumber) {
+		if (this.added.add(serialNumber)) {
+			this.addedCount++;
+			return Change.ADDED;
+		}
+		this.duplicateCount++;
+		return Change.DUPLICATE;
+	}
+
+	private Change compare(int index, long revocationTime) {
+		if (this.seen.get(index)) {
+			this.duplicateCount++;
+			return Change.DUPLICATE;
+		}
+		this.seen.set(index);
+		if (this.previous.getRevocationTime(index) == revocationTime) {
+			return Change.NONE;
+		}
+		this.changedCount++;
+		return Change.CHANGED;
+	}
+
+	/**
+	 * Returns the serial numbers of the previous CRL that are no longer part
+	 * of the new complete CRL. Only complete once all entries of the new CRL
+	 * have been compared.
+	 */
+	public List<BigInteger> getRemovedSerialNumbers() {
+		List<BigInteger> removed = new ArrayList<BigInteger>();
+		if (null == this.previous) {
+			return removed;
+		}
+		for (int index = this.seen.nextClearBit(0); index < this.previous
+				.size(); index = this.seen.nextClearBit(index + 1)) {
+			removed.add(this.previous.getSerialNumber(index));
+		}
+		return removed;
+	}
+
+	public int getAddedCount() {
+		return this.addedCount;
+	}
+
+	public int getChangedCount() {
+		return this.changedCount;
+	}
+
+	/**
+	 * Returns the number of ignored duplicate entries of the new CRL.
+	 */
+	public int getDuplicateCount() {
+		return this.duplicateCount;
+	}
+
+	/**
+	 * Returns the complete CRL formed by a delta CRL on top of its base CRL.
+	 * Entries of the delta CRL replace those of the base CRL, entries listed
+	 * with the <code>removeFromCRL</code> reason are dropped. The entries of
+	 * earlier delta CRLs on the same base are not taken into account, as the
+	 * delta CRL lists all changes since its base CRL.
+	 * 
+	 * @param base
+	 *            the revocation index of the base CRL.
+	 * @param delta
+	 *            the revoked entries of the delta CRL. The CRL number and
+	 *            validity of the result are taken from this index.
+	 * @param removed
+	 *            the entries of the delta CRL listed with the
+	 *            <code>removeFromCRL</code> reason.
+	 */
+	public static RevocationIndex applyDelta(RevocationIndex base,
+			RevocationIndex delta, RevocationIndex removed) {
+		RevocationIndex.Builder builder = new RevocationIndex.Builder(delta
+				.getCaName(), delta.getCrlNumber(), delta.getThisUpdate(),
+				delta.getNextUpdate());
+		for (int position = 0; position < base.size(); position++) {
+			if (delta.indexOf(base, position) < 0
+					&& removed.indexOf(base, position) < 0) {
+				builder.add(base, position);
+			}
+		}
+		for (int position = 0; position < delta.size(); position++) {
+			builder.add(delta, position);
+		}
+		return builder.build();
+	}
+}
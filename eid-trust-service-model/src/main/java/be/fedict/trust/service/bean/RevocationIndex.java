@@ -0,0 +1,514 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+
+/**
+ * Immutable in-memory revocation index of a single certificate authority.
+ * <p>
+ * The serial numbers are kept sorted in a single byte array, together with an
+ * offset array and a revocation date array. This keeps the index compact and
+ * avoids per entry objects, so a lookup is a plain binary search. A
+ * {@link RevocationBloomFilter} built from the same entries answers most
+ * lookups of non-revoked certificates without searching at all.
+ * <p>
+ * An index can be written to a snapshot file holding the same arrays, which
+ * is read back via a memory mapping at startup.
+ *
+ * @author Frank Cornelis
+ */
+public class RevocationIndex {
+
+	private static final int SNAPSHOT_MAGIC = 0x52564958;
+
+	private static final int SNAPSHOT_VERSION = 1;
+
+	private final String caName;
+
+	private final BigInteger crlNumber;
+
+	private final long thisUpdate;
+
+	private final long nextUpdate;
+
+	private final byte[] serialNumbers;
+
+	private final int[] offsets;
+
+	private final long[] revocationDates;
+
+	private final RevocationBloomFilter bloomFilter;
+
+	private RevocationIndex(String caName, BigInteger crlNumber,
+			long thisUpdate, long nextUpdate, byte[] serialNumbers,
+			int[] offsets, long[] revocationDates) {
+		this.caName = caName;
+		this.crlNumber = crlNumber;
+		this.thisUpdate = thisUpdate;
+		this.nextUpdate = nextUpdate;
+		this.serialNumbers = serialNumbers;
+		this.offsets = offsets;
+		this.revocationDates = revocationDates;
+		this.bloomFilter = new RevocationBloomFilter(revocationDates.length);
+		for (int idx = 0; idx < revocationDates.length; idx++) {
+			this.bloomFilter.add(serialNumbers, offsets[idx], offsets[idx + 1]);
+		}
+	}
+
+	public String getCaName() {
+		return this.caName;
+	}
+
+	public BigInteger getCrlNumber() {
+		return this.crlNumber;
+	}
+
+	public Date getThisUpdate() {
+		return new Date(this.thisUpdate);
+	}
+
+	public Date getNextUpdate() {
+		return new Date(this.nextUpdate);
+	}
+
+	/**
+	 * Returns the number of revoked certificates in this index.
+	 */
+	public int size() {
+		return this.revocationDates.length;
+	}
+
+	/**
+	 * Returns the approximate memory footprint of this index in bytes.
+	 */
+	public long getMemorySize() {
+		return this.serialNumbers.length + 4L * this.offsets.length + 8L
+				* this.revocationDates.length;
+	}
+
+	public RevocationBloomFilter getBloomFilter() {
+		return this.bloomFilter;
+	}
+
+	/**
+	 * Returns <code>false</code> if the certificate with the specified serial
+	 * number is definitely not revoked. Only when <code>true</code> is
+	 * returned, {@link #findRevocationDate(BigInteger)} has to be consulted.
+	 */
+	public boolean mightBeRevoked(BigInteger serialNumber) {
+		return this.bloomFilter.mightContain(serialNumber.toByteArray());
+	}
+
+	/**
+	 * Returns <code>true</code> if the revocation data of this index can be
+	 * used for the specified validation date.
+	 */
+	public boolean isValid(Date validationDate) {
+		long time = validationDate.getTime();
+		return this.thisUpdate <= time && time <= this.nextUpdate;
+	}
+
+	/**
+	 * Returns the revocation date of the certificate with the specified serial
+	 * number, or <code>null</code> if not revoked.
+	 */
+	public Date findRevocationDate(BigInteger serialNumber) {
+		int index = indexOf(serialNumber);
+		if (index < 0) {
+			return null;
+		}
+		return new Date(this.revocationDates[index]);
+	}
+
+	/**
+	 * Returns the position of the specified serial number within this index,
+	 * or <code>-1</code> if not revoked.
+	 */
+	public int indexOf(BigInteger serialNumber) {
+		byte[] key = serialNumber.toByteArray();
+		return indexOf(key, key.length);
+	}
+
+	/**
+	 * Returns the position of the serial number, encoded as per
+	 * {@link BigInteger#toByteArray()} in the first <code>length</code> bytes
+	 * of the specified key, or <code>-1</code> if not revoked.
+	 */
+	public int indexOf(byte[] key, int length) {
+		return indexOf(key, 0, length);
+	}
+
+	/**
+	 * Returns the position within this index of the serial number at the
+	 * specified position of the other index, or <code>-1</code> if not
+	 * revoked.
+	 */
+	public int indexOf(RevocationIndex index, int position) {
+		return indexOf(index.serialNumbers, index.offsets[position],
+				index.offsets[position + 1]);
+	}
+
+	private int indexOf(byte[] key, int from, int to) {
+		int low = 0;
+		int high = this.revocationDates.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(this.serialNumbers, this.offsets[mid],
+					this.offsets[mid + 1], key, from, to);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the serial number at the specified position within this index.
+	 */
+	public BigInteger getSerialNumber(int index) {
+		int from = this.offsets[index];
+		byte[] serialNumber = new byte[this.offsets[index + 1] - from];
+		System.arraycopy(this.serialNumbers, from, serialNumber, 0,
+				serialNumber.length);
+		return new BigInteger(serialNumber);
+	}
+
+	/**
+	 * Returns the revocation time, in milliseconds, at the specified position
+	 * within this index.
+	 */
+	public long getRevocationTime(int index) {
+		return this.revocationDates[index];
+	}
+
+	/**
+	 * Writes this index to the specified snapshot file.
+	 */
+	public void writeSnapshot(File snapshotFile) throws IOException {
+		DataOutputStream outputStream = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(snapshotFile)));
+		try {
+			outputStream.writeInt(SNAPSHOT_MAGIC);
+			outputStream.writeInt(SNAPSHOT_VERSION);
+			byte[] encodedCaName = this.caName.getBytes("UTF-8");
+			outputStream.writeInt(encodedCaName.length);
+			outputStream.write(encodedCaName);
+			if (null == this.crlNumber) {
+				outputStream.writeInt(-1);
+			} else {
+				byte[] encodedCrlNumber = this.crlNumber.toByteArray();
+				outputStream.writeInt(encodedCrlNumber.length);
+				outputStream.write(encodedCrlNumber);
+			}
+			outputStream.writeLong(this.thisUpdate);
+			outputStream.writeLong(this.nextUpdate);
+			outputStream.writeInt(this.revocationDates.length);
+			outputStream.writeInt(this.serialNumbers.length);
+			for (int offset : this.offsets) {
+				outputStream.writeInt(offset);
+			}
+			for (long revocationDate : this.revocationDates) {
+				outputStream.writeLong(revocationDate);
+			}
+			outputStream.write(this.serialNumbers);
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * Reads an index from the specified snapshot file, as written by
+	 * {@link #writeSnapshot(File)}.
+	 * 
+	 * @throws IOException
+	 *             if the file is not a valid snapshot.
+	 */
+	public static RevocationIndex readSnapshot(File snapshotFile)
+			throws IOException {
+		FileInputStream inputStream = new FileInputStream(snapshotFile);
+		try {
+			FileChannel fileChannel = inputStream.getChannel();
+			MappedByteBuffer buffer = fileChannel.map(
+					FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+			try {
+				if (SNAPSHOT_MAGIC != buffer.getInt()
+						|| SNAPSHOT_VERSION != buffer.getInt()) {
+					throw new IOException("not a revocation index snapshot: "
+							+ snapshotFile);
+				}
+				// lengths are checked before allocating, so a corrupt file
+				// cannot exhaust the heap
+				String caName = new String(readBytes(buffer, buffer.getInt(),
+						snapshotFile), "UTF-8");
+				int crlNumberLength = buffer.getInt();
+				BigInteger crlNumber = -1 == crlNumberLength ? null
+						: new BigInteger(readBytes(buffer, crlNumberLength,
+								snapshotFile));
+				long thisUpdate = buffer.getLong();
+				long nextUpdate = buffer.getLong();
+				int size = buffer.getInt();
+				int serialNumbersSize = buffer.getInt();
+				checkSnapshot(size >= 0 && serialNumbersSize >= 0
+						&& 12L * size + 4 + serialNumbersSize == buffer
+								.remaining(), snapshotFile);
+				int[] offsets = new int[size + 1];
+				buffer.asIntBuffer().get(offsets);
+				buffer.position(buffer.position() + 4 * offsets.length);
+				long[] revocationDates = new long[size];
+				buffer.asLongBuffer().get(revocationDates);
+				buffer.position(buffer.position() + 8 * revocationDates.length);
+				byte[] serialNumbers = readBytes(buffer, serialNumbersSize,
+						snapshotFile);
+				checkSnapshot(0 == offsets[0]
+						&& serialNumbersSize == offsets[size], snapshotFile);
+				for (int idx = 0; idx < size; idx++) {
+					checkSnapshot(offsets[idx] < offsets[idx + 1], snapshotFile);
+				}
+				return new RevocationIndex(caName, crlNumber, thisUpdate,
+						nextUpdate, serialNumbers, offsets, revocationDates);
+			} catch (RuntimeException e) {
+				throw new IOException("corrupt revocation index snapshot: "
+						+ snapshotFile);
+			}
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private static byte[] readBytes(ByteBuffer buffer, int length,
+			File snapshotFile) throws IOException {
+		checkSnapshot(length >= 0 && length <= buffer.remaining(),
+				snapshotFile);
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static void checkSnapshot(boolean valid, File snapshotFile)
+			throws IOException {
+		if (!valid) {
+			throw new IOException("corrupt revocation index snapshot: "
+					+ snapshotFile);
+		}
+	}
+
+	/**
+	 * Orders serial numbers by encoded length first, and then by unsigned
+	 * byte value.
+	 */
+	static int compare(byte[] a, int aFrom, int aTo, byte[] b, int bFrom,
+			int bTo) {
+		int aLength = aTo - aFrom;
+		int bLength = bTo - bFrom;
+		if (aLength != bLength) {
+			return aLength < bLength ? -1 : 1;
+		}
+		for (int idx = 0; idx < aLength; idx++) {
+			int aByte = a[aFrom + idx] & 0xff;
+			int bByte = b[bFrom + idx] & 0xff;
+			if (aByte != bByte) {
+				return aByte < bByte ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Builder for {@link RevocationIndex}. Not thread-safe.
+	 */
+	public static class Builder {
+
+		private final String caName;
+
+		private final BigInteger crlNumber;
+
+		private final Date thisUpdate;
+
+		private final Date nextUpdate;
+
+		private byte[] serialNumbers = new byte[1024];
+
+		private int serialNumbersSize;
+
+		private int[] offsets = new int[128];
+
+		private long[] revocationDates = new long[128];
+
+		private int size;
+
+		public Builder(String caName, BigInteger crlNumber, Date thisUpdate,
+				Date nextUpdate) {
+			this.caName = caName;
+			this.crlNumber = crlNumber;
+			this.thisUpdate = thisUpdate;
+			this.nextUpdate = nextUpdate;
+		}
+
+		public Builder add(BigInteger serialNumber, Date revocationDate) {
+			byte[] key = serialNumber.toByteArray();
+			return add(key, key.length, revocationDate.getTime());
+		}
+
+		/**
+		 * Adds the entry at the specified position of the specified index.
+		 */
+		public Builder add(RevocationIndex index, int position) {
+			return add(index.serialNumbers, index.offsets[position],
+					index.offsets[position + 1],
+					index.revocationDates[position]);
+		}
+
+		/**
+		 * Adds the serial number encoded as per
+		 * {@link BigInteger#toByteArray()} in the first <code>length</code>
+		 * bytes of the specified key. The key is copied.
+		 */
+		public Builder add(byte[] key, int length, long revocationTime) {
+			return add(key, 0, length, revocationTime);
+		}
+
+		private Builder add(byte[] key, int from, int to, long revocationTime) {
+			int length = to - from;
+			if (this.serialNumbersSize + length > this.serialNumbers.length) {
+				byte[] newSerialNumbers = new byte[Math.max(
+						this.serialNumbers.length * 2, this.serialNumbersSize
+								+ length)];
+				System.arraycopy(this.serialNumbers, 0, newSerialNumbers, 0,
+						this.serialNumbersSize);
+				this.serialNumbers = newSerialNumbers;
+			}
+			if (this.size + 2 > this.offsets.length) {
+				int[] newOffsets = new int[this.offsets.length * 2];
+				System.arraycopy(this.offsets, 0, newOffsets, 0, this.size + 1);
+				this.offsets = newOffsets;
+				long[] newRevocationDates = new long[this.offsets.length];
+				System.arraycopy(this.revocationDates, 0, newRevocationDates,
+						0, this.size);
+				this.revocationDates = newRevocationDates;
+			}
+			System.arraycopy(key, from, this.serialNumbers,
+					this.serialNumbersSize, length);
+			this.serialNumbersSize += length;
+			this.revocationDates[this.size] = revocationTime;
+			this.size++;
+			this.offsets[this.size] = this.serialNumbersSize;
+			return this;
+		}
+
+		public RevocationIndex build() {
+			int[] order = new int[this.size];
+			for (int idx = 0; idx < this.size; idx++) {
+				order[idx] = idx;
+			}
+			sort(order, new int[this.size], 0, this.size);
+
+			byte[] sortedSerialNumbers = new byte[this.serialNumbersSize];
+			int[] sortedOffsets = new int[this.size + 1];
+			long[] sortedRevocationDates = new long[this.size];
+			int count = 0;
+			int position = 0;
+			for (int idx = 0; idx < this.size; idx++) {
+				int entry = order[idx];
+				int from = this.offsets[entry];
+				int to = this.offsets[entry + 1];
+				if (count > 0
+						&& 0 == compare(sortedSerialNumbers,
+								sortedOffsets[count - 1], position,
+								this.serialNumbers, from, to)) {
+					// duplicate serial number, last entry wins
+					sortedRevocationDates[count - 1] = this.revocationDates[entry];
+					continue;
+				}
+				System.arraycopy(this.serialNumbers, from, sortedSerialNumbers,
+						position, to - from);
+				position += to - from;
+				sortedRevocationDates[count] = this.revocationDates[entry];
+				count++;
+				sortedOffsets[count] = position;
+			}
+			if (count < this.size) {
+				int[] trimmedOffsets = new int[count + 1];
+				System.arraycopy(sortedOffsets, 0, trimmedOffsets, 0,
+						count + 1);
+				sortedOffsets = trimmedOffsets;
+				long[] trimmedRevocationDates = new long[count];
+				System.arraycopy(sortedRevocationDates, 0,
+						trimmedRevocationDates, 0, count);
+				sortedRevocationDates = trimmedRevocationDates;
+				byte[] trimmedSerialNumbers = new byte[position];
+				System.arraycopy(sortedSerialNumbers, 0, trimmedSerialNumbers,
+						0, position);
+				sortedSerialNumbers = trimmedSerialNumbers;
+			}
+			return new RevocationIndex(this.caName, this.crlNumber,
+					this.thisUpdate.getTime(), this.nextUpdate.getTime(),
+					sortedSerialNumbers, sortedOffsets, sortedRevocationDates);
+		}
+
+		/**
+		 * Stable merge sort of the entry positions on serial number.
+		 */
+		private void sort(int[] order, int[] buffer, int from, int to) {
+			if (to - from < 2) {
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			sort(order, buffer, from, mid);
+			sort(order, buffer, mid, to);
+			int left = from;
+			int right = mid;
+			int idx = from;
+			while (left < mid && right < to) {
+				if (compareEntries(order[right], order[left]) < 0) {
+					buffer[idx++] = order[right++];
+				} else {
+					buffer[idx++] = order[left++];
+				}
+			}
+			while (left < mid) {
+				buffer[idx++] = order[left++];
+			}
+			while (right < to) {
+				buffer[idx++] = order[right++];
+			}
+			System.arraycopy(buffer, from, order, from, to - from);
+		}
+
+		private int compareEntries(int a, int b) {
+			return compare(this.serialNumbers, this.offsets[a],
+					this.offsets[a + 1], this.serialNumbers, this.offsets[b],
+					this.offsets[b + 1]);
+		}
+	}
+}
@@ -0,0 +1,426 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.service.SnmpConstants;
+import be.fedict.trust.service.dao.CertificateAuthorityDAO;
+import be.fedict.trust.service.entity.CertificateAuthorityEntity;
+import be.fedict.trust.service.entity.RevokedCertificateEntity;
+import be.fedict.trust.service.snmp.SNMPInterceptor;
+
+/**
+ * Singleton holding the in-memory {@link RevocationIndex} per CA. The indexes
+ * are built by the harvester and swapped in as a whole, so readers never see
+ * a partially built index.
+ * <p>
+ * Per CA, two indexes are kept: the index of its own CRL, which the harvester
+ * compares the next CRL against, and the index used for validation. The
+ * latter also holds the revoked certificates of the CA as listed on the
+ * indirect CRLs of other CAs. Indexes are only activated once the
+ * transaction that stored their entries has been committed.
+ * <p>
+ * Only active CAs have an index for validation. It is removed as soon as the
+ * CA leaves that status, locally or via the invalidation topic. Together with
+ * the CRL number and validity the index carries, this is the state the
+ * validation uses to answer from memory without consulting the database.
+ *
+ * @author Frank Cornelis
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class RevocationIndexBean {
+
+	private static final Log LOG = LogFactory.getLog(RevocationIndexBean.class);
+
+	@EJB
+	private ValidationResultCacheBean validationResultCacheBean;
+
+	@EJB
+	private CertificateAuthorityDAO certificateAuthorityDAO;
+
+	@Resource
+	private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	private final ConcurrentMap<String, RevocationIndex> crlIndexes = new ConcurrentHashMap<String, RevocationIndex>();
+
+	private final ConcurrentMap<String, RevocationIndex> indexes = new ConcurrentHashMap<String, RevocationIndex>();
+
+	private final ConcurrentMap<String, RevocationIndex> baseIndexes = new ConcurrentHashMap<String, RevocationIndex>();
+
+	/**
+	 * Issuer ids of the CAs with an active index, identifying their SNMP
+	 * counters.
+	 */
+	private final ConcurrentMap<String, Integer> issuerIds = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * Returns the {@link RevocationIndex} to validate against for the
+	 * specified CA, including the entries of indirect CRLs of other CAs, or
+	 * <code>null</code> if not available. An available index implies the CA
+	 * is active.
+	 */
+	public RevocationIndex getRevocationIndex(String caName) {
+		return this.indexes.get(caName);
+	}
+
+	/**
+	 * Returns the {@link RevocationIndex} to validate against for the
+	 * specified CA if it is valid at the specified validation date, or
+	 * <code>null</code> if not available.
+	 */
+	public RevocationIndex getRevocationIndex(String caName,
+			Date validationDate) {
+		RevocationIndex revocationIndex = this.indexes.get(caName);
+		if (null == revocationIndex
+				|| !revocationIndex.isValid(validationDate)) {
+			return null;
+		}
+		return revocationIndex;
+	}
+
+	/**
+	 * Returns the {@link RevocationIndex} to validate against for the
+	 * specified CA if it indexes the CRL with the specified CRL number and is
+	 * valid at the specified validation date, or <code>null</code> if not
+	 * available. Guards against an index of an older CRL when an invalidation
+	 * event got lost or delayed.
+	 */
+	public RevocationIndex getRevocationIndex(String caName,
+			BigInteger crlNumber, Date validationDate) {
+		RevocationIndex revocationIndex = getRevocationIndex(caName,
+				validationDate);
+		if (null == revocationIndex
+				|| !isSameCrlNumber(crlNumber, revocationIndex.getCrlNumber())) {
+			return null;
+		}
+		return revocationIndex;
+	}
+
+	/**
+	 * Looks up the specified serial number in the specified
+	 * {@link RevocationIndex}, consulting its Bloom filter first. Returns the
+	 * revocation date, or <code>null</code> if not revoked.
+	 */
+	public Date findRevocationDate(RevocationIndex revocationIndex,
+			BigInteger serialNumber) {
+		if (!revocationIndex.mightBeRevoked(serialNumber)) {
+			SNMPInterceptor.increment(SnmpConstants.BLOOM_FILTER_NEGATIVES,
+					SnmpConstants.SNMP_SERVICE, 1L);
+			return null;
+		}
+		Date revocationDate = revocationIndex.findRevocationDate(serialNumber);
+		if (null == revocationDate) {
+			SNMPInterceptor.increment(
+					SnmpConstants.BLOOM_FILTER_FALSE_POSITIVES,
+					SnmpConstants.SNMP_SERVICE, 1L);
+		}
+		return revocationDate;
+	}
+
+	/**
+	 * Returns the {@link RevocationIndex} of the own CRL of the specified CA,
+	 * or <code>null</code> if not available.
+	 */
+	public RevocationIndex getCrlRevocationIndex(String caName) {
+		return this.crlIndexes.get(caName);
+	}
+
+	/**
+	 * Returns the {@link RevocationIndex} of the complete CRL the delta CRLs
+	 * of the specified CA apply to, or <code>null</code> if not available.
+	 */
+	public RevocationIndex getBaseRevocationIndex(String caName) {
+		return this.baseIndexes.get(caName);
+	}
+
+	/**
+	 * Keeps the specified {@link RevocationIndex} of a complete CRL to apply
+	 * the next delta CRLs on, once the current transaction commits.
+	 */
+	public void setBaseRevocationIndex(final RevocationIndex baseIndex) {
+		afterCommit(new Runnable() {
+			public void run() {
+				baseIndexes.put(baseIndex.getCaName(), baseIndex);
+			}
+		});
+	}
+
+	/**
+	 * Activates the specified {@link RevocationIndex} of the own CRL of an
+	 * active CA, replacing the previous one of the same CA, once the current
+	 * transaction commits.
+	 */
+	public void setRevocationIndex(final RevocationIndex crlIndex) {
+		final CertificateAuthorityEntity certificateAuthority = this.certificateAuthorityDAO
+				.findCertificateAuthority(crlIndex.getCaName());
+		if (null == certificateAuthority) {
+			LOG.warn("CA not found: " + crlIndex.getCaName());
+			return;
+		}
+		if (be.fedict.trust.service.entity.Status.ACTIVE != certificateAuthority
+				.getStatus()) {
+			LOG.warn("CA not active: " + crlIndex.getCaName());
+			return;
+		}
+		final RevocationIndex revocationIndex = addForeignRevocations(
+				crlIndex, certificateAuthority);
+		afterCommit(new Runnable() {
+			public void run() {
+				activate(crlIndex, revocationIndex, certificateAuthority
+						.getIssuerId());
+			}
+		});
+	}
+
+	/**
+	 * Rebuilds the {@link RevocationIndex} of the specified CA after its
+	 * entries on the indirect CRL of another CA have changed. Takes effect
+	 * once the current transaction commits.
+	 */
+	public void refreshForeignRevocations(String caName) {
+		final RevocationIndex crlIndex = this.crlIndexes.get(caName);
+		if (null == crlIndex) {
+			// validation falls back to the database
+			return;
+		}
+		final CertificateAuthorityEntity certificateAuthority = this.certificateAuthorityDAO
+				.findCertificateAuthority(caName);
+		if (null == certificateAuthority) {
+			return;
+		}
+		final RevocationIndex revocationIndex = addForeignRevocations(
+				crlIndex, certificateAuthority);
+		afterCommit(new Runnable() {
+			public void run() {
+				if (crlIndex == crlIndexes.get(crlIndex.getCaName())) {
+					activate(crlIndex, revocationIndex, certificateAuthority
+							.getIssuerId());
+				}
+			}
+		});
+	}
+
+	private void activate(RevocationIndex crlIndex,
+			RevocationIndex revocationIndex, int issuerId) {
+		String caName = crlIndex.getCaName();
+		LOG.debug("activate revocation index: " + caName + " (entries="
+				+ revocationIndex.size() + ", bytes="
+				+ revocationIndex.getMemorySize() + ")");
+		this.crlIndexes.put(caName, crlIndex);
+		this.indexes.put(caName, revocationIndex);
+		this.validationResultCacheBean.invalidateCertificateAuthority(caName);
+		if (null == this.issuerIds.put(caName, issuerId)) {
+			LOG.info("Bloom filter counters for " + caName + ": memory="
+					+ SnmpConstants.getCertificateAuthorityOid(
+							SnmpConstants.BLOOM_FILTER_MEMORY, issuerId)
+					+ ", fpp="
+					+ SnmpConstants.getCertificateAuthorityOid(
+							SnmpConstants.BLOOM_FILTER_FPP, issuerId));
+		}
+		updateBloomFilterCounters(issuerId, revocationIndex.getBloomFilter());
+	}
+
+	/**
+	 * Returns the specified index of the own CRL of a CA, extended with the
+	 * revoked certificates of the CA listed on the indirect CRLs of other
+	 * CAs. Entries of the own CRL take precedence.
+	 */
+	private RevocationIndex addForeignRevocations(RevocationIndex crlIndex,
+			CertificateAuthorityEntity certificateAuthority) {
+		List<RevokedCertificateEntity> foreignRevokedCertificates = this.certificateAuthorityDAO
+				.getForeignRevokedCertificates(certificateAuthority);
+		if (foreignRevokedCertificates.isEmpty()) {
+			return crlIndex;
+		}
+		LOG.debug("adding " + foreignRevokedCertificates.size()
+				+ " indirect CRL entries to revocation index: "
+				+ crlIndex.getCaName());
+		RevocationIndex.Builder revocationIndexBuilder = new RevocationIndex.Builder(
+				crlIndex.getCaName(), crlIndex.getCrlNumber(), crlIndex
+						.getThisUpdate(), crlIndex.getNextUpdate());
+		for (RevokedCertificateEntity revokedCertificate : foreignRevokedCertificates) {
+			byte[] serialNumber = revokedCertificate.getPk().getSerialNumber();
+			revocationIndexBuilder.add(serialNumber, serialNumber.length,
+					revokedCertificate.getRevocationDate().getTime());
+		}
+		// the last duplicate entry wins
+		for (int position = 0; position < crlIndex.size(); position++) {
+			revocationIndexBuilder.add(crlIndex, position);
+		}
+		return revocationIndexBuilder.build();
+	}
+
+	private static boolean isSameCrlNumber(BigInteger crlNumber1,
+			BigInteger crlNumber2) {
+		if (null == crlNumber1) {
+			return null == crlNumber2;
+		}
+		return crlNumber1.equals(crlNumber2);
+	}
+
+	/**
+	 * Runs the specified task once the current transaction has been
+	 * committed, or right away outside of a transaction.
+	 */
+	private void afterCommit(final Runnable runnable) {
+		if (null == this.transactionSynchronizationRegistry
+				|| null == this.transactionSynchronizationRegistry
+						.getTransactionKey()) {
+			runnable.run();
+			return;
+		}
+		this.transactionSynchronizationRegistry
+				.registerInterposedSynchronization(new Synchronization() {
+
+					public void beforeCompletion() {
+					}
+
+					public void afterCompletion(int status) {
+						if (Status.STATUS_COMMITTED == status) {
+							runnable.run();
+						}
+					}
+				});
+	}
+
+	/**
+	 * Returns a {@link RevocationIndex} of the cached revoked certificates of
+	 * the specified CA in the database, without activating it. Only to be
+	 * activated if the CA has an update period.
+	 */
+	public RevocationIndex loadRevocationIndex(
+			CertificateAuthorityEntity certificateAuthority,
+			BigInteger crlNumber) {
+		return loadRevocationIndex(certificateAuthority, crlNumber,
+				certificateAuthority.getGeneration());
+	}
+
+	/**
+	 * Returns a {@link RevocationIndex} of the specified generation of the
+	 * cached revoked certificates of the specified CA in the database, without
+	 * activating it.
+	 */
+	public RevocationIndex loadRevocationIndex(
+			CertificateAuthorityEntity certificateAuthority,
+			BigInteger crlNumber, int generation) {
+		String caName = certificateAuthority.getName();
+		LOG.debug("loading revocation index from database: " + caName);
+		Date thisUpdate = certificateAuthority.getThisUpdate();
+		Date nextUpdate = certificateAuthority.getNextUpdate();
+		RevocationIndex.Builder revocationIndexBuilder = new RevocationIndex.Builder(
+				caName, crlNumber, null == thisUpdate ? new Date(0)
+						: thisUpdate, null == nextUpdate ? new Date(0)
+						: nextUpdate);
+		for (RevokedCertificateEntity revokedCertificate : this.certificateAuthorityDAO
+				.getRevokedCertificates(certificateAuthority, generation)) {
+			revocationIndexBuilder.add(new BigInteger(revokedCertificate
+					.getPk().getSerialNumber()), revokedCertificate
+					.getRevocationDate());
+		}
+		return revocationIndexBuilder.build();
+	}
+
+	/**
+	 * Removes the {@link RevocationIndex} of the specified CA.
+	 */
+	public void removeRevocationIndex(String caName) {
+		LOG.debug("remove revocation index: " + caName);
+		this.crlIndexes.remove(caName);
+		this.baseIndexes.remove(caName);
+		this.indexes.remove(caName);
+		Integer issuerId = this.issuerIds.remove(caName);
+		if (null != issuerId) {
+			updateBloomFilterCounters(issuerId, null);
+		}
+		// after the removal, see ValidationResultCacheBean#getVersion()
+		this.validationResultCacheBean.invalidateCertificateAuthority(caName);
+	}
+
+	/**
+	 * Removes all revocation indexes.
+	 */
+	public void reset() {
+		LOG.debug("reset revocation indexes");
+		this.crlIndexes.clear();
+		this.baseIndexes.clear();
+		this.indexes.clear();
+		this.issuerIds.clear();
+		this.validationResultCacheBean.reset();
+		updateBloomFilterCounters(null, null);
+	}
+
+	/**
+	 * Publishes the memory footprint and the expected false positive rate (in
+	 * parts per million) of the Bloom filter of the CA with the specified
+	 * issuer id, together with the totals over all CAs.
+	 */
+	private void updateBloomFilterCounters(Integer issuerId,
+			RevocationBloomFilter bloomFilter) {
+		if (null != issuerId) {
+			long memorySize = 0;
+			long falsePositivePpm = 0;
+			if (null != bloomFilter) {
+				memorySize = bloomFilter.getMemorySize();
+				falsePositivePpm = Math.round(bloomFilter
+						.getFalsePositiveProbability() * 1000000);
+			}
+			String memoryOid = SnmpConstants.getCertificateAuthorityOid(
+					SnmpConstants.BLOOM_FILTER_MEMORY, issuerId);
+			String fppOid = SnmpConstants.getCertificateAuthorityOid(
+					SnmpConstants.BLOOM_FILTER_FPP, issuerId);
+			SNMPInterceptor.setValue(memoryOid, SnmpConstants.SNMP_SERVICE,
+					memorySize);
+			SNMPInterceptor.setValue(fppOid, SnmpConstants.SNMP_SERVICE,
+					falsePositivePpm);
+		}
+
+		long totalMemorySize = 0;
+		long maxFalsePositivePpm = 0;
+		for (RevocationIndex revocationIndex : this.indexes.values()) {
+			RevocationBloomFilter indexBloomFilter = revocationIndex
+					.getBloomFilter();
+			totalMemorySize += indexBloomFilter.getMemorySize();
+			maxFalsePositivePpm = Math.max(maxFalsePositivePpm, Math
+					.round(indexBloomFilter.getFalsePositiveProbability()
+							* 1000000));
+		}
+		SNMPInterceptor.setValue(SnmpConstants.BLOOM_FILTER_MEMORY,
+				SnmpConstants.SNMP_SERVICE, totalMemorySize);
+		SNMPInterceptor.setValue(SnmpConstants.BLOOM_FILTER_FPP,
+				SnmpConstants.SNMP_SERVICE, maxFalsePositivePpm);
+	}
+}
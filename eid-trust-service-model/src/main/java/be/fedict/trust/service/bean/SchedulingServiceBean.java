@@ -18,10 +18,14 @@
 
 package be.fedict.trust.service.bean;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 
 import javax.annotation.Resource;
 import javax.ejb.EJB;
+import javax.ejb.NoSuchObjectLocalException;
 import javax.ejb.ScheduleExpression;
 import javax.ejb.Stateless;
 import javax.ejb.Timeout;
@@ -49,6 +53,12 @@ import be.fedict.trust.service.exception.InvalidCronExpressionException;
 
 /**
  * Scheduler Service Bean implementation.
+ * <p>
+ * Every CA gets its own refresh timer, planned by the
+ * {@link CrlRefreshPlannerBean} ahead of the next update of its cached CRL.
+ * The trust point timers sweep all CAs of the trust point, spread over the
+ * refresh jitter, to pick up CRLs published early and to recover from failed
+ * refreshes.
  * 
  * @author wvdhaute
  */
@@ -76,6 +86,9 @@ public class SchedulingServiceBean implements SchedulingService {
 	@PersistenceContext
 	private EntityManager entityManager;
 
+	@EJB
+	private CrlRefreshPlannerBean crlRefreshPlannerBean;
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -92,6 +105,11 @@ public class SchedulingServiceBean implements SchedulingService {
 		LOG.debug("scheduler timeout for: " + timerInfo);
 		if (timerInfo.equals(TrustServiceConstants.CLOCK_DRIFT_TIMER)) {
 			handleClockDriftTimeout();
+		} else if (timerInfo
+				.startsWith(TrustServiceConstants.CRL_REFRESH_TIMER_PREFIX)) {
+			handleCertificateAuthorityTimeout(timerInfo
+					.substring(TrustServiceConstants.CRL_REFRESH_TIMER_PREFIX
+							.length()));
 		} else {
 			handleTrustPointTimeout(timerInfo);
 		}
@@ -112,23 +130,46 @@ public class SchedulingServiceBean implements SchedulingService {
 			return;
 		}
 
-		// notify harvester
+		// spread the refreshes instead of notifying all CAs at once
+		Date now = new Date();
 		for (CertificateAuthorityEntity certificateAuthority : this.trustDomainDAO
 				.listCertificateAuthorities(trustPoint)) {
-			try {
-				if (!certificateAuthority.getStatus().equals(Status.PROCESSING)) {
-					this.notificationService.notifyDownloader(
-							certificateAuthority.getName(), true);
-					LOG.debug("harvester notified for "
-							+ certificateAuthority.getName());
-				}
-			} catch (JMSException e) {
-				this.auditDAO.logAudit("Failed to notify harvester for CA="
-						+ certificateAuthority.getName());
+			if (!certificateAuthority.getStatus().equals(Status.PROCESSING)) {
+				scheduleRefresh(certificateAuthority.getName(),
+						this.crlRefreshPlannerBean.planNow(now),
+						certificateAuthority.getNextUpdate(), true);
 			}
 		}
 	}
 
+	private void handleCertificateAuthorityTimeout(String caName) {
+
+		CertificateAuthorityEntity certificateAuthority = this.entityManager
+				.find(CertificateAuthorityEntity.class, caName);
+		if (null == certificateAuthority) {
+			LOG.warn("unknown certificate authority: " + caName);
+			return;
+		}
+
+		/*
+		 * Retry in case this refresh fails. A successful refresh replaces the
+		 * retry with a refresh planned from the new CRL.
+		 */
+		scheduleRefresh(caName,
+				this.crlRefreshPlannerBean.planRetry(new Date()), null, false);
+		if (certificateAuthority.getStatus().equals(Status.PROCESSING)) {
+			LOG.debug("CA still processing: " + caName);
+			return;
+		}
+		try {
+			this.notificationService.notifyDownloader(caName, true);
+			LOG.debug("downloader notified for " + caName);
+		} catch (JMSException e) {
+			this.auditDAO.logAudit("Failed to notify harvester for CA="
+					+ caName);
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -272,11 +313,9 @@ public class SchedulingServiceBean implements SchedulingService {
 	public void cancelTimers(String timerInfo) {
 		Collection<Timer> timers = this.timerService.getTimers();
 		for (Timer timer : timers) {
-			if (timer.getInfo() != null) {
-				if (timer.getInfo().equals(timerInfo)) {
-					timer.cancel();
-					LOG.debug("cancel timer: " + timerInfo);
-				}
+			if (timerInfo.equals(getInfo(timer))) {
+				cancel(timer);
+				LOG.debug("cancel timer: " + timerInfo);
 			}
 		}
 	}
@@ -285,4 +324,97 @@ public class SchedulingServiceBean implements SchedulingService {
 		String issuerName = ca.getName();
 		this.notificationService.notifyDownloader(issuerName, true);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void scheduleRefresh(CertificateAuthorityEntity ca) {
+		scheduleRefresh(ca.getName(), this.crlRefreshPlannerBean.plan(ca
+				.getThisUpdate(), ca.getNextUpdate(), new Date()), ca
+				.getNextUpdate(), false);
+	}
+
+	/**
+	 * Schedules the refresh of the specified CA at a slot with room around the
+	 * specified date. A <code>null</code> date only cancels the scheduled
+	 * refresh.
+	 * 
+	 * @param nextUpdate
+	 *            the next update of the cached CRL, the refresh is not moved
+	 *            past it. Can be <code>null</code>.
+	 * @param keepEarlier
+	 *            if <code>true</code>, an already scheduled refresh before the
+	 *            specified date is kept.
+	 */
+	private void scheduleRefresh(String caName, Date refresh,
+			Date nextUpdate, boolean keepEarlier) {
+
+		String timerInfo = TrustServiceConstants.CRL_REFRESH_TIMER_PREFIX
+				+ caName;
+		List<Timer> caTimers = new ArrayList<Timer>();
+		for (Timer timer : this.timerService.getTimers()) {
+			if (timerInfo.equals(getInfo(timer))) {
+				caTimers.add(timer);
+			}
+		}
+
+		if (keepEarlier && null != refresh) {
+			for (Timer timer : caTimers) {
+				Date nextTimeout = getNextTimeout(timer);
+				if (null != nextTimeout && !nextTimeout.after(refresh)) {
+					LOG.debug("earlier refresh already scheduled for "
+							+ caName);
+					return;
+				}
+			}
+		}
+		for (Timer timer : caTimers) {
+			cancel(timer);
+		}
+		if (null == refresh) {
+			this.crlRefreshPlannerBean.release(caName);
+			LOG.debug("no next update, no refresh scheduled for " + caName);
+			return;
+		}
+
+		TimerConfig timerConfig = new TimerConfig();
+		timerConfig.setInfo(timerInfo);
+		timerConfig.setPersistent(false);
+
+		Date allocated = this.crlRefreshPlannerBean.allocate(caName, refresh,
+				nextUpdate);
+		this.timerService.createSingleActionTimer(allocated, timerConfig);
+
+		LOG.debug("scheduled refresh for " + caName + " at " + allocated);
+	}
+
+	/*
+	 * Timers returned by the timer service can expire or get cancelled
+	 * concurrently, after which they throw NoSuchObjectLocalException. Such
+	 * timers are skipped instead of failing the caller's transaction.
+	 */
+
+	private static Object getInfo(Timer timer) {
+		try {
+			return timer.getInfo();
+		} catch (NoSuchObjectLocalException e) {
+			return null;
+		}
+	}
+
+	private static Date getNextTimeout(Timer timer) {
+		try {
+			return timer.getNextTimeout();
+		} catch (NoSuchObjectLocalException e) {
+			return null;
+		}
+	}
+
+	private static void cancel(Timer timer) {
+		try {
+			timer.cancel();
+		} catch (NoSuchObjectLocalException e) {
+			LOG.debug("timer already expired or cancelled");
+		}
+	}
 }
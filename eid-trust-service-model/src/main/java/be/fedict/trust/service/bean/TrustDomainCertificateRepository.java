@@ -18,23 +18,42 @@
 
 package be.fedict.trust.service.bean;
 
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 import be.fedict.trust.CertificateRepository;
+import be.fedict.trust.service.entity.CertificateCache;
+import be.fedict.trust.service.entity.DecodedCertificate;
 import be.fedict.trust.service.entity.TrustDomainEntity;
 import be.fedict.trust.service.entity.TrustPointEntity;
 
 /**
  * Trust domain {@link CertificateRepository} that takes a
  * {@link TrustDomainEntity} as input and fills it up with its
- * {@link TrustPointEntity}'s certificates.
+ * {@link TrustPointEntity}'s certificates. The certificates are indexed at
+ * construction on subject name, so the repository can be shared after the
+ * entity got detached. Candidates with a matching subject name are compared
+ * on the public key hash precomputed by their {@link DecodedCertificate}.
  */
 public class TrustDomainCertificateRepository implements CertificateRepository {
 
-	private final TrustDomainEntity trustDomain;
+	private final Map<String, List<DecodedCertificate>> trustPointCertificates;
 
 	public TrustDomainCertificateRepository(TrustDomainEntity trustDomain) {
-		this.trustDomain = trustDomain;
+		this.trustPointCertificates = new HashMap<String, List<DecodedCertificate>>();
+		for (TrustPointEntity trustPoint : trustDomain.getTrustPoints()) {
+			DecodedCertificate trustPointCertificate = trustPoint.getCertificateAuthority().getDecodedCertificate();
+			List<DecodedCertificate> certificates = this.trustPointCertificates.get(trustPointCertificate.getSubjectName());
+			if (null == certificates) {
+				certificates = new LinkedList<DecodedCertificate>();
+				this.trustPointCertificates.put(trustPointCertificate.getSubjectName(), certificates);
+			}
+			certificates.add(trustPointCertificate);
+		}
 	}
 
 	/**
@@ -42,19 +61,31 @@ public class TrustDomainCertificateRepository implements CertificateRepository {
 	 */
 	@Override
 	public boolean isTrustPoint(X509Certificate certificate) {
-		for (TrustPointEntity trustPoint : this.trustDomain.getTrustPoints()) {
-			if (matches(trustPoint, certificate)) {
+		List<DecodedCertificate> certificates = this.trustPointCertificates.get(certificate.getSubjectX500Principal().toString());
+		if (null == certificates) {
+			// leaf certificates never reach the certificate cache
+			return false;
+		}
+		DecodedCertificate decodedCertificate = getDecodedCertificate(certificate);
+		for (DecodedCertificate trustPointCertificate : certificates) {
+			if (matches(trustPointCertificate, decodedCertificate)) {
 				return true;
 			}
 		}
 		return false;
 	}
 
-	private boolean matches(TrustPointEntity trustPoint, X509Certificate certificate) {
-		X509Certificate trustPointCertificate = trustPoint.getCertificateAuthority().getCertificate();
+	private boolean matches(DecodedCertificate trustPointCertificate, DecodedCertificate certificate) {
+		return trustPointCertificate.getPublicKeyHash().equals(certificate.getPublicKeyHash()) &&
+				trustPointCertificate.getCertificate().getPublicKey().equals(certificate.getCertificate().getPublicKey());
+	}
 
-		return trustPointCertificate.getSubjectDN().equals(certificate.getSubjectDN()) &&
-				trustPointCertificate.getPublicKey().equals(certificate.getPublicKey());
+	private static DecodedCertificate getDecodedCertificate(X509Certificate certificate) {
+		try {
+			return CertificateCache.getDecodedCertificate(certificate.getEncoded());
+		} catch (CertificateEncodingException e) {
+			throw new RuntimeException("certificate encoding error: " + e.getMessage(), e);
+		}
 	}
 
 }
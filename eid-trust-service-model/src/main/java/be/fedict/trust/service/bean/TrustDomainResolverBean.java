@@ -0,0 +1,217 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.service.TrustServiceConstants;
+import be.fedict.trust.service.dao.TrustDomainDAO;
+import be.fedict.trust.service.entity.TrustDomainEntity;
+import be.fedict.trust.service.entity.VirtualTrustDomainEntity;
+import be.fedict.trust.service.exception.TrustDomainNotFoundException;
+
+/**
+ * Cache of the resolution of trust domain names to {@link ResolvedTrustDomain}
+ * 's. Unknown names are remembered as well, in a bounded negative cache sized
+ * via the
+ * {@value TrustServiceConstants#UNKNOWN_TRUST_DOMAIN_CACHE_SIZE_PROPERTY}
+ * system property, so requests for bogus trust domains do not hit the
+ * database.
+ * <p>
+ * The {@link be.fedict.trust.service.TrustDomainService} invalidates the whole
+ * cache on every change to the (virtual) trust domains or the default trust
+ * domain, both immediately and after completion of the modifying transaction.
+ *
+ * @author Frank Cornelis
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class TrustDomainResolverBean {
+
+	private static final Log LOG = LogFactory
+			.getLog(TrustDomainResolverBean.class);
+
+	private final int maxUnknownSize = Integer.getInteger(
+			TrustServiceConstants.UNKNOWN_TRUST_DOMAIN_CACHE_SIZE_PROPERTY,
+			TrustServiceConstants.UNKNOWN_TRUST_DOMAIN_CACHE_SIZE);
+
+	private final ConcurrentMap<String, ResolvedTrustDomain> resolved = new ConcurrentHashMap<String, ResolvedTrustDomain>();
+
+	private final AtomicReference<ResolvedTrustDomain> defaultTrustDomain = new AtomicReference<ResolvedTrustDomain>();
+
+	private final Map<String, Boolean> unknown = new LinkedHashMap<String, Boolean>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > TrustDomainResolverBean.this.maxUnknownSize;
+		}
+	};
+
+	private final AtomicLong version = new AtomicLong();
+
+	@EJB
+	private TrustDomainDAO trustDomainDAO;
+
+	@Resource
+	private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	/**
+	 * Resolves the specified trust domain name.
+	 *
+	 * @param name
+	 *            the name of a trust domain or virtual trust domain, or
+	 *            <code>null</code> for the default trust domain.
+	 * @throws TrustDomainNotFoundException
+	 *             no trust domain nor virtual trust domain with the specified
+	 *             name exists.
+	 */
+	public ResolvedTrustDomain resolve(String name)
+			throws TrustDomainNotFoundException {
+		if (null == name) {
+			ResolvedTrustDomain resolvedTrustDomain = this.defaultTrustDomain
+					.get();
+			if (null == resolvedTrustDomain) {
+				long currentVersion = this.version.get();
+				resolvedTrustDomain = resolve(this.trustDomainDAO
+						.getDefaultTrustDomain());
+				if (currentVersion == this.version.get()) {
+					this.defaultTrustDomain.set(resolvedTrustDomain);
+					if (currentVersion != this.version.get()) {
+						// invalidated between the check and the set
+						this.defaultTrustDomain.compareAndSet(
+								resolvedTrustDomain, null);
+					}
+				}
+			}
+			return resolvedTrustDomain;
+		}
+
+		ResolvedTrustDomain resolvedTrustDomain = this.resolved.get(name);
+		if (null != resolvedTrustDomain) {
+			return resolvedTrustDomain;
+		}
+		synchronized (this.unknown) {
+			if (this.unknown.containsKey(name)) {
+				throw new TrustDomainNotFoundException();
+			}
+		}
+
+		long currentVersion = this.version.get();
+		LOG.debug("resolve trust domain: " + name);
+		TrustDomainEntity trustDomain = this.trustDomainDAO
+				.findTrustDomain(name);
+		if (null != trustDomain) {
+			resolvedTrustDomain = resolve(trustDomain);
+		} else {
+			// maybe a virtual trust domain?
+			VirtualTrustDomainEntity virtualTrustDomain = this.trustDomainDAO
+					.findVirtualTrustDomain(name);
+			if (null == virtualTrustDomain) {
+				LOG.debug("unknown trust domain: " + name);
+				if (this.maxUnknownSize > 0) {
+					synchronized (this.unknown) {
+						if (currentVersion == this.version.get()) {
+							this.unknown.put(name, Boolean.TRUE);
+							if (currentVersion != this.version.get()) {
+								// invalidated between the check and the put
+								this.unknown.remove(name);
+							}
+						}
+					}
+				}
+				throw new TrustDomainNotFoundException();
+			}
+			List<String> trustDomainNames = new LinkedList<String>();
+			for (TrustDomainEntity memberTrustDomain : virtualTrustDomain
+					.getTrustDomains()) {
+				trustDomainNames.add(memberTrustDomain.getName());
+			}
+			resolvedTrustDomain = new ResolvedTrustDomain(trustDomainNames,
+					virtualTrustDomain.isParallel());
+		}
+
+		if (currentVersion == this.version.get()) {
+			this.resolved.put(name, resolvedTrustDomain);
+			if (currentVersion != this.version.get()) {
+				// invalidated between the check and the put
+				this.resolved.remove(name, resolvedTrustDomain);
+			}
+		}
+		return resolvedTrustDomain;
+	}
+
+	private ResolvedTrustDomain resolve(TrustDomainEntity trustDomain) {
+		List<String> trustDomainNames = new LinkedList<String>();
+		trustDomainNames.add(trustDomain.getName());
+		return new ResolvedTrustDomain(trustDomainNames, false);
+	}
+
+	/**
+	 * Invalidates all cached resolutions, including the unknown names.
+	 */
+	public void invalidate() {
+		LOG.debug("invalidate trust domain resolutions");
+		clear();
+		if (null == this.transactionSynchronizationRegistry
+				|| null == this.transactionSynchronizationRegistry
+						.getTransactionKey()) {
+			return;
+		}
+		this.transactionSynchronizationRegistry
+				.registerInterposedSynchronization(new Synchronization() {
+
+					public void beforeCompletion() {
+					}
+
+					public void afterCompletion(int status) {
+						clear();
+					}
+				});
+	}
+
+	private void clear() {
+		this.version.incrementAndGet();
+		this.resolved.clear();
+		this.defaultTrustDomain.set(null);
+		synchronized (this.unknown) {
+			this.unknown.clear();
+		}
+	}
+}
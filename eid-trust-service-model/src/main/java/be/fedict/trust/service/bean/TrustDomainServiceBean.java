@@ -37,6 +37,7 @@ import javax.jms.JMSException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import be.fedict.trust.service.CacheEntityType;
 import be.fedict.trust.service.NotificationService;
 import be.fedict.trust.service.SchedulingService;
 import be.fedict.trust.service.TrustDomainService;
@@ -85,6 +86,18 @@ public class TrustDomainServiceBean implements TrustDomainService {
 	@EJB
 	private NotificationService notificationService;
 
+	@EJB
+	private RevocationIndexBean revocationIndexBean;
+
+	@EJB
+	private TrustValidationPlanCacheBean trustValidationPlanCacheBean;
+
+	@EJB
+	private ValidationResultCacheBean validationResultCacheBean;
+
+	@EJB
+	private TrustDomainResolverBean trustDomainResolverBean;
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -96,6 +109,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 			throw new TrustDomainAlreadyExistsException();
 		}
 		LOG.debug("add trust domain: " + name);
+		this.trustDomainResolverBean.invalidate();
+		notifyInvalidation(name);
 		return this.trustDomainDAO.addTrustDomain(name);
 	}
 
@@ -115,6 +130,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 			throw new TrustDomainAlreadyExistsException();
 		}
 		LOG.debug("add virtualtrust domain: " + name);
+		this.trustDomainResolverBean.invalidate();
+		notifyInvalidation(name);
 		return this.trustDomainDAO.addVirtualTrustDomain(name);
 	}
 
@@ -125,6 +142,9 @@ public class TrustDomainServiceBean implements TrustDomainService {
 
 		LOG.debug("remove trust domain: " + trustDomain.getName());
 		this.trustDomainDAO.removeTrustDomain(trustDomain);
+		this.trustDomainResolverBean.invalidate();
+		this.trustValidationPlanCacheBean.invalidate(trustDomain.getName());
+		notifyInvalidation(trustDomain.getName());
 	}
 
 	/**
@@ -136,6 +156,9 @@ public class TrustDomainServiceBean implements TrustDomainService {
 		LOG.debug("remove virtual trust domain: "
 				+ virtualTrustDomain.getName());
 		this.trustDomainDAO.removeVirtualTrustDomain(virtualTrustDomain);
+		this.trustDomainResolverBean.invalidate();
+		this.validationResultCacheBean.reset();
+		notifyInvalidation(virtualTrustDomain.getName());
 	}
 
 	/**
@@ -174,6 +197,24 @@ public class TrustDomainServiceBean implements TrustDomainService {
 		TrustDomainEntity attachedTrustDomain = this.trustDomainDAO
 				.findTrustDomain(trustDomain.getName());
 		attachedTrustDomain.setUseCaching(trustDomain.isUseCaching());
+		this.trustValidationPlanCacheBean.invalidate(trustDomain.getName());
+		notifyInvalidation(trustDomain.getName());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public VirtualTrustDomainEntity save(
+			VirtualTrustDomainEntity virtualTrustDomain)
+			throws VirtualTrustDomainNotFoundException {
+
+		LOG.debug("save virtual trust domain: " + virtualTrustDomain.getName());
+		VirtualTrustDomainEntity attachedVirtualTrustDomain = this.trustDomainDAO
+				.getVirtualTrustDomain(virtualTrustDomain.getName());
+		attachedVirtualTrustDomain.setParallel(virtualTrustDomain.isParallel());
+		this.trustDomainResolverBean.invalidate();
+		notifyInvalidation(virtualTrustDomain.getName());
+		return attachedVirtualTrustDomain;
 	}
 
 	/**
@@ -206,6 +247,9 @@ public class TrustDomainServiceBean implements TrustDomainService {
 
 		LOG.debug("set default trust domain: " + trustDomain.getName());
 		this.trustDomainDAO.setDefaultTrustDomain(trustDomain);
+		this.trustDomainResolverBean.invalidate();
+		this.validationResultCacheBean.reset();
+		notifyInvalidation(trustDomain.getName());
 
 	}
 
@@ -225,6 +269,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 		// remove cache for each CA
 		for (String caName : this.trustDomainDAO.listCANames(trustPoint)) {
 			this.certificateAuthorityDAO.removeRevokedCertificates(caName);
+			this.revocationIndexBean.removeRevocationIndex(caName);
+			notifyInvalidation(CacheEntityType.CERTIFICATE_AUTHORITY, caName);
 		}
 
 		// remove CA's
@@ -242,6 +288,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 
 		// remove trust point
 		this.trustDomainDAO.removeTrustPoint(attachedTrustPoint);
+		this.trustValidationPlanCacheBean.invalidateAll();
+		notifyInvalidation(null);
 	}
 
 	/**
@@ -310,6 +358,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 			trustPoints.add(this.trustDomainDAO.findTrustPoint(trustPointName));
 		}
 		attachedTrustDomain.setTrustPoints(trustPoints);
+		this.trustValidationPlanCacheBean.invalidate(trustDomain.getName());
+		notifyInvalidation(trustDomain.getName());
 	}
 
 	/**
@@ -330,6 +380,9 @@ public class TrustDomainServiceBean implements TrustDomainService {
 					.findTrustDomain(trustDomainName));
 		}
 		attachedVirtualTrustDomain.setTrustDomains(trustDomains);
+		this.trustDomainResolverBean.invalidate();
+		this.validationResultCacheBean.reset();
+		notifyInvalidation(virtualTrustDomain.getName());
 		return attachedVirtualTrustDomain;
 	}
 
@@ -341,6 +394,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 
 		LOG.debug("add certificate policy \"" + policy + "\" to trust domain "
 				+ trustDomain.getName());
+		this.trustValidationPlanCacheBean.invalidate(trustDomain.getName());
+		notifyInvalidation(trustDomain.getName());
 		return this.trustDomainDAO.addCertificatePolicy(trustDomain, policy);
 	}
 
@@ -353,6 +408,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 
 		LOG.debug("add key usage constraint " + keyUsage + " allowed="
 				+ allowed);
+		this.trustValidationPlanCacheBean.invalidate(trustDomain.getName());
+		notifyInvalidation(trustDomain.getName());
 		return this.trustDomainDAO.addKeyUsageConstraint(trustDomain, keyUsage,
 				allowed);
 	}
@@ -370,6 +427,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 			attachedKeyUsageConstraint.setAllowed(keyUsageConstraint
 					.isAllowed());
 		}
+		this.trustValidationPlanCacheBean.invalidateAll();
+		notifyInvalidation(null);
 	}
 
 	/**
@@ -379,6 +438,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 			String dn) {
 
 		LOG.debug("Add DN constraint: " + dn);
+		this.trustValidationPlanCacheBean.invalidate(trustDomain.getName());
+		notifyInvalidation(trustDomain.getName());
 		return this.trustDomainDAO.addDNConstraint(trustDomain, dn);
 	}
 
@@ -391,6 +452,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 		DNConstraintEntity attachedDNConstraint = (DNConstraintEntity) this.trustDomainDAO
 				.findCertificateConstraint(dnConstraint);
 		attachedDNConstraint.setDn(dnConstraint.getDn());
+		this.trustValidationPlanCacheBean.invalidateAll();
+		notifyInvalidation(null);
 	}
 
 	/**
@@ -401,6 +464,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 			throws CertificateException {
 
 		LOG.debug("add end entity constraint");
+		this.trustValidationPlanCacheBean.invalidate(trustDomain.getName());
+		notifyInvalidation(trustDomain.getName());
 		return this.trustDomainDAO.addEndEntityConstraint(trustDomain,
 				getCertificate(certificateBytes));
 	}
@@ -412,6 +477,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 			TrustDomainEntity trustDomain, boolean qc) {
 
 		LOG.debug("Add QC constraint: " + qc);
+		this.trustValidationPlanCacheBean.invalidate(trustDomain.getName());
+		notifyInvalidation(trustDomain.getName());
 		return this.trustDomainDAO.addQCStatementsConstraint(trustDomain, qc);
 	}
 
@@ -425,6 +492,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 				.findCertificateConstraint(qcConstraint);
 		attachedQcStatementsConstraint.setQcComplianceFilter(qcConstraint
 				.getQcComplianceFilter());
+		this.trustValidationPlanCacheBean.invalidateAll();
+		notifyInvalidation(null);
 	}
 
 	/**
@@ -433,6 +502,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 	public TSAConstraintEntity addTSAConstraint(TrustDomainEntity trustDomain) {
 
 		LOG.debug("Add TSA constraint");
+		this.trustValidationPlanCacheBean.invalidate(trustDomain.getName());
+		notifyInvalidation(trustDomain.getName());
 		return this.trustDomainDAO.addTSAConstraint(trustDomain);
 	}
 
@@ -445,6 +516,8 @@ public class TrustDomainServiceBean implements TrustDomainService {
 		LOG.debug("Remove certificate constraint: "
 				+ certificateConstraint.getClass());
 		this.trustDomainDAO.removeCertificateConstraint(certificateConstraint);
+		this.trustValidationPlanCacheBean.invalidateAll();
+		notifyInvalidation(null);
 
 	}
 
@@ -554,10 +627,31 @@ public class TrustDomainServiceBean implements TrustDomainService {
 			return;
 		}
 		caEntity.setStatus(Status.NONE);
+		this.revocationIndexBean.removeRevocationIndex(caName);
+		notifyInvalidation(CacheEntityType.CERTIFICATE_AUTHORITY, caName);
 		/*
 		 * Next we notify the scheduling service that the CRL cache for this CA
 		 * can be cleared.
 		 */
 		this.notificationService.notifyRemoveCA(caName);
 	}
+
+	/**
+	 * Lets the other nodes invalidate their caches of the specified trust
+	 * domain, or of all trust domains if <code>null</code>, once the change
+	 * has been committed.
+	 */
+	private void notifyInvalidation(String trustDomainName) {
+		notifyInvalidation(CacheEntityType.TRUST_DOMAIN, trustDomainName);
+	}
+
+	private void notifyInvalidation(CacheEntityType entityType, String key) {
+		try {
+			this.notificationService.notifyInvalidation(entityType, key, System
+					.currentTimeMillis());
+		} catch (JMSException e) {
+			LOG.error("could not publish invalidation of " + entityType + " "
+					+ key + ": " + e.getMessage(), e);
+		}
+	}
 }
@@ -0,0 +1,64 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import be.fedict.trust.service.ValidationResult;
+
+/**
+ * Outcome of the validation of a certificate chain against a single trust
+ * domain.
+ *
+ * @author Frank Cornelis
+ */
+public class TrustDomainValidation {
+
+	private final TrustValidationPlan plan;
+
+	private final ValidationResult validationResult;
+
+	private final TrustServiceTrustLinker trustLinker;
+
+	public TrustDomainValidation(TrustValidationPlan plan,
+			ValidationResult validationResult,
+			TrustServiceTrustLinker trustLinker) {
+		this.plan = plan;
+		this.validationResult = validationResult;
+		this.trustLinker = trustLinker;
+	}
+
+	public TrustValidationPlan getPlan() {
+		return this.plan;
+	}
+
+	public ValidationResult getValidationResult() {
+		return this.validationResult;
+	}
+
+	/**
+	 * Returns the used CRL cache trust linker, or <code>null</code> if the CRL
+	 * cache was not consulted.
+	 */
+	public TrustServiceTrustLinker getTrustLinker() {
+		return this.trustLinker;
+	}
+
+	public boolean isValid() {
+		return this.validationResult.isValid();
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import javax.ejb.EJB;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.FallbackTrustLinker;
+import be.fedict.trust.RevocationData;
+import be.fedict.trust.TrustLinker;
+import be.fedict.trust.TrustValidator;
+import be.fedict.trust.crl.CachedCrlRepository;
+import be.fedict.trust.crl.CrlTrustLinker;
+import be.fedict.trust.ocsp.OcspTrustLinker;
+import be.fedict.trust.ocsp.OcspRepository;
+import be.fedict.trust.service.ValidationResult;
+
+/**
+ * Validates certificate chains against a single trust domain. Invoked directly
+ * by the trust service for sequential evaluation, and from the asynchronous
+ * {@link ValidationExecutorBean} invocations for parallel evaluation of
+ * virtual trust domains and for batch validations.
+ * <p>
+ * Validation only reads from the database and runs without transaction. Side
+ * effects on the revocation data cache go through the
+ * {@link CertificateAuthorityDiscoveryQueueBean}.
+ *
+ * @author Frank Cornelis
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.SUPPORTS)
+public class TrustDomainValidatorBean {
+
+	private static final Log LOG = LogFactory
+			.getLog(TrustDomainValidatorBean.class);
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@EJB
+	private HttpTransportBean httpTransportBean;
+
+	@EJB
+	private CrlRepositoryServiceBean crlRepositoryService;
+
+	@EJB
+	private RevocationIndexBean revocationIndexBean;
+
+	@EJB
+	private VerifiedLinkCacheBean verifiedLinkCacheBean;
+
+	@EJB
+	private CertificateAuthorityDiscoveryQueueBean certificateAuthorityDiscoveryQueueBean;
+
+	/**
+	 * Validates the specified certificate chain against the trust domain of
+	 * the specified {@link TrustValidationPlan}.
+	 *
+	 * @param returnRevocationData
+	 *            if <code>true</code> the used revocation data will be filled
+	 *            in and the CRL cache will not be used.
+	 * @param sessionContext
+	 *            the session context of the asynchronous invocation that
+	 *            performs the validation, used to stop once it is cancelled.
+	 *            Can be <code>null</code>.
+	 */
+	public TrustDomainValidation validate(TrustValidationPlan plan,
+			List<X509Certificate> certificateChain, boolean returnRevocationData,
+			SessionContext sessionContext) {
+		TrustServiceTrustLinker trustLinker = null;
+		if (!returnRevocationData && plan.isUseCaching()) {
+			// if returnRevocationData set, don't use cached revocation data
+			trustLinker = new TrustServiceTrustLinker(this.entityManager,
+					this.revocationIndexBean,
+					this.certificateAuthorityDiscoveryQueueBean);
+		}
+		TrustValidator trustValidator = getTrustValidator(plan, trustLinker,
+				returnRevocationData, sessionContext);
+
+		try {
+			trustValidator.isTrusted(certificateChain);
+		} catch (CertPathValidatorException ignored) {
+			LOG.debug("cert path validation error: " + ignored.getMessage(),
+					ignored);
+		}
+
+		return new TrustDomainValidation(plan, new ValidationResult(
+				trustValidator.getResult(), trustValidator.getRevocationData()),
+				trustLinker);
+	}
+
+	/**
+	 * Validates the specified certificate chain against the specified trust
+	 * domain plans one after the other, returning the first valid result or
+	 * the last failure. Returns <code>null</code> if there are no plans.
+	 */
+	public TrustDomainValidation validate(List<TrustValidationPlan> plans,
+			List<X509Certificate> certificateChain, boolean returnRevocationData) {
+		return validate(plans, certificateChain, returnRevocationData, null);
+	}
+
+	/**
+	 * Validates the specified certificate chain against the specified trust
+	 * domain plans one after the other, returning the first valid result or
+	 * the last failure. Returns <code>null</code> if there are no plans.
+	 *
+	 * @param sessionContext
+	 *            the session context of the asynchronous invocation that
+	 *            performs the validation, used to stop once it is cancelled.
+	 *            Can be <code>null</code>.
+	 */
+	public TrustDomainValidation validate(List<TrustValidationPlan> plans,
+			List<X509Certificate> certificateChain, boolean returnRevocationData,
+			SessionContext sessionContext) {
+		TrustDomainValidation trustDomainValidation = null;
+		for (TrustValidationPlan plan : plans) {
+			if (null != sessionContext && sessionContext.wasCancelCalled()) {
+				break;
+			}
+			trustDomainValidation = validate(plan, certificateChain,
+					returnRevocationData, sessionContext);
+			if (trustDomainValidation.isValid()) {
+				break;
+			}
+		}
+		return trustDomainValidation;
+	}
+
+	/**
+	 * Returns new {@link TrustValidator} configured according to the specified
+	 * {@link TrustValidationPlan}.
+	 *
+	 * @param returnRevocationData
+	 *            if <code>true</code> the used revocation data will be filled
+	 *            in the returned {@link TrustValidator}.
+	 */
+	public TrustValidator getTrustValidator(TrustValidationPlan plan,
+			boolean returnRevocationData) {
+		TrustLinker trustLinker = null;
+		if (!returnRevocationData && plan.isUseCaching()) {
+			// if returnRevocationData set, don't use cached revocation data
+			trustLinker = new TrustServiceTrustLinker(this.entityManager,
+					this.revocationIndexBean,
+					this.certificateAuthorityDiscoveryQueueBean);
+		}
+		return getTrustValidator(plan, trustLinker, returnRevocationData, null);
+	}
+
+	/**
+	 * Returns new {@link TrustValidator} configured according to the specified
+	 * {@link TrustValidationPlan}.
+	 *
+	 * @param trustLinker
+	 *            optional customized {@link TrustLinker}. Can be
+	 *            <code>null</code>.
+	 * @param sessionContext
+	 *            optional session context of the asynchronous invocation that
+	 *            performs the validation. Can be <code>null</code>.
+	 */
+	private TrustValidator getTrustValidator(TrustValidationPlan plan,
+			TrustLinker trustLinker, boolean returnRevocationData,
+			SessionContext sessionContext) {
+		TrustValidator trustValidator;
+		if (returnRevocationData) {
+			trustValidator = new TrustValidator(plan.getCertificateRepository(),
+					new RevocationData());
+		} else {
+			trustValidator = new TrustValidator(plan.getCertificateRepository());
+		}
+		trustValidator.addTrustLinker(new CachingPublicKeyTrustLinker(plan
+				.getPublicKeyTrustLinker(), this.verifiedLinkCacheBean));
+
+		// online revocation checks go over the pooled HTTP connections
+		OcspRepository ocspRepository = this.crlRepositoryService
+				.getOcspRepository();
+		if (null == ocspRepository) {
+			ocspRepository = new TrustServiceOcspRepository(
+					this.httpTransportBean);
+			this.crlRepositoryService.setOcspRepository(ocspRepository);
+		}
+
+		CachedCrlRepository cachedCrlRepository = this.crlRepositoryService
+				.getCachedCrlRepository();
+		if (null == cachedCrlRepository) {
+			cachedCrlRepository = new CachedCrlRepository(
+					new TrustServiceCrlRepository(this.httpTransportBean));
+			this.crlRepositoryService
+					.setCachedCrlRepository(cachedCrlRepository);
+		}
+
+		FallbackTrustLinker fallbackTrustLinker = new FallbackTrustLinker();
+		if (null != trustLinker) {
+			fallbackTrustLinker.addTrustLinker(trustLinker);
+		}
+		fallbackTrustLinker.addTrustLinker(new OcspTrustLinker(ocspRepository));
+		fallbackTrustLinker.addTrustLinker(new CrlTrustLinker(
+				cachedCrlRepository));
+
+		if (null != sessionContext) {
+			trustValidator.addTrustLinker(new CancellableTrustLinker(
+					fallbackTrustLinker, sessionContext));
+		} else {
+			trustValidator.addTrustLinker(fallbackTrustLinker);
+		}
+
+		plan.addConstraints(trustValidator);
+		return trustValidator;
+	}
+}
@@ -28,21 +28,24 @@ import java.security.cert.CertStoreException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.ejb.EJB;
+import javax.ejb.EJBException;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.interceptor.Interceptors;
-import javax.jms.JMSException;
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -52,45 +55,21 @@ import org.bouncycastle.tsp.TSPException;
 import org.bouncycastle.tsp.TimeStampToken;
 
 import be.fedict.trust.FallbackTrustLinker;
-import be.fedict.trust.NetworkConfig;
-import be.fedict.trust.PublicKeyTrustLinker;
 import be.fedict.trust.RevocationData;
-import be.fedict.trust.TrustLinker;
 import be.fedict.trust.TrustLinkerResult;
 import be.fedict.trust.TrustValidator;
-import be.fedict.trust.constraints.CertificatePoliciesCertificateConstraint;
-import be.fedict.trust.constraints.DistinguishedNameCertificateConstraint;
-import be.fedict.trust.constraints.EndEntityCertificateConstraint;
-import be.fedict.trust.constraints.KeyUsageCertificateConstraint;
-import be.fedict.trust.constraints.QCStatementsCertificateConstraint;
-import be.fedict.trust.crl.CachedCrlRepository;
-import be.fedict.trust.crl.CrlTrustLinker;
 import be.fedict.trust.crl.OfflineCrlRepository;
-import be.fedict.trust.crl.OnlineCrlRepository;
-import be.fedict.trust.ocsp.OcspTrustLinker;
 import be.fedict.trust.ocsp.OfflineOcspRepository;
-import be.fedict.trust.ocsp.OnlineOcspRepository;
-import be.fedict.trust.service.NotificationService;
-import be.fedict.trust.service.SchedulingService;
 import be.fedict.trust.service.SnmpConstants;
 import be.fedict.trust.service.TrustService;
+import be.fedict.trust.service.TrustServiceConstants;
 import be.fedict.trust.service.ValidationResult;
 import be.fedict.trust.service.dao.AuditDAO;
 import be.fedict.trust.service.dao.CertificateAuthorityDAO;
 import be.fedict.trust.service.dao.ConfigurationDAO;
-import be.fedict.trust.service.dao.TrustDomainDAO;
 import be.fedict.trust.service.entity.CertificateAuthorityEntity;
 import be.fedict.trust.service.entity.Status;
-import be.fedict.trust.service.entity.TrustDomainEntity;
-import be.fedict.trust.service.entity.VirtualTrustDomainEntity;
 import be.fedict.trust.service.entity.WSSecurityConfigEntity;
-import be.fedict.trust.service.entity.constraints.CertificateConstraintEntity;
-import be.fedict.trust.service.entity.constraints.DNConstraintEntity;
-import be.fedict.trust.service.entity.constraints.EndEntityConstraintEntity;
-import be.fedict.trust.service.entity.constraints.KeyUsageConstraintEntity;
-import be.fedict.trust.service.entity.constraints.PolicyConstraintEntity;
-import be.fedict.trust.service.entity.constraints.QCStatementsConstraintEntity;
-import be.fedict.trust.service.exception.InvalidCronExpressionException;
 import be.fedict.trust.service.exception.TrustDomainNotFoundException;
 import be.fedict.trust.service.snmp.SNMP;
 import be.fedict.trust.service.snmp.SNMPCounter;
@@ -107,17 +86,20 @@ public class TrustServiceBean implements TrustService {
 
 	private static final Log LOG = LogFactory.getLog(TrustServiceBean.class);
 
-	@EJB
-	private ConfigurationDAO configurationDAO;
+	/**
+	 * Milliseconds between checks for completed parallel trust domain
+	 * validations.
+	 */
+	private static final long PARALLEL_POLL_INTERVAL = 5;
 
-	@PersistenceContext
-	private EntityManager entityManager;
+	private final int batchConcurrency = Math.max(1,
+			Integer.getInteger(TrustServiceConstants.BATCH_CONCURRENCY_PROPERTY, TrustServiceConstants.BATCH_CONCURRENCY));
 
 	@EJB
-	private NotificationService notificationService;
+	private ConfigurationDAO configurationDAO;
 
 	@EJB
-	private TrustDomainDAO trustDomainDAO;
+	private TrustDomainResolverBean trustDomainResolverBean;
 
 	@EJB
 	private CertificateAuthorityDAO certificateAuthorityDAO;
@@ -126,10 +108,25 @@ public class TrustServiceBean implements TrustService {
 	private AuditDAO auditDAO;
 
 	@EJB
-	private SchedulingService schedulingService;
+	private RevocationIndexBean revocationIndexBean;
+
+	@EJB
+	private CertificateAuthorityDiscoveryQueueBean certificateAuthorityDiscoveryQueueBean;
+
+	@EJB
+	private TrustValidationPlanCacheBean trustValidationPlanCacheBean;
 
 	@EJB
-	private CrlRepositoryServiceBean crlRepositoryService;
+	private VerifiedLinkCacheBean verifiedLinkCacheBean;
+
+	@EJB
+	private ValidationResultCacheBean validationResultCacheBean;
+
+	@EJB
+	private TrustDomainValidatorBean trustDomainValidatorBean;
+
+	@EJB
+	private ValidationExecutorBean validationExecutorBean;
 
 	@SNMP(oid = SnmpConstants.CACHE_HITS)
 	private Long cacheHits;
@@ -140,9 +137,96 @@ public class TrustServiceBean implements TrustService {
 	@SNMP(oid = SnmpConstants.CACHE_HIT_PERCENTAGE, derived = true)
 	private Long cacheHitPercentage;
 
-	@TransactionAttribute(TransactionAttributeType.REQUIRED)
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 	@SNMP(oid = SnmpConstants.VALIDATE)
 	public ValidationResult validate(String trustDomainName, List<X509Certificate> certificateChain, boolean returnRevocationData) throws TrustDomainNotFoundException {
+		checkCertificateChain(certificateChain);
+		LOG.debug("isValid: " + certificateChain.get(0).getSubjectX500Principal());
+
+		String cacheKey = null;
+		if (!returnRevocationData) {
+			cacheKey = this.validationResultCacheBean.getKey(trustDomainName, certificateChain);
+			ValidationResult cachedResult = this.validationResultCacheBean.get(cacheKey);
+			if (null != cachedResult) {
+				LOG.debug("cached validation result");
+				return cachedResult;
+			}
+		}
+
+		// taken before validating, results based on refreshed CRL caches are not cached
+		long cacheVersion = this.validationResultCacheBean.getVersion();
+		ResolvedTrustDomain resolvedTrustDomain = this.trustDomainResolverBean.resolve(trustDomainName);
+		List<TrustValidationPlan> plans = getTrustValidationPlans(resolvedTrustDomain);
+		TrustDomainValidation trustDomainValidation;
+		if (plans.size() > 1 && resolvedTrustDomain.isParallel()) {
+			trustDomainValidation = validateParallel(plans, certificateChain, returnRevocationData);
+		} else {
+			trustDomainValidation = this.trustDomainValidatorBean.validate(plans, certificateChain, returnRevocationData);
+		}
+		return getValidationResult(trustDomainValidation, cacheKey, cacheVersion, certificateChain);
+	}
+
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	public List<ValidationResult> validateBatch(String trustDomainName, List<List<X509Certificate>> certificateChains, final boolean returnRevocationData)
+			throws TrustDomainNotFoundException {
+		LOG.debug("batch validate: " + certificateChains.size() + " certificate chains");
+		// every chain counts as a validation
+		SNMPInterceptor.increment(SnmpConstants.VALIDATE, SnmpConstants.SNMP_SERVICE, (long) certificateChains.size());
+
+		long cacheVersion = this.validationResultCacheBean.getVersion();
+		// trust domain resolution and plans are shared by the whole batch
+		final List<TrustValidationPlan> plans = getTrustValidationPlans(this.trustDomainResolverBean.resolve(trustDomainName));
+
+		int size = certificateChains.size();
+		ValidationResult[] validationResults = new ValidationResult[size];
+		String[] cacheKeys = new String[size];
+		List<Future<TrustDomainValidation>> futures = new ArrayList<Future<TrustDomainValidation>>(size);
+		try {
+			for (int idx = 0; idx < size; idx++) {
+				// a batch only has a bounded number of validations in flight
+				while (futures.size() < size && futures.size() < idx + this.batchConcurrency) {
+					int next = futures.size();
+					List<X509Certificate> certificateChain = certificateChains.get(next);
+					Future<TrustDomainValidation> future = null;
+					try {
+						checkCertificateChain(certificateChain);
+						if (!returnRevocationData) {
+							cacheKeys[next] = this.validationResultCacheBean.getKey(trustDomainName, certificateChain);
+							validationResults[next] = this.validationResultCacheBean.get(cacheKeys[next]);
+						}
+						if (null == validationResults[next]) {
+							future = this.validationExecutorBean.validate(plans, certificateChain, returnRevocationData);
+						}
+					} catch (IllegalArgumentException e) {
+						validationResults[next] = new ValidationResult(e.getMessage());
+					}
+					futures.add(future);
+				}
+
+				Future<TrustDomainValidation> future = futures.get(idx);
+				if (null == future) {
+					continue;
+				}
+				try {
+					validationResults[idx] = getValidationResult(future.get(), cacheKeys[idx], cacheVersion, certificateChains.get(idx));
+				} catch (ExecutionException e) {
+					LOG.error("batch validation error: " + e.getCause().getMessage(), e.getCause());
+					validationResults[idx] = new ValidationResult("validation error: " + e.getCause().getMessage());
+				} catch (RuntimeException e) {
+					LOG.error("batch validation error: " + e.getMessage(), e);
+					validationResults[idx] = new ValidationResult("validation error: " + e.getMessage());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EJBException("interrupted while validating", e);
+		} finally {
+			cancel(futures);
+		}
+		return Arrays.asList(validationResults);
+	}
+
+	private void checkCertificateChain(List<X509Certificate> certificateChain) {
 		if (null == certificateChain) {
 			throw new IllegalArgumentException("certificate chain should not be null");
 		}
@@ -152,33 +236,130 @@ public class TrustServiceBean implements TrustService {
 				throw new IllegalArgumentException("certificate chain entry should not be null");
 			}
 		}
-		LOG.debug("isValid: " + certificateChain.get(0).getSubjectX500Principal());
+	}
 
-		TrustLinkerResult lastResult = null;
-		RevocationData lastRevocationData = null;
-		for (TrustDomainEntity trustDomain : getTrustDomains(trustDomainName)) {
-			TrustValidator trustValidator = getTrustValidator(trustDomain, returnRevocationData);
+	/**
+	 * Returns the {@link ValidationResult} of the specified
+	 * {@link TrustDomainValidation}. If valid, harvesting is triggered and the
+	 * result is cached when possible.
+	 * 
+	 * @param cacheVersion
+	 *            the version of the validation result cache before validating.
+	 */
+	private ValidationResult getValidationResult(TrustDomainValidation trustDomainValidation, String cacheKey, long cacheVersion,
+			List<X509Certificate> certificateChain) {
+		if (null == trustDomainValidation) {
+			return new ValidationResult(null, null);
+		}
 
-			try {
-				trustValidator.isTrusted(certificateChain);
-			} catch (CertPathValidatorException ignored) {
-				LOG.debug("cert path validation error: " + ignored.getMessage(), ignored);
+		ValidationResult validationResult = trustDomainValidation.getValidationResult();
+		if (validationResult.isValid()) {
+			TrustValidationPlan plan = trustDomainValidation.getPlan();
+			LOG.debug("valid for trust domain: " + plan.getTrustDomainName());
+			harvest(plan.isUseCaching(), certificateChain);
+			TrustServiceTrustLinker trustLinker = trustDomainValidation.getTrustLinker();
+			if (null != trustLinker && trustLinker.getCachedLinks() >= certificateChain.size() - 1) {
+				// all revocation checks answered by the CRL cache
+				this.validationResultCacheBean.put(cacheKey, validationResult, certificateChain, trustLinker.getCachedNextUpdate(),
+						trustLinker.getCachedIssuerNames(), cacheVersion);
 			}
+		}
+		return validationResult;
+	}
 
-			if (trustValidator.getResult().isValid()) {
-				LOG.debug("valid for trust domain: " + trustDomain.getName());
-				harvest(trustDomain, certificateChain);
-				return new ValidationResult(trustValidator.getResult(), trustValidator.getRevocationData());
+	/**
+	 * Evaluates the specified trust domain plans concurrently. Returns the
+	 * first valid result to complete, cancelling the remaining evaluations. If
+	 * none is valid, the failure of the last trust domain in name order is
+	 * returned.
+	 */
+	private TrustDomainValidation validateParallel(List<TrustValidationPlan> trustDomainPlans, List<X509Certificate> certificateChain,
+			boolean returnRevocationData) {
+		List<TrustValidationPlan> plans = new ArrayList<TrustValidationPlan>(trustDomainPlans);
+		Collections.sort(plans, new Comparator<TrustValidationPlan>() {
+			public int compare(TrustValidationPlan plan1, TrustValidationPlan plan2) {
+				return plan1.getTrustDomainName().compareTo(plan2.getTrustDomainName());
 			}
+		});
 
-			lastResult = trustValidator.getResult();
-			lastRevocationData = trustValidator.getRevocationData();
+		List<Future<TrustDomainValidation>> futures = new ArrayList<Future<TrustDomainValidation>>(plans.size());
+		for (TrustValidationPlan plan : plans) {
+			futures.add(this.validationExecutorBean.validate(plan, certificateChain, returnRevocationData));
 		}
 
-		return new ValidationResult(lastResult, lastRevocationData);
+		// failures and errors by name order, only used if none is valid
+		TrustDomainValidation[] failures = new TrustDomainValidation[futures.size()];
+		ExecutionException[] exceptions = new ExecutionException[futures.size()];
+		List<Integer> pending = new LinkedList<Integer>();
+		for (int idx = 0; idx < futures.size(); idx++) {
+			pending.add(idx);
+		}
+		try {
+			while (!pending.isEmpty()) {
+				boolean completed = false;
+				for (Iterator<Integer> iterator = pending.iterator(); iterator.hasNext();) {
+					int idx = iterator.next();
+					Future<TrustDomainValidation> future = futures.get(idx);
+					if (!future.isDone()) {
+						continue;
+					}
+					iterator.remove();
+					completed = true;
+					TrustDomainValidation trustDomainValidation;
+					try {
+						trustDomainValidation = future.get();
+					} catch (ExecutionException e) {
+						LOG.error("trust domain validation error: " + e.getCause().getMessage(), e.getCause());
+						exceptions[idx] = e;
+						continue;
+					}
+					if (trustDomainValidation.isValid()) {
+						return trustDomainValidation;
+					}
+					failures[idx] = trustDomainValidation;
+				}
+				if (!completed) {
+					Thread.sleep(PARALLEL_POLL_INTERVAL);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EJBException("interrupted while validating", e);
+		} finally {
+			cancel(futures);
+		}
+
+		for (int idx = failures.length - 1; idx >= 0; idx--) {
+			if (null != failures[idx]) {
+				return failures[idx];
+			}
+		}
+		for (int idx = exceptions.length - 1; idx >= 0; idx--) {
+			if (null != exceptions[idx]) {
+				if (exceptions[idx].getCause() instanceof RuntimeException) {
+					throw (RuntimeException) exceptions[idx].getCause();
+				}
+				throw new EJBException("trust domain validation error", exceptions[idx]);
+			}
+		}
+		return null;
 	}
 
-	@TransactionAttribute(TransactionAttributeType.REQUIRED)
+	/**
+	 * Cancels the specified asynchronous validations. Validations that are
+	 * already running stop at their next revocation check.
+	 *
+	 * @see CancellableTrustLinker
+	 */
+	private static void cancel(List<Future<TrustDomainValidation>> futures) {
+		for (Future<TrustDomainValidation> future : futures) {
+			if (null != future && !future.isDone()) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 	@SNMP(oid = SnmpConstants.VALIDATE)
 	public ValidationResult validate(String trustDomainName, List<X509Certificate> certificateChain, Date validationDate, List<byte[]> ocspResponses, List<byte[]> crls)
 			throws TrustDomainNotFoundException, CertificateException, NoSuchProviderException, CRLException, IOException {
@@ -186,8 +367,8 @@ public class TrustServiceBean implements TrustService {
 
 		TrustLinkerResult lastResult = null;
 		RevocationData lastRevocationData = null;
-		for (TrustDomainEntity trustDomain : getTrustDomains(trustDomainName)) {
-			TrustValidator trustValidator = getTrustValidator(trustDomain, ocspResponses, crls);
+		for (TrustValidationPlan plan : getTrustValidationPlans(this.trustDomainResolverBean.resolve(trustDomainName))) {
+			TrustValidator trustValidator = getTrustValidator(plan, ocspResponses, crls);
 
 			try {
 				trustValidator.isTrusted(certificateChain, validationDate);
@@ -195,7 +376,7 @@ public class TrustServiceBean implements TrustService {
 			}
 
 			if (trustValidator.getResult().isValid()) {
-				LOG.debug("valid for trust domain: " + trustDomain.getName());
+				LOG.debug("valid for trust domain: " + plan.getTrustDomainName());
 				return new ValidationResult(trustValidator.getResult(), trustValidator.getRevocationData());
 			}
 
@@ -206,7 +387,7 @@ public class TrustServiceBean implements TrustService {
 		return new ValidationResult(lastResult, lastRevocationData);
 	}
 
-	@TransactionAttribute(TransactionAttributeType.REQUIRED)
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 	@SNMP(oid = SnmpConstants.VALIDATE_TSA)
 	public ValidationResult validateTimestamp(String trustDomainName, byte[] encodedTimestampToken, boolean returnRevocationData)
 			throws TSPException, IOException, CMSException, NoSuchAlgorithmException, NoSuchProviderException, CertStoreException, TrustDomainNotFoundException {
@@ -232,8 +413,8 @@ public class TrustServiceBean implements TrustService {
 		 */
 		TrustLinkerResult lastResult = null;
 		RevocationData lastRevocationData = null;
-		for (TrustDomainEntity trustDomain : getTrustDomains(trustDomainName)) {
-			TrustValidator trustValidator = getTrustValidator(trustDomain, returnRevocationData);
+		for (TrustValidationPlan plan : getTrustValidationPlans(this.trustDomainResolverBean.resolve(trustDomainName))) {
+			TrustValidator trustValidator = this.trustDomainValidatorBean.getTrustValidator(plan, returnRevocationData);
 
 			try {
 				trustValidator.isTrusted(certificateChain);
@@ -241,8 +422,8 @@ public class TrustServiceBean implements TrustService {
 			}
 
 			if (trustValidator.getResult().isValid()) {
-				LOG.debug("valid for trust domain: " + trustDomain.getName());
-				harvest(trustDomain, certificateChain);
+				LOG.debug("valid for trust domain: " + plan.getTrustDomainName());
+				harvest(plan.isUseCaching(), certificateChain);
 				return new ValidationResult(trustValidator.getResult(), trustValidator.getRevocationData());
 			}
 
@@ -253,7 +434,7 @@ public class TrustServiceBean implements TrustService {
 		return new ValidationResult(lastResult, lastRevocationData);
 	}
 
-	@TransactionAttribute(TransactionAttributeType.REQUIRED)
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 	@SNMP(oid = SnmpConstants.VALIDATE_ATTRIBUTE_CERT)
 	public ValidationResult validateAttributeCertificates(String trustDomainName, List<byte[]> encodedAttributeCertificates, List<X509Certificate> certificateChain, boolean returnRevocationData)
 			throws TrustDomainNotFoundException {
@@ -261,16 +442,16 @@ public class TrustServiceBean implements TrustService {
 
 		TrustLinkerResult lastResult = null;
 		RevocationData lastRevocationData = null;
-		for (TrustDomainEntity trustDomain : getTrustDomains(trustDomainName)) {
-			TrustValidator trustValidator = getTrustValidator(trustDomain, returnRevocationData);
+		for (TrustValidationPlan plan : getTrustValidationPlans(this.trustDomainResolverBean.resolve(trustDomainName))) {
+			TrustValidator trustValidator = this.trustDomainValidatorBean.getTrustValidator(plan, returnRevocationData);
 			try {
 				trustValidator.isTrusted(encodedAttributeCertificates, certificateChain);
 			} catch (CertPathValidatorException ignored) {
 			}
 
 			if (trustValidator.getResult().isValid()) {
-				LOG.debug("valid for trust domain: " + trustDomain.getName());
-				harvest(trustDomain, certificateChain);
+				LOG.debug("valid for trust domain: " + plan.getTrustDomainName());
+				harvest(plan.isUseCaching(), certificateChain);
 				return new ValidationResult(trustValidator.getResult(), trustValidator.getRevocationData());
 			}
 
@@ -282,101 +463,29 @@ public class TrustServiceBean implements TrustService {
 	}
 
 	/**
-	 * Returns {@link Set} of {@link TrustDomainEntity}'s. Multiple are possible
-	 * if the specified trustDomainName is a {@link VirtualTrustDomainEntity}.
+	 * Returns the compiled {@link TrustValidationPlan}'s of the specified
+	 * {@link ResolvedTrustDomain}. The plans are compiled on the calling
+	 * thread, so worker threads never touch the trust domain entities.
 	 */
-	private Set<TrustDomainEntity> getTrustDomains(String name) throws TrustDomainNotFoundException {
-		if (null == name) {
-			return Collections.singleton(this.trustDomainDAO.getDefaultTrustDomain());
-		}
-
-		TrustDomainEntity trustDomain = this.trustDomainDAO.findTrustDomain(name);
-		if (null != trustDomain) {
-			return Collections.singleton(trustDomain);
-		}
-
-		// maybe a virtual trust domain?
-		VirtualTrustDomainEntity virtualTrustDomain = this.trustDomainDAO.findVirtualTrustDomain(name);
-		if (null != virtualTrustDomain) {
-			return virtualTrustDomain.getTrustDomains();
-		}
-
-		throw new TrustDomainNotFoundException();
-	}
-
-	/**
-	 * Returns new {@link TrustValidator}.
-	 *
-	 * @param returnRevocationData
-	 *            if <code>true</code> the used revocation data will be filled
-	 *            in the returned {@link TrustValidator}.
-	 */
-	private TrustValidator getTrustValidator(TrustDomainEntity trustDomain, boolean returnRevocationData) {
-		TrustLinker trustLinker = null;
-		if (!returnRevocationData && trustDomain.isUseCaching()) {
-			// if returnRevocationData set, don't use cached revocation data
-			trustLinker = new TrustServiceTrustLinker(this.entityManager);
-		}
-
-		return getTrustValidator(trustDomain, trustLinker, returnRevocationData);
-	}
-
-	/**
-	 * Returns new {@link TrustValidator} configured according to the specified {@link TrustDomainEntity}.
-	 *
-	 * @param trustDomain
-	 *            trust domain to get a validator for
-	 * @param trustLinker
-	 *            optional customized {@link TrustLinker}. Can be <code>null</code>.
-	 * @param returnRevocationData
-	 *            if <code>true</code> the used revocation data will be filled in the returned {@link TrustValidator}.
-	 */
-	private TrustValidator getTrustValidator(TrustDomainEntity trustDomain, TrustLinker trustLinker, boolean returnRevocationData) {
-		NetworkConfig networkConfig = this.configurationDAO.getNetworkConfig();
-		TrustDomainCertificateRepository certificateRepository = new TrustDomainCertificateRepository(trustDomain);
-
-		TrustValidator trustValidator;
-		if (returnRevocationData) {
-			trustValidator = new TrustValidator(certificateRepository, new RevocationData());
-		} else {
-			trustValidator = new TrustValidator(certificateRepository);
-		}
-		trustValidator.addTrustLinker(new PublicKeyTrustLinker());
-
-		OnlineOcspRepository ocspRepository = new OnlineOcspRepository(networkConfig);
-
-		CachedCrlRepository cachedCrlRepository = this.crlRepositoryService.getCachedCrlRepository();
-		if (null == cachedCrlRepository) {
-			OnlineCrlRepository crlRepository = new OnlineCrlRepository(networkConfig);
-			cachedCrlRepository = new CachedCrlRepository(crlRepository);
-			this.crlRepositoryService.setCachedCrlRepository(cachedCrlRepository);
+	private List<TrustValidationPlan> getTrustValidationPlans(ResolvedTrustDomain resolvedTrustDomain) throws TrustDomainNotFoundException {
+		List<TrustValidationPlan> plans = new LinkedList<TrustValidationPlan>();
+		for (String name : resolvedTrustDomain.getTrustDomainNames()) {
+			plans.add(this.trustValidationPlanCacheBean.getTrustValidationPlan(name));
 		}
-
-		FallbackTrustLinker fallbackTrustLinker = new FallbackTrustLinker();
-		if (null != trustLinker) {
-			fallbackTrustLinker.addTrustLinker(trustLinker);
-		}
-		fallbackTrustLinker.addTrustLinker(new OcspTrustLinker(ocspRepository));
-		fallbackTrustLinker.addTrustLinker(new CrlTrustLinker(cachedCrlRepository));
-
-		trustValidator.addTrustLinker(fallbackTrustLinker);
-
-		addConstraints(trustValidator, trustDomain);
-		return trustValidator;
+		return plans;
 	}
 
 	/**
 	 * Returns new {@link TrustValidator} configured according to the specified
-	 * {@link TrustDomainEntity} and using the specified revocation date. All
+	 * {@link TrustValidationPlan} and using the specified revocation date. All
 	 * validation will be done offline, not using any cache.
 	 */
-	private TrustValidator getTrustValidator(TrustDomainEntity trustDomain, List<byte[]> ocspResponses, List<byte[]> crls)
+	private TrustValidator getTrustValidator(TrustValidationPlan plan, List<byte[]> ocspResponses, List<byte[]> crls)
 			throws IOException, CertificateException, NoSuchProviderException, CRLException {
 		LOG.debug("get trust validator using specified ocsp responses and crls");
 
-		TrustDomainCertificateRepository certificateRepository = new TrustDomainCertificateRepository(trustDomain);
-		TrustValidator trustValidator = new TrustValidator(certificateRepository);
-		trustValidator.addTrustLinker(new PublicKeyTrustLinker());
+		TrustValidator trustValidator = new TrustValidator(plan.getCertificateRepository());
+		trustValidator.addTrustLinker(new CachingPublicKeyTrustLinker(plan.getPublicKeyTrustLinker(), this.verifiedLinkCacheBean));
 
 		OfflineOcspRepository ocspRepository = new OfflineOcspRepository(ocspResponses);
 		OfflineCrlRepository crlRepository = new OfflineCrlRepository(crls);
@@ -388,88 +497,10 @@ public class TrustServiceBean implements TrustService {
 
 		trustValidator.addTrustLinker(fallbackTrustLinker);
 
-		addConstraints(trustValidator, trustDomain);
+		plan.addConstraints(trustValidator);
 		return trustValidator;
 	}
 
-	/**
-	 * Add certificate constraints to the specified {@link TrustValidator} using
-	 * the specified {@link TrustDomainEntity}'s configuration.
-	 */
-	private void addConstraints(TrustValidator trustValidator, TrustDomainEntity trustDomain) {
-		// add certificate constraints
-		CertificatePoliciesCertificateConstraint certificatePoliciesCertificateConstraint = null;
-		KeyUsageCertificateConstraint keyUsageCertificateConstraint = null;
-		EndEntityCertificateConstraint endEntityCertificateConstraint = null;
-		for (CertificateConstraintEntity certificateConstraint : trustDomain.getCertificateConstraints()) {
-			if (certificateConstraint instanceof PolicyConstraintEntity) {
-				PolicyConstraintEntity policyConstraint = (PolicyConstraintEntity) certificateConstraint;
-				if (null == certificatePoliciesCertificateConstraint) {
-					certificatePoliciesCertificateConstraint = new CertificatePoliciesCertificateConstraint();
-				}
-				certificatePoliciesCertificateConstraint.addCertificatePolicy(policyConstraint.getPolicy());
-			} else if (certificateConstraint instanceof KeyUsageConstraintEntity) {
-				KeyUsageConstraintEntity keyUsageConstraint = (KeyUsageConstraintEntity) certificateConstraint;
-				if (null == keyUsageCertificateConstraint) {
-					keyUsageCertificateConstraint = new KeyUsageCertificateConstraint();
-				}
-				switch (keyUsageConstraint.getKeyUsage()) {
-					case DIGITAL_SIGNATURE: {
-						keyUsageCertificateConstraint.setDigitalSignatureFilter(keyUsageConstraint.isAllowed());
-						break;
-					}
-					case NON_REPUDIATION: {
-						keyUsageCertificateConstraint.setNonRepudiationFilter(keyUsageConstraint.isAllowed());
-						break;
-					}
-					case KEY_ENCIPHERMENT: {
-						keyUsageCertificateConstraint.setKeyEnciphermentFilter(keyUsageConstraint.isAllowed());
-					}
-					case DATA_ENCIPHERMENT: {
-						keyUsageCertificateConstraint.setDataEnciphermentFilter(keyUsageConstraint.isAllowed());
-					}
-					case KEY_AGREEMENT: {
-						keyUsageCertificateConstraint.setKeyAgreementFilter(keyUsageConstraint.isAllowed());
-					}
-					case KEY_CERT_SIGN: {
-						keyUsageCertificateConstraint.setKeyCertificateSigningFilter(keyUsageConstraint.isAllowed());
-					}
-					case CRL_SIGN: {
-						keyUsageCertificateConstraint.setCRLSigningFilter(keyUsageConstraint.isAllowed());
-					}
-					case ENCIPHER_ONLY: {
-						keyUsageCertificateConstraint.setEncipherOnlyFilter(keyUsageConstraint.isAllowed());
-					}
-					case DECIPHER_ONLY: {
-						keyUsageCertificateConstraint.setDecipherOnlyFilter(keyUsageConstraint.isAllowed());
-					}
-				}
-			} else if (certificateConstraint instanceof QCStatementsConstraintEntity) {
-				QCStatementsConstraintEntity qcStatementsConstraint = (QCStatementsConstraintEntity) certificateConstraint;
-				trustValidator.addCertificateConstrain(new QCStatementsCertificateConstraint(qcStatementsConstraint.getQcComplianceFilter()));
-			} else if (certificateConstraint instanceof DNConstraintEntity) {
-				DNConstraintEntity dnConstraint = (DNConstraintEntity) certificateConstraint;
-				trustValidator.addCertificateConstrain(new DistinguishedNameCertificateConstraint(dnConstraint.getDn()));
-			} else if (certificateConstraint instanceof EndEntityConstraintEntity) {
-				EndEntityConstraintEntity endEntityConstraint = (EndEntityConstraintEntity) certificateConstraint;
-				if (null == endEntityCertificateConstraint) {
-					endEntityCertificateConstraint = new EndEntityCertificateConstraint();
-				}
-				endEntityCertificateConstraint.addEndEntity(endEntityConstraint.getIssuerName(), endEntityConstraint.getSerialNumber());
-			}
-		}
-
-		if (null != certificatePoliciesCertificateConstraint) {
-			trustValidator.addCertificateConstrain(certificatePoliciesCertificateConstraint);
-		}
-		if (null != keyUsageCertificateConstraint) {
-			trustValidator.addCertificateConstrain(keyUsageCertificateConstraint);
-		}
-		if (null != endEntityCertificateConstraint) {
-			trustValidator.addCertificateConstrain(endEntityCertificateConstraint);
-		}
-	}
-
 	@SNMPCounter
 	public void updateCacheHitPercentage() {
 		LOG.debug("update cache hit %");
@@ -498,31 +529,22 @@ public class TrustServiceBean implements TrustService {
 
 	/**
 	 * Harvest the CRLs for specified certificate chain if caching is set for
-	 * the trust domain and no cache is yet active.
+	 * the trust domain and no cache is yet active. Only reads the CA state,
+	 * the harvester is triggered via the
+	 * {@link CertificateAuthorityDiscoveryQueueBean}.
 	 */
-	private void harvest(TrustDomainEntity trustDomain, List<X509Certificate> certificateChain) {
-		if (trustDomain.isUseCaching()) {
+	private void harvest(boolean useCaching, List<X509Certificate> certificateChain) {
+		if (useCaching) {
 			for (X509Certificate certificate : certificateChain) {
 				String issuerName = certificate.getIssuerX500Principal().toString();
+				if (null != this.revocationIndexBean.getRevocationIndex(issuerName)) {
+					// revocation data cache already active
+					continue;
+				}
 				CertificateAuthorityEntity certificateAuthority = this.certificateAuthorityDAO.findCertificateAuthority(issuerName);
-				if (null != certificateAuthority && (certificateAuthority.getStatus().equals(Status.INACTIVE) || certificateAuthority.getStatus().equals(Status.NONE))) {
-					if (null != certificateAuthority.getCrlUrl()) {
-						certificateAuthority.setStatus(Status.PROCESSING);
-						try {
-							this.notificationService.notifyDownloader(certificateAuthority.getName(), false);
-							if (null != certificateAuthority.getTrustPoint() && null == certificateAuthority.getTrustPoint().getFireDate()) {
-								this.schedulingService.startTimer(certificateAuthority.getTrustPoint());
-							}
-						} catch (JMSException e) {
-							this.auditDAO.logAudit("Failed to notify harvester: " + e.getMessage());
-							LOG.error(e.getMessage(), e);
-						} catch (InvalidCronExpressionException e) {
-							this.auditDAO.logAudit("Failed to start timer for trust point: " + certificateAuthority.getTrustPoint().getName());
-							LOG.error(e.getMessage(), e);
-						}
-					} else {
-						certificateAuthority.setStatus(Status.NONE);
-					}
+				if (null == certificateAuthority || certificateAuthority.getStatus().equals(Status.INACTIVE)
+						|| certificateAuthority.getStatus().equals(Status.NONE)) {
+					this.certificateAuthorityDiscoveryQueueBean.harvest(issuerName);
 				}
 			}
 		}
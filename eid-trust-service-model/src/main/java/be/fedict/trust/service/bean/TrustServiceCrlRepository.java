@@ -0,0 +1,95 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.crl.CrlRepository;
+
+/**
+ * CRL repository that downloads the CRLs over the pooled connections of the
+ * {@link HttpTransportBean}, instead of setting up a new HTTP client per
+ * download. Only used for CAs without cached revocation data, the CRLs are
+ * cached by a {@link be.fedict.trust.crl.CachedCrlRepository}.
+ * 
+ * @author Frank Cornelis
+ */
+public class TrustServiceCrlRepository implements CrlRepository {
+
+	private static final Log LOG = LogFactory
+			.getLog(TrustServiceCrlRepository.class);
+
+	private final HttpTransportBean httpTransportBean;
+
+	public TrustServiceCrlRepository(HttpTransportBean httpTransportBean) {
+		this.httpTransportBean = httpTransportBean;
+	}
+
+	public X509CRL findCrl(URI crlUri, X509Certificate issuerCertificate,
+			Date validationDate) {
+		String scheme = crlUri.getScheme();
+		if (!"http".equals(scheme) && !"https".equals(scheme)) {
+			LOG.debug("unsupported CRL URI: " + crlUri);
+			return null;
+		}
+
+		LOG.debug("downloading CRL: " + crlUri);
+		GetMethod getMethod;
+		try {
+			getMethod = new GetMethod(crlUri.toString());
+		} catch (IllegalArgumentException e) {
+			LOG.debug("invalid CRL URI: " + crlUri);
+			return null;
+		}
+		try {
+			int statusCode = this.httpTransportBean.execute(getMethod);
+			if (HttpStatus.SC_OK != statusCode) {
+				LOG.debug("CRL HTTP status code: " + statusCode);
+				return null;
+			}
+			CertificateFactory certificateFactory = CertificateFactory
+					.getInstance("X.509");
+			return (X509CRL) certificateFactory.generateCRL(getMethod
+					.getResponseBodyAsStream());
+		} catch (IOException e) {
+			LOG.debug("CRL download error: " + e.getMessage());
+			return null;
+		} catch (CertificateException e) {
+			LOG.error("certificate factory error: " + e.getMessage(), e);
+			return null;
+		} catch (CRLException e) {
+			LOG.debug("CRL parsing error: " + e.getMessage());
+			return null;
+		} finally {
+			this.httpTransportBean.release(getMethod);
+		}
+	}
+}
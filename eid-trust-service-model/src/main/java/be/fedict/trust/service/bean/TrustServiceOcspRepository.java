@@ -0,0 +1,108 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.cert.X509Certificate;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bouncycastle.ocsp.CertificateID;
+import org.bouncycastle.ocsp.OCSPException;
+import org.bouncycastle.ocsp.OCSPReqGenerator;
+import org.bouncycastle.ocsp.OCSPResp;
+
+import be.fedict.trust.ocsp.OcspRepository;
+
+/**
+ * OCSP repository that queries the OCSP responders over the pooled
+ * connections of the {@link HttpTransportBean}, instead of setting up a new
+ * HTTP client per request.
+ * 
+ * @author Frank Cornelis
+ */
+public class TrustServiceOcspRepository implements OcspRepository {
+
+	private static final Log LOG = LogFactory
+			.getLog(TrustServiceOcspRepository.class);
+
+	private static final String OCSP_REQUEST_CONTENT_TYPE = "application/ocsp-request";
+
+	private static final String OCSP_RESPONSE_CONTENT_TYPE = "application/ocsp-response";
+
+	private final HttpTransportBean httpTransportBean;
+
+	public TrustServiceOcspRepository(HttpTransportBean httpTransportBean) {
+		this.httpTransportBean = httpTransportBean;
+	}
+
+	public OCSPResp findOcspResponse(URI ocspUri, X509Certificate certificate,
+			X509Certificate issuerCertificate) {
+		byte[] ocspRequest;
+		try {
+			OCSPReqGenerator ocspReqGenerator = new OCSPReqGenerator();
+			ocspReqGenerator.addRequest(new CertificateID(
+					CertificateID.HASH_SHA1, issuerCertificate, certificate
+							.getSerialNumber()));
+			ocspRequest = ocspReqGenerator.generate().getEncoded();
+		} catch (OCSPException e) {
+			LOG.error("OCSP request error: " + e.getMessage(), e);
+			return null;
+		} catch (IOException e) {
+			LOG.error("OCSP request error: " + e.getMessage(), e);
+			return null;
+		}
+
+		LOG.debug("OCSP request: " + ocspUri);
+		PostMethod postMethod;
+		try {
+			postMethod = new PostMethod(ocspUri.toString());
+		} catch (IllegalArgumentException e) {
+			LOG.debug("invalid OCSP URI: " + ocspUri);
+			return null;
+		}
+		postMethod.setRequestEntity(new ByteArrayRequestEntity(ocspRequest,
+				OCSP_REQUEST_CONTENT_TYPE));
+		try {
+			int statusCode = this.httpTransportBean.execute(postMethod);
+			if (HttpStatus.SC_OK != statusCode) {
+				LOG.debug("OCSP HTTP status code: " + statusCode);
+				return null;
+			}
+			Header contentType = postMethod.getResponseHeader("Content-Type");
+			if (null == contentType
+					|| !contentType.getValue().startsWith(
+							OCSP_RESPONSE_CONTENT_TYPE)) {
+				LOG.debug("OCSP response content type: " + contentType);
+				return null;
+			}
+			return new OCSPResp(postMethod.getResponseBodyAsStream());
+		} catch (IOException e) {
+			LOG.debug("OCSP error: " + e.getMessage());
+			return null;
+		} finally {
+			this.httpTransportBean.release(postMethod);
+		}
+	}
+}
@@ -21,13 +21,14 @@ package be.fedict.trust.service.bean;
 import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URI;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
-import javax.naming.InitialContext;
-import javax.naming.NamingException;
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,15 +39,15 @@ import be.fedict.trust.TrustLinkerResult;
 import be.fedict.trust.TrustLinkerResultReason;
 import be.fedict.trust.crl.CrlTrustLinker;
 import be.fedict.trust.service.SnmpConstants;
-import be.fedict.trust.service.dao.AuditDAO;
 import be.fedict.trust.service.entity.CertificateAuthorityEntity;
 import be.fedict.trust.service.entity.RevokedCertificateEntity;
-import be.fedict.trust.service.entity.RevokedCertificatePK;
 import be.fedict.trust.service.entity.Status;
 import be.fedict.trust.service.snmp.SNMPInterceptor;
 
 /**
  * Implementation of a trust linker based on the trust service infrastructure.
+ * Only reads the revocation data cache; unknown CAs are handed over to the
+ * {@link CertificateAuthorityDiscoveryQueueBean}.
  * 
  * @author fcorneli
  */
@@ -57,8 +58,46 @@ public class TrustServiceTrustLinker implements TrustLinker {
 
 	private final EntityManager entityManager;
 
-	public TrustServiceTrustLinker(EntityManager entityManager) {
+	private final RevocationIndexBean revocationIndexBean;
+
+	private final CertificateAuthorityDiscoveryQueueBean certificateAuthorityDiscoveryQueueBean;
+
+	private final Set<String> cachedIssuerNames;
+
+	private int cachedLinks;
+
+	private Date cachedNextUpdate;
+
+	public TrustServiceTrustLinker(
+			EntityManager entityManager,
+			RevocationIndexBean revocationIndexBean,
+			CertificateAuthorityDiscoveryQueueBean certificateAuthorityDiscoveryQueueBean) {
 		this.entityManager = entityManager;
+		this.revocationIndexBean = revocationIndexBean;
+		this.certificateAuthorityDiscoveryQueueBean = certificateAuthorityDiscoveryQueueBean;
+		this.cachedIssuerNames = new HashSet<String>();
+	}
+
+	/**
+	 * Returns the number of links answered via the CRL cache.
+	 */
+	public int getCachedLinks() {
+		return this.cachedLinks;
+	}
+
+	/**
+	 * Returns the names of the CAs whose CRL cache answered a link.
+	 */
+	public Set<String> getCachedIssuerNames() {
+		return this.cachedIssuerNames;
+	}
+
+	/**
+	 * Returns the earliest next update of the used CRL cache data, or
+	 * <code>null</code> if no link was answered via the CRL cache.
+	 */
+	public Date getCachedNextUpdate() {
+		return this.cachedNextUpdate;
 	}
 
 	public TrustLinkerResult hasTrustLink(X509Certificate childCertificate,
@@ -69,6 +108,24 @@ public class TrustServiceTrustLinker implements TrustLinker {
 
 		String issuerName = childCertificate.getIssuerX500Principal()
 				.toString();
+
+		/*
+		 * First try the in-memory revocation index. An active index stands
+		 * for an active CA and carries the CRL number and validity of its
+		 * published CRL, so a cache hit never touches the database.
+		 */
+		RevocationIndex revocationIndex = this.revocationIndexBean
+				.getRevocationIndex(issuerName, validationDate);
+		if (null != revocationIndex) {
+			LOG.debug("using revocation index");
+			SNMPInterceptor.increment(SnmpConstants.CACHE_HITS,
+					SnmpConstants.SNMP_SERVICE, 1L);
+			Date revocationDate = this.revocationIndexBean.findRevocationDate(
+					revocationIndex, childCertificate.getSerialNumber());
+			return getTrustLinkerResult(childCertificate, revocationDate,
+					validationDate, issuerName, revocationIndex.getNextUpdate());
+		}
+
 		CertificateAuthorityEntity certificateAuthority = this.entityManager
 				.find(CertificateAuthorityEntity.class, issuerName);
 		if (null == certificateAuthority) {
@@ -80,29 +137,11 @@ public class TrustServiceTrustLinker implements TrustLinker {
 					SnmpConstants.SNMP_SERVICE, 1L);
 
 			/*
-			 * Lookup Root CA's trust point via parent certificates' CA entity.
+			 * Registration of the new CA, with the trust point of its parent
+			 * CA, happens asynchronously.
 			 */
-			String parentIssuerName = certificate.getIssuerX500Principal()
-					.toString();
-			CertificateAuthorityEntity parentCertificateAuthority = this.entityManager
-					.find(CertificateAuthorityEntity.class, parentIssuerName);
-			if (null == parentCertificateAuthority) {
-				logAudit("CA not found for " + parentIssuerName);
-				LOG.error("CA not found for " + parentIssuerName + " ?!");
-				return null;
-			}
-
-			// create new CA
-			try {
-				certificateAuthority = new CertificateAuthorityEntity(
-						getCrlUrl(childCertificate), certificate);
-				certificateAuthority.setTrustPoint(parentCertificateAuthority
-						.getTrustPoint());
-			} catch (CertificateEncodingException e) {
-				LOG.error("certificate encoding error: " + e.getMessage(), e);
-				return null;
-			}
-			this.entityManager.persist(certificateAuthority);
+			this.certificateAuthorityDiscoveryQueueBean.discover(certificate,
+					getCrlUrl(childCertificate));
 			return null;
 		}
 		if (Status.ACTIVE != certificateAuthority.getStatus()) {
@@ -111,7 +150,11 @@ public class TrustServiceTrustLinker implements TrustLinker {
 			 * Harvester is still busy processing the first CRL.
 			 */
 			if (null == certificateAuthority.getCrlUrl()) {
-				certificateAuthority.setCrlUrl(getCrlUrl(childCertificate));
+				String crlUrl = getCrlUrl(childCertificate);
+				if (null != crlUrl) {
+					this.certificateAuthorityDiscoveryQueueBean.updateCrlUrl(
+							issuerName, crlUrl);
+				}
 			}
 
 			if (Status.NONE != certificateAuthority.getStatus()) {
@@ -121,8 +164,10 @@ public class TrustServiceTrustLinker implements TrustLinker {
 			}
 			return null;
 		}
+
 		/*
-		 * Let's use the cached revocation data
+		 * No revocation index, let's use the cached revocation data in the
+		 * database
 		 */
 		Date thisUpdate = certificateAuthority.getThisUpdate();
 		if (null == thisUpdate) {
@@ -164,13 +209,30 @@ public class TrustServiceTrustLinker implements TrustLinker {
 
 		BigInteger serialNumber = childCertificate.getSerialNumber();
 		RevokedCertificateEntity revokedCertificate = findRevokedCertificate(
-				issuerName, serialNumber);
-		if (null == revokedCertificate) {
+				certificateAuthority, serialNumber);
+		Date revocationDate = null;
+		if (null != revokedCertificate) {
+			revocationDate = revokedCertificate.getRevocationDate();
+		}
+		return getTrustLinkerResult(childCertificate, revocationDate,
+				validationDate, issuerName, nextUpdate);
+	}
+
+	private TrustLinkerResult getTrustLinkerResult(
+			X509Certificate childCertificate, Date revocationDate,
+			Date validationDate, String issuerName, Date nextUpdate) {
+		this.cachedLinks++;
+		this.cachedIssuerNames.add(issuerName);
+		if (null == this.cachedNextUpdate
+				|| nextUpdate.before(this.cachedNextUpdate)) {
+			this.cachedNextUpdate = nextUpdate;
+		}
+		if (null == revocationDate) {
 			LOG.debug("certificate valid: "
 					+ childCertificate.getSubjectX500Principal());
 			return new TrustLinkerResult(true);
 		}
-		if (revokedCertificate.getRevocationDate().after(validationDate)) {
+		if (revocationDate.after(validationDate)) {
 			LOG.debug("CRL OK for: "
 					+ childCertificate.getSubjectX500Principal() + " at "
 					+ validationDate);
@@ -199,23 +261,25 @@ public class TrustServiceTrustLinker implements TrustLinker {
 		}
 	}
 
-	private void logAudit(String message) {
-
-		try {
-			InitialContext initialContext = new InitialContext();
-			AuditDAO auditDAO = (AuditDAO) initialContext
-					.lookup(AuditDAO.JNDI_BINDING);
-			auditDAO.logAudit(message);
-		} catch (NamingException e) {
-			LOG.error("Failed to log audit message: " + message, e);
-		}
-
-	}
-
-	private RevokedCertificateEntity findRevokedCertificate(String issuer,
+	/**
+	 * Looks up the serial number in the published generation of the CRL cache
+	 * of the specified CA.
+	 */
+	@SuppressWarnings("unchecked")
+	private RevokedCertificateEntity findRevokedCertificate(
+			CertificateAuthorityEntity certificateAuthority,
 			BigInteger serialNumber) {
 
-		return this.entityManager.find(RevokedCertificateEntity.class,
-				new RevokedCertificatePK(issuer, serialNumber.toString()));
+		Query query = this.entityManager
+				.createNamedQuery(RevokedCertificateEntity.QUERY_WHERE_ISSUER_SERIAL);
+		query.setParameter("issuerId", certificateAuthority.getIssuerId());
+		query.setParameter("serialNumber", serialNumber.toByteArray());
+		query.setParameter("generation", certificateAuthority.getGeneration());
+		List<RevokedCertificateEntity> revokedCertificates = query
+				.getResultList();
+		if (revokedCertificates.isEmpty()) {
+			return null;
+		}
+		return revokedCertificates.get(0);
 	}
 }
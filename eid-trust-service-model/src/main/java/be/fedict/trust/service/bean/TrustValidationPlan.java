@@ -0,0 +1,229 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import be.fedict.trust.PublicKeyTrustLinker;
+import be.fedict.trust.TrustValidator;
+import be.fedict.trust.constraints.CertificatePoliciesCertificateConstraint;
+import be.fedict.trust.constraints.DistinguishedNameCertificateConstraint;
+import be.fedict.trust.constraints.EndEntityCertificateConstraint;
+import be.fedict.trust.constraints.KeyUsageCertificateConstraint;
+import be.fedict.trust.constraints.QCStatementsCertificateConstraint;
+import be.fedict.trust.service.entity.TrustDomainEntity;
+import be.fedict.trust.service.entity.constraints.CertificateConstraintEntity;
+import be.fedict.trust.service.entity.constraints.DNConstraintEntity;
+import be.fedict.trust.service.entity.constraints.EndEntityConstraintEntity;
+import be.fedict.trust.service.entity.constraints.KeyUsageConstraintEntity;
+import be.fedict.trust.service.entity.constraints.PolicyConstraintEntity;
+import be.fedict.trust.service.entity.constraints.QCStatementsConstraintEntity;
+
+/**
+ * Immutable validation plan of a trust domain. Holds everything of a
+ * {@link TrustValidator} that only depends on the trust domain configuration:
+ * the trust point repository, the public key trust linker and the certificate
+ * constraints. These objects are only read during validation, so a single plan
+ * can be shared by concurrent validations.
+ *
+ * @author Frank Cornelis
+ */
+public class TrustValidationPlan {
+
+	private final String trustDomainName;
+
+	private final boolean useCaching;
+
+	private final long version;
+
+	private final TrustDomainCertificateRepository certificateRepository;
+
+	private final PublicKeyTrustLinker publicKeyTrustLinker;
+
+	private final List<QCStatementsCertificateConstraint> qcStatementsCertificateConstraints;
+
+	private final List<DistinguishedNameCertificateConstraint> distinguishedNameCertificateConstraints;
+
+	private final CertificatePoliciesCertificateConstraint certificatePoliciesCertificateConstraint;
+
+	private final KeyUsageCertificateConstraint keyUsageCertificateConstraint;
+
+	private final EndEntityCertificateConstraint endEntityCertificateConstraint;
+
+	/**
+	 * Compiles the validation plan of the specified trust domain.
+	 *
+	 * @param trustDomain
+	 *            the attached trust domain.
+	 * @param version
+	 *            the configuration version this plan was compiled for.
+	 */
+	public TrustValidationPlan(TrustDomainEntity trustDomain, long version) {
+		this.trustDomainName = trustDomain.getName();
+		this.useCaching = trustDomain.isUseCaching();
+		this.version = version;
+		this.certificateRepository = new TrustDomainCertificateRepository(
+				trustDomain);
+		this.publicKeyTrustLinker = new PublicKeyTrustLinker();
+
+		List<QCStatementsCertificateConstraint> qcStatementsCertificateConstraints = new LinkedList<QCStatementsCertificateConstraint>();
+		List<DistinguishedNameCertificateConstraint> distinguishedNameCertificateConstraints = new LinkedList<DistinguishedNameCertificateConstraint>();
+		CertificatePoliciesCertificateConstraint certificatePoliciesCertificateConstraint = null;
+		KeyUsageCertificateConstraint keyUsageCertificateConstraint = null;
+		EndEntityCertificateConstraint endEntityCertificateConstraint = null;
+		for (CertificateConstraintEntity certificateConstraint : trustDomain
+				.getCertificateConstraints()) {
+			if (certificateConstraint instanceof PolicyConstraintEntity) {
+				PolicyConstraintEntity policyConstraint = (PolicyConstraintEntity) certificateConstraint;
+				if (null == certificatePoliciesCertificateConstraint) {
+					certificatePoliciesCertificateConstraint = new CertificatePoliciesCertificateConstraint();
+				}
+				certificatePoliciesCertificateConstraint
+						.addCertificatePolicy(policyConstraint.getPolicy());
+			} else if (certificateConstraint instanceof KeyUsageConstraintEntity) {
+				KeyUsageConstraintEntity keyUsageConstraint = (KeyUsageConstraintEntity) certificateConstraint;
+				if (null == keyUsageCertificateConstraint) {
+					keyUsageCertificateConstraint = new KeyUsageCertificateConstraint();
+				}
+				switch (keyUsageConstraint.getKeyUsage()) {
+				case DIGITAL_SIGNATURE: {
+					keyUsageCertificateConstraint
+							.setDigitalSignatureFilter(keyUsageConstraint
+									.isAllowed());
+					break;
+				}
+				case NON_REPUDIATION: {
+					keyUsageCertificateConstraint
+							.setNonRepudiationFilter(keyUsageConstraint
+									.isAllowed());
+					break;
+				}
+				case KEY_ENCIPHERMENT: {
+					keyUsageCertificateConstraint
+							.setKeyEnciphermentFilter(keyUsageConstraint
+									.isAllowed());
+				}
+				case DATA_ENCIPHERMENT: {
+					keyUsageCertificateConstraint
+							.setDataEnciphermentFilter(keyUsageConstraint
+									.isAllowed());
+				}
+				case KEY_AGREEMENT: {
+					keyUsageCertificateConstraint
+							.setKeyAgreementFilter(keyUsageConstraint
+									.isAllowed());
+				}
+				case KEY_CERT_SIGN: {
+					keyUsageCertificateConstraint
+							.setKeyCertificateSigningFilter(keyUsageConstraint
+									.isAllowed());
+				}
+				case CRL_SIGN: {
+					keyUsageCertificateConstraint
+							.setCRLSigningFilter(keyUsageConstraint.isAllowed());
+				}
+				case ENCIPHER_ONLY: {
+					keyUsageCertificateConstraint
+							.setEncipherOnlyFilter(keyUsageConstraint
+									.isAllowed());
+				}
+				case DECIPHER_ONLY: {
+					keyUsageCertificateConstraint
+							.setDecipherOnlyFilter(keyUsageConstraint
+									.isAllowed());
+				}
+				}
+			} else if (certificateConstraint instanceof QCStatementsConstraintEntity) {
+				QCStatementsConstraintEntity qcStatementsConstraint = (QCStatementsConstraintEntity) certificateConstraint;
+				qcStatementsCertificateConstraints
+						.add(new QCStatementsCertificateConstraint(
+								qcStatementsConstraint.getQcComplianceFilter()));
+			} else if (certificateConstraint instanceof DNConstraintEntity) {
+				DNConstraintEntity dnConstraint = (DNConstraintEntity) certificateConstraint;
+				distinguishedNameCertificateConstraints
+						.add(new DistinguishedNameCertificateConstraint(
+								dnConstraint.getDn()));
+			} else if (certificateConstraint instanceof EndEntityConstraintEntity) {
+				EndEntityConstraintEntity endEntityConstraint = (EndEntityConstraintEntity) certificateConstraint;
+				if (null == endEntityCertificateConstraint) {
+					endEntityCertificateConstraint = new EndEntityCertificateConstraint();
+				}
+				endEntityCertificateConstraint.addEndEntity(
+						endEntityConstraint.getIssuerName(),
+						endEntityConstraint.getSerialNumber());
+			}
+		}
+		this.qcStatementsCertificateConstraints = Collections
+				.unmodifiableList(qcStatementsCertificateConstraints);
+		this.distinguishedNameCertificateConstraints = Collections
+				.unmodifiableList(distinguishedNameCertificateConstraints);
+		this.certificatePoliciesCertificateConstraint = certificatePoliciesCertificateConstraint;
+		this.keyUsageCertificateConstraint = keyUsageCertificateConstraint;
+		this.endEntityCertificateConstraint = endEntityCertificateConstraint;
+	}
+
+	public String getTrustDomainName() {
+		return this.trustDomainName;
+	}
+
+	public boolean isUseCaching() {
+		return this.useCaching;
+	}
+
+	public long getVersion() {
+		return this.version;
+	}
+
+	public TrustDomainCertificateRepository getCertificateRepository() {
+		return this.certificateRepository;
+	}
+
+	public PublicKeyTrustLinker getPublicKeyTrustLinker() {
+		return this.publicKeyTrustLinker;
+	}
+
+	/**
+	 * Adds the compiled certificate constraints to the specified
+	 * {@link TrustValidator}.
+	 */
+	public void addConstraints(TrustValidator trustValidator) {
+		for (QCStatementsCertificateConstraint qcStatementsCertificateConstraint : this.qcStatementsCertificateConstraints) {
+			trustValidator
+					.addCertificateConstrain(qcStatementsCertificateConstraint);
+		}
+		for (DistinguishedNameCertificateConstraint distinguishedNameCertificateConstraint : this.distinguishedNameCertificateConstraints) {
+			trustValidator
+					.addCertificateConstrain(distinguishedNameCertificateConstraint);
+		}
+		if (null != this.certificatePoliciesCertificateConstraint) {
+			trustValidator
+					.addCertificateConstrain(this.certificatePoliciesCertificateConstraint);
+		}
+		if (null != this.keyUsageCertificateConstraint) {
+			trustValidator
+					.addCertificateConstrain(this.keyUsageCertificateConstraint);
+		}
+		if (null != this.endEntityCertificateConstraint) {
+			trustValidator
+					.addCertificateConstrain(this.endEntityCertificateConstraint);
+		}
+	}
+}
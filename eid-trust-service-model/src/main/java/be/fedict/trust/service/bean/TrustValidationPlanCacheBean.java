@@ -0,0 +1,150 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.service.dao.TrustDomainDAO;
+import be.fedict.trust.service.entity.TrustDomainEntity;
+import be.fedict.trust.service.exception.TrustDomainNotFoundException;
+
+/**
+ * Cache of the compiled {@link TrustValidationPlan}'s per trust domain.
+ * <p>
+ * Every configuration change bumps the version. A plan compiled while a change
+ * was in progress carries an older version and is not cached. Invalidation
+ * happens both immediately and after completion of the modifying transaction,
+ * so plans compiled from the not yet committed state do not survive either.
+ *
+ * @author Frank Cornelis
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class TrustValidationPlanCacheBean {
+
+	private static final Log LOG = LogFactory
+			.getLog(TrustValidationPlanCacheBean.class);
+
+	private final ConcurrentMap<String, TrustValidationPlan> plans = new ConcurrentHashMap<String, TrustValidationPlan>();
+
+	private final AtomicLong version = new AtomicLong();
+
+	@EJB
+	private ValidationResultCacheBean validationResultCacheBean;
+
+	@EJB
+	private TrustDomainDAO trustDomainDAO;
+
+	@Resource
+	private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	/**
+	 * Returns the {@link TrustValidationPlan} for the trust domain with the
+	 * specified name. The trust domain is only loaded if the plan is not yet
+	 * cached.
+	 */
+	public TrustValidationPlan getTrustValidationPlan(String trustDomainName)
+			throws TrustDomainNotFoundException {
+		TrustValidationPlan plan = this.plans.get(trustDomainName);
+		if (null != plan) {
+			return plan;
+		}
+		// taken before loading, a change committed meanwhile bumps the version
+		long currentVersion = this.version.get();
+		TrustDomainEntity trustDomain = this.trustDomainDAO
+				.getTrustDomain(trustDomainName);
+		LOG.debug("compiling validation plan for trust domain: "
+				+ trustDomainName);
+		plan = new TrustValidationPlan(trustDomain, currentVersion);
+		if (currentVersion == this.version.get()) {
+			this.plans.put(trustDomainName, plan);
+			if (currentVersion != this.version.get()) {
+				// invalidated between the check and the put
+				this.plans.remove(trustDomainName, plan);
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * Invalidates the cached {@link TrustValidationPlan} of the specified trust
+	 * domain.
+	 */
+	public void invalidate(final String trustDomainName) {
+		LOG.debug("invalidate validation plan: " + trustDomainName);
+		this.version.incrementAndGet();
+		this.plans.remove(trustDomainName);
+		this.validationResultCacheBean.reset();
+		afterCompletion(new Runnable() {
+			public void run() {
+				version.incrementAndGet();
+				plans.remove(trustDomainName);
+				validationResultCacheBean.reset();
+			}
+		});
+	}
+
+	/**
+	 * Invalidates all cached {@link TrustValidationPlan}'s.
+	 */
+	public void invalidateAll() {
+		LOG.debug("invalidate all validation plans");
+		this.version.incrementAndGet();
+		this.plans.clear();
+		this.validationResultCacheBean.reset();
+		afterCompletion(new Runnable() {
+			public void run() {
+				version.incrementAndGet();
+				plans.clear();
+				validationResultCacheBean.reset();
+			}
+		});
+	}
+
+	private void afterCompletion(final Runnable runnable) {
+		if (null == this.transactionSynchronizationRegistry
+				|| null == this.transactionSynchronizationRegistry
+						.getTransactionKey()) {
+			return;
+		}
+		this.transactionSynchronizationRegistry
+				.registerInterposedSynchronization(new Synchronization() {
+
+					public void beforeCompletion() {
+					}
+
+					public void afterCompletion(int status) {
+						runnable.run();
+					}
+				});
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.EJB;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+/**
+ * Asynchronous evaluation of trust domain plans, used for the parallel
+ * evaluation of the member trust domains of a virtual trust domain and for
+ * batch validations.
+ * <p>
+ * The invocations run on the asynchronous invocation thread pool of the
+ * container, which bounds the number of concurrent validations. Cancelling
+ * the returned {@link Future} stops a running validation at its next
+ * revocation check.
+ *
+ * @author Frank Cornelis
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class ValidationExecutorBean {
+
+	@EJB
+	private TrustDomainValidatorBean trustDomainValidatorBean;
+
+	@Resource
+	private SessionContext sessionContext;
+
+	/**
+	 * Validates the specified certificate chain against the trust domain of
+	 * the specified {@link TrustValidationPlan}.
+	 */
+	@Asynchronous
+	public Future<TrustDomainValidation> validate(TrustValidationPlan plan,
+			List<X509Certificate> certificateChain, boolean returnRevocationData) {
+		return new AsyncResult<TrustDomainValidation>(
+				this.trustDomainValidatorBean.validate(plan, certificateChain,
+						returnRevocationData, this.sessionContext));
+	}
+
+	/**
+	 * Validates the specified certificate chain against the specified trust
+	 * domain plans, one after the other.
+	 *
+	 * @see TrustDomainValidatorBean#validate(List, List, boolean,
+	 *      SessionContext)
+	 */
+	@Asynchronous
+	public Future<TrustDomainValidation> validate(
+			List<TrustValidationPlan> plans,
+			List<X509Certificate> certificateChain, boolean returnRevocationData) {
+		return new AsyncResult<TrustDomainValidation>(
+				this.trustDomainValidatorBean.validate(plans, certificateChain,
+						returnRevocationData, this.sessionContext));
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.service.SnmpConstants;
+import be.fedict.trust.service.TrustServiceConstants;
+import be.fedict.trust.service.ValidationResult;
+import be.fedict.trust.service.snmp.SNMPInterceptor;
+
+/**
+ * Optional cache of valid {@link ValidationResult}'s, keyed by trust domain
+ * and certificate chain fingerprint.
+ * <p>
+ * Only results of which all revocation checks have been answered by the CRL
+ * cache are stored. An entry expires at the earliest next update of the used
+ * revocation data, the earliest expiry of the chain certificates, or after the
+ * maximum TTL, whichever comes first. Entries are removed as soon as the CRL
+ * cache of one of the involved CAs gets refreshed. A result is not stored if
+ * one of the involved CAs got refreshed while validating.
+ * <p>
+ * The cache is disabled unless a size is configured via the
+ * {@value TrustServiceConstants#VALIDATION_RESULT_CACHE_SIZE_PROPERTY} system
+ * property.
+ *
+ * @author Frank Cornelis
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ValidationResultCacheBean {
+
+	private static final Log LOG = LogFactory
+			.getLog(ValidationResultCacheBean.class);
+
+	private final int maxSize = Integer.getInteger(
+			TrustServiceConstants.VALIDATION_RESULT_CACHE_SIZE_PROPERTY,
+			TrustServiceConstants.VALIDATION_RESULT_CACHE_SIZE);
+
+	private final long maxTtl = 1000L * Integer.getInteger(
+			TrustServiceConstants.VALIDATION_RESULT_CACHE_MAX_TTL_PROPERTY,
+			TrustServiceConstants.VALIDATION_RESULT_CACHE_MAX_TTL);
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			if (size() > ValidationResultCacheBean.this.maxSize) {
+				SNMPInterceptor.increment(SnmpConstants.RESULT_CACHE_EVICTIONS,
+						SnmpConstants.SNMP_SERVICE, 1L);
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * Version at which the cache was last invalidated per CA. Guarded by the
+	 * entries lock, as are the version counters.
+	 */
+	private final Map<String, Long> caVersions = new HashMap<String, Long>();
+
+	private long version;
+
+	private long resetVersion;
+
+	public boolean isEnabled() {
+		return this.maxSize > 0;
+	}
+
+	/**
+	 * Returns the cache key for the specified trust domain and certificate
+	 * chain, or <code>null</code> if the cache is disabled.
+	 */
+	public String getKey(String trustDomainName,
+			List<X509Certificate> certificateChain) {
+		if (!isEnabled()) {
+			return null;
+		}
+		try {
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+			for (X509Certificate certificate : certificateChain) {
+				messageDigest.update(certificate.getEncoded());
+			}
+			return trustDomainName + "/"
+					+ Hex.encodeHexString(messageDigest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			LOG.error("SHA-256 not available: " + e.getMessage(), e);
+			return null;
+		} catch (CertificateEncodingException e) {
+			LOG.error("certificate encoding error: " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the cached {@link ValidationResult} or <code>null</code> if not
+	 * cached or expired.
+	 */
+	public ValidationResult get(String key) {
+		if (null == key) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		synchronized (this.entries) {
+			Entry entry = this.entries.get(key);
+			if (null != entry && now < entry.expiry) {
+				SNMPInterceptor.increment(SnmpConstants.RESULT_CACHE_HITS,
+						SnmpConstants.SNMP_SERVICE, 1L);
+				return entry.validationResult;
+			}
+			if (null != entry) {
+				this.entries.remove(key);
+				SNMPInterceptor.increment(SnmpConstants.RESULT_CACHE_EVICTIONS,
+						SnmpConstants.SNMP_SERVICE, 1L);
+			}
+		}
+		SNMPInterceptor.increment(SnmpConstants.RESULT_CACHE_MISSES,
+				SnmpConstants.SNMP_SERVICE, 1L);
+		return null;
+	}
+
+	/**
+	 * Returns the current version of the cache. Taken before validating and
+	 * passed to {@link #put(String, ValidationResult, List, Date, Set, long)}.
+	 */
+	public long getVersion() {
+		synchronized (this.entries) {
+			return this.version;
+		}
+	}
+
+	/**
+	 * Caches the specified valid {@link ValidationResult}, unless the cache
+	 * was invalidated for one of the specified CAs since the specified
+	 * version.
+	 *
+	 * @param nextUpdate
+	 *            the earliest next update of the used CRL cache data.
+	 * @param caNames
+	 *            the CAs whose CRL cache data was used.
+	 * @param version
+	 *            the version of the cache before validating.
+	 */
+	public void put(String key, ValidationResult validationResult,
+			List<X509Certificate> certificateChain, Date nextUpdate,
+			Set<String> caNames, long version) {
+		if (null == key || !validationResult.isValid() || null == nextUpdate) {
+			return;
+		}
+		long expiry = Math.min(nextUpdate.getTime(), System
+				.currentTimeMillis()
+				+ this.maxTtl);
+		for (X509Certificate certificate : certificateChain) {
+			expiry = Math.min(expiry, certificate.getNotAfter().getTime());
+		}
+		synchronized (this.entries) {
+			if (this.resetVersion > version) {
+				LOG.debug("validation result cache reset while validating");
+				return;
+			}
+			for (String caName : caNames) {
+				Long caVersion = this.caVersions.get(caName);
+				if (null != caVersion && caVersion > version) {
+					LOG.debug("CRL cache refreshed while validating: "
+							+ caName);
+					return;
+				}
+			}
+			this.entries.put(key, new Entry(validationResult, expiry, caNames));
+		}
+	}
+
+	/**
+	 * Removes all entries that used the CRL cache data of the specified CA.
+	 */
+	public void invalidateCertificateAuthority(String caName) {
+		if (!isEnabled()) {
+			return;
+		}
+		LOG.debug("invalidate validation results for CA: " + caName);
+		synchronized (this.entries) {
+			this.caVersions.put(caName, ++this.version);
+			Iterator<Entry> iterator = this.entries.values().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().caNames.contains(caName)) {
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void reset() {
+		LOG.debug("reset validation result cache");
+		synchronized (this.entries) {
+			this.resetVersion = ++this.version;
+			this.caVersions.clear();
+			this.entries.clear();
+		}
+	}
+
+	private static class Entry {
+
+		private final ValidationResult validationResult;
+
+		private final long expiry;
+
+		private final Set<String> caNames;
+
+		public Entry(ValidationResult validationResult, long expiry,
+				Set<String> caNames) {
+			this.validationResult = validationResult;
+			this.expiry = expiry;
+			this.caNames = caNames;
+		}
+	}
+}
@@ -24,16 +24,14 @@ import java.util.Date;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import be.fedict.trust.service.ValidationService;
+import be.fedict.trust.service.dao.CertificateAuthorityDAO;
 import be.fedict.trust.service.entity.CertificateAuthorityEntity;
 import be.fedict.trust.service.entity.RevokedCertificateEntity;
-import be.fedict.trust.service.entity.RevokedCertificatePK;
 import be.fedict.trust.service.entity.Status;
 
 /**
@@ -47,8 +45,8 @@ public class ValidationServiceBean implements ValidationService {
 	private static final Log LOG = LogFactory
 			.getLog(ValidationServiceBean.class);
 
-	@PersistenceContext
-	private EntityManager entityManager;
+	@EJB
+	private CertificateAuthorityDAO certificateAuthorityDAO;
 
 	@EJB
 	private CertificateAuthorityLookupBean certificateAuthorityLookupBean;
@@ -56,6 +54,9 @@ public class ValidationServiceBean implements ValidationService {
 	@EJB
 	private ServiceIdentityManagerBean serviceIdentityManagerBean;
 
+	@EJB
+	private RevocationIndexBean revocationIndexBean;
+
 	public Date validate(BigInteger serialNumber, byte[] issuerNameHash,
 			byte[] issuerKeyHash) {
 		LOG.debug("validate");
@@ -83,9 +84,19 @@ public class ValidationServiceBean implements ValidationService {
 			LOG.debug("validation date after next update: " + caName);
 			return unknownRevocationDate;
 		}
-		RevokedCertificateEntity revokedCertificate = this.entityManager.find(
-				RevokedCertificateEntity.class, new RevokedCertificatePK(
-						caName, serialNumber.toString()));
+		RevocationIndex revocationIndex = this.revocationIndexBean
+				.getRevocationIndex(caName, certificateAuthority.getCrlNumber(),
+						validationDate);
+		if (null != revocationIndex) {
+			Date revocationDate = this.revocationIndexBean.findRevocationDate(
+					revocationIndex, serialNumber);
+			if (null != revocationDate) {
+				LOG.debug("revoked certificate: " + caName + " " + serialNumber);
+			}
+			return revocationDate;
+		}
+		RevokedCertificateEntity revokedCertificate = this.certificateAuthorityDAO
+				.findRevokedCertificate(certificateAuthority, serialNumber);
 		if (null == revokedCertificate) {
 			return null;
 		}
@@ -0,0 +1,151 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.bean;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.service.TrustServiceConstants;
+
+/**
+ * Bounded cache of certificate links of which the signature has already been
+ * verified by the {@link be.fedict.trust.PublicKeyTrustLinker}. Links are
+ * keyed by the fingerprints of the child and issuer certificate. CA links and
+ * leaf links are kept in separate LRU maps, so the many leaf certificates do
+ * not push the few CA links out of the cache.
+ *
+ * @author Frank Cornelis
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class VerifiedLinkCacheBean {
+
+	private static final Log LOG = LogFactory
+			.getLog(VerifiedLinkCacheBean.class);
+
+	private final Map<String, Boolean> caLinks = new LruMap(Integer
+			.getInteger(
+					TrustServiceConstants.VERIFIED_CA_LINK_CACHE_SIZE_PROPERTY,
+					TrustServiceConstants.VERIFIED_CA_LINK_CACHE_SIZE));
+
+	private final Map<String, Boolean> leafLinks = new LruMap(
+			Integer.getInteger(
+					TrustServiceConstants.VERIFIED_LEAF_LINK_CACHE_SIZE_PROPERTY,
+					TrustServiceConstants.VERIFIED_LEAF_LINK_CACHE_SIZE));
+
+	/**
+	 * Returns the cached outcome of the verified link, or <code>null</code> if
+	 * the link has not been verified yet. The outcome tells whether the
+	 * verifying trust linker returned a valid result rather than no result.
+	 */
+	public Boolean getVerifiedLink(X509Certificate childCertificate,
+			X509Certificate certificate) {
+		String key = getKey(childCertificate, certificate);
+		if (null == key) {
+			return null;
+		}
+		Map<String, Boolean> links = getLinks(childCertificate);
+		synchronized (links) {
+			return links.get(key);
+		}
+	}
+
+	/**
+	 * Registers a link of which the signature has been verified.
+	 */
+	public void setVerifiedLink(X509Certificate childCertificate,
+			X509Certificate certificate, boolean validResult) {
+		String key = getKey(childCertificate, certificate);
+		if (null == key) {
+			return;
+		}
+		Map<String, Boolean> links = getLinks(childCertificate);
+		synchronized (links) {
+			links.put(key, validResult);
+		}
+	}
+
+	/**
+	 * Removes all cached links.
+	 */
+	public void reset() {
+		LOG.debug("reset verified link cache");
+		synchronized (this.caLinks) {
+			this.caLinks.clear();
+		}
+		synchronized (this.leafLinks) {
+			this.leafLinks.clear();
+		}
+	}
+
+	private Map<String, Boolean> getLinks(X509Certificate childCertificate) {
+		if (-1 != childCertificate.getBasicConstraints()) {
+			return this.caLinks;
+		}
+		return this.leafLinks;
+	}
+
+	private String getKey(X509Certificate childCertificate,
+			X509Certificate certificate) {
+		try {
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+			messageDigest.update(childCertificate.getEncoded());
+			byte[] childFingerprint = messageDigest.digest();
+			messageDigest.update(certificate.getEncoded());
+			byte[] fingerprint = messageDigest.digest();
+			return Hex.encodeHexString(childFingerprint) + "/"
+					+ Hex.encodeHexString(fingerprint);
+		} catch (NoSuchAlgorithmException e) {
+			LOG.error("SHA-256 not available: " + e.getMessage(), e);
+			return null;
+		} catch (CertificateEncodingException e) {
+			LOG.error("certificate encoding error: " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	private static class LruMap extends LinkedHashMap<String, Boolean> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		public LruMap(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > this.maxSize;
+		}
+	}
+}
@@ -19,15 +19,10 @@
 package be.fedict.trust.service.dao;
 
 import java.math.BigInteger;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
-import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import javax.ejb.Local;
-import javax.security.auth.x500.X500Principal;
 
 import be.fedict.trust.service.entity.CertificateAuthorityEntity;
 import be.fedict.trust.service.entity.RevokedCertificateEntity;
@@ -69,50 +64,46 @@ public interface CertificateAuthorityDAO {
 	void removeCertificateAuthority(CertificateAuthorityEntity ca);
 
 	/**
-	 * Add a {@link RevokedCertificateEntity} entry.
+	 * Remove all {@link RevokedCertificateEntity}'s for specified issuer.
 	 */
-	RevokedCertificateEntity addRevokedCertificate(String issuerName,
-			BigInteger serialNumber, Date revocationDate, BigInteger crlNumber);
+	int removeRevokedCertificates(String issuerName);
 
 	/**
-	 * Remove {@link RevokedCertificateEntity}'s for the specified issuer that
-	 * are older then the specified crl number.
-	 * 
-	 * @return # of {@link RevokedCertificateEntity}'s removed.
+	 * Returns the {@link RevokedCertificateEntity}'s of the published
+	 * generation of the specified CA, as listed on its own CRL. Entries
+	 * harvested from indirect CRLs of other CAs are not included.
 	 */
-	int removeOldRevokedCertificates(BigInteger crlNumber, String issuerName);
+	List<RevokedCertificateEntity> getRevokedCertificates(
+			CertificateAuthorityEntity certificateAuthority);
 
 	/**
-	 * Persist batch of {@link X509CRLEntry} to the database.
+	 * Returns the {@link RevokedCertificateEntity}'s of the specified
+	 * generation of the specified CA, as listed on its own CRL.
 	 */
-	void updateRevokedCertificates(Set<X509CRLEntry> revokedCertificates,
-			BigInteger crlNumber, X500Principal crlIssuer);
+	List<RevokedCertificateEntity> getRevokedCertificates(
+			CertificateAuthorityEntity certificateAuthority, int generation);
 
 	/**
-	 * Persist a batch of CRL entries to the database given the map of already
-	 * loaded database entities.
-	 * 
-	 * @param revokedCertificates
-	 * @param crlNumber
-	 * @param crlIssuer
-	 * @param revokedCertificateEntities
+	 * Returns the {@link RevokedCertificateEntity}'s of the specified CA as
+	 * listed on the indirect CRLs of other CAs.
 	 */
-	void updateRevokedCertificates(Set<X509CRLEntry> revokedCertificates,
-			BigInteger crlNumber, X500Principal crlIssuer,
-			Map<String, RevokedCertificateEntity> revokedCertificatesMap);
+	List<RevokedCertificateEntity> getForeignRevokedCertificates(
+			CertificateAuthorityEntity certificateAuthority);
 
 	/**
-	 * Remove all {@link RevokedCertificateEntity}'s for specified issuer.
+	 * Returns the {@link RevokedCertificateEntity} for the specified serial
+	 * number in the published generation of the specified CA, or
+	 * <code>null</code> if not revoked.
 	 */
-	int removeRevokedCertificates(String issuerName);
-
-	List<RevokedCertificateEntity> getRevokedCertificates(String issuerName);
+	RevokedCertificateEntity findRevokedCertificate(
+			CertificateAuthorityEntity certificateAuthority,
+			BigInteger serialNumber);
 
 	/**
 	 * @param issuerName
 	 *            the issuer to search for.
-	 * @return the highest CRL number available in the cache for specified
-	 *         issuer or <code>null</code> if no cache entries exist.
+	 * @return the CRL number of the cached revocation data for specified
+	 *         issuer or <code>null</code> if not yet cached.
 	 */
 	BigInteger findCrlNumber(String issuerName);
 
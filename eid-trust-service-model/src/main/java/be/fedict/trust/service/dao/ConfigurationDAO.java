@@ -61,6 +61,14 @@ public interface ConfigurationDAO {
 	 */
 	NetworkConfigEntity setNetworkConfig(String proxyHost, int proxyPort);
 
+	/**
+	 * Sets the connect and read timeouts of the {@link NetworkConfigEntity}.
+	 * 
+	 * @param connectTimeout
+	 * @param readTimeout
+	 */
+	void setNetworkConfigTimeouts(Integer connectTimeout, Integer readTimeout);
+
 	/**
 	 * Enable/disable the {@link NetworkConfigEntity}.
 	 * 
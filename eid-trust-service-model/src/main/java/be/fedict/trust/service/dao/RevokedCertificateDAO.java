@@ -0,0 +1,86 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.dao;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import javax.ejb.Local;
+
+import be.fedict.trust.service.entity.CertificateAuthorityEntity;
+import be.fedict.trust.service.entity.RevokedCertificateEntity;
+
+/**
+ * Bulk write access to the CRL cache. Writes go straight to the database via
+ * JDBC batches, bypassing the persistence context.
+ * <p>
+ * Every write runs in a transaction of its own. A new CRL is staged under the
+ * next generation of its CA, which stays invisible to validations until the
+ * generation of the {@link CertificateAuthorityEntity} is switched.
+ * 
+ * @author Frank Cornelis
+ */
+@Local
+public interface RevokedCertificateDAO {
+
+	/**
+	 * Inserts a batch of new {@link RevokedCertificateEntity}'s.
+	 * 
+	 * @return # of rows written.
+	 */
+	int insertRevokedCertificates(
+			List<RevokedCertificateEntity> revokedCertificates);
+
+	/**
+	 * Updates the revocation date of a batch of
+	 * {@link RevokedCertificateEntity}'s. Entries not yet in the database are
+	 * inserted.
+	 * 
+	 * @return # of rows written.
+	 */
+	int upsertRevokedCertificates(
+			List<RevokedCertificateEntity> revokedCertificates);
+
+	/**
+	 * Marks the {@link RevokedCertificateEntity}'s with the specified serial
+	 * numbers, added before the specified generation, as removed in that
+	 * generation.
+	 * 
+	 * @return # of rows written.
+	 */
+	int retireRevokedCertificates(int issuerId, int generation,
+			List<BigInteger> serialNumbers);
+
+	/**
+	 * Discards the changes of generations after the specified published
+	 * generation, as left behind by an aborted harvest.
+	 * 
+	 * @return # of rows written.
+	 */
+	int discardRevokedCertificates(int issuerId, int publishedGeneration);
+
+	/**
+	 * Deletes at most the specified number of
+	 * {@link RevokedCertificateEntity}'s removed in the specified generation or
+	 * before.
+	 * 
+	 * @return # of rows deleted.
+	 */
+	int purgeRevokedCertificates(int issuerId, int generation, int maxRows);
+}
@@ -20,29 +20,21 @@ package be.fedict.trust.service.dao.bean;
 
 import java.math.BigInteger;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
-import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import javax.ejb.Stateless;
-import javax.ejb.TransactionAttribute;
-import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
-import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
-import javax.security.auth.x500.X500Principal;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import be.fedict.trust.service.dao.CertificateAuthorityDAO;
 import be.fedict.trust.service.entity.CertificateAuthorityEntity;
+import be.fedict.trust.service.entity.IssuerIdEntity;
 import be.fedict.trust.service.entity.RevokedCertificateEntity;
-import be.fedict.trust.service.entity.RevokedCertificatePK;
 import be.fedict.trust.service.entity.TrustPointEntity;
 
 /**
@@ -84,6 +76,10 @@ public class CertificateAuthorityDAOBean implements CertificateAuthorityDAO {
 			LOG.error("Certificate encoding exception: " + e.getMessage());
 			return null;
 		}
+		IssuerIdEntity issuerId = new IssuerIdEntity(
+				certificateAuthority.getName());
+		this.entityManager.persist(issuerId);
+		certificateAuthority.setIssuerId(issuerId.getId());
 		this.entityManager.persist(certificateAuthority);
 		return certificateAuthority;
 	}
@@ -97,107 +93,16 @@ public class CertificateAuthorityDAOBean implements CertificateAuthorityDAO {
 		LOG.debug("CA's removed: " + result);
 	}
 
-	@TransactionAttribute(TransactionAttributeType.REQUIRED)
-	public RevokedCertificateEntity addRevokedCertificate(String issuerName,
-			BigInteger serialNumber, Date revocationDate, BigInteger crlNumber) {
-		RevokedCertificateEntity revokedCertificate = new RevokedCertificateEntity(
-				issuerName, serialNumber, revocationDate, crlNumber);
-		this.entityManager.persist(revokedCertificate);
-		return revokedCertificate;
-	}
-
-	@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-	public void updateRevokedCertificates(
-			Set<X509CRLEntry> revokedCertificates, BigInteger crlNumber,
-			X500Principal crlIssuer) {
-		LOG.debug("Update " + revokedCertificates.size()
-				+ " revoked certificates (crlNumber=" + crlNumber + ")");
-		for (X509CRLEntry revokedCertificate : revokedCertificates) {
-			X500Principal certificateIssuer = revokedCertificate
-					.getCertificateIssuer();
-			String issuerName;
-			if (null == certificateIssuer) {
-				issuerName = crlIssuer.toString();
-			} else {
-				issuerName = certificateIssuer.toString();
-			}
-			BigInteger serialNumber = revokedCertificate.getSerialNumber();
-			Date revocationDate = revokedCertificate.getRevocationDate();
-
-			// lookup
-			RevokedCertificateEntity revokedCertificateEntity = this.entityManager
-					.find(RevokedCertificateEntity.class,
-							new RevokedCertificatePK(issuerName, serialNumber
-									.toString()));
-
-			if (null != revokedCertificateEntity) {
-				// already exists, update revocationDate and crl number
-				revokedCertificateEntity.setRevocationDate(revocationDate);
-				revokedCertificateEntity.setCrlNumber(crlNumber);
-			} else {
-				// don't exist yet, add
-				this.entityManager.persist(new RevokedCertificateEntity(
-						issuerName, serialNumber, revocationDate, crlNumber));
-			}
-		}
-	}
-
-	// @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-	public void updateRevokedCertificates(
-			Set<X509CRLEntry> revokedCertificates, BigInteger crlNumber,
-			X500Principal crlIssuer,
-			Map<String, RevokedCertificateEntity> revokedCertificatesMap) {
-		LOG.debug("Update " + revokedCertificates.size()
-				+ " revoked certificates (crlNumber=" + crlNumber + ")");
-		for (X509CRLEntry revokedCertificate : revokedCertificates) {
-			X500Principal certificateIssuer = revokedCertificate
-					.getCertificateIssuer();
-			String issuerName;
-			if (null == certificateIssuer) {
-				issuerName = crlIssuer.toString();
-			} else {
-				issuerName = certificateIssuer.toString();
-			}
-			BigInteger serialNumber = revokedCertificate.getSerialNumber();
-			Date revocationDate = revokedCertificate.getRevocationDate();
-
-			// lookup
-			RevokedCertificateEntity revokedCertificateEntity = revokedCertificatesMap
-					.get(serialNumber.toString());
-
-			if (null != revokedCertificateEntity) {
-				// already exists, update revocationDate and crl number
-				revokedCertificateEntity.setRevocationDate(revocationDate);
-				revokedCertificateEntity.setCrlNumber(crlNumber);
-			} else {
-				// don't exist yet, add
-				this.entityManager.persist(new RevokedCertificateEntity(
-						issuerName, serialNumber, revocationDate, crlNumber));
-			}
-		}
-	}
-
-	// @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-	public int removeOldRevokedCertificates(BigInteger crlNumber,
-			String issuerName) {
-		LOG.debug("deleting revoked certificates (issuer=" + issuerName
-				+ " older than crl=" + crlNumber + ")");
-		Query query = this.entityManager
-				.createNamedQuery(RevokedCertificateEntity.DELETE_WHERE_ISSUER_OLDER_CRL_NUMBER);
-		query.setParameter("issuer", issuerName);
-		query.setParameter("crlNumber", crlNumber);
-		int deleteResult = query.executeUpdate();
-		LOG.debug("delete result: " + deleteResult);
-		this.entityManager.flush();
-		return deleteResult;
-	}
-
 	public int removeRevokedCertificates(String issuerName) {
 		LOG.debug("deleting revoked certificates (issuer=" + issuerName + ")");
+		CertificateAuthorityEntity certificateAuthority = findCertificateAuthority(issuerName);
+		if (null == certificateAuthority) {
+			return 0;
+		}
 
 		Query query = this.entityManager
 				.createNamedQuery(RevokedCertificateEntity.DELETE_WHERE_ISSUER);
-		query.setParameter("issuer", issuerName);
+		query.setParameter("issuerId", certificateAuthority.getIssuerId());
 		int deleteResult = query.executeUpdate();
 		LOG.debug("delete result: " + deleteResult);
 		return deleteResult;
@@ -205,14 +110,11 @@ public class CertificateAuthorityDAOBean implements CertificateAuthorityDAO {
 
 	public BigInteger findCrlNumber(String issuerName) {
 		LOG.debug("get CRL number for " + issuerName);
-		Query query = this.entityManager
-				.createNamedQuery(RevokedCertificateEntity.QUERY_CRL_NUMBER_WHERE_ISSUER);
-		query.setParameter("issuer", issuerName);
-		try {
-			return (BigInteger) query.getSingleResult();
-		} catch (NoResultException e) {
+		CertificateAuthorityEntity certificateAuthority = findCertificateAuthority(issuerName);
+		if (null == certificateAuthority) {
 			return null;
 		}
+		return certificateAuthority.getCrlNumber();
 	}
 
 	@SuppressWarnings("unchecked")
@@ -253,14 +155,48 @@ public class CertificateAuthorityDAOBean implements CertificateAuthorityDAO {
 		this.entityManager.remove(caEntity);
 	}
 
+	public List<RevokedCertificateEntity> getRevokedCertificates(
+			CertificateAuthorityEntity certificateAuthority) {
+		return getRevokedCertificates(certificateAuthority,
+				certificateAuthority.getGeneration());
+	}
+
 	@SuppressWarnings("unchecked")
 	public List<RevokedCertificateEntity> getRevokedCertificates(
-			String issuerName) {
+			CertificateAuthorityEntity certificateAuthority, int generation) {
 		LOG.debug("get revoked certificates from database for CA: "
-				+ issuerName);
+				+ certificateAuthority.getName() + " (generation="
+				+ generation + ")");
 		Query query = this.entityManager
 				.createNamedQuery(RevokedCertificateEntity.QUERY_WHERE_ISSUER);
-		query.setParameter("issuer", issuerName);
+		query.setParameter("issuerId", certificateAuthority.getIssuerId());
+		query.setParameter("generation", generation);
 		return query.getResultList();
 	}
+
+	@SuppressWarnings("unchecked")
+	public List<RevokedCertificateEntity> getForeignRevokedCertificates(
+			CertificateAuthorityEntity certificateAuthority) {
+		Query query = this.entityManager
+				.createNamedQuery(RevokedCertificateEntity.QUERY_FOREIGN_WHERE_ISSUER);
+		query.setParameter("issuerId", certificateAuthority.getIssuerId());
+		return query.getResultList();
+	}
+
+	@SuppressWarnings("unchecked")
+	public RevokedCertificateEntity findRevokedCertificate(
+			CertificateAuthorityEntity certificateAuthority,
+			BigInteger serialNumber) {
+		Query query = this.entityManager
+				.createNamedQuery(RevokedCertificateEntity.QUERY_WHERE_ISSUER_SERIAL);
+		query.setParameter("issuerId", certificateAuthority.getIssuerId());
+		query.setParameter("serialNumber", serialNumber.toByteArray());
+		query.setParameter("generation", certificateAuthority.getGeneration());
+		List<RevokedCertificateEntity> revokedCertificates = query
+				.getResultList();
+		if (revokedCertificates.isEmpty()) {
+			return null;
+		}
+		return revokedCertificates.get(0);
+	}
 }
@@ -90,6 +90,15 @@ public class ConfigurationDAOBean implements ConfigurationDAO {
 		return networkConfigEntity;
 	}
 
+	public void setNetworkConfigTimeouts(Integer connectTimeout,
+			Integer readTimeout) {
+		LOG.debug("set network config timeouts: connectTimeout="
+				+ connectTimeout + " readTimeout=" + readTimeout);
+		NetworkConfigEntity networkConfigEntity = getNetworkConfigEntity();
+		networkConfigEntity.setConnectTimeout(connectTimeout);
+		networkConfigEntity.setReadTimeout(readTimeout);
+	}
+
 	public ClockDriftConfigEntity findClockDriftConfig() {
 		LOG.debug("find clock drift configuration");
 		return this.entityManager.find(ClockDriftConfigEntity.class,
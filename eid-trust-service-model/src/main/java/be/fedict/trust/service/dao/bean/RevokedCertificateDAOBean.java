@@ -0,0 +1,369 @@
+/*
+ * eID Trust Service Project.
+ * Copyright (C) 2009-2010 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.trust.service.dao.bean;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Resource;
+import javax.ejb.EJBException;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.trust.service.dao.RevokedCertificateDAO;
+import be.fedict.trust.service.entity.RevokedCertificateEntity;
+
+/**
+ * Revoked certificate bulk DAO Bean implementation.
+ * <p>
+ * Uses the JTA data source of the persistence unit. Every method commits on
+ * its own, so a staged CRL never holds locks for the whole harvest. Upserts
+ * use the native statement of MySQL, PostgreSQL 9.5 or later and Oracle.
+ * Other databases, including older PostgreSQL versions, get a batch update
+ * followed by a batch insert of the missing rows.
+ * 
+ * @author Frank Cornelis
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+public class RevokedCertificateDAOBean implements RevokedCertificateDAO {
+
+	private static final Log LOG = LogFactory
+			.getLog(RevokedCertificateDAOBean.class);
+
+	private static final String INSERT = "INSERT INTO ts_revoked_certs "
+			+ "(issuerId, serialNumber, generation, revocationDate) "
+			+ "VALUES (?, ?, ?, ?)";
+
+	private static final String UPDATE = "UPDATE ts_revoked_certs "
+			+ "SET revocationDate = ? "
+			+ "WHERE issuerId = ? AND serialNumber = ? AND generation = ?";
+
+	private static final String RETIRE = "UPDATE ts_revoked_certs "
+			+ "SET removedGeneration = ? "
+			+ "WHERE issuerId = ? AND serialNumber = ? AND generation < ? "
+			+ "AND removedGeneration IS NULL";
+
+	private static final String DISCARD_ADDED = "DELETE FROM ts_revoked_certs "
+			+ "WHERE issuerId = ? AND generation > ?";
+
+	private static final String DISCARD_REMOVED = "UPDATE ts_revoked_certs "
+			+ "SET removedGeneration = NULL "
+			+ "WHERE issuerId = ? AND removedGeneration > ?";
+
+	private static final String SELECT_REMOVED = "SELECT serialNumber, generation "
+			+ "FROM ts_revoked_certs "
+			+ "WHERE issuerId = ? AND removedGeneration <= ?";
+
+	private static final String DELETE = "DELETE FROM ts_revoked_certs "
+			+ "WHERE issuerId = ? AND serialNumber = ? AND generation = ?";
+
+	private static final String MYSQL_UPSERT = INSERT
+			+ " ON DUPLICATE KEY UPDATE revocationDate = VALUES(revocationDate)";
+
+	private static final String POSTGRESQL_UPSERT = INSERT
+			+ " ON CONFLICT (issuerId, serialNumber, generation) DO UPDATE "
+			+ "SET revocationDate = EXCLUDED.revocationDate";
+
+	private static final String ORACLE_UPSERT = "MERGE INTO ts_revoked_certs t "
+			+ "USING (SELECT ? AS issuerId, ? AS serialNumber, "
+			+ "? AS generation, ? AS revocationDate FROM dual) s "
+			+ "ON (t.issuerId = s.issuerId AND t.serialNumber = s.serialNumber "
+			+ "AND t.generation = s.generation) "
+			+ "WHEN MATCHED THEN UPDATE "
+			+ "SET t.revocationDate = s.revocationDate "
+			+ "WHEN NOT MATCHED THEN INSERT "
+			+ "(issuerId, serialNumber, generation, revocationDate) "
+			+ "VALUES (s.issuerId, s.serialNumber, s.generation, s.revocationDate)";
+
+	@Resource(mappedName = "java:/DefaultDS")
+	private DataSource dataSource;
+
+	public int insertRevokedCertificates(
+			List<RevokedCertificateEntity> revokedCertificates) {
+		LOG.debug("insert " + revokedCertificates.size()
+				+ " revoked certificates");
+		try {
+			Connection connection = this.dataSource.getConnection();
+			try {
+				return insert(connection, revokedCertificates);
+			} finally {
+				connection.close();
+			}
+		} catch (SQLException e) {
+			throw new EJBException("revoked certificates insert error", e);
+		}
+	}
+
+	public int upsertRevokedCertificates(
+			List<RevokedCertificateEntity> revokedCertificates) {
+		LOG.debug("upsert " + revokedCertificates.size()
+				+ " revoked certificates");
+		try {
+			Connection connection = this.dataSource.getConnection();
+			try {
+				String upsert = getUpsertStatement(connection);
+				if (null == upsert) {
+					return updateOrInsert(connection, revokedCertificates);
+				}
+				PreparedStatement statement = connection
+						.prepareStatement(upsert);
+				try {
+					for (RevokedCertificateEntity revokedCertificate : revokedCertificates) {
+						setRow(statement, revokedCertificate);
+						statement.addBatch();
+					}
+					statement.executeBatch();
+					return revokedCertificates.size();
+				} finally {
+					statement.close();
+				}
+			} finally {
+				connection.close();
+			}
+		} catch (SQLException e) {
+			throw new EJBException("revoked certificates upsert error", e);
+		}
+	}
+
+	public int retireRevokedCertificates(int issuerId, int generation,
+			List<BigInteger> serialNumbers) {
+		LOG.debug("retire " + serialNumbers.size()
+				+ " revoked certificates (issuerId=" + issuerId
+				+ ", generation=" + generation + ")");
+		try {
+			Connection connection = this.dataSource.getConnection();
+			try {
+				PreparedStatement statement = connection
+						.prepareStatement(RETIRE);
+				try {
+					for (BigInteger serialNumber : serialNumbers) {
+						statement.setInt(1, generation);
+						statement.setInt(2, issuerId);
+						statement.setBytes(3, serialNumber.toByteArray());
+						statement.setInt(4, generation);
+						statement.addBatch();
+					}
+					statement.executeBatch();
+					return serialNumbers.size();
+				} finally {
+					statement.close();
+				}
+			} finally {
+				connection.close();
+			}
+		} catch (SQLException e) {
+			throw new EJBException("revoked certificates retire error", e);
+		}
+	}
+
+	public int discardRevokedCertificates(int issuerId,
+			int publishedGeneration) {
+		try {
+			Connection connection = this.dataSource.getConnection();
+			try {
+				int result = executeUpdate(connection, DISCARD_ADDED,
+						issuerId, publishedGeneration);
+				result += executeUpdate(connection, DISCARD_REMOVED, issuerId,
+						publishedGeneration);
+				if (0 != result) {
+					LOG.debug("discarded " + result
+							+ " staged revoked certificates (issuerId="
+							+ issuerId + ")");
+				}
+				return result;
+			} finally {
+				connection.close();
+			}
+		} catch (SQLException e) {
+			throw new EJBException("revoked certificates discard error", e);
+		}
+	}
+
+	public int purgeRevokedCertificates(int issuerId, int generation,
+			int maxRows) {
+		try {
+			Connection connection = this.dataSource.getConnection();
+			try {
+				List<byte[]> serialNumbers = new ArrayList<byte[]>();
+				List<Integer> generations = new ArrayList<Integer>();
+				PreparedStatement query = connection
+						.prepareStatement(SELECT_REMOVED);
+				try {
+					query.setMaxRows(maxRows);
+					query.setInt(1, issuerId);
+					query.setInt(2, generation);
+					ResultSet resultSet = query.executeQuery();
+					try {
+						while (resultSet.next()) {
+							serialNumbers.add(resultSet.getBytes(1));
+							generations.add(resultSet.getInt(2));
+						}
+					} finally {
+						resultSet.close();
+					}
+				} finally {
+					query.close();
+				}
+				if (serialNumbers.isEmpty()) {
+					return 0;
+				}
+
+				PreparedStatement statement = connection
+						.prepareStatement(DELETE);
+				try {
+					for (int idx = 0; idx < serialNumbers.size(); idx++) {
+						statement.setInt(1, issuerId);
+						statement.setBytes(2, serialNumbers.get(idx));
+						statement.setInt(3, generations.get(idx));
+						statement.addBatch();
+					}
+					statement.executeBatch();
+				} finally {
+					statement.close();
+				}
+				LOG.debug("purged " + serialNumbers.size()
+						+ " revoked certificates (issuerId=" + issuerId
+						+ ", generation=" + generation + ")");
+				return serialNumbers.size();
+			} finally {
+				connection.close();
+			}
+		} catch (SQLException e) {
+			throw new EJBException("revoked certificates purge error", e);
+		}
+	}
+
+	private int executeUpdate(Connection connection, String sql,
+			int issuerId, int generation) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(sql);
+		try {
+			statement.setInt(1, issuerId);
+			statement.setInt(2, generation);
+			return statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+	}
+
+	private int insert(Connection connection,
+			List<RevokedCertificateEntity> revokedCertificates)
+			throws SQLException {
+		if (revokedCertificates.isEmpty()) {
+			return 0;
+		}
+		PreparedStatement statement = connection.prepareStatement(INSERT);
+		try {
+			for (RevokedCertificateEntity revokedCertificate : revokedCertificates) {
+				setRow(statement, revokedCertificate);
+				statement.addBatch();
+			}
+			statement.executeBatch();
+			return revokedCertificates.size();
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Fallback for databases without upsert statement.
+	 */
+	private int updateOrInsert(Connection connection,
+			List<RevokedCertificateEntity> revokedCertificates)
+			throws SQLException {
+		int[] updateCounts;
+		PreparedStatement statement = connection.prepareStatement(UPDATE);
+		try {
+			for (RevokedCertificateEntity revokedCertificate : revokedCertificates) {
+				setDate(statement, 1, revokedCertificate);
+				statement.setInt(2, revokedCertificate.getPk().getIssuerId());
+				statement.setBytes(3, revokedCertificate.getPk()
+						.getSerialNumber());
+				statement.setInt(4, revokedCertificate.getPk()
+						.getGeneration());
+				statement.addBatch();
+			}
+			updateCounts = statement.executeBatch();
+		} finally {
+			statement.close();
+		}
+
+		List<RevokedCertificateEntity> missing = new ArrayList<RevokedCertificateEntity>();
+		for (int idx = 0; idx < updateCounts.length; idx++) {
+			if (0 == updateCounts[idx]) {
+				missing.add(revokedCertificates.get(idx));
+			}
+		}
+		return updateCounts.length - missing.size()
+				+ insert(connection, missing);
+	}
+
+	/**
+	 * Returns the native upsert statement of the database, or
+	 * <code>null</code> if not supported.
+	 */
+	private String getUpsertStatement(Connection connection)
+			throws SQLException {
+		DatabaseMetaData metaData = connection.getMetaData();
+		String databaseProductName = metaData.getDatabaseProductName()
+				.toLowerCase();
+		if (databaseProductName.contains("mysql")) {
+			return MYSQL_UPSERT;
+		}
+		if (databaseProductName.contains("postgresql")) {
+			// ON CONFLICT is available as of PostgreSQL 9.5
+			int majorVersion = metaData.getDatabaseMajorVersion();
+			if (majorVersion > 9 || majorVersion == 9
+					&& metaData.getDatabaseMinorVersion() >= 5) {
+				return POSTGRESQL_UPSERT;
+			}
+			return null;
+		}
+		if (databaseProductName.contains("oracle")) {
+			return ORACLE_UPSERT;
+		}
+		return null;
+	}
+
+	private void setRow(PreparedStatement statement,
+			RevokedCertificateEntity revokedCertificate) throws SQLException {
+		statement.setInt(1, revokedCertificate.getPk().getIssuerId());
+		statement.setBytes(2, revokedCertificate.getPk().getSerialNumber());
+		statement.setInt(3, revokedCertificate.getPk().getGeneration());
+		setDate(statement, 4, revokedCertificate);
+	}
+
+	private void setDate(PreparedStatement statement, int index,
+			RevokedCertificateEntity revokedCertificate) throws SQLException {
+		statement.setTimestamp(index, new Timestamp(revokedCertificate
+				.getRevocationDate().getTime()));
+	}
+}
@@ -38,6 +38,7 @@ import org.bouncycastle.tsp.TimeStampRequestGenerator;
 import org.bouncycastle.tsp.TimeStampResponse;
 
 import be.fedict.trust.NetworkConfig;
+import be.fedict.trust.service.bean.HttpTransportBean;
 import be.fedict.trust.service.entity.ClockDriftConfigEntity;
 
 /**
@@ -71,12 +72,6 @@ public abstract class ClockDriftUtil {
 
 		LOG.debug("clock drift detection: " + clockDriftConfig.toString());
 
-		TimeStampRequestGenerator requestGen = new TimeStampRequestGenerator();
-
-		TimeStampRequest request = requestGen.generate(TSPAlgorithms.SHA1,
-				new byte[20], BigInteger.valueOf(100));
-		byte[] requestData = request.getEncoded();
-
 		HttpClient httpClient = new HttpClient();
 
 		if (null != networkConfig) {
@@ -84,11 +79,52 @@ public abstract class ClockDriftUtil {
 					networkConfig.getProxyHost(), networkConfig.getProxyPort());
 		}
 
+		PostMethod postMethod = createTSPRequest(clockDriftConfig);
+		try {
+			int statusCode = httpClient.executeMethod(postMethod);
+			return getGenTime(clockDriftConfig, statusCode, postMethod);
+		} finally {
+			postMethod.releaseConnection();
+		}
+	}
+
+	/**
+	 * Executes the TSP request over the shared HTTP connection pool.
+	 */
+	public static Date executeTSP(ClockDriftConfigEntity clockDriftConfig,
+			HttpTransportBean httpTransportBean) throws IOException,
+			TSPException {
+
+		LOG.debug("clock drift detection: " + clockDriftConfig.toString());
+
+		PostMethod postMethod = createTSPRequest(clockDriftConfig);
+		try {
+			int statusCode = httpTransportBean.execute(postMethod);
+			return getGenTime(clockDriftConfig, statusCode, postMethod);
+		} finally {
+			httpTransportBean.release(postMethod);
+		}
+	}
+
+	private static PostMethod createTSPRequest(
+			ClockDriftConfigEntity clockDriftConfig) throws IOException {
+
+		TimeStampRequestGenerator requestGen = new TimeStampRequestGenerator();
+
+		TimeStampRequest request = requestGen.generate(TSPAlgorithms.SHA1,
+				new byte[20], BigInteger.valueOf(100));
+		byte[] requestData = request.getEncoded();
+
 		PostMethod postMethod = new PostMethod(clockDriftConfig.getServer());
 		postMethod.setRequestEntity(new ByteArrayRequestEntity(requestData,
 				"application/timestamp-query"));
+		return postMethod;
+	}
+
+	private static Date getGenTime(ClockDriftConfigEntity clockDriftConfig,
+			int statusCode, PostMethod postMethod) throws IOException,
+			TSPException {
 
-		int statusCode = httpClient.executeMethod(postMethod);
 		if (statusCode != HttpStatus.SC_OK) {
 			throw new TSPException("Error contacting TSP server "
 					+ clockDriftConfig.getServer());
@@ -96,7 +132,6 @@ public abstract class ClockDriftUtil {
 
 		TimeStampResponse tspResponse = new TimeStampResponse(
 				postMethod.getResponseBodyAsStream());
-		postMethod.releaseConnection();
 
 		return tspResponse.getTimeStampToken().getTimeStampInfo().getGenTime();
 	}
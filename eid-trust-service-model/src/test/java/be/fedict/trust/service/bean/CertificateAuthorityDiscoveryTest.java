@@ -0,0 +1,41 @@
+package be.fedict.trust.service.bean;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.security.cert.X509Certificate;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CertificateAuthorityDiscoveryTest {
+
+	private static final String CA_NAME = "caName";
+	private static final String CRL_URL = "http://crl.test/ca.crl";
+
+	@Mock
+	private X509Certificate certificate;
+
+	@Test
+	public void mergesRegistrationAndHarvest() {
+		CertificateAuthorityDiscovery discovery = new CertificateAuthorityDiscovery(CA_NAME, certificate, CRL_URL, false);
+		CertificateAuthorityDiscovery harvest = new CertificateAuthorityDiscovery(CA_NAME, null, null, true);
+
+		CertificateAuthorityDiscovery merged = discovery.merge(harvest);
+
+		assertSame(certificate, merged.getCertificate());
+		assertEquals(CRL_URL, merged.getCrlUrl());
+		assertTrue(merged.isHarvest());
+	}
+
+	@Test
+	public void returnsSameInstanceWhenNothingIsAdded() {
+		CertificateAuthorityDiscovery discovery = new CertificateAuthorityDiscovery(CA_NAME, certificate, CRL_URL, true);
+
+		assertSame(discovery, discovery.merge(new CertificateAuthorityDiscovery(CA_NAME, null, CRL_URL, false)));
+	}
+}
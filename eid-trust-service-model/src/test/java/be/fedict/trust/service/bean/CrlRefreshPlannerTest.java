@@ -0,0 +1,117 @@
+package be.fedict.trust.service.bean;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CrlRefreshPlannerTest {
+
+	private static final long MINUTE = 60 * 1000L;
+	private static final long HOUR = 60 * MINUTE;
+
+	private static final Date NOW = new Date(1000 * HOUR);
+
+	private CrlRefreshPlanner planner;
+
+	@Before
+	public void setUp() {
+		planner = new CrlRefreshPlanner(15 * MINUTE, 5 * MINUTE, 5 * MINUTE, MINUTE, 2, new Random(42));
+	}
+
+	@Test
+	public void refreshesAheadOfNextUpdate() {
+		Date nextUpdate = new Date(NOW.getTime() + 24 * HOUR);
+
+		for (int idx = 0; idx < 100; idx++) {
+			long refresh = planner.plan(NOW, nextUpdate, NOW).getTime();
+
+			assertTrue(refresh <= nextUpdate.getTime() - 15 * MINUTE);
+			assertTrue(refresh > nextUpdate.getTime() - 20 * MINUTE);
+		}
+	}
+
+	@Test
+	public void shortLivedCrlIsNotRefreshedTooEarly() {
+		Date nextUpdate = new Date(NOW.getTime() + 20 * MINUTE);
+
+		long refresh = planner.plan(NOW, nextUpdate, NOW).getTime();
+
+		assertTrue(refresh <= NOW.getTime() + 10 * MINUTE);
+		assertTrue(refresh > NOW.getTime() + 5 * MINUTE);
+	}
+
+	@Test
+	public void overdueCrlIsRetriedAfterMinInterval() {
+		Date nextUpdate = new Date(NOW.getTime() - HOUR);
+
+		long refresh = planner.plan(new Date(NOW.getTime() - 2 * HOUR), nextUpdate, NOW).getTime();
+
+		assertTrue(refresh >= NOW.getTime() + 5 * MINUTE);
+		assertTrue(refresh < NOW.getTime() + 10 * MINUTE);
+	}
+
+	@Test
+	public void noNextUpdateNoRefresh() {
+		assertNull(planner.plan(NOW, null, NOW));
+	}
+
+	@Test
+	public void fullSlotMovesToNextSlot() {
+		List<Date> scheduled = new ArrayList<Date>();
+		scheduled.add(new Date(NOW.getTime() + 10 * 1000L));
+		scheduled.add(new Date(NOW.getTime() + 20 * 1000L));
+		scheduled.add(new Date(NOW.getTime() + MINUTE));
+
+		assertEquals(new Date(NOW.getTime() + MINUTE + 30 * 1000L),
+				planner.allocate(new Date(NOW.getTime() + 30 * 1000L), null, NOW, scheduled));
+
+		scheduled.add(new Date(NOW.getTime() + MINUTE + 45 * 1000L));
+
+		assertEquals(new Date(NOW.getTime() + 2 * MINUTE + 30 * 1000L),
+				planner.allocate(new Date(NOW.getTime() + 30 * 1000L), null, NOW, scheduled));
+	}
+
+	@Test
+	public void refreshIsNotMovedPastNextUpdate() {
+		Date nextUpdate = new Date(NOW.getTime() + 15 * MINUTE);
+		List<Date> scheduled = new ArrayList<Date>();
+
+		// more CAs than there are slots within the lead time
+		for (int idx = 0; idx < 40; idx++) {
+			Date refresh = planner.plan(new Date(NOW.getTime() - 24 * HOUR), nextUpdate, NOW);
+			Date allocated = planner.allocate(refresh, nextUpdate, NOW, scheduled);
+
+			assertTrue(allocated.before(nextUpdate));
+			assertFalse(allocated.before(NOW));
+			scheduled.add(allocated);
+		}
+	}
+
+	@Test
+	public void fullSlotsUpToNextUpdateMoveToEarlierSlot() {
+		Date nextUpdate = new Date(NOW.getTime() + 3 * MINUTE);
+		List<Date> scheduled = new ArrayList<Date>();
+		for (int idx = 1; idx < 3; idx++) {
+			scheduled.add(new Date(NOW.getTime() + idx * MINUTE));
+			scheduled.add(new Date(NOW.getTime() + idx * MINUTE));
+		}
+
+		assertEquals(new Date(NOW.getTime() + 30 * 1000L),
+				planner.allocate(new Date(NOW.getTime() + MINUTE + 30 * 1000L), nextUpdate, NOW, scheduled));
+
+		scheduled.add(new Date(NOW.getTime()));
+		scheduled.add(new Date(NOW.getTime()));
+
+		assertEquals(new Date(NOW.getTime() + MINUTE + 30 * 1000L),
+				planner.allocate(new Date(NOW.getTime() + MINUTE + 30 * 1000L), nextUpdate, NOW, scheduled));
+	}
+}
@@ -0,0 +1,214 @@
+package be.fedict.trust.service.bean;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.x509.X509V2CRLGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import be.fedict.trust.service.TrustServiceConstants;
+
+public class CrlStoreBeanTest {
+
+	private static final String CA_NAME = "CN=Test CA";
+
+	private KeyPair keyPair;
+
+	private Date now;
+
+	private File directory;
+
+	private CrlStoreBean testedInstance;
+
+	@BeforeClass
+	public static void setUpProvider() {
+		if (null == Security.getProvider(BouncyCastleProvider.PROVIDER_NAME)) {
+			Security.addProvider(new BouncyCastleProvider());
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+		keyPairGenerator.initialize(1024);
+		this.keyPair = keyPairGenerator.generateKeyPair();
+		this.now = new Date();
+
+		this.directory = File.createTempFile("crl-store-", "");
+		this.directory.delete();
+		System.setProperty(TrustServiceConstants.CRL_STORE_DIR_PROPERTY,
+				this.directory.getAbsolutePath());
+		this.testedInstance = new CrlStoreBean();
+		this.testedInstance.postConstruct();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.clearProperty(TrustServiceConstants.CRL_STORE_DIR_PROPERTY);
+		FileUtils.deleteDirectory(this.directory);
+	}
+
+	@Test
+	public void testStoreAndFind() throws Exception {
+		// setup
+		File crlFile = writeCrl(1, 3600 * 1000);
+
+		// operate
+		File storedFile = this.testedInstance.store(CA_NAME, BigInteger
+				.valueOf(1), crlFile);
+
+		// verify
+		Assert.assertNotNull(storedFile);
+		Assert.assertFalse(crlFile.exists());
+		Assert.assertTrue(this.testedInstance.isStored(storedFile));
+		Assert.assertFalse(this.testedInstance.isStored(crlFile));
+		Assert.assertEquals(storedFile, this.testedInstance.findCrl(CA_NAME,
+				this.now));
+		Assert.assertNull(this.testedInstance.findCrl("CN=Other CA", this.now));
+		Assert.assertEquals(storedFile, this.testedInstance.store(CA_NAME,
+				BigInteger.valueOf(1), storedFile));
+	}
+
+	@Test
+	public void testFindHighestCrlNumber() throws Exception {
+		// setup
+		this.testedInstance.store(CA_NAME, BigInteger.valueOf(2), writeCrl(2,
+				3600 * 1000));
+		File storedFile = this.testedInstance.store(CA_NAME, BigInteger
+				.valueOf(10), writeCrl(10, 3600 * 1000));
+
+		// operate & verify
+		Assert.assertEquals(storedFile, this.testedInstance.findCrl(CA_NAME,
+				this.now));
+	}
+
+	@Test
+	public void testExpiredCrlRemoved() throws Exception {
+		// setup
+		File storedFile = this.testedInstance.store(CA_NAME, BigInteger
+				.valueOf(1), writeCrl(1, 1000));
+
+		// operate
+		File result = this.testedInstance.findCrl(CA_NAME, new Date(this.now
+				.getTime() + 3600 * 1000));
+
+		// verify
+		Assert.assertNull(result);
+		Assert.assertFalse(storedFile.exists());
+	}
+
+	@Test
+	public void testRetention() throws Exception {
+		// setup
+		File oldestFile = this.testedInstance.store(CA_NAME, BigInteger
+				.valueOf(1), writeCrl(1, 3600 * 1000));
+		File olderFile = this.testedInstance.store(CA_NAME, BigInteger
+				.valueOf(2), writeCrl(2, 3600 * 1000));
+
+		// operate
+		File newestFile = this.testedInstance.store(CA_NAME, BigInteger
+				.valueOf(3), writeCrl(3, 3600 * 1000));
+
+		// verify
+		Assert.assertFalse(oldestFile.exists());
+		Assert.assertTrue(olderFile.exists());
+		Assert.assertTrue(newestFile.exists());
+	}
+
+	@Test
+	public void testSameCrlStoredOnce() throws Exception {
+		// setup
+		File crlFile = writeCrl(1, 3600 * 1000);
+		File copyFile = File.createTempFile("crl-", ".der");
+		FileUtils.copyFile(crlFile, copyFile);
+		File storedFile = this.testedInstance.store(CA_NAME, BigInteger
+				.valueOf(1), crlFile);
+
+		// operate
+		File result = this.testedInstance.store(CA_NAME, BigInteger.valueOf(1),
+				copyFile);
+
+		// verify
+		Assert.assertEquals(storedFile, result);
+		Assert.assertFalse(copyFile.exists());
+		Assert.assertEquals(1, storedFile.getParentFile().listFiles().length);
+	}
+
+	@Test
+	public void testSnapshotOfOtherCrlRemoved() throws Exception {
+		// setup
+		this.testedInstance.writeSnapshot(new RevocationIndex.Builder(CA_NAME,
+				BigInteger.valueOf(1), this.now, new Date(this.now.getTime()
+						+ 3600 * 1000)).build());
+
+		// operate & verify
+		Assert.assertNull(this.testedInstance.readSnapshot(CA_NAME, BigInteger
+				.valueOf(2)));
+		Assert.assertNull(this.testedInstance.readSnapshot(CA_NAME, BigInteger
+				.valueOf(1)));
+	}
+
+	@Test
+	public void testSnapshotWithoutCrlNumberRejected() throws Exception {
+		// setup
+		this.testedInstance.writeSnapshot(new RevocationIndex.Builder(CA_NAME,
+				null, this.now, new Date(this.now.getTime() + 3600 * 1000))
+				.build());
+
+		// operate & verify
+		Assert.assertNull(this.testedInstance.readSnapshot(CA_NAME, null));
+	}
+
+	@Test
+	public void testSnapshotRoundTrip() throws Exception {
+		// setup
+		this.testedInstance.writeSnapshot(new RevocationIndex.Builder(CA_NAME,
+				BigInteger.valueOf(1), this.now, new Date(this.now.getTime()
+						+ 3600 * 1000)).build());
+
+		// operate
+		RevocationIndex result = this.testedInstance.readSnapshot(CA_NAME,
+				BigInteger.valueOf(1));
+
+		// verify
+		Assert.assertNotNull(result);
+		Assert.assertEquals(BigInteger.valueOf(1), result.getCrlNumber());
+	}
+
+	private File writeCrl(long crlNumber, long validity) throws Exception {
+		X509V2CRLGenerator crlGenerator = new X509V2CRLGenerator();
+		crlGenerator.setIssuerDN(new X500Principal(CA_NAME));
+		crlGenerator.setThisUpdate(this.now);
+		crlGenerator.setNextUpdate(new Date(this.now.getTime() + validity));
+		crlGenerator.setSignatureAlgorithm("SHA1withRSA");
+		crlGenerator.addExtension(X509Extensions.CRLNumber, false,
+				new CRLNumber(BigInteger.valueOf(crlNumber)));
+		crlGenerator.addCRLEntry(BigInteger.valueOf(crlNumber), this.now, 0);
+		byte[] encodedCrl = crlGenerator.generate(this.keyPair.getPrivate())
+				.getEncoded();
+		File crlFile = File.createTempFile("crl-", ".der");
+		FileOutputStream outputStream = new FileOutputStream(crlFile);
+		try {
+			outputStream.write(encodedCrl);
+		} finally {
+			outputStream.close();
+		}
+		return crlFile;
+	}
+}
@@ -0,0 +1,364 @@
+package be.fedict.trust.service.bean;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.CRLException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERObjectIdentifier;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.asn1.x509.X509ExtensionsGenerator;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.encoders.Base64;
+import org.bouncycastle.x509.X509V2CRLGenerator;
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class MappedCrlTest {
+
+	private static final int ENTRIES = 1234;
+
+	private KeyPair keyPair;
+
+	private X509Certificate certificate;
+
+	private Date now;
+
+	private File crlFile;
+
+	@BeforeClass
+	public static void setUpProvider() {
+		if (null == Security.getProvider(BouncyCastleProvider.PROVIDER_NAME)) {
+			Security.addProvider(new BouncyCastleProvider());
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+		keyPairGenerator.initialize(1024);
+		this.keyPair = keyPairGenerator.generateKeyPair();
+		this.now = new Date();
+
+		X509V3CertificateGenerator certificateGenerator = new X509V3CertificateGenerator();
+		X500Principal dn = new X500Principal("CN=Test CA");
+		certificateGenerator.setSerialNumber(BigInteger.ONE);
+		certificateGenerator.setIssuerDN(dn);
+		certificateGenerator.setSubjectDN(dn);
+		certificateGenerator.setNotBefore(new Date(this.now.getTime()
+				- 3600 * 1000));
+		certificateGenerator.setNotAfter(new Date(this.now.getTime() + 3600
+				* 1000));
+		certificateGenerator.setPublicKey(this.keyPair.getPublic());
+		certificateGenerator.setSignatureAlgorithm("SHA1withRSA");
+		certificateGenerator.addExtension(X509Extensions.KeyUsage, true,
+				new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign));
+		this.certificate = certificateGenerator.generate(this.keyPair
+				.getPrivate());
+
+		this.crlFile = File.createTempFile("crl-", ".der");
+	}
+
+	@After
+	public void tearDown() {
+		this.crlFile.delete();
+	}
+
+	@Test
+	public void testEntries() throws Exception {
+		// setup
+		X509CRL crl = generateCrl(ENTRIES);
+		write(crl.getEncoded());
+
+		// operate
+		MappedCrl mappedCrl = MappedCrl.open(this.crlFile);
+
+		// verify
+		Assert.assertEquals(crl.getIssuerX500Principal(), mappedCrl
+				.getIssuer());
+		Assert.assertEquals(crl.getThisUpdate(), mappedCrl.getThisUpdate());
+		Assert.assertEquals(crl.getNextUpdate(), mappedCrl.getNextUpdate());
+		Assert.assertEquals(BigInteger.valueOf(42), mappedCrl.getCrlNumber());
+		Assert.assertFalse(mappedCrl.isIndirect());
+		Assert.assertNull(mappedCrl.getBaseCrlNumber());
+		Assert.assertNull(mappedCrl.getFreshestCrlUrl());
+		Assert.assertTrue(mappedCrl.checkIntegrity(this.certificate, this.now));
+
+		MappedCrl.EntryReader entryReader = mappedCrl.getEntryReader();
+		int count = 0;
+		while (entryReader.next()) {
+			BigInteger serialNumber = entryReader.getSerialNumber();
+			Assert.assertEquals(crl.getRevokedCertificate(serialNumber)
+					.getRevocationDate(), entryReader.getRevocationDate());
+			Assert.assertNull(entryReader.getCertificateIssuer());
+			count++;
+		}
+		Assert.assertEquals(ENTRIES, count);
+	}
+
+	@Test
+	public void testEmptyCrl() throws Exception {
+		// setup
+		write(generateCrl(0).getEncoded());
+
+		// operate
+		MappedCrl mappedCrl = MappedCrl.open(this.crlFile);
+
+		// verify
+		Assert.assertTrue(mappedCrl.checkIntegrity(this.certificate, this.now));
+		Assert.assertFalse(mappedCrl.getEntryReader().next());
+	}
+
+	@Test
+	public void testTamperedCrl() throws Exception {
+		// setup
+		byte[] encodedCrl = generateCrl(10).getEncoded();
+		encodedCrl[encodedCrl.length / 2] ^= 0x01;
+		write(encodedCrl);
+
+		// operate
+		MappedCrl mappedCrl;
+		try {
+			mappedCrl = MappedCrl.open(this.crlFile);
+		} catch (Exception e) {
+			// flipped bit broke the DER structure
+			return;
+		}
+
+		// verify
+		Assert.assertFalse(mappedCrl.checkIntegrity(this.certificate, this.now));
+	}
+
+	@Test
+	public void testExpiredCrl() throws Exception {
+		// setup
+		write(generateCrl(10).getEncoded());
+
+		// operate
+		MappedCrl mappedCrl = MappedCrl.open(this.crlFile);
+
+		// verify
+		Assert.assertFalse(mappedCrl.checkIntegrity(this.certificate, new Date(
+				this.now.getTime() + 2 * 3600 * 1000)));
+	}
+
+	@Test
+	public void testPemCrl() throws Exception {
+		// setup
+		X509CRL crl = generateCrl(10);
+		String pem = "-----BEGIN X509 CRL-----\n"
+				+ new String(Base64.encode(crl
+						.getEncoded())) + "\n-----END X509 CRL-----\n";
+		write(pem.getBytes("US-ASCII"));
+
+		// operate
+		MappedCrl mappedCrl = MappedCrl.open(this.crlFile);
+
+		// verify
+		Assert.assertEquals(BigInteger.valueOf(42), mappedCrl.getCrlNumber());
+		Assert.assertTrue(mappedCrl.checkIntegrity(this.certificate, this.now));
+		Assert.assertTrue(Arrays.equals(pem.getBytes("US-ASCII"), read()));
+	}
+
+	@Test
+	public void testEncodedSerialNumber() throws Exception {
+		// setup
+		BigInteger[] serialNumbers = { BigInteger.valueOf(0x7f),
+				BigInteger.valueOf(0x80), BigInteger.valueOf(0xff00),
+				new BigInteger("123456789012345678901234567890") };
+		X509V2CRLGenerator crlGenerator = createCrlGenerator();
+		for (BigInteger serialNumber : serialNumbers) {
+			crlGenerator.addCRLEntry(serialNumber, this.now, 0);
+		}
+		write(crlGenerator.generate(this.keyPair.getPrivate()).getEncoded());
+
+		// operate
+		MappedCrl.EntryReader entryReader = MappedCrl.open(this.crlFile)
+				.getEntryReader();
+
+		// verify
+		for (BigInteger serialNumber : serialNumbers) {
+			Assert.assertTrue(entryReader.next());
+			Assert.assertEquals(serialNumber, entryReader.getSerialNumber());
+			Assert.assertTrue(Arrays.equals(serialNumber.toByteArray(), Arrays
+					.copyOf(entryReader.getEncodedSerialNumber(), entryReader
+							.getEncodedSerialNumberLength())));
+			Assert.assertEquals(this.now.getTime() / 1000 * 1000, entryReader
+					.getRevocationTime());
+		}
+		Assert.assertFalse(entryReader.next());
+	}
+
+	@Test
+	public void testUnsupportedCriticalCrlExtension() throws Exception {
+		// setup
+		X509V2CRLGenerator crlGenerator = createCrlGenerator();
+		crlGenerator.addExtension("1.2.3.4", true, new DERNull());
+		write(crlGenerator.generate(this.keyPair.getPrivate()).getEncoded());
+
+		// operate
+		try {
+			MappedCrl.open(this.crlFile);
+			Assert.fail();
+		} catch (CRLException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUnsupportedCriticalCrlEntryExtension() throws Exception {
+		// setup
+		X509ExtensionsGenerator extensionsGenerator = new X509ExtensionsGenerator();
+		extensionsGenerator.addExtension(new DERObjectIdentifier("1.2.3.4"),
+				true, new DERNull());
+		X509V2CRLGenerator crlGenerator = createCrlGenerator();
+		crlGenerator.addCRLEntry(BigInteger.valueOf(1000), this.now, 0);
+		crlGenerator.addCRLEntry(BigInteger.valueOf(2000), this.now,
+				extensionsGenerator.generate());
+		write(crlGenerator.generate(this.keyPair.getPrivate()).getEncoded());
+		MappedCrl.EntryReader entryReader = MappedCrl.open(this.crlFile)
+				.getEntryReader();
+		Assert.assertTrue(entryReader.next());
+
+		// operate
+		try {
+			entryReader.next();
+			Assert.fail();
+		} catch (CRLException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDeltaCrl() throws Exception {
+		// setup
+		X509V2CRLGenerator crlGenerator = new X509V2CRLGenerator();
+		crlGenerator.setIssuerDN(this.certificate.getSubjectX500Principal());
+		crlGenerator.setThisUpdate(this.now);
+		crlGenerator.setNextUpdate(new Date(this.now.getTime() + 3600 * 1000));
+		crlGenerator.setSignatureAlgorithm("SHA1withRSA");
+		crlGenerator.addExtension(X509Extensions.CRLNumber, false,
+				new CRLNumber(BigInteger.valueOf(43)));
+		crlGenerator.addExtension(X509Extensions.DeltaCRLIndicator, true,
+				new CRLNumber(BigInteger.valueOf(42)));
+		crlGenerator.addCRLEntry(BigInteger.valueOf(1000), this.now,
+				CRLReason.keyCompromise);
+		crlGenerator.addCRLEntry(BigInteger.valueOf(2000), this.now,
+				CRLReason.removeFromCRL);
+		write(crlGenerator.generate(this.keyPair.getPrivate()).getEncoded());
+
+		// operate
+		MappedCrl mappedCrl = MappedCrl.open(this.crlFile);
+
+		// verify
+		Assert.assertEquals(BigInteger.valueOf(43), mappedCrl.getCrlNumber());
+		Assert.assertEquals(BigInteger.valueOf(42), mappedCrl
+				.getBaseCrlNumber());
+		Assert.assertTrue(mappedCrl.checkIntegrity(this.certificate, this.now));
+		MappedCrl.EntryReader entryReader = mappedCrl.getEntryReader();
+		Assert.assertTrue(entryReader.next());
+		Assert.assertEquals(BigInteger.valueOf(1000), entryReader
+				.getSerialNumber());
+		Assert.assertFalse(entryReader.isRemoveFromCrl());
+		Assert.assertTrue(entryReader.next());
+		Assert.assertEquals(BigInteger.valueOf(2000), entryReader
+				.getSerialNumber());
+		Assert.assertTrue(entryReader.isRemoveFromCrl());
+		Assert.assertFalse(entryReader.next());
+	}
+
+	@Test
+	public void testFreshestCrl() throws Exception {
+		// setup
+		X509V2CRLGenerator crlGenerator = new X509V2CRLGenerator();
+		crlGenerator.setIssuerDN(this.certificate.getSubjectX500Principal());
+		crlGenerator.setThisUpdate(this.now);
+		crlGenerator.setNextUpdate(new Date(this.now.getTime() + 3600 * 1000));
+		crlGenerator.setSignatureAlgorithm("SHA1withRSA");
+		crlGenerator.addExtension(X509Extensions.CRLNumber, false,
+				new CRLNumber(BigInteger.valueOf(42)));
+		crlGenerator.addExtension(X509Extensions.FreshestCRL, false,
+				new CRLDistPoint(new DistributionPoint[] {
+						createDistributionPoint("ldap://ldap.test/delta"),
+						createDistributionPoint("http://crl.test/delta.crl") }));
+		write(crlGenerator.generate(this.keyPair.getPrivate()).getEncoded());
+
+		// operate
+		MappedCrl mappedCrl = MappedCrl.open(this.crlFile);
+
+		// verify
+		Assert.assertNull(mappedCrl.getBaseCrlNumber());
+		Assert.assertEquals("http://crl.test/delta.crl", mappedCrl
+				.getFreshestCrlUrl());
+	}
+
+	private static DistributionPoint createDistributionPoint(String url) {
+		return new DistributionPoint(new DistributionPointName(
+				new GeneralNames(new GeneralName(
+						GeneralName.uniformResourceIdentifier, url))), null,
+				null);
+	}
+
+	private X509V2CRLGenerator createCrlGenerator() {
+		X509V2CRLGenerator crlGenerator = new X509V2CRLGenerator();
+		crlGenerator.setIssuerDN(this.certificate.getSubjectX500Principal());
+		crlGenerator.setThisUpdate(this.now);
+		crlGenerator.setNextUpdate(new Date(this.now.getTime() + 3600 * 1000));
+		crlGenerator.setSignatureAlgorithm("SHA1withRSA");
+		crlGenerator.addExtension(X509Extensions.CRLNumber, false,
+				new CRLNumber(BigInteger.valueOf(42)));
+		return crlGenerator;
+	}
+
+	private X509CRL generateCrl(int entries) throws Exception {
+		X509V2CRLGenerator crlGenerator = createCrlGenerator();
+		for (int idx = 0; idx < entries; idx++) {
+			crlGenerator.addCRLEntry(BigInteger.valueOf(1000 + idx * 7919L),
+					new Date(this.now.getTime() - idx * 1000L), 0);
+		}
+		return crlGenerator.generate(this.keyPair.getPrivate());
+	}
+
+	private byte[] read() throws Exception {
+		FileInputStream inputStream = new FileInputStream(this.crlFile);
+		try {
+			return IOUtils.toByteArray(inputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private void write(byte[] data) throws Exception {
+		FileOutputStream outputStream = new FileOutputStream(this.crlFile);
+		try {
+			outputStream.write(data);
+		} finally {
+			outputStream.close();
+		}
+	}
+}
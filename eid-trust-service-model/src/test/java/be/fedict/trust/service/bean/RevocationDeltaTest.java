@@ -0,0 +1,139 @@
+package be.fedict.trust.service.bean;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RevocationDeltaTest {
+
+	private static final String CA_NAME = "CN=Test CA";
+
+	private static final Date THIS_UPDATE = new Date(1000000L);
+	private static final Date NEXT_UPDATE = new Date(2000000L);
+
+	private RevocationIndex previous;
+
+	@Before
+	public void setUp() {
+		previous = new RevocationIndex.Builder(CA_NAME, BigInteger.ONE, THIS_UPDATE, NEXT_UPDATE)
+				.add(BigInteger.valueOf(1), new Date(10L))
+				.add(BigInteger.valueOf(2), new Date(20L))
+				.add(BigInteger.valueOf(3), new Date(30L))
+				.add(new BigInteger("1234567890123456789012345678901234567890"), new Date(40L))
+				.build();
+	}
+
+	@Test
+	public void unchangedCrlHasEmptyDelta() {
+		RevocationDelta delta = new RevocationDelta(previous);
+
+		assertEquals(RevocationDelta.Change.NONE, delta.compare(BigInteger.valueOf(3), new Date(30L)));
+		assertEquals(RevocationDelta.Change.NONE, delta.compare(BigInteger.valueOf(1), new Date(10L)));
+		assertEquals(RevocationDelta.Change.NONE, delta.compare(new BigInteger("1234567890123456789012345678901234567890"), new Date(40L)));
+		assertEquals(RevocationDelta.Change.NONE, delta.compare(BigInteger.valueOf(2), new Date(20L)));
+
+		assertTrue(delta.getRemovedSerialNumbers().isEmpty());
+		assertEquals(0, delta.getAddedCount());
+		assertEquals(0, delta.getChangedCount());
+	}
+
+	@Test
+	public void detectsAddedChangedAndRemovedEntries() {
+		RevocationDelta delta = new RevocationDelta(previous);
+
+		assertEquals(RevocationDelta.Change.NONE, delta.compare(BigInteger.valueOf(1), new Date(10L)));
+		assertEquals(RevocationDelta.Change.CHANGED, delta.compare(BigInteger.valueOf(3), new Date(31L)));
+		assertEquals(RevocationDelta.Change.ADDED, delta.compare(BigInteger.valueOf(4), new Date(50L)));
+
+		List<BigInteger> removed = delta.getRemovedSerialNumbers();
+		assertEquals(2, removed.size());
+		assertEquals(BigInteger.valueOf(2), removed.get(0));
+		assertEquals(new BigInteger("1234567890123456789012345678901234567890"), removed.get(1));
+		assertEquals(1, delta.getAddedCount());
+		assertEquals(1, delta.getChangedCount());
+	}
+
+	@Test
+	public void duplicateAddedEntryIsIgnored() {
+		RevocationDelta delta = new RevocationDelta(null);
+
+		assertEquals(RevocationDelta.Change.ADDED, delta.compare(BigInteger.valueOf(5), new Date(10L)));
+		assertEquals(RevocationDelta.Change.DUPLICATE, delta.compare(BigInteger.valueOf(5), new Date(20L)));
+		assertTrue(delta.getRemovedSerialNumbers().isEmpty());
+		assertEquals(1, delta.getAddedCount());
+		assertEquals(0, delta.getChangedCount());
+		assertEquals(1, delta.getDuplicateCount());
+	}
+
+	@Test
+	public void duplicatePreviousEntryIsIgnored() {
+		RevocationDelta delta = new RevocationDelta(previous);
+
+		assertEquals(RevocationDelta.Change.CHANGED, delta.compare(BigInteger.valueOf(1), new Date(11L)));
+		assertEquals(RevocationDelta.Change.DUPLICATE, delta.compare(BigInteger.valueOf(1), new Date(12L)));
+		assertEquals(RevocationDelta.Change.DUPLICATE, delta.compare(BigInteger.valueOf(1), new Date(10L)));
+		assertEquals(1, delta.getChangedCount());
+		assertEquals(2, delta.getDuplicateCount());
+	}
+
+	@Test
+	public void deltaCrlIsAppliedOnBaseCrl() {
+		RevocationIndex delta = new RevocationIndex.Builder(CA_NAME, BigInteger.valueOf(2), THIS_UPDATE, NEXT_UPDATE)
+				.add(BigInteger.valueOf(4), new Date(50L))
+				.add(BigInteger.valueOf(3), new Date(31L))
+				.build();
+		RevocationIndex removed = new RevocationIndex.Builder(CA_NAME, BigInteger.valueOf(2), THIS_UPDATE, NEXT_UPDATE)
+				.add(BigInteger.valueOf(2), new Date(60L))
+				.add(BigInteger.valueOf(5), new Date(60L))
+				.build();
+
+		RevocationIndex index = RevocationDelta.applyDelta(previous, delta, removed);
+
+		assertEquals(BigInteger.valueOf(2), index.getCrlNumber());
+		assertEquals(4, index.size());
+		assertEquals(new Date(10L), index.findRevocationDate(BigInteger.valueOf(1)));
+		assertNull(index.findRevocationDate(BigInteger.valueOf(2)));
+		assertEquals(new Date(31L), index.findRevocationDate(BigInteger.valueOf(3)));
+		assertEquals(new Date(50L), index.findRevocationDate(BigInteger.valueOf(4)));
+		assertNull(index.findRevocationDate(BigInteger.valueOf(5)));
+	}
+
+	@Test
+	public void holdReleasedInLaterDeltaCrlIsRemoved() {
+		RevocationIndex empty = new RevocationIndex.Builder(CA_NAME, BigInteger.valueOf(2), THIS_UPDATE, NEXT_UPDATE)
+				.build();
+		// first delta CRL places serial number 5 on hold
+		RevocationIndex delta1 = new RevocationIndex.Builder(CA_NAME, BigInteger.valueOf(2), THIS_UPDATE, NEXT_UPDATE)
+				.add(BigInteger.valueOf(5), new Date(50L))
+				.build();
+		RevocationIndex published1 = RevocationDelta.applyDelta(previous, delta1, empty);
+		RevocationDelta revocationDelta1 = new RevocationDelta(previous);
+		for (int position = 0; position < published1.size(); position++) {
+			revocationDelta1.compare(published1, position);
+		}
+		assertEquals(1, revocationDelta1.getAddedCount());
+		assertTrue(revocationDelta1.getRemovedSerialNumbers().isEmpty());
+
+		// second delta CRL no longer lists the released hold
+		RevocationIndex delta2 = new RevocationIndex.Builder(CA_NAME, BigInteger.valueOf(3), THIS_UPDATE, NEXT_UPDATE)
+				.build();
+		RevocationIndex published2 = RevocationDelta.applyDelta(previous, delta2, empty);
+		RevocationDelta revocationDelta2 = new RevocationDelta(published1);
+		for (int position = 0; position < published2.size(); position++) {
+			assertEquals(RevocationDelta.Change.NONE, revocationDelta2.compare(published2, position));
+		}
+
+		List<BigInteger> removed = revocationDelta2.getRemovedSerialNumbers();
+		assertEquals(1, removed.size());
+		assertEquals(BigInteger.valueOf(5), removed.get(0));
+		assertNull(published2.findRevocationDate(BigInteger.valueOf(5)));
+		assertEquals(4, published2.size());
+	}
+}
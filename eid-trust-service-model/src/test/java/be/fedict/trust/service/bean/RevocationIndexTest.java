@@ -0,0 +1,132 @@
+package be.fedict.trust.service.bean;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RevocationIndexTest {
+
+	private static final String CA_NAME = "CN=Test CA";
+
+	private static final Date THIS_UPDATE = new Date(1000000L);
+	private static final Date NEXT_UPDATE = new Date(2000000L);
+
+	private RevocationIndex revocationIndex;
+
+	@Before
+	public void setUp() {
+		revocationIndex = new RevocationIndex.Builder(CA_NAME, BigInteger.TEN, THIS_UPDATE, NEXT_UPDATE)
+				.add(new BigInteger("1234567890123456789012345678901234567890"), new Date(10L))
+				.add(BigInteger.valueOf(255), new Date(20L))
+				.add(BigInteger.valueOf(3), new Date(30L))
+				.add(BigInteger.valueOf(128), new Date(40L))
+				.add(BigInteger.valueOf(3), new Date(50L))
+				.build();
+	}
+
+	@Test
+	public void findsRevokedSerialNumbers() {
+		assertEquals(new Date(10L), revocationIndex.findRevocationDate(new BigInteger("1234567890123456789012345678901234567890")));
+		assertEquals(new Date(20L), revocationIndex.findRevocationDate(BigInteger.valueOf(255)));
+		assertEquals(new Date(40L), revocationIndex.findRevocationDate(BigInteger.valueOf(128)));
+	}
+
+	@Test
+	public void lastDuplicateEntryWins() {
+		assertEquals(4, revocationIndex.size());
+		assertEquals(new Date(50L), revocationIndex.findRevocationDate(BigInteger.valueOf(3)));
+	}
+
+	@Test
+	public void doesNotFindUnrevokedSerialNumbers() {
+		assertNull(revocationIndex.findRevocationDate(BigInteger.ONE));
+		assertNull(revocationIndex.findRevocationDate(BigInteger.valueOf(256)));
+		assertNull(new RevocationIndex.Builder(CA_NAME, null, THIS_UPDATE, NEXT_UPDATE).build().findRevocationDate(BigInteger.ONE));
+	}
+
+	@Test
+	public void positionsFollowSerialNumberOrder() {
+		assertEquals(0, revocationIndex.indexOf(BigInteger.valueOf(3)));
+		assertEquals(1, revocationIndex.indexOf(BigInteger.valueOf(128)));
+		assertEquals(-1, revocationIndex.indexOf(BigInteger.ONE));
+		assertEquals(BigInteger.valueOf(255), revocationIndex.getSerialNumber(2));
+		assertEquals(new BigInteger("1234567890123456789012345678901234567890"), revocationIndex.getSerialNumber(3));
+		assertEquals(20L, revocationIndex.getRevocationTime(2));
+	}
+
+	@Test
+	public void bloomFilterNeverMissesRevokedSerialNumbers() {
+		assertTrue(revocationIndex.mightBeRevoked(new BigInteger("1234567890123456789012345678901234567890")));
+		assertTrue(revocationIndex.mightBeRevoked(BigInteger.valueOf(255)));
+		assertTrue(revocationIndex.mightBeRevoked(BigInteger.valueOf(128)));
+		assertTrue(revocationIndex.mightBeRevoked(BigInteger.valueOf(3)));
+		assertFalse(new RevocationIndex.Builder(CA_NAME, null, THIS_UPDATE, NEXT_UPDATE).build().mightBeRevoked(BigInteger.ONE));
+	}
+
+	@Test
+	public void isValidBetweenThisAndNextUpdate() {
+		assertTrue(revocationIndex.isValid(new Date(1500000L)));
+		assertFalse(revocationIndex.isValid(new Date(999999L)));
+		assertFalse(revocationIndex.isValid(new Date(2000001L)));
+	}
+
+	@Test
+	public void snapshotRoundTrip() throws Exception {
+		File snapshotFile = File.createTempFile("revocation-index-", ".snapshot");
+		try {
+			revocationIndex.writeSnapshot(snapshotFile);
+			RevocationIndex result = RevocationIndex.readSnapshot(snapshotFile);
+			assertEquals(CA_NAME, result.getCaName());
+			assertEquals(BigInteger.TEN, result.getCrlNumber());
+			assertEquals(THIS_UPDATE, result.getThisUpdate());
+			assertEquals(NEXT_UPDATE, result.getNextUpdate());
+			assertEquals(revocationIndex.size(), result.size());
+			for (int idx = 0; idx < revocationIndex.size(); idx++) {
+				assertEquals(revocationIndex.getSerialNumber(idx), result.getSerialNumber(idx));
+				assertEquals(revocationIndex.getRevocationTime(idx), result.getRevocationTime(idx));
+			}
+			assertTrue(result.mightBeRevoked(BigInteger.valueOf(255)));
+		} finally {
+			snapshotFile.delete();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsInvalidSnapshot() throws Exception {
+		File snapshotFile = File.createTempFile("revocation-index-", ".snapshot");
+		try {
+			FileOutputStream outputStream = new FileOutputStream(snapshotFile);
+			outputStream.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+			outputStream.close();
+			RevocationIndex.readSnapshot(snapshotFile);
+		} finally {
+			snapshotFile.delete();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsSnapshotWithCorruptLength() throws Exception {
+		File snapshotFile = File.createTempFile("revocation-index-", ".snapshot");
+		try {
+			revocationIndex.writeSnapshot(snapshotFile);
+			RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+			file.seek(8);
+			file.writeInt(Integer.MAX_VALUE);
+			file.close();
+			RevocationIndex.readSnapshot(snapshotFile);
+		} finally {
+			snapshotFile.delete();
+		}
+	}
+}
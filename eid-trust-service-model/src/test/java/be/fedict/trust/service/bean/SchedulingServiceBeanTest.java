@@ -0,0 +1,192 @@
+package be.fedict.trust.service.bean;
+
+import static java.util.Collections.singletonList;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static org.mockito.AdditionalAnswers.returnsArgAt;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import javax.ejb.NoSuchObjectLocalException;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.persistence.EntityManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import be.fedict.trust.service.NotificationService;
+import be.fedict.trust.service.TrustServiceConstants;
+import be.fedict.trust.service.dao.TrustDomainDAO;
+import be.fedict.trust.service.entity.CertificateAuthorityEntity;
+import be.fedict.trust.service.entity.Status;
+import be.fedict.trust.service.entity.TrustPointEntity;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SchedulingServiceBeanTest {
+
+	private static final String CA_NAME = "CN=Test CA";
+	private static final String TRUST_POINT_NAME = "trustPointName";
+	private static final String TIMER_INFO = TrustServiceConstants.CRL_REFRESH_TIMER_PREFIX + CA_NAME;
+
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	private static final Date EARLIER = new Date(System.currentTimeMillis() + HOUR);
+	private static final Date LATER = new Date(System.currentTimeMillis() + 2 * HOUR);
+
+	@Mock
+	private TimerService timerService;
+
+	@Mock
+	private CrlRefreshPlannerBean crlRefreshPlannerBean;
+
+	@Mock
+	private NotificationService notificationService;
+
+	@Mock
+	private TrustDomainDAO trustDomainDAO;
+
+	@Mock
+	private EntityManager entityManager;
+
+	@InjectMocks
+	private SchedulingServiceBean schedulingServiceBean;
+
+	private CertificateAuthorityEntity certificateAuthority;
+
+	@Before
+	public void setUp() {
+		certificateAuthority = new CertificateAuthorityEntity();
+		certificateAuthority.setName(CA_NAME);
+		certificateAuthority.setStatus(Status.ACTIVE);
+		certificateAuthority.setThisUpdate(new Date());
+		certificateAuthority.setNextUpdate(LATER);
+		when(entityManager.find(CertificateAuthorityEntity.class, CA_NAME)).thenReturn(certificateAuthority);
+		when(crlRefreshPlannerBean.allocate(eq(CA_NAME), any(Date.class), any(Date.class))).thenAnswer(returnsArgAt(1));
+		when(timerService.getTimers()).thenReturn(Collections.<Timer> emptyList());
+	}
+
+	@Test
+	public void scheduleRefreshCancelsRefreshWithoutNextUpdate() {
+		Timer timer = mockTimer(TIMER_INFO, EARLIER);
+		when(timerService.getTimers()).thenReturn(singletonList(timer));
+		certificateAuthority.setNextUpdate(null);
+
+		schedulingServiceBean.scheduleRefresh(certificateAuthority);
+
+		verify(timer).cancel();
+		verify(crlRefreshPlannerBean).release(CA_NAME);
+		verify(timerService, never()).createSingleActionTimer(any(Date.class), any(TimerConfig.class));
+	}
+
+	@Test
+	public void scheduleRefreshReplacesScheduledRefresh() {
+		Timer timer = mockTimer(TIMER_INFO, EARLIER);
+		when(timerService.getTimers()).thenReturn(singletonList(timer));
+		when(crlRefreshPlannerBean.plan(any(Date.class), eq(LATER), any(Date.class))).thenReturn(LATER);
+
+		schedulingServiceBean.scheduleRefresh(certificateAuthority);
+
+		verify(timer).cancel();
+		assertRefreshScheduledAt(LATER);
+	}
+
+	@Test
+	public void scheduleRefreshSkipsExpiredTimers() {
+		Timer expiredTimer = mock(Timer.class);
+		when(expiredTimer.getInfo()).thenThrow(new NoSuchObjectLocalException());
+		Timer otherTimer = mockTimer(TrustServiceConstants.CRL_REFRESH_TIMER_PREFIX + "CN=Other CA", EARLIER);
+		when(timerService.getTimers()).thenReturn(Arrays.asList(expiredTimer, otherTimer));
+		when(crlRefreshPlannerBean.plan(any(Date.class), eq(LATER), any(Date.class))).thenReturn(LATER);
+
+		schedulingServiceBean.scheduleRefresh(certificateAuthority);
+
+		verify(otherTimer, never()).cancel();
+		assertRefreshScheduledAt(LATER);
+	}
+
+	@Test
+	public void sweepKeepsEarlierRefresh() {
+		Timer timer = mockTimer(TIMER_INFO, EARLIER);
+		when(timerService.getTimers()).thenReturn(singletonList(timer));
+		mockTrustPoint();
+		when(crlRefreshPlannerBean.planNow(any(Date.class))).thenReturn(LATER);
+
+		schedulingServiceBean.timeOut(mockTimer(TRUST_POINT_NAME, null));
+
+		verify(timer, never()).cancel();
+		verify(timerService, never()).createSingleActionTimer(any(Date.class), any(TimerConfig.class));
+	}
+
+	@Test
+	public void sweepReplacesLaterRefresh() {
+		Timer timer = mockTimer(TIMER_INFO, LATER);
+		when(timerService.getTimers()).thenReturn(singletonList(timer));
+		mockTrustPoint();
+		when(crlRefreshPlannerBean.planNow(any(Date.class))).thenReturn(EARLIER);
+
+		schedulingServiceBean.timeOut(mockTimer(TRUST_POINT_NAME, null));
+
+		verify(timer).cancel();
+		assertRefreshScheduledAt(EARLIER);
+	}
+
+	@Test
+	public void refreshTimeoutArmsRetryBeforeNotifyingDownloader() throws Exception {
+		when(crlRefreshPlannerBean.planRetry(any(Date.class))).thenReturn(EARLIER);
+
+		schedulingServiceBean.timeOut(mockTimer(TIMER_INFO, null));
+
+		InOrder inOrder = inOrder(timerService, notificationService);
+		inOrder.verify(timerService).createSingleActionTimer(eq(EARLIER), any(TimerConfig.class));
+		inOrder.verify(notificationService).notifyDownloader(CA_NAME, true);
+	}
+
+	@Test
+	public void refreshTimeoutArmsRetryWhileProcessing() throws Exception {
+		certificateAuthority.setStatus(Status.PROCESSING);
+		when(crlRefreshPlannerBean.planRetry(any(Date.class))).thenReturn(EARLIER);
+
+		schedulingServiceBean.timeOut(mockTimer(TIMER_INFO, null));
+
+		assertRefreshScheduledAt(EARLIER);
+		verify(notificationService, never()).notifyDownloader(anyString(), eq(true));
+	}
+
+	private void mockTrustPoint() {
+		TrustPointEntity trustPoint = mock(TrustPointEntity.class);
+		when(entityManager.find(TrustPointEntity.class, TRUST_POINT_NAME)).thenReturn(trustPoint);
+		when(trustDomainDAO.listCertificateAuthorities(trustPoint)).thenReturn(singletonList(certificateAuthority));
+	}
+
+	private void assertRefreshScheduledAt(Date refresh) {
+		ArgumentCaptor<TimerConfig> timerConfig = ArgumentCaptor.forClass(TimerConfig.class);
+		verify(timerService).createSingleActionTimer(eq(refresh), timerConfig.capture());
+		assertEquals(TIMER_INFO, timerConfig.getValue().getInfo());
+		assertFalse(timerConfig.getValue().isPersistent());
+	}
+
+	private static Timer mockTimer(String info, Date nextTimeout) {
+		Timer timer = mock(Timer.class);
+		when(timer.getInfo()).thenReturn(info);
+		when(timer.getNextTimeout()).thenReturn(nextTimeout);
+		return timer;
+	}
+}
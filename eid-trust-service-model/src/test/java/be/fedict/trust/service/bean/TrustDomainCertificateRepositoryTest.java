@@ -5,28 +5,34 @@ import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
-import java.security.Principal;
-import java.security.PublicKey;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
 import java.security.cert.X509Certificate;
+import java.util.Date;
 
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.x509.X509V3CertificateGenerator;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import be.fedict.trust.service.entity.CertificateCache;
 import be.fedict.trust.service.entity.TrustDomainEntity;
 import be.fedict.trust.service.entity.TrustPointEntity;
 
 @RunWith(MockitoJUnitRunner.class)
 public class TrustDomainCertificateRepositoryTest {
 
-	private static final String TRUST_DOMAIN_CERTIFICATE_NAME = "trustDomainCertificateName";
-	private static final String DIFFERENT_NAME = "differentName";
-
-	private static final int TRUST_DOMAIN_CERTIFICATE_PUBLIC_KEY = 1;
-	private static final int DIFFERENT_PUBLIC_KEY = 2;
+	private static final String TRUST_DOMAIN_CERTIFICATE_NAME = "CN=Trust Domain Certificate";
+	private static final String DIFFERENT_NAME = "CN=Different";
 
 	@Mock(answer = Answers.RETURNS_DEEP_STUBS)
 	private TrustPointEntity trustPoint;
@@ -34,91 +40,65 @@ public class TrustDomainCertificateRepositoryTest {
 	@Mock
 	private TrustDomainEntity trustDomain;
 
-	@Mock
-	private X509Certificate trustDomainCertificate, certificateToCheck;
+	private KeyPair trustDomainKeyPair, differentKeyPair;
 
 	private TrustDomainCertificateRepository trustDomainCertificateRepository;
 
+	@BeforeClass
+	public static void setUpProvider() {
+		if (null == Security.getProvider(BouncyCastleProvider.PROVIDER_NAME)) {
+			Security.addProvider(new BouncyCastleProvider());
+		}
+	}
+
 	@Before
-	public void setUp() {
+	public void setUp() throws Exception {
+		KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+		keyPairGenerator.initialize(1024);
+		trustDomainKeyPair = keyPairGenerator.generateKeyPair();
+		differentKeyPair = keyPairGenerator.generateKeyPair();
+
 		when(trustDomain.getTrustPoints()).thenReturn(singletonList(trustPoint));
 
-		when(trustPoint.getCertificateAuthority().getCertificate()).thenReturn(trustDomainCertificate);
-		when(trustDomainCertificate.getSubjectDN()).thenReturn(new MockPrincipal(TRUST_DOMAIN_CERTIFICATE_NAME));
-		when(trustDomainCertificate.getPublicKey()).thenReturn(new MockPublicKey(TRUST_DOMAIN_CERTIFICATE_PUBLIC_KEY));
+		X509Certificate trustDomainCertificate = generateCertificate(TRUST_DOMAIN_CERTIFICATE_NAME, trustDomainKeyPair);
+		when(trustPoint.getCertificateAuthority().getDecodedCertificate()).thenReturn(
+				CertificateCache.getDecodedCertificate(trustDomainCertificate.getEncoded()));
 
 		trustDomainCertificateRepository = new TrustDomainCertificateRepository(trustDomain);
 	}
 
 	@Test
-	public void correctlyMatchesWithTrustPointWithSameSubjectAndPublicKey() {
-		when(certificateToCheck.getSubjectDN()).thenReturn(new MockPrincipal(TRUST_DOMAIN_CERTIFICATE_NAME));
-		when(certificateToCheck.getPublicKey()).thenReturn(new MockPublicKey(TRUST_DOMAIN_CERTIFICATE_PUBLIC_KEY));
+	public void correctlyMatchesWithTrustPointWithSameSubjectAndPublicKey() throws Exception {
+		X509Certificate certificateToCheck = generateCertificate(TRUST_DOMAIN_CERTIFICATE_NAME, trustDomainKeyPair);
 
 		assertTrue(trustDomainCertificateRepository.isTrustPoint(certificateToCheck));
 	}
 
 	@Test
-	public void doesNotMatchWithTrustPointWithSameSubjectAndDifferentPublicKey() {
-		when(certificateToCheck.getSubjectDN()).thenReturn(new MockPrincipal(TRUST_DOMAIN_CERTIFICATE_NAME));
-		when(certificateToCheck.getPublicKey()).thenReturn(new MockPublicKey(DIFFERENT_PUBLIC_KEY));
+	public void doesNotMatchWithTrustPointWithSameSubjectAndDifferentPublicKey() throws Exception {
+		X509Certificate certificateToCheck = generateCertificate(TRUST_DOMAIN_CERTIFICATE_NAME, differentKeyPair);
 
 		assertFalse(trustDomainCertificateRepository.isTrustPoint(certificateToCheck));
 	}
 
 	@Test
-	public void doesNotMatchWithTrustPointWithDifferentSubjectAndSamePublicKey() {
-		when(certificateToCheck.getSubjectDN()).thenReturn(new MockPrincipal(DIFFERENT_NAME));
-		when(certificateToCheck.getPublicKey()).thenReturn(new MockPublicKey(TRUST_DOMAIN_CERTIFICATE_PUBLIC_KEY));
+	public void doesNotMatchWithTrustPointWithDifferentSubjectAndSamePublicKey() throws Exception {
+		X509Certificate certificateToCheck = generateCertificate(DIFFERENT_NAME, trustDomainKeyPair);
 
 		assertFalse(trustDomainCertificateRepository.isTrustPoint(certificateToCheck));
 	}
 
-	private static class MockPublicKey implements PublicKey {
-
-		private int value;
-
-		public MockPublicKey(int value) {
-			this.value = value;
-		}
-
-		@Override
-		public String getAlgorithm() {
-			return null;
-		}
-
-		@Override
-		public String getFormat() {
-			return null;
-		}
-
-		@Override
-		public byte[] getEncoded() {
-			return new byte[0];
-		}
-
-		@Override
-		public boolean equals(Object o) {
-			return (o instanceof MockPublicKey) && ((MockPublicKey)o).value == value;
-		}
-	}
-
-	private static class MockPrincipal implements  Principal {
-
-		private String name;
-
-		private MockPrincipal(String name) {
-			this.name = name;
-		}
-
-		@Override
-		public String getName() {
-			return name;
-		}
-
-		@Override
-		public boolean equals(Object o) {
-			return (o instanceof MockPrincipal) && ((MockPrincipal)o).name.equals(name);
-		}
+	private static X509Certificate generateCertificate(String name, KeyPair keyPair) throws Exception {
+		Date now = new Date();
+		X509V3CertificateGenerator certificateGenerator = new X509V3CertificateGenerator();
+		X500Principal dn = new X500Principal(name);
+		certificateGenerator.setSerialNumber(BigInteger.valueOf(now.getTime()));
+		certificateGenerator.setIssuerDN(dn);
+		certificateGenerator.setSubjectDN(dn);
+		certificateGenerator.setNotBefore(new Date(now.getTime() - 3600 * 1000));
+		certificateGenerator.setNotAfter(new Date(now.getTime() + 3600 * 1000));
+		certificateGenerator.setPublicKey(keyPair.getPublic());
+		certificateGenerator.setSignatureAlgorithm("SHA1withRSA");
+		return certificateGenerator.generate(keyPair.getPrivate());
 	}
-}
\ No newline at end of file
+}
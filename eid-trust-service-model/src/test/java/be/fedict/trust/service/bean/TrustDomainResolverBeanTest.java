@@ -0,0 +1,100 @@
+package be.fedict.trust.service.bean;
+
+import static java.util.Collections.singletonList;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import be.fedict.trust.service.dao.TrustDomainDAO;
+import be.fedict.trust.service.entity.TrustDomainEntity;
+import be.fedict.trust.service.entity.VirtualTrustDomainEntity;
+import be.fedict.trust.service.exception.TrustDomainNotFoundException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TrustDomainResolverBeanTest {
+
+	private static final String TRUST_DOMAIN_NAME = "trustDomainName";
+	private static final String VIRTUAL_TRUST_DOMAIN_NAME = "virtualTrustDomainName";
+	private static final String UNKNOWN_NAME = "unknownName";
+
+	@Mock
+	private TrustDomainDAO trustDomainDAO;
+
+	@InjectMocks
+	private TrustDomainResolverBean trustDomainResolverBean;
+
+	@Test
+	public void resolvesTrustDomainOnlyOnce() throws Exception {
+		when(trustDomainDAO.findTrustDomain(TRUST_DOMAIN_NAME)).thenReturn(new TrustDomainEntity(TRUST_DOMAIN_NAME));
+
+		ResolvedTrustDomain first = trustDomainResolverBean.resolve(TRUST_DOMAIN_NAME);
+		ResolvedTrustDomain second = trustDomainResolverBean.resolve(TRUST_DOMAIN_NAME);
+
+		assertEquals(singletonList(TRUST_DOMAIN_NAME), first.getTrustDomainNames());
+		assertTrue(first == second);
+		verify(trustDomainDAO, times(1)).findTrustDomain(TRUST_DOMAIN_NAME);
+	}
+
+	@Test
+	public void resolvesVirtualTrustDomainMembers() throws Exception {
+		VirtualTrustDomainEntity virtualTrustDomain = new VirtualTrustDomainEntity(VIRTUAL_TRUST_DOMAIN_NAME);
+		virtualTrustDomain.setTrustDomains(Collections.singleton(new TrustDomainEntity(TRUST_DOMAIN_NAME)));
+		virtualTrustDomain.setParallel(true);
+		when(trustDomainDAO.findVirtualTrustDomain(VIRTUAL_TRUST_DOMAIN_NAME)).thenReturn(virtualTrustDomain);
+
+		ResolvedTrustDomain resolvedTrustDomain = trustDomainResolverBean.resolve(VIRTUAL_TRUST_DOMAIN_NAME);
+
+		assertEquals(singletonList(TRUST_DOMAIN_NAME), resolvedTrustDomain.getTrustDomainNames());
+		assertTrue(resolvedTrustDomain.isParallel());
+	}
+
+	@Test
+	public void remembersUnknownNamesUntilInvalidated() throws Exception {
+		assertNotFound(UNKNOWN_NAME);
+		assertNotFound(UNKNOWN_NAME);
+		verify(trustDomainDAO, times(1)).findTrustDomain(UNKNOWN_NAME);
+
+		trustDomainResolverBean.invalidate();
+		when(trustDomainDAO.findTrustDomain(UNKNOWN_NAME)).thenReturn(new TrustDomainEntity(UNKNOWN_NAME));
+
+		assertEquals(singletonList(UNKNOWN_NAME), trustDomainResolverBean.resolve(UNKNOWN_NAME).getTrustDomainNames());
+	}
+
+	@Test
+	public void resolutionInvalidatedWhileResolvingIsNotCached() throws Exception {
+		when(trustDomainDAO.findTrustDomain(TRUST_DOMAIN_NAME)).thenAnswer(new Answer<TrustDomainEntity>() {
+
+			public TrustDomainEntity answer(InvocationOnMock invocation) {
+				trustDomainResolverBean.invalidate();
+				return new TrustDomainEntity(TRUST_DOMAIN_NAME);
+			}
+		});
+
+		trustDomainResolverBean.resolve(TRUST_DOMAIN_NAME);
+		trustDomainResolverBean.resolve(TRUST_DOMAIN_NAME);
+
+		verify(trustDomainDAO, times(2)).findTrustDomain(TRUST_DOMAIN_NAME);
+	}
+
+	private void assertNotFound(String name) {
+		try {
+			trustDomainResolverBean.resolve(name);
+			fail();
+		} catch (TrustDomainNotFoundException e) {
+			// expected
+		}
+	}
+}
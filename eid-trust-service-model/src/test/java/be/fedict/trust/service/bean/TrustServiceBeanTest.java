@@ -0,0 +1,267 @@
+package be.fedict.trust.service.bean;
+
+import static java.util.Collections.singletonList;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.ejb.AsyncResult;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import be.fedict.trust.service.TrustServiceConstants;
+import be.fedict.trust.service.ValidationResult;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TrustServiceBeanTest {
+
+	private static final String TRUST_DOMAIN_NAME = "trustDomainName";
+
+	@Mock
+	private TrustDomainResolverBean trustDomainResolverBean;
+
+	@Mock
+	private TrustValidationPlanCacheBean trustValidationPlanCacheBean;
+
+	@Mock
+	private ValidationResultCacheBean validationResultCacheBean;
+
+	@Mock
+	private ValidationExecutorBean validationExecutorBean;
+
+	@Mock
+	private TrustValidationPlan plan;
+
+	@InjectMocks
+	private TrustServiceBean trustServiceBean;
+
+	private List<TrustValidationPlan> plans;
+
+	private int submitted, completed, maxInFlight;
+
+	@BeforeClass
+	public static void setUpBatchConcurrency() {
+		System.setProperty(TrustServiceConstants.BATCH_CONCURRENCY_PROPERTY, "2");
+	}
+
+	@AfterClass
+	public static void tearDownBatchConcurrency() {
+		System.clearProperty(TrustServiceConstants.BATCH_CONCURRENCY_PROPERTY);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		when(trustDomainResolverBean.resolve(TRUST_DOMAIN_NAME)).thenReturn(new ResolvedTrustDomain(singletonList(TRUST_DOMAIN_NAME), false));
+		when(trustValidationPlanCacheBean.getTrustValidationPlan(TRUST_DOMAIN_NAME)).thenReturn(plan);
+		when(plan.getTrustDomainName()).thenReturn(TRUST_DOMAIN_NAME);
+		plans = singletonList(plan);
+	}
+
+	@Test
+	public void batchResultsFollowChainOrder() throws Exception {
+		List<X509Certificate> chain1 = mockChain();
+		List<X509Certificate> chain2 = mockChain();
+		List<X509Certificate> chain3 = mockChain();
+		ValidationResult result1 = mockValidationResult(chain1, true);
+		ValidationResult result2 = mockValidationResult(chain2, false);
+		ValidationResult result3 = mockValidationResult(chain3, true);
+
+		List<ValidationResult> results = trustServiceBean.validateBatch(TRUST_DOMAIN_NAME, chains(chain1, chain2, chain3), false);
+
+		assertEquals(3, results.size());
+		assertSame(result1, results.get(0));
+		assertSame(result2, results.get(1));
+		assertSame(result3, results.get(2));
+	}
+
+	@Test
+	public void failedChainDoesNotAffectOtherChains() throws Exception {
+		List<X509Certificate> validChain = mockChain();
+		List<X509Certificate> invalidChain = mockChain();
+		ValidationResult validResult = mockValidationResult(validChain, true);
+		ValidationResult invalidResult = mockValidationResult(invalidChain, false);
+
+		List<ValidationResult> results = trustServiceBean.validateBatch(TRUST_DOMAIN_NAME, chains(invalidChain, validChain), false);
+
+		assertSame(invalidResult, results.get(0));
+		assertSame(validResult, results.get(1));
+	}
+
+	@Test
+	public void cachedResultIsNotValidatedAgain() throws Exception {
+		List<X509Certificate> cachedChain = mockChain();
+		List<X509Certificate> chain = mockChain();
+		ValidationResult cachedResult = mock(ValidationResult.class);
+		when(validationResultCacheBean.getKey(TRUST_DOMAIN_NAME, cachedChain)).thenReturn("cached");
+		when(validationResultCacheBean.get("cached")).thenReturn(cachedResult);
+		ValidationResult result = mockValidationResult(chain, true);
+
+		List<ValidationResult> results = trustServiceBean.validateBatch(TRUST_DOMAIN_NAME, chains(cachedChain, chain), false);
+
+		assertSame(cachedResult, results.get(0));
+		assertSame(result, results.get(1));
+		verify(validationExecutorBean, never()).validate(eq(plans), eq(cachedChain), anyBoolean());
+		verify(validationResultCacheBean, never()).put(eq("cached"), any(ValidationResult.class), any(List.class), any(Date.class),
+				any(Set.class), anyLong());
+	}
+
+	@Test
+	public void validationErrorOnlyFailsItsChain() throws Exception {
+		List<X509Certificate> chain1 = mockChain();
+		List<X509Certificate> failingChain = mockChain();
+		List<X509Certificate> chain3 = mockChain();
+		ValidationResult result1 = mockValidationResult(chain1, true);
+		ValidationResult result3 = mockValidationResult(chain3, false);
+		@SuppressWarnings("unchecked")
+		Future<TrustDomainValidation> failedValidation = mock(Future.class);
+		when(failedValidation.get()).thenThrow(new ExecutionException(new RuntimeException("OCSP responder down")));
+		when(validationExecutorBean.validate(plans, failingChain, false)).thenReturn(failedValidation);
+
+		List<ValidationResult> results = trustServiceBean.validateBatch(TRUST_DOMAIN_NAME, chains(chain1, failingChain, chain3), false);
+
+		assertEquals(3, results.size());
+		assertSame(result1, results.get(0));
+		assertTrue(results.get(1).isError());
+		assertFalse(results.get(1).isValid());
+		assertSame(result3, results.get(2));
+	}
+
+	@Test
+	public void invalidChainOnlyFailsItsChain() throws Exception {
+		List<X509Certificate> invalidChain = new ArrayList<X509Certificate>();
+		invalidChain.add(null);
+		List<X509Certificate> chain = mockChain();
+		ValidationResult result = mockValidationResult(chain, true);
+
+		List<ValidationResult> results = trustServiceBean.validateBatch(TRUST_DOMAIN_NAME, chains(invalidChain, chain), false);
+
+		assertTrue(results.get(0).isError());
+		assertSame(result, results.get(1));
+		verify(validationExecutorBean, never()).validate(plans, invalidChain, false);
+	}
+
+	@Test
+	public void batchHasBoundedValidationsInFlight() throws Exception {
+		final ValidationResult validationResult = mock(ValidationResult.class);
+		when(validationExecutorBean.validate(eq(plans), any(List.class), eq(false))).thenAnswer(
+				new Answer<Future<TrustDomainValidation>>() {
+
+					public Future<TrustDomainValidation> answer(InvocationOnMock invocation) {
+						submitted++;
+						return new InFlightFuture(new TrustDomainValidation(plan, validationResult, null));
+					}
+				});
+
+		List<ValidationResult> results = trustServiceBean.validateBatch(TRUST_DOMAIN_NAME,
+				chains(mockChain(), mockChain(), mockChain(), mockChain(), mockChain()), false);
+
+		assertEquals(5, results.size());
+		assertEquals(5, submitted);
+		assertEquals(2, maxInFlight);
+	}
+
+	@Test
+	public void parallelReturnsFirstValidResultToComplete() throws Exception {
+		TrustValidationPlan slowPlan = mock(TrustValidationPlan.class);
+		when(slowPlan.getTrustDomainName()).thenReturn("a");
+		TrustValidationPlan fastPlan = mock(TrustValidationPlan.class);
+		when(fastPlan.getTrustDomainName()).thenReturn("b");
+		List<String> names = new ArrayList<String>();
+		names.add("a");
+		names.add("b");
+		when(trustDomainResolverBean.resolve("virtual")).thenReturn(new ResolvedTrustDomain(names, true));
+		when(trustValidationPlanCacheBean.getTrustValidationPlan("a")).thenReturn(slowPlan);
+		when(trustValidationPlanCacheBean.getTrustValidationPlan("b")).thenReturn(fastPlan);
+		List<X509Certificate> chain = mockChain();
+		@SuppressWarnings("unchecked")
+		Future<TrustDomainValidation> slowValidation = mock(Future.class);
+		when(validationExecutorBean.validate(slowPlan, chain, false)).thenReturn(slowValidation);
+		ValidationResult validResult = mock(ValidationResult.class);
+		when(validResult.isValid()).thenReturn(true);
+		when(validationExecutorBean.validate(fastPlan, chain, false)).thenReturn(
+				new AsyncResult<TrustDomainValidation>(new TrustDomainValidation(fastPlan, validResult, null)));
+
+		ValidationResult result = trustServiceBean.validate("virtual", chain, false);
+
+		assertSame(validResult, result);
+		verify(slowValidation).cancel(true);
+	}
+
+	private ValidationResult mockValidationResult(List<X509Certificate> chain, boolean valid) {
+		ValidationResult validationResult = mock(ValidationResult.class);
+		when(validationResult.isValid()).thenReturn(valid);
+		TrustDomainValidation trustDomainValidation = new TrustDomainValidation(plan, validationResult, null);
+		when(validationExecutorBean.validate(plans, chain, false)).thenReturn(new AsyncResult<TrustDomainValidation>(trustDomainValidation));
+		return validationResult;
+	}
+
+	private static List<X509Certificate> mockChain() {
+		return singletonList(mock(X509Certificate.class));
+	}
+
+	private static List<List<X509Certificate>> chains(List<X509Certificate>... chains) {
+		List<List<X509Certificate>> result = new ArrayList<List<X509Certificate>>();
+		for (List<X509Certificate> chain : chains) {
+			result.add(chain);
+		}
+		return result;
+	}
+
+	private class InFlightFuture implements Future<TrustDomainValidation> {
+
+		private final TrustDomainValidation trustDomainValidation;
+
+		public InFlightFuture(TrustDomainValidation trustDomainValidation) {
+			this.trustDomainValidation = trustDomainValidation;
+		}
+
+		public TrustDomainValidation get() {
+			maxInFlight = Math.max(maxInFlight, submitted - completed);
+			completed++;
+			return trustDomainValidation;
+		}
+
+		public TrustDomainValidation get(long timeout, TimeUnit unit) {
+			return get();
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		public boolean isCancelled() {
+			return false;
+		}
+
+		public boolean isDone() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package be.fedict.trust.service.bean;
+
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import be.fedict.trust.service.TrustServiceConstants;
+import be.fedict.trust.service.ValidationResult;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ValidationResultCacheBeanTest {
+
+	private static final String KEY = "trustDomainName/key";
+	private static final String CA_NAME = "CN=Test CA";
+	private static final String OTHER_CA_NAME = "CN=Other CA";
+
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	@Mock
+	private ValidationResult validationResult;
+
+	@Mock
+	private X509Certificate certificate;
+
+	private List<X509Certificate> certificateChain;
+
+	private Date nextUpdate;
+
+	private ValidationResultCacheBean validationResultCacheBean;
+
+	@Before
+	public void setUp() {
+		System.setProperty(TrustServiceConstants.VALIDATION_RESULT_CACHE_SIZE_PROPERTY, "10");
+		validationResultCacheBean = new ValidationResultCacheBean();
+
+		when(validationResult.isValid()).thenReturn(true);
+		when(certificate.getNotAfter()).thenReturn(new Date(System.currentTimeMillis() + 24 * HOUR));
+		certificateChain = singletonList(certificate);
+		nextUpdate = new Date(System.currentTimeMillis() + HOUR);
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty(TrustServiceConstants.VALIDATION_RESULT_CACHE_SIZE_PROPERTY);
+	}
+
+	@Test
+	public void cachesValidResult() {
+		long version = validationResultCacheBean.getVersion();
+
+		validationResultCacheBean.put(KEY, validationResult, certificateChain, nextUpdate, singleton(CA_NAME), version);
+
+		assertSame(validationResult, validationResultCacheBean.get(KEY));
+	}
+
+	@Test
+	public void dropsResultOfCaRefreshedWhileValidating() {
+		long version = validationResultCacheBean.getVersion();
+		validationResultCacheBean.invalidateCertificateAuthority(CA_NAME);
+
+		validationResultCacheBean.put(KEY, validationResult, certificateChain, nextUpdate, singleton(CA_NAME), version);
+
+		assertNull(validationResultCacheBean.get(KEY));
+	}
+
+	@Test
+	public void keepsResultWhenOtherCaRefreshedWhileValidating() {
+		long version = validationResultCacheBean.getVersion();
+		validationResultCacheBean.invalidateCertificateAuthority(OTHER_CA_NAME);
+
+		validationResultCacheBean.put(KEY, validationResult, certificateChain, nextUpdate, singleton(CA_NAME), version);
+
+		assertSame(validationResult, validationResultCacheBean.get(KEY));
+	}
+
+	@Test
+	public void dropsResultWhenResetWhileValidating() {
+		long version = validationResultCacheBean.getVersion();
+		validationResultCacheBean.reset();
+
+		validationResultCacheBean.put(KEY, validationResult, certificateChain, nextUpdate, singleton(CA_NAME), version);
+
+		assertNull(validationResultCacheBean.get(KEY));
+	}
+
+	@Test
+	public void cachesResultValidatedAfterRefresh() {
+		validationResultCacheBean.invalidateCertificateAuthority(CA_NAME);
+		long version = validationResultCacheBean.getVersion();
+
+		validationResultCacheBean.put(KEY, validationResult, certificateChain, nextUpdate, singleton(CA_NAME), version);
+
+		assertSame(validationResult, validationResultCacheBean.get(KEY));
+	}
+}
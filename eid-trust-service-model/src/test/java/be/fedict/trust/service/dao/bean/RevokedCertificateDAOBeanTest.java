@@ -0,0 +1,133 @@
+package be.fedict.trust.service.dao.bean;
+
+import static java.util.Arrays.asList;
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Date;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import be.fedict.trust.service.entity.RevokedCertificateEntity;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RevokedCertificateDAOBeanTest {
+
+	private static final int ISSUER_ID = 7;
+
+	@Mock
+	private DataSource dataSource;
+
+	@Mock
+	private Connection connection;
+
+	@Mock
+	private DatabaseMetaData metaData;
+
+	@Mock
+	private PreparedStatement upsertStatement;
+
+	@Mock
+	private PreparedStatement updateStatement;
+
+	@Mock
+	private PreparedStatement insertStatement;
+
+	@InjectMocks
+	private RevokedCertificateDAOBean revokedCertificateDAOBean;
+
+	private RevokedCertificateEntity first;
+
+	private RevokedCertificateEntity second;
+
+	@Before
+	public void setUp() throws Exception {
+		when(dataSource.getConnection()).thenReturn(connection);
+		when(connection.getMetaData()).thenReturn(metaData);
+		when(connection.prepareStatement(startsWith("UPDATE"))).thenReturn(updateStatement);
+		when(connection.prepareStatement(startsWith("INSERT"))).thenReturn(insertStatement);
+		first = new RevokedCertificateEntity(ISSUER_ID, BigInteger.ONE, new Date(1000L), 0);
+		second = new RevokedCertificateEntity(ISSUER_ID, BigInteger.valueOf(2), new Date(2000L), 0);
+	}
+
+	@Test
+	public void upsertUsesNativeStatementOfDatabase() throws Exception {
+		when(metaData.getDatabaseProductName()).thenReturn("PostgreSQL");
+		when(connection.prepareStatement(startsWith("INSERT INTO ts_revoked_certs (issuerId, serialNumber, generation, revocationDate) VALUES (?, ?, ?, ?) ON CONFLICT")))
+				.thenReturn(upsertStatement);
+
+		int rows = revokedCertificateDAOBean.upsertRevokedCertificates(asList(first, second));
+
+		assertEquals(2, rows);
+		verify(upsertStatement, times(2)).addBatch();
+		verify(upsertStatement).executeBatch();
+		verify(connection).close();
+	}
+
+	@Test
+	public void upsertFallsBackToUpdateAndInsert() throws Exception {
+		when(metaData.getDatabaseProductName()).thenReturn("HSQL Database Engine");
+		when(updateStatement.executeBatch()).thenReturn(new int[] { 1, 0 });
+
+		int rows = revokedCertificateDAOBean.upsertRevokedCertificates(asList(first, second));
+
+		assertEquals(2, rows);
+		verify(updateStatement, times(2)).addBatch();
+		verify(insertStatement, times(1)).addBatch();
+		verify(insertStatement).setInt(1, ISSUER_ID);
+		verify(insertStatement).setBytes(2, new byte[] { 2 });
+		verify(insertStatement).executeBatch();
+	}
+
+	@Test
+	public void retireMarksEntriesOfOlderGenerations() throws Exception {
+		PreparedStatement retireStatement = mock(PreparedStatement.class);
+		when(connection.prepareStatement(startsWith("UPDATE ts_revoked_certs SET removedGeneration"))).thenReturn(retireStatement);
+
+		int rows = revokedCertificateDAOBean.retireRevokedCertificates(ISSUER_ID, 5, asList(BigInteger.ONE, BigInteger.valueOf(128)));
+
+		assertEquals(2, rows);
+		verify(retireStatement).setBytes(3, new byte[] { 0, (byte) 0x80 });
+		verify(retireStatement, times(2)).setInt(4, 5);
+		verify(retireStatement, times(2)).addBatch();
+		verify(retireStatement).executeBatch();
+	}
+
+	@Test
+	public void purgeDeletesChunkOfRemovedEntries() throws Exception {
+		PreparedStatement selectStatement = mock(PreparedStatement.class);
+		PreparedStatement deleteStatement = mock(PreparedStatement.class);
+		ResultSet resultSet = mock(ResultSet.class);
+		when(connection.prepareStatement(startsWith("SELECT"))).thenReturn(selectStatement);
+		when(connection.prepareStatement(startsWith("DELETE"))).thenReturn(deleteStatement);
+		when(selectStatement.executeQuery()).thenReturn(resultSet);
+		when(resultSet.next()).thenReturn(true, true, false);
+		when(resultSet.getBytes(1)).thenReturn(new byte[] { 1 }, new byte[] { 2 });
+		when(resultSet.getInt(2)).thenReturn(3, 4);
+
+		int rows = revokedCertificateDAOBean.purgeRevokedCertificates(ISSUER_ID, 4, 100);
+
+		assertEquals(2, rows);
+		verify(selectStatement).setMaxRows(100);
+		verify(deleteStatement).setBytes(2, new byte[] { 2 });
+		verify(deleteStatement).setInt(3, 4);
+		verify(deleteStatement, times(2)).addBatch();
+		verify(deleteStatement).executeBatch();
+	}
+}
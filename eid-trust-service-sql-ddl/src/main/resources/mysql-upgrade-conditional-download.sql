@@ -0,0 +1,5 @@
+-- MySQL script to add the ETag and Last-Modified of the cached CRL per CA,
+-- used for conditional CRL downloads.
+-- <![CDATA[Usage: mysql -u trust -p trust < mysql-upgrade-conditional-download.sql ]]>
+ALTER TABLE ts_cert_authorities ADD COLUMN crlETag varchar(255);
+ALTER TABLE ts_cert_authorities ADD COLUMN crlLastModified varchar(255);
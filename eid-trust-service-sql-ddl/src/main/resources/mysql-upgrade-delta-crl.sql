@@ -0,0 +1,6 @@
+-- MySQL script to add the delta CRL state of the cached CRL per CA.
+-- Requires the revocation storage upgrade, which adds the CRL generations.
+-- <![CDATA[Usage: mysql -u trust -p trust < mysql-upgrade-delta-crl.sql ]]>
+ALTER TABLE ts_cert_authorities ADD COLUMN deltaCrlUrl varchar(255);
+ALTER TABLE ts_cert_authorities ADD COLUMN baseCrlNumber decimal(38,0);
+ALTER TABLE ts_cert_authorities ADD COLUMN baseGeneration integer NOT NULL DEFAULT 0;
@@ -0,0 +1,4 @@
+-- MySQL script to add the connection and read timeouts of the network configuration.
+-- <![CDATA[Usage: mysql -u trust -p trust < mysql-upgrade-network-timeouts.sql ]]>
+ALTER TABLE ts_network_config ADD COLUMN connectTimeout integer;
+ALTER TABLE ts_network_config ADD COLUMN readTimeout integer;
@@ -0,0 +1,3 @@
+-- MySQL script to add the parallel evaluation flag of the virtual trust domains.
+-- <![CDATA[Usage: mysql -u trust -p trust < mysql-upgrade-parallel-trust-domains.sql ]]>
+ALTER TABLE ts_v_trustdom ADD COLUMN parallel bit NOT NULL DEFAULT 0;
@@ -0,0 +1,21 @@
+-- MySQL script to upgrade the Trust Service CRL cache to the compact revocation storage
+-- <![CDATA[Usage: mysql -u trust -p trust < mysql-upgrade-revocation-storage.sql ]]>
+-- Keys the cached CRL entries by issuer id and binary serial number, and adds
+-- the CRL generation and number per CA and the issuer id generator tables.
+-- The cached revocation data is dropped and the CAs are set inactive, so they
+-- are harvested again from the CRLs.
+ALTER TABLE ts_cert_authorities ADD COLUMN issuerId integer;
+ALTER TABLE ts_cert_authorities ADD COLUMN generation integer NOT NULL DEFAULT 0;
+ALTER TABLE ts_cert_authorities ADD COLUMN crlNumber decimal(38,0);
+SET @issuerId := 0;
+UPDATE ts_cert_authorities SET issuerId = (@issuerId := @issuerId + 1);
+ALTER TABLE ts_cert_authorities MODIFY issuerId integer NOT NULL;
+ALTER TABLE ts_cert_authorities ADD UNIQUE (issuerId);
+UPDATE ts_cert_authorities SET thisUpdate = NULL, nextUpdate = NULL, crlNumber = NULL;
+UPDATE ts_cert_authorities SET status = 'INACTIVE' WHERE status IN ('ACTIVE', 'PROCESSING');
+DROP TABLE ts_revoked_certs;
+CREATE TABLE ts_revoked_certs (issuerId integer NOT NULL, serialNumber varbinary(32) NOT NULL, generation integer NOT NULL, revocationDate datetime, removedGeneration integer, PRIMARY KEY (issuerId, serialNumber, generation));
+CREATE TABLE ts_issuer_ids (id integer NOT NULL, caName varchar(255), PRIMARY KEY (id));
+INSERT INTO ts_issuer_ids (id, caName) SELECT issuerId, name FROM ts_cert_authorities;
+CREATE TABLE ts_id_generators (sequence_name varchar(255), next_val integer);
+INSERT INTO ts_id_generators (sequence_name, next_val) SELECT 'issuerId', COALESCE(MAX(issuerId), 0) + 1 FROM ts_cert_authorities;
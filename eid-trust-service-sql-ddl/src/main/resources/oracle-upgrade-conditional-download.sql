@@ -0,0 +1,4 @@
+-- Oracle script to add the ETag and Last-Modified of the cached CRL per CA,
+-- used for conditional CRL downloads.
+-- sqlplus trust/trust @oracle-upgrade-conditional-download.sql
+ALTER TABLE ts_cert_authorities ADD (crlETag varchar2(255 char), crlLastModified varchar2(255 char));
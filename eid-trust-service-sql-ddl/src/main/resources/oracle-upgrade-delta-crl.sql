@@ -0,0 +1,5 @@
+-- Oracle script to add the delta CRL state of the cached CRL per CA.
+-- Requires the revocation storage upgrade, which adds the CRL generations.
+-- sqlplus trust/trust @oracle-upgrade-delta-crl.sql
+ALTER TABLE ts_cert_authorities ADD (deltaCrlUrl varchar2(255 char), baseCrlNumber number(38,0));
+ALTER TABLE ts_cert_authorities ADD (baseGeneration number(10,0) DEFAULT 0 NOT NULL);
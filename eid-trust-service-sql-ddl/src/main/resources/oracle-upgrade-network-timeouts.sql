@@ -0,0 +1,3 @@
+-- Oracle script to add the connection and read timeouts of the network configuration.
+-- sqlplus trust/trust @oracle-upgrade-network-timeouts.sql
+ALTER TABLE ts_network_config ADD (connectTimeout number(10,0), readTimeout number(10,0));
@@ -0,0 +1,3 @@
+-- Oracle script to add the parallel evaluation flag of the virtual trust domains.
+-- sqlplus trust/trust @oracle-upgrade-parallel-trust-domains.sql
+ALTER TABLE ts_v_trustdom ADD (parallel number(1,0) DEFAULT 0 NOT NULL);
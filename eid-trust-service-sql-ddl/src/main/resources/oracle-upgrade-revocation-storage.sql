@@ -0,0 +1,19 @@
+-- Oracle script to upgrade the Trust Service CRL cache to the compact revocation storage
+-- sqlplus trust/trust @oracle-upgrade-revocation-storage.sql
+-- Keys the cached CRL entries by issuer id and binary serial number, and adds
+-- the CRL generation and number per CA and the issuer id generator tables.
+-- The cached revocation data is dropped and the CAs are set inactive, so they
+-- are harvested again from the CRLs.
+ALTER TABLE ts_cert_authorities ADD (issuerId number(10,0), crlNumber number(38,0), generation number(10,0) DEFAULT 0 NOT NULL);
+UPDATE ts_cert_authorities SET issuerId = ROWNUM;
+ALTER TABLE ts_cert_authorities MODIFY (issuerId NOT NULL);
+ALTER TABLE ts_cert_authorities ADD UNIQUE (issuerId);
+UPDATE ts_cert_authorities SET thisUpdate = NULL, nextUpdate = NULL, crlNumber = NULL;
+UPDATE ts_cert_authorities SET status = 'INACTIVE' WHERE status IN ('ACTIVE', 'PROCESSING');
+DROP TABLE ts_revoked_certs;
+CREATE TABLE ts_revoked_certs (issuerId number(10,0) NOT NULL, serialNumber raw(32) NOT NULL, generation number(10,0) NOT NULL, revocationDate timestamp, removedGeneration number(10,0), PRIMARY KEY (issuerId, serialNumber, generation));
+CREATE TABLE ts_issuer_ids (id number(10,0) NOT NULL, caName varchar2(255 char), PRIMARY KEY (id));
+INSERT INTO ts_issuer_ids (id, caName) SELECT issuerId, name FROM ts_cert_authorities;
+CREATE TABLE ts_id_generators (sequence_name varchar2(255 char), next_val number(10,0));
+INSERT INTO ts_id_generators (sequence_name, next_val) SELECT 'issuerId', COALESCE(MAX(issuerId), 0) + 1 FROM ts_cert_authorities;
+COMMIT;
@@ -0,0 +1,5 @@
+-- PostgreSQL script to add the ETag and Last-Modified of the cached CRL per CA,
+-- used for conditional CRL downloads.
+-- psql -d trust -U trust -W -f postgresql-upgrade-conditional-download.sql
+ALTER TABLE ts_cert_authorities ADD COLUMN crlETag varchar(255);
+ALTER TABLE ts_cert_authorities ADD COLUMN crlLastModified varchar(255);
@@ -0,0 +1,6 @@
+-- PostgreSQL script to add the delta CRL state of the cached CRL per CA.
+-- Requires the revocation storage upgrade, which adds the CRL generations.
+-- psql -d trust -U trust -W -f postgresql-upgrade-delta-crl.sql
+ALTER TABLE ts_cert_authorities ADD COLUMN deltaCrlUrl varchar(255);
+ALTER TABLE ts_cert_authorities ADD COLUMN baseCrlNumber numeric(38, 0);
+ALTER TABLE ts_cert_authorities ADD COLUMN baseGeneration int4 NOT NULL DEFAULT 0;
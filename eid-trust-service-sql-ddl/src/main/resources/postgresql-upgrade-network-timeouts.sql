@@ -0,0 +1,4 @@
+-- PostgreSQL script to add the connection and read timeouts of the network configuration.
+-- psql -d trust -U trust -W -f postgresql-upgrade-network-timeouts.sql
+ALTER TABLE ts_network_config ADD COLUMN connectTimeout int4;
+ALTER TABLE ts_network_config ADD COLUMN readTimeout int4;
@@ -0,0 +1,3 @@
+-- PostgreSQL script to add the parallel evaluation flag of the virtual trust domains.
+-- psql -d trust -U trust -W -f postgresql-upgrade-parallel-trust-domains.sql
+ALTER TABLE ts_v_trustdom ADD COLUMN parallel bool NOT NULL DEFAULT false;
@@ -0,0 +1,23 @@
+-- PostgreSQL script to upgrade the Trust Service CRL cache to the compact revocation storage
+
+-- psql -d trust -U trust -W -f postgresql-upgrade-revocation-storage.sql
+-- Keys the cached CRL entries by issuer id and binary serial number, and adds
+-- the CRL generation and number per CA and the issuer id generator tables.
+-- The cached revocation data is dropped and the CAs are set inactive, so they
+-- are harvested again from the CRLs.
+ALTER TABLE ts_cert_authorities ADD COLUMN issuerId int4;
+ALTER TABLE ts_cert_authorities ADD COLUMN generation int4 NOT NULL DEFAULT 0;
+ALTER TABLE ts_cert_authorities ADD COLUMN crlNumber numeric(38, 0);
+UPDATE ts_cert_authorities SET issuerId = ca.id
+	FROM (SELECT name, row_number() OVER (ORDER BY name) AS id FROM ts_cert_authorities) ca
+	WHERE ts_cert_authorities.name = ca.name;
+ALTER TABLE ts_cert_authorities ALTER COLUMN issuerId SET NOT NULL;
+ALTER TABLE ts_cert_authorities ADD UNIQUE (issuerId);
+UPDATE ts_cert_authorities SET thisUpdate = NULL, nextUpdate = NULL, crlNumber = NULL;
+UPDATE ts_cert_authorities SET status = 'INACTIVE' WHERE status IN ('ACTIVE', 'PROCESSING');
+DROP TABLE ts_revoked_certs;
+CREATE TABLE ts_revoked_certs (issuerId int4 NOT NULL, serialNumber bytea NOT NULL, generation int4 NOT NULL, revocationDate timestamp, removedGeneration int4, PRIMARY KEY (issuerId, serialNumber, generation));
+CREATE TABLE ts_issuer_ids (id int4 NOT NULL, caName varchar(255), PRIMARY KEY (id));
+INSERT INTO ts_issuer_ids (id, caName) SELECT issuerId, name FROM ts_cert_authorities;
+CREATE TABLE ts_id_generators (sequence_name varchar(255), next_val int4);
+INSERT INTO ts_id_generators (sequence_name, next_val) SELECT 'issuerId', COALESCE(MAX(issuerId), 0) + 1 FROM ts_cert_authorities;
@@ -18,11 +18,13 @@
 
 package test.integ.be.fedict.trust;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.security.Security;
 import java.security.cert.X509Certificate;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -35,6 +37,7 @@ import test.integ.be.fedict.trust.util.TestUtils;
 import be.fedict.trust.BelgianTrustValidatorFactory;
 import be.fedict.trust.NetworkConfig;
 import be.fedict.trust.TrustValidator;
+import be.fedict.trust.client.BatchValidationResult;
 import be.fedict.trust.client.TrustServiceDomains;
 import be.fedict.trust.client.XKMS2Client;
 import be.fedict.trust.client.exception.TrustDomainNotFoundException;
@@ -192,4 +195,29 @@ public class XKMSTest {
 		LOG.debug("dt: " + ((double) (t1 - t0)) / 1000);
 	}
 
+	@Test
+	public void testValidateBatchPerformanceViaTrustService() throws Exception {
+		LOG.debug("validate eID authentication certificate (batch performance).");
+
+		List<X509Certificate> authnCertificateChain = TestUtils
+				.getAuthnCertificateChain();
+		List<List<X509Certificate>> certificateChains = new LinkedList<List<X509Certificate>>();
+		for (int idx = 0; idx < COUNT; idx++) {
+			certificateChains.add(authnCertificateChain);
+		}
+
+		XKMS2Client client = new XKMS2Client(TestUtils.XKMS_WS_LOCATION);
+
+		long t0 = System.currentTimeMillis();
+		List<BatchValidationResult> results = client
+				.validateBatch(certificateChains);
+		long t1 = System.currentTimeMillis();
+		LOG.debug("dt: " + ((double) (t1 - t0)) / 1000);
+
+		assertEquals(COUNT, results.size());
+		for (BatchValidationResult result : results) {
+			assertTrue(result.isValid());
+		}
+	}
+
 }
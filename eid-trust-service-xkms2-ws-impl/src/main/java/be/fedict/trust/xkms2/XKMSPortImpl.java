@@ -28,9 +28,14 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.EJB;
 import javax.jws.HandlerChain;
@@ -51,6 +56,8 @@ import be.fedict.trust.client.jaxb.xades132.CRLValuesType;
 import be.fedict.trust.client.jaxb.xades132.EncapsulatedPKIDataType;
 import be.fedict.trust.client.jaxb.xades132.OCSPValuesType;
 import be.fedict.trust.client.jaxb.xades132.RevocationValuesType;
+import be.fedict.trust.client.jaxb.xkms.CompoundRequestType;
+import be.fedict.trust.client.jaxb.xkms.CompoundResultType;
 import be.fedict.trust.client.jaxb.xkms.KeyBindingType;
 import be.fedict.trust.client.jaxb.xkms.MessageExtensionAbstractType;
 import be.fedict.trust.client.jaxb.xkms.ObjectFactory;
@@ -90,8 +97,8 @@ public class XKMSPortImpl implements XKMSPortType {
 	public ValidateResultType validate(ValidateRequestType body) {
 		LOG.debug("validate");
 
-		List<X509Certificate> certificateChain = new LinkedList<X509Certificate>();
-		String trustDomain = null;
+		List<X509Certificate> certificateChain;
+		String trustDomain;
 		boolean returnRevocationData = false;
 		Date validationDate = null;
 		List<byte[]> ocspResponses = new LinkedList<byte[]>();
@@ -102,55 +109,22 @@ public class XKMSPortImpl implements XKMSPortType {
 		/*
 		 * Get certification chain from QueryKeyBinding
 		 */
-		QueryKeyBindingType queryKeyBinding = body.getQueryKeyBinding();
-		KeyInfoType keyInfo = queryKeyBinding.getKeyInfo();
-		List<Object> keyInfoContent = keyInfo.getContent();
-		for (Object keyInfoObject : keyInfoContent) {
-			JAXBElement<?> keyInfoElement = (JAXBElement<?>) keyInfoObject;
-			Object elementValue = keyInfoElement.getValue();
-			if (elementValue instanceof X509DataType) {
-				X509DataType x509Data = (X509DataType) elementValue;
-				List<Object> x509DataContent = x509Data
-						.getX509IssuerSerialOrX509SKIOrX509SubjectName();
-				for (Object x509DataObject : x509DataContent) {
-					if (!(x509DataObject instanceof JAXBElement)) {
-						continue;
-					}
-					JAXBElement<?> x509DataElement = (JAXBElement<?>) x509DataObject;
-					if (!X509_CERT_QNAME.equals(x509DataElement.getName())) {
-						continue;
-					}
-					byte[] x509DataValue = (byte[]) x509DataElement.getValue();
-					try {
-						X509Certificate certificate = getCertificate(x509DataValue);
-						certificateChain.add(certificate);
-					} catch (CertificateException e) {
-						return createResultResponse(ResultMajorCode.SENDER,
-								ResultMinorCode.MESSAGE_NOT_SUPPORTED);
-					}
-				}
-			}
+		try {
+			certificateChain = getCertificateChain(body.getQueryKeyBinding());
+		} catch (CertificateException e) {
+			return createResultResponse(ResultMajorCode.SENDER,
+					ResultMinorCode.MESSAGE_NOT_SUPPORTED);
 		}
 
 		/*
 		 * Get optional trust domain name from UseKeyWith
 		 */
-		if (body.getQueryKeyBinding().getUseKeyWith().size() > 0) {
-			for (UseKeyWithType useKeyWith : body.getQueryKeyBinding()
-					.getUseKeyWith()) {
-				if (useKeyWith.getApplication().equals(
-						XKMSConstants.TRUST_DOMAIN_APPLICATION_URI)) {
-					trustDomain = useKeyWith.getIdentifier();
-					LOG.debug("validate against trust domain " + trustDomain);
-				}
-			}
-		}
+		trustDomain = getTrustDomain(body.getQueryKeyBinding());
 
 		/*
 		 * Get optional returning of used revocation data from RespondWith
 		 */
-		if (body.getRespondWith().contains(
-				XKMSConstants.RETURN_REVOCATION_DATA_URI)) {
+		if (isReturnRevocationData(body)) {
 			LOG.debug("will return used revocation data...");
 			returnRevocationData = true;
 		}
@@ -292,9 +266,199 @@ public class XKMSPortImpl implements XKMSPortType {
 					ResultMinorCode.MESSAGE_NOT_SUPPORTED);
 		}
 
+		return createValidateResult(validationResult, returnRevocationData);
+	}
+
+	public CompoundResultType compound(CompoundRequestType body) {
+		LOG.debug("compound");
+
+		ObjectFactory objectFactory = new ObjectFactory();
+		CompoundResultType compoundResult = objectFactory
+				.createCompoundResultType();
+		compoundResult.setResultMajor(ResultMajorCode.SUCCESS.getErrorCode());
+
+		List<ValidateRequestType> validateRequests = new LinkedList<ValidateRequestType>();
+		for (Object request : body
+				.getLocateRequestOrValidateRequestOrRegisterRequest()) {
+			if (request instanceof JAXBElement) {
+				request = ((JAXBElement<?>) request).getValue();
+			}
+			if (!(request instanceof ValidateRequestType)) {
+				LOG.error("unsupported compound request: "
+						+ request.getClass().toString());
+				compoundResult.setResultMajor(ResultMajorCode.SENDER
+						.getErrorCode());
+				compoundResult.setResultMinor(ResultMinorCode.MESSAGE_NOT_SUPPORTED
+						.getErrorCode());
+				return compoundResult;
+			}
+			validateRequests.add((ValidateRequestType) request);
+		}
+		LOG.debug("compound validate requests: " + validateRequests.size());
+
+		/*
+		 * Plain validate requests against the same trust domain are validated
+		 * as a single batch, the others one by one.
+		 */
+		ValidateResultType[] validateResults = new ValidateResultType[validateRequests
+				.size()];
+		Map<List<Object>, List<Integer>> batches = new LinkedHashMap<List<Object>, List<Integer>>();
+		Map<Integer, List<X509Certificate>> certificateChains = new HashMap<Integer, List<X509Certificate>>();
+		for (int idx = 0; idx < validateRequests.size(); idx++) {
+			ValidateRequestType validateRequest = validateRequests.get(idx);
+			if (!validateRequest.getMessageExtension().isEmpty()
+					|| null != validateRequest.getQueryKeyBinding()
+							.getTimeInstant()) {
+				validateResults[idx] = validate(validateRequest);
+				continue;
+			}
+
+			List<X509Certificate> certificateChain;
+			try {
+				certificateChain = getCertificateChain(validateRequest
+						.getQueryKeyBinding());
+			} catch (CertificateException e) {
+				certificateChain = null;
+			}
+			if (null == certificateChain || certificateChain.isEmpty()) {
+				validateResults[idx] = createResultResponse(
+						ResultMajorCode.SENDER,
+						ResultMinorCode.MESSAGE_NOT_SUPPORTED);
+				continue;
+			}
+			certificateChains.put(idx, certificateChain);
+
+			List<Object> batchKey = Arrays.<Object> asList(
+					getTrustDomain(validateRequest.getQueryKeyBinding()),
+					isReturnRevocationData(validateRequest));
+			List<Integer> batch = batches.get(batchKey);
+			if (null == batch) {
+				batch = new LinkedList<Integer>();
+				batches.put(batchKey, batch);
+			}
+			batch.add(idx);
+		}
+
+		for (Map.Entry<List<Object>, List<Integer>> batch : batches.entrySet()) {
+			String trustDomain = (String) batch.getKey().get(0);
+			boolean returnRevocationData = (Boolean) batch.getKey().get(1);
+			List<List<X509Certificate>> batchCertificateChains = new LinkedList<List<X509Certificate>>();
+			for (Integer idx : batch.getValue()) {
+				batchCertificateChains.add(certificateChains.get(idx));
+			}
+
+			List<ValidationResult> validationResults;
+			try {
+				validationResults = this.trustService.validateBatch(
+						trustDomain, batchCertificateChains,
+						returnRevocationData);
+			} catch (TrustDomainNotFoundException e) {
+				LOG.error("invalid trust domain");
+				for (Integer idx : batch.getValue()) {
+					validateResults[idx] = createResultResponse(
+							ResultMajorCode.SENDER,
+							ResultMinorCode.TRUST_DOMAIN_NOT_FOUND);
+				}
+				continue;
+			} catch (RuntimeException e) {
+				// only fails the requests of this batch
+				LOG.error("batch validation error: " + e.getMessage(), e);
+				for (Integer idx : batch.getValue()) {
+					validateResults[idx] = createResultResponse(
+							ResultMajorCode.RECEIVER, ResultMinorCode.FAILURE);
+				}
+				continue;
+			}
+
+			Iterator<ValidationResult> validationResultIterator = validationResults
+					.iterator();
+			for (Integer idx : batch.getValue()) {
+				validateResults[idx] = createValidateResult(
+						validationResultIterator.next(), returnRevocationData);
+			}
+		}
+
 		/*
-		 * Create validation result response
+		 * One result per request, in order
 		 */
+		for (int idx = 0; idx < validateResults.length; idx++) {
+			validateResults[idx].setRequestId(validateRequests.get(idx).getId());
+			compoundResult.getLocateResultOrValidateResultOrRegisterResult()
+					.add(objectFactory.createValidateResult(validateResults[idx]));
+		}
+		return compoundResult;
+	}
+
+	/*
+	 * Get certification chain from QueryKeyBinding
+	 */
+
+	private List<X509Certificate> getCertificateChain(
+			QueryKeyBindingType queryKeyBinding) throws CertificateException {
+
+		List<X509Certificate> certificateChain = new LinkedList<X509Certificate>();
+		KeyInfoType keyInfo = queryKeyBinding.getKeyInfo();
+		List<Object> keyInfoContent = keyInfo.getContent();
+		for (Object keyInfoObject : keyInfoContent) {
+			JAXBElement<?> keyInfoElement = (JAXBElement<?>) keyInfoObject;
+			Object elementValue = keyInfoElement.getValue();
+			if (elementValue instanceof X509DataType) {
+				X509DataType x509Data = (X509DataType) elementValue;
+				List<Object> x509DataContent = x509Data
+						.getX509IssuerSerialOrX509SKIOrX509SubjectName();
+				for (Object x509DataObject : x509DataContent) {
+					if (!(x509DataObject instanceof JAXBElement)) {
+						continue;
+					}
+					JAXBElement<?> x509DataElement = (JAXBElement<?>) x509DataObject;
+					if (!X509_CERT_QNAME.equals(x509DataElement.getName())) {
+						continue;
+					}
+					byte[] x509DataValue = (byte[]) x509DataElement.getValue();
+					X509Certificate certificate = getCertificate(x509DataValue);
+					certificateChain.add(certificate);
+				}
+			}
+		}
+		return certificateChain;
+	}
+
+	/*
+	 * Get optional trust domain name from UseKeyWith
+	 */
+
+	private String getTrustDomain(QueryKeyBindingType queryKeyBinding) {
+
+		String trustDomain = null;
+		for (UseKeyWithType useKeyWith : queryKeyBinding.getUseKeyWith()) {
+			if (useKeyWith.getApplication().equals(
+					XKMSConstants.TRUST_DOMAIN_APPLICATION_URI)) {
+				trustDomain = useKeyWith.getIdentifier();
+				LOG.debug("validate against trust domain " + trustDomain);
+			}
+		}
+		return trustDomain;
+	}
+
+	private boolean isReturnRevocationData(ValidateRequestType validateRequest) {
+
+		return validateRequest.getRespondWith().contains(
+				XKMSConstants.RETURN_REVOCATION_DATA_URI);
+	}
+
+	/*
+	 * Create validation result response
+	 */
+
+	private ValidateResultType createValidateResult(
+			ValidationResult validationResult, boolean returnRevocationData) {
+
+		if (validationResult.isError()) {
+			LOG.error("validation error: " + validationResult.getErrorMessage());
+			return createResultResponse(ResultMajorCode.RECEIVER,
+					ResultMinorCode.FAILURE);
+		}
+
 		ValidateResultType validateResult = createResultResponse(
 				ResultMajorCode.SUCCESS, null);
 